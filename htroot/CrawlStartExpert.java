@@ -35,6 +35,7 @@ import net.yacy.cora.util.Html2Image;
 import net.yacy.crawler.data.CrawlProfile;
 import net.yacy.document.LibraryProvider;
 import net.yacy.search.Switchboard;
+import net.yacy.search.SwitchboardConstants;
 import net.yacy.search.schema.CollectionSchema;
 import net.yacy.server.serverObjects;
 import net.yacy.server.serverSwitch;
@@ -482,6 +483,16 @@ public class CrawlStartExpert {
             prop.put("cachePolicy_iffresh", 1);
         }
 
+        // ---------- Crawl Speed
+        // Adaptive crawl rate?
+        if (post == null) {
+            prop.put("adaptiveRateChecked",
+                    env.getConfigBool(SwitchboardConstants.CRAWLER_ADAPTIVE_RATE, false) ? 1 : 0);
+        } else {
+            prop.put("adaptiveRateChecked",
+                    post.getBoolean("adaptiveRate") ? 1 : 0);
+        }
+
         // ---------- Agent name
         if (sb.isP2PMode()) {
             prop.put("agentSelect", 0);
@@ -345,6 +345,9 @@ public class Crawler_p {
                 env.setConfig("indexMedia", indexMedia);
 
                 env.setConfig("storeHTCache", storeHTCache);
+
+                final boolean adaptiveRate = "on".equals(post.get("adaptiveRate", "off"));
+                env.setConfig(SwitchboardConstants.CRAWLER_ADAPTIVE_RATE, adaptiveRate);
                 
                 String defaultAgentName = sb.isIntranetMode() ? ClientIdentification.yacyIntranetCrawlerAgentName : ClientIdentification.yacyInternetCrawlerAgentName;
                 String agentName = post.get("agentName", defaultAgentName);
@@ -547,6 +550,7 @@ public class Crawler_p {
                             agentName,
                             new VocabularyScraper(vocabulary_scraper),
                             timezoneOffset);
+                    profile.put(CrawlProfile.CrawlAttribute.ADAPTIVE_RATE.key, adaptiveRate);
                     handle = ASCII.getBytes(profile.handle());
 
                     // before we fire up a new crawl, we make sure that another crawl with the same name is not running
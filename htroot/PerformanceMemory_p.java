@@ -41,7 +41,9 @@ import net.yacy.kelondro.table.Table;
 import net.yacy.kelondro.util.Formatter;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.search.Switchboard;
+import net.yacy.search.query.QueryResultCache;
 import net.yacy.search.query.SearchEventCache;
+import net.yacy.search.query.SnippetExecutor;
 import net.yacy.server.serverObjects;
 import net.yacy.server.serverSwitch;
 
@@ -237,12 +239,29 @@ public class PerformanceMemory_p {
         prop.putNum("namecacheMiss.Miss", Domains.cacheMiss_Miss);
         prop.putNum("namecacheMiss.Insert", Domains.cacheMiss_Insert);
         prop.putNum("namecache.noCache", Domains.nameCacheNoCachingPatternsSize());
+        prop.putNum("dnsresolver.queue", Domains.dnsResolverQueueSize());
+        prop.putNum("dnsresolver.lookup", Domains.dnsLookupCount());
+        prop.putNum("dnsresolver.timeout", Domains.dnsLookupTimeouts());
+        prop.putNum("dnsresolver.time", Domains.dnsLookupAverageTime());
+        prop.putNum("dnsresolver.prefetch", Domains.dnsPrefetchCount());
+        prop.putNum("dnsresolver.rejected", Domains.dnsPrefetchRejected());
         prop.putNum("blacklistcache.size", Switchboard.urlBlacklist.blacklistCacheSize());
         prop.putNum("searchevent.size", SearchEventCache.size());
         prop.putNum("searchevent.hit", SearchEventCache.cacheHit);
         prop.putNum("searchevent.miss", SearchEventCache.cacheMiss);
         prop.putNum("searchevent.insert", SearchEventCache.cacheInsert);
         prop.putNum("searchevent.delete", SearchEventCache.cacheDelete);
+        prop.putNum("queryresult.size", QueryResultCache.size());
+        prop.putNum("queryresult.hit", QueryResultCache.cacheHit);
+        prop.putNum("queryresult.miss", QueryResultCache.cacheMiss);
+        prop.putNum("queryresult.insert", QueryResultCache.cacheInsert);
+        prop.putNum("queryresult.delete", QueryResultCache.cacheDelete);
+        prop.putNum("snippetexecutor.active", SnippetExecutor.activeCount());
+        prop.putNum("snippetexecutor.queue", SnippetExecutor.queueSize());
+        prop.putNum("snippetexecutor.submitted", SnippetExecutor.submittedCount());
+        prop.putNum("snippetexecutor.rejected", SnippetExecutor.rejectedCount());
+        prop.putNum("snippetexecutor.cancelled", SnippetExecutor.cancelledCount());
+        prop.putNum("snippetexecutor.time", SnippetExecutor.averageTaskTime());
         // return rewrite values for templates
         return prop;
     }
@@ -54,6 +54,7 @@ public class latency_p {
             prop.put("domains_" + c + "_average", host.average());
             prop.put("domains_" + c + "_robots", host.robotsDelay());
             prop.put("domains_" + c + "_flux", host.flux(agent.minimumDelta));
+            prop.put("domains_" + c + "_rate", Float.toString(host.rate()));
             c++;
         }
         prop.put("domains", c);
@@ -29,7 +29,6 @@
 // if the shell's current path is htroot/yacy
 
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
@@ -47,7 +46,6 @@ import net.yacy.cora.protocol.HeaderFramework;
 import net.yacy.cora.protocol.RequestHeader;
 import net.yacy.cora.sorting.ConcurrentScoreMap;
 import net.yacy.cora.sorting.ScoreMap;
-import net.yacy.cora.sorting.WeakPriorityBlockingQueue;
 import net.yacy.cora.storage.HandleSet;
 import net.yacy.cora.util.ByteBuffer;
 import net.yacy.cora.util.SpaceExceededException;
@@ -221,7 +219,9 @@ public final class search {
         int indexabstractContainercount = 0;
         QueryParams theQuery = null;
         SearchEvent theSearch = null;
-        ArrayList<WeakPriorityBlockingQueue.Element<URIMetadataNode>> accu = null;
+        final StringBuilder resources = new StringBuilder(6000); // the result lines, written while the results arrive
+        int linkcount = 0;
+        long linktime = 0;
         if (query.isEmpty() && abstractSet != null) {
             // this is _not_ a normal search, only a request for index abstracts
             final Segment indexSegment = sb.index;
@@ -332,7 +332,18 @@ public final class search {
             // set statistic details of search result and find best result index set
             prop.put("joincount", Integer.toString(theSearch.getResultCount()));
             if (theSearch.getResultCount() > 0) {
-                accu = theSearch.completeResults(maxtime);
+                final long timer = System.currentTimeMillis();
+                linkcount = theSearch.streamResults(0, theQuery.neededResults(), maxtime, new SearchEvent.ResultListener() {
+                    @Override
+                    public boolean result(final int item, final URIMetadataNode result) {
+                        final String resource = result.resource();
+                        if (resource != null) {
+                            resources.append("resource").append(item).append('=').append(resource).append(serverCore.CRLF_STRING);
+                        }
+                        return true;
+                    }
+                });
+                linktime = System.currentTimeMillis() - timer;
             }
             if (theSearch.getResultCount() <= 0 || abstracts.isEmpty()) {
                 prop.put("indexcount", "");
@@ -397,7 +408,7 @@ public final class search {
 
         // prepare result
         int resultCount = theSearch == null ? 0 : theSearch.getResultCount(); // theSearch may be null if we searched only for abstracts
-        if (resultCount == 0 || accu == null || accu.isEmpty()) {
+        if (resultCount == 0 || linkcount == 0) {
 
             // no results
             prop.put("links", "");
@@ -405,22 +416,11 @@ public final class search {
             prop.put("references", "");
 
         } else {
-            // result is a List of urlEntry elements
-            final long timer = System.currentTimeMillis();
-            final StringBuilder links = new StringBuilder(6000);
-            String resource = null;
-            WeakPriorityBlockingQueue.Element<URIMetadataNode> entry;
-            for (int i = 0; i < accu.size(); i++) {
-                entry = accu.get(i);
-                resource = entry.getElement().resource();
-                if (resource != null) {
-                    links.append("resource").append(i).append('=').append(resource).append(serverCore.CRLF_STRING);
-                }
-            }
-            theQuery.transmitcount = accu.size() + 1;
-            prop.put("links", links.toString());
-            prop.put("linkcount", accu.size());
-            EventTracker.update(EventTracker.EClass.SEARCH, new ProfilingGraph.EventSearch(theQuery.id(true), SearchEventType.RESULTLIST, "", accu.size(), System.currentTimeMillis() - timer), false);
+            // the result lines of the urlEntry elements were written by the result listener
+            theQuery.transmitcount = linkcount + 1;
+            prop.put("links", resources.toString());
+            prop.put("linkcount", linkcount);
+            EventTracker.update(EventTracker.EClass.SEARCH, new ProfilingGraph.EventSearch(theQuery.id(true), SearchEventType.RESULTLIST, "", linkcount, linktime), false);
         }
 
         // prepare search statistics
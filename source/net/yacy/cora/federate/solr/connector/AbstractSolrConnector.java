@@ -480,6 +480,44 @@ public abstract class AbstractSolrConnector implements SolrConnector {
         return md;
     }
     
+    /**
+     * get the load time metadata of a set of documents. The ids are combined into OR-queries with at most
+     * 255 terms, so a whole list of urls can be tested with a few requests.
+     * @param ids the url hashes and document ids
+     * @return a map from the ids of existing documents to their load time metadata
+     * @throws IOException
+     */
+    @Override
+    public Map<String, LoadTimeURL> getLoadTimeURLs(final Collection<String> ids) throws IOException {
+        final Map<String, LoadTimeURL> result = new HashMap<String, LoadTimeURL>();
+        if (ids == null || ids.size() == 0) return result;
+        final Iterator<String> i = ids.iterator();
+        while (i.hasNext()) {
+            // if the list is too large, we get a "too many boolean clauses" exception
+            final StringBuilder q = new StringBuilder();
+            int c = 0;
+            while (i.hasNext() && c < 255) {
+                if (c++ > 0) q.append(" OR ");
+                q.append("({!cache=false raw f=").append(CollectionSchema.id.getSolrFieldName()).append('}').append(i.next()).append(')');
+            }
+            final SolrQuery params = new SolrQuery();
+            params.setQuery(q.toString());
+            params.setRows(c);
+            params.setStart(0);
+            params.setFacet(false);
+            params.clearSorts();
+            params.setFields(CollectionSchema.id.getSolrFieldName(), CollectionSchema.sku.getSolrFieldName(), CollectionSchema.load_date_dt.getSolrFieldName());
+            params.setIncludeScore(false);
+            final SolrDocumentList sdl = getDocumentListByParams(params);
+            if (sdl == null) continue;
+            for (final SolrDocument doc: sdl) {
+                final LoadTimeURL md = getLoadTimeURL(doc);
+                if (md != null) result.put((String) doc.getFieldValue(CollectionSchema.id.getSolrFieldName()), md);
+            }
+        }
+        return result;
+    }
+
     /**
      * get the number of results when this query is done.
      * This should only be called if the actual result is never used, and only the count is interesting
@@ -21,17 +21,22 @@
 package net.yacy.cora.federate.solr.connector;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 
+import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.sorting.ReversibleScoreMap;
 import net.yacy.cora.storage.ARC;
 import net.yacy.cora.storage.ConcurrentARC;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.index.BloomFilter;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.search.schema.CollectionSchema;
 
@@ -48,6 +53,9 @@ import org.apache.solr.common.params.ModifiableSolrParams;
  * All time-consuming tasks like updates and deletions are done within a concurrent process
  * which is started for this class in the background.
  * To implement this, we introduce an id exist cache, a deletion id queue and a update document queue.
+ * Optionally the ids of all documents are recorded in a bloom filter which is built from the index
+ * when the connector is created and updated with each added document. Then lookups of ids which are
+ * not in the index, like the double-check of the crawl stacker, are answered without a solr request.
  */
 public class ConcurrentUpdateSolrConnector implements SolrConnector {
 
@@ -76,8 +84,31 @@ public class ConcurrentUpdateSolrConnector implements SolrConnector {
     private CommitHandler processHandler;
     private final int updateCapacity;
     private boolean commitProcessRunning;
-    
+
+    /**
+     * the false positive probability of the id filter
+     */
+    public static double idFilterFpp = 0.01;
+
+    private final Object idFilterLock = new Object();
+    private BloomFilter idFilter;      // the filter which is used for lookups; null if no filter is available yet
+    private BloomFilter idFilterBuild; // a filter which is currently built from the index; it receives all new ids as well
+    private long idFilterCapacity, idFilterCount, idFilterRebuildCount; // the filter is built again when idFilterCount exceeds idFilterRebuildCount
+    private long idFilterSkips; // the number of lookups which were answered by the filter without a request to the index
+
     public ConcurrentUpdateSolrConnector(final SolrConnector connector, final int updateCapacity, final int idCacheCapacity, final int concurrency) {
+        this(connector, updateCapacity, idCacheCapacity, concurrency, false);
+    }
+
+    /**
+     * @param connector
+     * @param updateCapacity
+     * @param idCacheCapacity
+     * @param concurrency
+     * @param idFilter if true, a bloom filter of all document ids is kept. This must only be used if all documents
+     *   are written with this connector; a remote index which is also written by others would cause false negatives.
+     */
+    public ConcurrentUpdateSolrConnector(final SolrConnector connector, final int updateCapacity, final int idCacheCapacity, final int concurrency, final boolean idFilter) {
         this.connector = connector;
         this.updateCapacity = updateCapacity;
         this.metadataCache = new ConcurrentARC<>(idCacheCapacity, concurrency);
@@ -85,7 +116,133 @@ public class ConcurrentUpdateSolrConnector implements SolrConnector {
         this.docBuffer = new LinkedHashMap<>();
         this.processHandler = null;
         this.commitProcessRunning = true;
+        this.idFilter = null;
+        this.idFilterBuild = null;
         ensureAliveProcessHandler();
+        if (idFilter) buildIdFilter(null);
+    }
+
+    /**
+     * build a new id filter from the ids in the index. Until the filter is complete, the previous filter
+     * is used for lookups; ids which are added during the build are written to both filters.
+     * The new filter is installed before the buffered documents are written and committed, and the ids
+     * are queried only after that commit, so no id is missing in the new filter.
+     * If there is not enough memory for the new filter, the previous filter is kept; then its false positive
+     * rate grows but its size does not. A first filter is then not built at all.
+     * @param key the id of the document which caused the build, or null
+     */
+    private void buildIdFilter(final byte[] key) {
+        final long capacity = Math.max(100000L, 2 * this.connector.getSize());
+        synchronized (this.idFilterLock) {
+            if (this.idFilterBuild != null) {
+                // a build is running
+                if (key != null) this.idFilterBuild.put(key);
+                return;
+            }
+            if (!MemoryControl.request(BloomFilter.mem(capacity, idFilterFpp), true)) {
+                // try again when the index has grown again as much
+                this.idFilterRebuildCount = 2 * Math.max(this.idFilterRebuildCount, this.idFilterCount);
+                ConcurrentLog.warn("ConcurrentUpdateSolrConnector", "id filter for " + (capacity / 2) + " documents not built: not enough memory");
+                return;
+            }
+            this.idFilterCapacity = capacity;
+            this.idFilterRebuildCount = capacity;
+            this.idFilterBuild = new BloomFilter(this.idFilterCapacity, idFilterFpp);
+            if (key != null) this.idFilterBuild.put(key);
+        }
+        final Thread builder = new Thread() {
+            @Override
+            public void run() {
+                final long start = System.currentTimeMillis();
+                long count = 0, size = Long.MAX_VALUE;
+                try {
+                    // the ids of buffered documents and of documents which are not yet visible must be found by the id query
+                    commitDocBuffer();
+                    ConcurrentUpdateSolrConnector.this.connector.commit(true);
+                    size = ConcurrentUpdateSolrConnector.this.connector.getSize();
+                    final BlockingQueue<String> ids = ConcurrentUpdateSolrConnector.this.connector.concurrentIDsByQuery(AbstractSolrConnector.CATCHALL_QUERY, null, 0, Integer.MAX_VALUE, Long.MAX_VALUE, 10000, 1);
+                    String id;
+                    while ((id = ids.take()) != AbstractSolrConnector.POISON_ID) {
+                        if (!ConcurrentUpdateSolrConnector.this.commitProcessRunning) return;
+                        final byte[] k = ASCII.getBytes(id);
+                        synchronized (ConcurrentUpdateSolrConnector.this.idFilterLock) {
+                            ConcurrentUpdateSolrConnector.this.idFilterBuild.put(k);
+                        }
+                        count++;
+                    }
+                } catch (final Throwable e) {
+                    ConcurrentLog.logException(e);
+                    count = -1;
+                } finally {
+                    synchronized (ConcurrentUpdateSolrConnector.this.idFilterLock) {
+                        // a failed id query may end early; an incomplete filter would hide documents, so it is not used
+                        if (count >= size && ConcurrentUpdateSolrConnector.this.commitProcessRunning) {
+                            ConcurrentUpdateSolrConnector.this.idFilter = ConcurrentUpdateSolrConnector.this.idFilterBuild;
+                            ConcurrentUpdateSolrConnector.this.idFilterCount = count;
+                        }
+                        ConcurrentUpdateSolrConnector.this.idFilterBuild = null;
+                    }
+                }
+                if (count >= size) {
+                    ConcurrentLog.info("ConcurrentUpdateSolrConnector", "built id filter for " + count + " documents in " + (System.currentTimeMillis() - start) + " ms, " + (ConcurrentUpdateSolrConnector.this.idFilter == null ? 0 : ConcurrentUpdateSolrConnector.this.idFilter.mem() / 1024) + " KB");
+                } else {
+                    ConcurrentLog.warn("ConcurrentUpdateSolrConnector", "id filter not used: got " + count + " of " + size + " ids from the index");
+                }
+            }
+        };
+        builder.setName(this.getClass().getName() + "_IdFilter");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /**
+     * @return true if the id filter is used for lookups
+     */
+    boolean hasIdFilter() {
+        synchronized (this.idFilterLock) {
+            return this.idFilter != null;
+        }
+    }
+
+    /**
+     * @return the number of lookups which were answered by the id filter without a request to the index
+     */
+    long idFilterSkipCount() {
+        synchronized (this.idFilterLock) {
+            return this.idFilterSkips;
+        }
+    }
+
+    /**
+     * record the id of an added document in the id filter
+     */
+    private void filterAdd(final String id) {
+        if (id == null) return;
+        final byte[] key = ASCII.getBytes(id);
+        boolean rebuild = false;
+        synchronized (this.idFilterLock) {
+            if (this.idFilterBuild != null) this.idFilterBuild.put(key);
+            if (this.idFilter != null) {
+                this.idFilter.put(key);
+                // with more keys than planned the false positive rate grows, so the filter is built again with a larger size
+                rebuild = ++this.idFilterCount > this.idFilterRebuildCount && this.idFilterBuild == null;
+            }
+        }
+        if (rebuild) buildIdFilter(key);
+    }
+
+    /**
+     * test the id filter
+     * @param id
+     * @return false if the id is certainly not in the index, true if it may be in the index or there is no filter
+     */
+    private boolean filterMightContain(final String id) {
+        final byte[] key = ASCII.getBytes(id);
+        synchronized (this.idFilterLock) {
+            if (this.idFilter == null || this.idFilter.mightContain(key)) return true;
+            this.idFilterSkips++;
+            return false;
+        }
     }
 
     @Override
@@ -198,6 +355,12 @@ public class ConcurrentUpdateSolrConnector implements SolrConnector {
         this.docBuffer.clear();
         this.connector.clear();
         this.metadataCache.clear();
+        synchronized (this.idFilterLock) {
+            if (this.idFilter != null) {
+                this.idFilter = new BloomFilter(this.idFilterCapacity, idFilterFpp);
+                this.idFilterCount = 0;
+            }
+        }
         //this.missCache.clear();
     }
 
@@ -251,15 +414,42 @@ public class ConcurrentUpdateSolrConnector implements SolrConnector {
             //Thread.dumpStack();
             return AbstractSolrConnector.getLoadTimeURL(doc);
         }
+        if (!filterMightContain(id)) return null;
         md = this.connector.getLoadTimeURL(id);
         if (md == null) {/*this.missCache.add(id);*/ return null;}
         updateCache(id, md);
         return md;
     }
     
+    @Override
+    public Map<String, LoadTimeURL> getLoadTimeURLs(final Collection<String> ids) throws IOException {
+        final Map<String, LoadTimeURL> result = new HashMap<String, LoadTimeURL>();
+        final List<String> lookup = new ArrayList<String>(ids.size());
+        for (final String id: ids) {
+            LoadTimeURL md = this.metadataCache.get(id);
+            if (md == null) {
+                final SolrInputDocument doc = this.docBuffer.get(id);
+                if (doc != null) md = AbstractSolrConnector.getLoadTimeURL(doc);
+            }
+            if (md != null) {
+                result.put(id, md);
+            } else if (filterMightContain(id)) {
+                lookup.add(id);
+            }
+        }
+        if (lookup.size() == 0) return result;
+        final Map<String, LoadTimeURL> found = this.connector.getLoadTimeURLs(lookup);
+        for (final Map.Entry<String, LoadTimeURL> entry: found.entrySet()) {
+            updateCache(entry.getKey(), entry.getValue());
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
     @Override
     public void add(SolrInputDocument solrdoc) throws IOException, SolrException {
         String id = (String) solrdoc.getFieldValue(CollectionSchema.id.getSolrFieldName());
+        filterAdd(id);
         updateCache(id, AbstractSolrConnector.getLoadTimeURL(solrdoc));
         ensureAliveProcessHandler();
         if (this.processHandler.isAlive()) {
@@ -278,6 +468,7 @@ public class ConcurrentUpdateSolrConnector implements SolrConnector {
         synchronized (this.docBuffer) {
             for (SolrInputDocument solrdoc: solrdocs) {
                 String id = (String) solrdoc.getFieldValue(CollectionSchema.id.getSolrFieldName());
+                filterAdd(id);
                 updateCache(id, AbstractSolrConnector.getLoadTimeURL(solrdoc));
                 if (this.processHandler.isAlive()) {
                     this.docBuffer.put(id, solrdoc);
@@ -301,6 +492,7 @@ public class ConcurrentUpdateSolrConnector implements SolrConnector {
             //Thread.dumpStack();
             return ClientUtils.toSolrDocument(idoc);
         }
+        if (!filterMightContain(id)) return null;
         SolrDocument solrdoc = this.connector.getDocumentById(id, AbstractSolrConnector.ensureEssentialFieldsIncluded(fields));
         if (solrdoc == null) {
             //this.missCache.add(id);
@@ -388,12 +580,14 @@ public class ConcurrentUpdateSolrConnector implements SolrConnector {
     @Override
     public void update(final SolrInputDocument solrdoc) throws IOException, SolrException {
         commitDocBuffer();
+        filterAdd((String) solrdoc.getFieldValue(CollectionSchema.id.getSolrFieldName())); // an update may create the document
         this.connector.update(solrdoc);
     }
 
     @Override
     public void update(final Collection<SolrInputDocument> solrdoc) throws IOException, SolrException {
         commitDocBuffer();
+        for (SolrInputDocument doc: solrdoc) filterAdd((String) doc.getFieldValue(CollectionSchema.id.getSolrFieldName()));
         this.connector.update(solrdoc);        
     }
 
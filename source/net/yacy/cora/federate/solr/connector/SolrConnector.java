@@ -24,6 +24,7 @@ import java.io.IOException;
 import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 
 import net.yacy.cora.sorting.ReversibleScoreMap;
@@ -125,6 +126,14 @@ public interface SolrConnector extends Iterable<String> /* Iterable of document
      */
     public LoadTimeURL getLoadTimeURL(final String id) throws IOException;
 
+    /**
+     * get the load time metadata for a set of documents with a single request
+     * @param ids the url hashes and document ids
+     * @return a map from the ids of the documents which exist in solr to their load time metadata
+     * @throws IOException
+     */
+    public Map<String, LoadTimeURL> getLoadTimeURLs(final Collection<String> ids) throws IOException;
+
     /**
      * add a solr input document
      * @param solrdoc
@@ -42,6 +42,12 @@ public class InstanceMirror {
     private Map<String, EmbeddedSolrConnector> embeddedConnectorCache;
     private Map<String, RemoteSolrConnector> remoteConnectorCache;
 
+    /**
+     * if true, the mirror connector of the default core keeps a bloom filter of all document ids
+     * (see ConcurrentUpdateSolrConnector) when only the embedded index is used
+     */
+    public static boolean idFilterEnabled = true;
+
     public InstanceMirror() {
         this.embeddedSolrInstance = null;
         this.remoteSolrInstance = null;
@@ -167,7 +173,9 @@ public class InstanceMirror {
         EmbeddedSolrConnector esc = getEmbeddedConnector(corename);
         RemoteSolrConnector rsc = getRemoteConnector(corename);
         int cacheSize = (int) (MemoryControl.available() / 30000); // will return about 10000 for standard ram size
-        msc = new ConcurrentUpdateSolrConnector(new MirrorSolrConnector(esc, rsc), RemoteInstance.queueSizeByMemory(), cacheSize, Runtime.getRuntime().availableProcessors());
+        // the id filter is only possible if no other process writes to the index, therefore not with a remote index
+        boolean idFilter = idFilterEnabled && rsc == null && esc != null && corename.equals(this.getDefaultCoreName());
+        msc = new ConcurrentUpdateSolrConnector(new MirrorSolrConnector(esc, rsc), RemoteInstance.queueSizeByMemory(), cacheSize, Runtime.getRuntime().availableProcessors(), idFilter);
         //msc = new MirrorSolrConnector(esc, rsc);
         this.mirrorConnectorCache.put(corename, msc);
         return msc;
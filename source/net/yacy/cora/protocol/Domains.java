@@ -48,8 +48,13 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -76,7 +81,6 @@ public class Domains {
     private static Class<?> InetAddressLocatorClass;
     private static Method InetAddressLocatorGetLocaleInetAddressMethod;
     private static final Set<String> ccSLD_TLD = new HashSet<String>();
-    private static final String PRESENT = "";
     private static final String LOCALHOST_IPv4_PATTERN = "(127\\..*)";
     private static final String LOCALHOST_IPv6_PATTERN = "((\\[?fe80\\:.*)|(\\[?0\\:0\\:0\\:0\\:0\\:0\\:0\\:1.*)|(\\[?\\:\\:1))(/.*|%.*|\\z)";
     private static final String INTRANET_IPv4_PATTERN = "(10\\..*)|(172\\.(1[6-9]|2[0-9]|3[0-1])\\..*)|(169\\.254\\..*)|(192\\.168\\..*)";
@@ -89,13 +93,65 @@ public class Domains {
     private static final int CONCURRENCY_LEVEL = Runtime.getRuntime().availableProcessors() * 2;
 
     // a dns cache
-    private static final ARC<String, InetAddress> NAME_CACHE_HIT = new ConcurrentARC<>(MAX_NAME_CACHE_HIT_SIZE, CONCURRENCY_LEVEL);
-    private static final ARC<String, String> NAME_CACHE_MISS = new ConcurrentARC<>(MAX_NAME_CACHE_MISS_SIZE, CONCURRENCY_LEVEL);
+    private static final ARC<String, CachedAddress> NAME_CACHE_HIT = new ConcurrentARC<>(MAX_NAME_CACHE_HIT_SIZE, CONCURRENCY_LEVEL);
+    private static final ARC<String, Long> NAME_CACHE_MISS = new ConcurrentARC<>(MAX_NAME_CACHE_MISS_SIZE, CONCURRENCY_LEVEL); // host -> expiry time of the miss
     private static final ConcurrentHashMap<String, Object> LOOKUP_SYNC = new ConcurrentHashMap<>(100, 0.75f, Runtime.getRuntime().availableProcessors() * 2);
     private static       List<Pattern> nameCacheNoCachingPatterns = Collections.synchronizedList(new LinkedList<Pattern>());
+    private static       long nameCacheHitTTL = 60L * 60L * 1000L; // time in milliseconds until a resolved address is looked up again
+    private static       long nameCacheMissTTL = 10L * 60L * 1000L; // time in milliseconds until a failed lookup is done again
     public static long cacheHit_Hit = 0, cacheHit_Miss = 0, cacheHit_Insert = 0; // for statistics only; do not write
     public static long cacheMiss_Hit = 0, cacheMiss_Miss = 0, cacheMiss_Insert = 0; // for statistics only; do not write
 
+    // the dns resolver: a bounded pool for the time-limited lookups of callers which wait for the result
+    private static final int DEFAULT_RESOLVER_THREADS = 64;
+    private static final int MAX_RESOLVER_QUEUE = 1000;
+    private static final ThreadPoolExecutor RESOLVER = newResolverPool("Domains.resolver-", DEFAULT_RESOLVER_THREADS, MAX_RESOLVER_QUEUE);
+
+    // the prefetcher: a small separate pool for background lookups, so they never delay the lookups of the RESOLVER
+    private static final int PREFETCH_THREADS = 8;
+    private static final int MAX_PREFETCH_QUEUE = 100;
+    private static final ThreadPoolExecutor PREFETCHER = newResolverPool("Domains.prefetch-", PREFETCH_THREADS, MAX_PREFETCH_QUEUE);
+
+    private static ThreadPoolExecutor newResolverPool(final String threadName, final int threads, final int queueSize) {
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                threads, threads, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueSize),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger(0);
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        final Thread t = new Thread(r, threadName + this.count.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * a resolved address together with the time when it must be looked up again
+     */
+    private static final class CachedAddress {
+        private final InetAddress ip;
+        private final long expires;
+        private CachedAddress(final InetAddress ip, final long expires) {
+            this.ip = ip;
+            this.expires = expires;
+        }
+        // equality of the address only, so the reverse lookup NAME_CACHE_HIT.getKeys() works
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof CachedAddress && this.ip.equals(((CachedAddress) o).ip);
+        }
+        @Override
+        public int hashCode() {
+            return this.ip.hashCode();
+        }
+    }
+    private static final AtomicLong lookupCount = new AtomicLong(0), lookupTime = new AtomicLong(0), lookupTimeouts = new AtomicLong(0); // for statistics only
+    private static final AtomicLong prefetchCount = new AtomicLong(0), prefetchRejected = new AtomicLong(0); // for statistics only
+
     private static Set<InetAddress> myHostAddresses = new HashSet<InetAddress>();
     private static Set<InetAddress> localHostAddresses = new HashSet<InetAddress>(); // subset of myHostAddresses
     private static Set<InetAddress> publicIPv4HostAddresses = new HashSet<InetAddress>(); // subset of myHostAddresses
@@ -748,14 +804,14 @@ public class Domains {
         host = host.toLowerCase().trim();
 
         // trying to resolve host by doing a name cache lookup
-        InetAddress ip = NAME_CACHE_HIT.get(host);
+        InetAddress ip = cachedHit(host);
         if (ip != null) {
             cacheHit_Hit++;
             return ip;
         }
         cacheHit_Miss++;
 
-        if (NAME_CACHE_MISS.containsKey(host)) {
+        if (cachedMiss(host)) {
             cacheMiss_Hit++;
             return null;
         }
@@ -763,6 +819,99 @@ public class Domains {
         throw new UnknownHostException("host not in cache");
     }
 
+    /**
+     * get a resolved address from the name cache
+     * @param host the lower-cased host name
+     * @return the address or null if the host is not cached or the entry is expired
+     */
+    private static InetAddress cachedHit(final String host) {
+        final CachedAddress entry = NAME_CACHE_HIT.get(host);
+        if (entry == null) return null;
+        if (entry.expires < System.currentTimeMillis()) {
+            NAME_CACHE_HIT.remove(host);
+            return null;
+        }
+        return entry.ip;
+    }
+
+    /**
+     * check if the host is in the cache of failed lookups
+     * @param host the lower-cased host name
+     * @return true if a lookup of the host failed and the entry is not expired
+     */
+    private static boolean cachedMiss(final String host) {
+        final Long expires = NAME_CACHE_MISS.get(host);
+        if (expires == null) return false;
+        if (expires.longValue() < System.currentTimeMillis()) {
+            NAME_CACHE_MISS.remove(host);
+            return false;
+        }
+        return true;
+    }
+
+    private static void insertHit(final String host, final InetAddress ip) {
+        NAME_CACHE_HIT.insert(host, new CachedAddress(ip, System.currentTimeMillis() + nameCacheHitTTL));
+        cacheHit_Insert++;
+    }
+
+    private static void insertMiss(final String host) {
+        NAME_CACHE_MISS.insert(host, System.currentTimeMillis() + nameCacheMissTTL);
+        cacheMiss_Insert++;
+    }
+
+    /**
+     * set the time-to-live of the dns cache entries.
+     * The JVM does not tell us the ttl of a dns record; therefore this is a fixed time for all entries.
+     * @param hitTTL time in milliseconds until a resolved address is looked up again
+     * @param missTTL time in milliseconds until a failed lookup is done again
+     */
+    public static void setCacheTTL(final long hitTTL, final long missTTL) {
+        if (hitTTL > 0) nameCacheHitTTL = hitTTL;
+        if (missTTL > 0) nameCacheMissTTL = missTTL;
+    }
+
+    /**
+     * set the number of threads which may do dns lookups concurrently
+     * @param threads the maximum number of concurrent lookups
+     */
+    public static void setResolverThreads(final int threads) {
+        if (threads < 1) return;
+        if (threads > RESOLVER.getMaximumPoolSize()) {
+            RESOLVER.setMaximumPoolSize(threads);
+            RESOLVER.setCorePoolSize(threads);
+        } else {
+            RESOLVER.setCorePoolSize(threads);
+            RESOLVER.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * resolve a host in the background, so a later dnsResolve() finds it in the cache.
+     * Nothing is done if the host is already cached or is resolved right now.
+     * Prefetches run in their own small pool and are dropped if that pool is busy,
+     * so they never occupy the resolver threads of lookups which wait for their result.
+     * @param host0 the host name
+     */
+    public static void dnsPrefetch(final String host0) {
+        if (host0 == null || host0.isEmpty() || host0.endsWith(".yacyh")) return;
+        final String host = host0.toLowerCase().trim();
+        if (InetAddresses.isInetAddress(host)) return;
+        if (NAME_CACHE_HIT.containsKey(host) && cachedHit(host) != null) return;
+        if (NAME_CACHE_MISS.containsKey(host) && cachedMiss(host)) return;
+        if (LOOKUP_SYNC.containsKey(host)) return;
+        try {
+            PREFETCHER.execute(new Runnable() {
+                @Override
+                public void run() {
+                    dnsResolve(host, false);
+                }
+            });
+            prefetchCount.incrementAndGet();
+        } catch (final RejectedExecutionException e) {
+            prefetchRejected.incrementAndGet();
+        }
+    }
+
     public static void setNoCachingPatterns(final String patternList) throws PatternSyntaxException {
         nameCacheNoCachingPatterns = makePatterns(patternList);
     }
@@ -784,11 +933,10 @@ public class Domains {
     }
 
     public static String getHostName(final InetAddress i) {
-        final Collection<String> hosts = NAME_CACHE_HIT.getKeys(i);
+        final Collection<String> hosts = NAME_CACHE_HIT.getKeys(new CachedAddress(i, 0));
         if (!hosts.isEmpty()) return hosts.iterator().next();
         final String host = i.getHostName();
-        NAME_CACHE_HIT.insertIfAbsent(host, i);
-        cacheHit_Insert++;
+        insertHit(host, i);
         return host;
     }
 
@@ -799,11 +947,10 @@ public class Domains {
      * @param host the known host name
      */
     public static void setHostName(final InetAddress i, final String host) {
-        NAME_CACHE_HIT.insertIfAbsent(host, i);
-        cacheHit_Insert++;
+        insertHit(host, i);
     }
 
-    final private static TimeLimiter timeLimiter = new SimpleTimeLimiter(Executors.newCachedThreadPool());
+    final private static TimeLimiter timeLimiter = new SimpleTimeLimiter(RESOLVER);
 
     /**
      * strip off any parts of an url, address string (containing host/ip:port) or raw IPs/Hosts,
@@ -882,6 +1029,17 @@ public class Domains {
      * @return the hosts InetAddress or null if the address cannot be resolved
      */
     public static InetAddress dnsResolve(final String host0) {
+        return dnsResolve(host0, true);
+    }
+
+    /**
+     * resolve a host address using a local DNS cache and a DNS lookup if necessary
+     * @param host0 the host name
+     * @param limited if true the lookup is done in the resolver pool and aborted after a time-out;
+     *        if false it is done in the current thread, which must be a thread of the resolver pool
+     * @return the hosts InetAddress or null if the address cannot be resolved
+     */
+    private static InetAddress dnsResolve(final String host0, final boolean limited) {
         // consider to call stripToHostName() before calling this
         if (host0 == null || host0.isEmpty()) return null;
         final String host = host0.toLowerCase().trim();
@@ -897,14 +1055,14 @@ public class Domains {
         }
 
         // try to resolve host by doing a name cache lookup
-        InetAddress ip = NAME_CACHE_HIT.get(host);
+        InetAddress ip = cachedHit(host);
         if (ip != null) {
             //System.out.println("DNSLOOKUP-CACHE-HIT(CONC) " + host);
             cacheHit_Hit++;
             return ip;
         }
         cacheHit_Miss++;
-        if (NAME_CACHE_MISS.containsKey(host)) {
+        if (cachedMiss(host)) {
             //System.out.println("DNSLOOKUP-CACHE-MISS(CONC) " + host);
             cacheMiss_Hit++;
             return null;
@@ -918,7 +1076,7 @@ public class Domains {
         synchronized (sync_obj) {
             // now look again if the host is in the cache where it may be meanwhile because of the synchronization
 
-            ip = NAME_CACHE_HIT.get(host);
+            ip = cachedHit(host);
             if (ip != null) {
                 //System.out.println("DNSLOOKUP-CACHE-HIT(SYNC) " + host);
                 LOOKUP_SYNC.remove(host);
@@ -926,7 +1084,7 @@ public class Domains {
                 return ip;
             }
             cacheHit_Miss++;
-            if (NAME_CACHE_MISS.containsKey(host)) {
+            if (cachedMiss(host)) {
                 //System.out.println("DNSLOOKUP-CACHE-MISS(SYNC) " + host);
                 LOOKUP_SYNC.remove(host);
                 cacheMiss_Hit++;
@@ -936,8 +1094,8 @@ public class Domains {
 
             // do the dns lookup on the dns server
             //if (!matchesList(host, nameCacheNoCachingPatterns)) System.out.println("DNSLOOKUP " + host);
+            final long t = System.currentTimeMillis();
             try {
-                //final long t = System.currentTimeMillis();
                 String oldName = Thread.currentThread().getName();
                 Thread.currentThread().setName("Domains: DNS resolve of '" + host + "'"); // thread dump show which host is resolved
                 if (InetAddresses.isInetAddress(host)) {
@@ -949,40 +1107,49 @@ public class Domains {
                     }
                 }
                 Thread.currentThread().setName(oldName);
-                if (ip == null) try {
-                    ip = timeLimiter.callWithTimeout(new Callable<InetAddress>() {
-                        @Override
-                        public InetAddress call() throws Exception {
-                            return InetAddress.getByName(host);
+                if (ip == null) {
+                    lookupCount.incrementAndGet();
+                    if (limited) {
+                        try {
+                            ip = timeLimiter.callWithTimeout(new Callable<InetAddress>() {
+                                @Override
+                                public InetAddress call() throws Exception {
+                                    return InetAddress.getByName(host);
+                                }
+                            }, 3000L, TimeUnit.MILLISECONDS, false);
+                            //ip = TimeoutRequest.getByName(host, 1000); // this makes the DNS request to backbone
+                        } catch (final UncheckedTimeoutException | RejectedExecutionException e) {
+                            // in case of a timeout - maybe cause of massive requests - or a full resolver queue do not fill NAME_CACHE_MISS
+                            lookupTimeouts.incrementAndGet();
+                            lookupTime.addAndGet(System.currentTimeMillis() - t);
+                            LOOKUP_SYNC.remove(host);
+                            return null;
                         }
-                    }, 3000L, TimeUnit.MILLISECONDS, false);
-                    //ip = TimeoutRequest.getByName(host, 1000); // this makes the DNS request to backbone
-                } catch (final UncheckedTimeoutException e) {
-                	// in case of a timeout - maybe cause of massive requests - do not fill NAME_CACHE_MISS
-                	LOOKUP_SYNC.remove(host);
-                    return null;
+                    } else {
+                        // we are already in a thread of the prefetch pool
+                        ip = InetAddress.getByName(host);
+                    }
                 }
                 //.out.println("DNSLOOKUP-*LOOKUP* " + host + ", time = " + (System.currentTimeMillis() - t) + "ms");
             } catch (final Throwable e) {
                 // add new entries
-                NAME_CACHE_MISS.insertIfAbsent(host, PRESENT);
-                cacheMiss_Insert++;
+                lookupTime.addAndGet(System.currentTimeMillis() - t);
+                insertMiss(host);
                 LOOKUP_SYNC.remove(host);
                 return null;
             }
+            lookupTime.addAndGet(System.currentTimeMillis() - t);
 
             if (ip == null) {
                 // add new entries
-                NAME_CACHE_MISS.insertIfAbsent(host, PRESENT);
-                cacheMiss_Insert++;
+                insertMiss(host);
                 LOOKUP_SYNC.remove(host);
                 return null;
             }
 
             if (!ip.isLoopbackAddress() && !matchesList(host, nameCacheNoCachingPatterns)) {
                 // add new ip cache entries
-                NAME_CACHE_HIT.insertIfAbsent(host, ip);
-                cacheHit_Insert++;
+                insertHit(host, ip);
 
                 // add also the isLocal host name caches
                 final boolean localp = ip.isAnyLocalAddress() || ip.isLinkLocalAddress() || ip.isSiteLocalAddress();
@@ -1024,6 +1191,49 @@ public class Domains {
         return nameCacheNoCachingPatterns.size();
     }
 
+    /**
+     * @return the number of dns lookups which went to the network
+     */
+    public static long dnsLookupCount() {
+        return lookupCount.get();
+    }
+
+    /**
+     * @return the average time of a dns lookup in milliseconds
+     */
+    public static long dnsLookupAverageTime() {
+        final long count = lookupCount.get();
+        return count == 0 ? 0 : lookupTime.get() / count;
+    }
+
+    /**
+     * @return the number of dns lookups which were aborted because of a time-out or a full resolver queue
+     */
+    public static long dnsLookupTimeouts() {
+        return lookupTimeouts.get();
+    }
+
+    /**
+     * @return the number of lookups started by dnsPrefetch()
+     */
+    public static long dnsPrefetchCount() {
+        return prefetchCount.get();
+    }
+
+    /**
+     * @return the number of prefetches dropped because the prefetch queue was full
+     */
+    public static long dnsPrefetchRejected() {
+        return prefetchRejected.get();
+    }
+
+    /**
+     * @return the number of lookups waiting for a resolver thread
+     */
+    public static int dnsResolverQueueSize() {
+        return RESOLVER.getQueue().size();
+    }
+
     /**
      * myPublicLocalIP() returns the IP of this host which is reachable in the public network under this address
      * This is deprecated since it should be possible that the host is reachable with more than one IP
@@ -27,6 +27,7 @@ package net.yacy.cora.protocol.http;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
@@ -108,6 +109,8 @@ public class HTTPClient {
     
     private final static int default_timeout = 6000;
 	private final static int maxcon = 200;
+	private static volatile long keepAliveMax = 25000;
+	private static PoolingHttpClientConnectionManager connectionManager = null;
 	private static IdleConnectionMonitorThread connectionMonitor = null;
 	private final static RequestConfig dfltReqConf = initRequestConfig();
 	private final static HttpClientBuilder clientBuilder = initClientBuilder();
@@ -117,6 +120,7 @@ public class HTTPClient {
 	private HttpUriRequest currentRequest = null;
 	private long upbytes = 0L;
 	private String host = null;
+	private boolean keepAlive = false;
 	private final long timeout;
 	private static ExecutorService executor = Executors.newCachedThreadPool();
 
@@ -217,6 +221,7 @@ public class HTTPClient {
                 .setTcpNoDelay(false)
                 .build();
         pooling.setDefaultSocketConfig(socketConfig);
+        connectionManager = pooling;
 
         if (connectionMonitor == null) {
             connectionMonitor = new IdleConnectionMonitorThread(pooling);
@@ -226,6 +231,32 @@ public class HTTPClient {
         return pooling;
     }
 
+    /**
+     * Set the number of pooled connections which may be open to one host:port at the same time.
+     * This limits the parallel loads of the crawler from one host; it should not be lower than
+     * the number of loader threads the HostBalancer may hand out for a host at once.
+     *
+     * @param max connections per host:port, values below 1 are ignored
+     */
+    public static void setMaxConnectionsPerHost(final int max) {
+        if (max < 1 || connectionManager == null) return;
+        connectionManager.setDefaultMaxPerRoute(max);
+        // keep the increased limit for localhost
+        connectionManager.setMaxPerRoute(new HttpRoute(new HttpHost(Domains.LOCALHOST)), maxcon);
+    }
+
+    /**
+     * Set the maximum time a kept-alive connection is held in the pool.
+     * To be reused by the next load from the same host this must be longer than the
+     * crawl delay of that host. A Keep-Alive timeout sent by the server is never exceeded.
+     *
+     * @param timeout in milliseconds, values below 5000 are ignored
+     */
+    public static void setKeepAliveTimeout(final long timeout) {
+        if (timeout < 5000) return;
+        keepAliveMax = timeout;
+    }
+
     /**
      * This method should be called just before shutdown
      * to stop the ConnectionManager and idledConnectionEvictor
@@ -260,6 +291,18 @@ public class HTTPClient {
     	reqConfBuilder.setConnectionRequestTimeout(timeout);
     }
 
+    /**
+     * This method sets if the connection should be kept alive after the request.
+     * Then the connection goes back to the pool and is reused by the next request
+     * to the same host:port, which saves the TCP and TLS handshakes. The default is to close
+     * the connection (prevents the CLOSE_WAIT state of servers which we call only once).
+     *
+     * @param keepAlive
+     */
+    public void setKeepAlive(final boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
     /**
      * This method sets the UserAgent to be used for the request
      *
@@ -695,7 +738,7 @@ public class HTTPClient {
 	                throw e.getCause();
 	            } catch (Throwable e) {}
 	            try {t.cancel(true);} catch (Throwable e) {}
-	            if (this.httpResponse == null) throw new IOException("timout to client after " + this.timeout + "ms" + " for url " + httpUriRequest.getURI().toString());
+	            if (this.httpResponse == null) throw new InterruptedIOException("timout to client after " + this.timeout + "ms" + " for url " + httpUriRequest.getURI().toString());
 	        } else {
 	            final CloseableHttpClient client = clientBuilder.build();
 	            this.httpResponse = client.execute(httpUriRequest, context);
@@ -708,7 +751,7 @@ public class HTTPClient {
             //e.printStackTrace();
             throw new IOException("Client can't execute: "
             		+ (e.getCause() == null ? e.getMessage() : e.getCause().getMessage())
-            		+ " duration=" + Long.toString(System.currentTimeMillis() - time) + " for url " + httpUriRequest.getURI().toString());
+            		+ " duration=" + Long.toString(System.currentTimeMillis() - time) + " for url " + httpUriRequest.getURI().toString(), e);
         }
     }
 
@@ -776,7 +819,7 @@ public class HTTPClient {
             }
     	}
     	if (this.host != null) httpUriRequest.setHeader(HTTP.TARGET_HOST, this.host);
-        httpUriRequest.setHeader("Connection", "close"); // don't keep alive, prevent CLOSE_WAIT state
+        if (!this.keepAlive) httpUriRequest.setHeader("Connection", "close"); // don't keep alive, prevent CLOSE_WAIT state
     }
 
     private void storeConnectionInfo(final HttpUriRequest httpUriRequest) {
@@ -813,6 +856,9 @@ public class HTTPClient {
     	try {
             sslContext = SSLContext.getInstance("TLS");
             sslContext.init(null, new TrustManager[] { trustManager }, null);
+            // cache the TLS sessions per host:port, so new connections to a host resume the session with an abbreviated handshake
+            sslContext.getClientSessionContext().setSessionCacheSize(maxcon * 10);
+            sslContext.getClientSessionContext().setSessionTimeout(3600);
         } catch (final NoSuchAlgorithmException e) {
             // should not happen
             // e.printStackTrace();
@@ -830,7 +876,7 @@ public class HTTPClient {
     /**
      * If the Keep-Alive header is not present in the response,
      * HttpClient assumes the connection can be kept alive indefinitely.
-     * Here we limit this to 5 seconds if unset and to a max of 25 seconds
+     * Here we limit this to 5 seconds if unset and to a max of keepAliveMax (default 25 seconds)
      *
      * @param defaultHttpClient
      */
@@ -839,7 +885,7 @@ public class HTTPClient {
 			@Override
 			public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
 				long keepAlive = super.getKeepAliveDuration(response, context);
-				return Math.min(Math.max(keepAlive, 5000), 25000);
+				return Math.min(Math.max(keepAlive, 5000), keepAliveMax);
 			}
 		};
 	}
@@ -921,8 +967,8 @@ public class HTTPClient {
 	                    // Close expired connections
 	                    connMgr.closeExpiredConnections();
 	                    // Optionally, close connections
-	                    // that have been idle longer than 30 sec
-	                    connMgr.closeIdleConnections(30, TimeUnit.SECONDS);
+	                    // that have been idle longer than the keep-alive limit plus 5 sec
+	                    connMgr.closeIdleConnections(keepAliveMax + 5000, TimeUnit.MILLISECONDS);
 	                }
 	            }
                 connMgr.shutdown();
@@ -193,6 +193,15 @@ public class WeakPriorityBlockingQueue<E> implements Serializable {
         return this.queue.first();
     }
 
+    /**
+     * return the element which is removed if another element is put on the stack, but do not remove it
+     * @return null if the stack is not full, the tail of the queue otherwise
+     */
+    public synchronized Element<E> peekLastIfFull() {
+        if (this.maxsize < 0 || this.queue.size() < this.maxsize) return null;
+        return this.queue.last();
+    }
+
     /**
      * all objects that have been returned by poll or take are stored in a back-up list
      * where they can be retrieved afterward. The elements from that list are stored in
@@ -27,10 +27,17 @@ package net.yacy.crawler;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -53,6 +60,7 @@ import net.yacy.crawler.data.NoticedURL;
 import net.yacy.crawler.retrieval.Request;
 import net.yacy.crawler.robots.RobotsTxt;
 import net.yacy.document.TextParser;
+import net.yacy.kelondro.workflow.WorkflowJob;
 import net.yacy.kelondro.workflow.WorkflowProcessor;
 import net.yacy.peers.SeedDB;
 import net.yacy.repository.Blacklist.BlacklistType;
@@ -66,9 +74,15 @@ public final class CrawlStacker {
     public static String ERROR_MATCH_WITH_MUST_NOT_MATCH_FILTER = "url matches must-not-match filter ";
     
     private final static ConcurrentLog log = new ConcurrentLog("STACKCRAWL");
+
+    /**
+     * if true, all links of a parsed document are checked together with one index lookup (see {@link #enqueueBatch(List)})
+     */
+    public static boolean batchStacking = true;
     
     private final RobotsTxt robots;
     private final WorkflowProcessor<Request>  requestQueue;
+    private final WorkflowProcessor<Batch>    batchQueue;
     public  final CrawlQueues       nextQueue;
     private final CrawlSwitchboard  crawler;
     private final Segment           indexSegment;
@@ -96,29 +110,44 @@ public final class CrawlStacker {
         this.acceptGlobalURLs = acceptGlobalURLs;
         this.domainList = domainList;
         this.requestQueue = new WorkflowProcessor<Request>("CrawlStacker", "This process checks new urls before they are enqueued into the balancer (proper, double-check, correct domain, filter)", new String[]{"Balancer"}, this, "job", 10000, null, WorkflowProcessor.availableCPU);
+        this.batchQueue = new WorkflowProcessor<Batch>("CrawlStackerBatch", "This process checks the links of a document together before they are enqueued into the balancer", new String[]{"Balancer"}, this, "jobBatch", 1000, null, WorkflowProcessor.availableCPU);
         CrawlStacker.log.info("STACKCRAWL thread initialized.");
     }
 
+    /**
+     * a list of requests, usually all links of one document, which is checked with {@link CrawlStacker#stackCrawl(Collection)}
+     */
+    public static class Batch extends WorkflowJob {
+        private final List<Request> entries;
+        public Batch(final List<Request> entries) {
+            this.entries = entries;
+        }
+    }
+
     public int size() {
-        return this.requestQueue.getQueueSize();
+        return this.requestQueue.getQueueSize() + this.batchQueue.getQueueSize();
     }
     
     public boolean isEmpty() {
         if (!this.requestQueue.queueIsEmpty()) return false;
+        if (!this.batchQueue.queueIsEmpty()) return false;
         return true;
     }
 
     public void clear() {
         this.requestQueue.clear();
+        this.batchQueue.clear();
     }
 
     public void announceClose() {
         CrawlStacker.log.info("Flushing remaining " + size() + " crawl stacker job entries.");
+        this.batchQueue.shutdown();
         this.requestQueue.shutdown();
     }
 
     public synchronized void close() {
         CrawlStacker.log.info("Shutdown. waiting for remaining " + size() + " crawl stacker job entries. please wait.");
+        this.batchQueue.shutdown();
         this.requestQueue.shutdown();
 
         CrawlStacker.log.info("Shutdown. Closing stackCrawl queue.");
@@ -134,10 +163,7 @@ public final class CrawlStacker {
             final String rejectReason = stackCrawl(entry);
 
             // if the url was rejected we store it into the error URL db
-            if (rejectReason != null && !rejectReason.startsWith("double in")) {
-                final CrawlProfile profile = this.crawler.get(UTF8.getBytes(entry.profileHandle()));
-                this.nextQueue.errorURL.push(entry.url(), entry.depth(), profile, FailCategory.FINAL_LOAD_CONTEXT, rejectReason, -1);
-            }
+            if (rejectReason != null) reject(entry, this.crawler.get(UTF8.getBytes(entry.profileHandle())), rejectReason);
         } catch (final Exception e) {
             CrawlStacker.log.warn("Error while processing stackCrawl entry.\n" + "Entry: " + entry.toString() + "Error: " + e.toString(), e);
             return null;
@@ -145,12 +171,45 @@ public final class CrawlStacker {
         return null;
     }
 
+    public Batch jobBatch(final Batch batch) {
+        // this is the method that is called by the busy thread from outside
+        if (batch == null) return null;
+        
+        try {
+            stackCrawl(batch.entries);
+        } catch (final Exception e) {
+            CrawlStacker.log.warn("Error while processing stackCrawl batch of " + batch.entries.size() + " entries. Error: " + e.toString(), e);
+        }
+        return null;
+    }
+
+    private void reject(final Request entry, final CrawlProfile profile, final String rejectReason) {
+        // urls which are already known are not errors
+        if (rejectReason.startsWith("double in")) return;
+        this.nextQueue.errorURL.push(entry.url(), entry.depth(), profile, FailCategory.FINAL_LOAD_CONTEXT, rejectReason, -1);
+    }
+
     public void enqueueEntry(final Request entry) {
 
         // DEBUG
         if (CrawlStacker.log.isFinest()) CrawlStacker.log.finest("ENQUEUE " + entry.url() + ", referer=" + entry.referrerhash() + ", initiator=" + ((entry.initiator() == null) ? "" : ASCII.String(entry.initiator())) + ", name=" + entry.name() + ", appdate=" + entry.appdate() + ", depth=" + entry.depth());
         this.requestQueue.enQueue(entry);
     }
+
+    /**
+     * enqueue a list of requests which are checked together; this should be used for all links of a document.
+     * If batch stacking is switched off, the requests are enqueued one by one.
+     * @param entries
+     */
+    public void enqueueBatch(final List<Request> entries) {
+        if (entries.size() == 0) return;
+        if (!batchStacking || entries.size() == 1) {
+            for (final Request entry: entries) enqueueEntry(entry);
+            return;
+        }
+        if (CrawlStacker.log.isFinest()) CrawlStacker.log.finest("ENQUEUE BATCH of " + entries.size() + " urls, referer=" + entries.get(0).referrerhash());
+        this.batchQueue.enQueue(new Batch(entries));
+    }
     public void enqueueEntriesAsynchronous(
             final byte[] initiator,
             final String profileHandle,
@@ -316,6 +375,107 @@ public final class CrawlStacker {
         error = checkAcceptanceInitially(entry.url(), profile);
         if (error != null) return error;
 
+        return stackAccepted(entry, profile);
+    }
+
+    /**
+     * stacks a list of crawl items, i.e. all links of one document. The entries are de-duplicated, and the
+     * double-check against the index is done with a single lookup for all entries which passed the filters.
+     * The accepted entries are pushed ordered by host, so the entries of one host go to their host queue in sequence.
+     * Rejected entries are stored in the error URL db.
+     * @param entries
+     * @return the number of stacked entries
+     */
+    public int stackCrawl(final Collection<Request> entries) {
+        // remove double urls
+        final Map<String, Request> unique = new LinkedHashMap<String, Request>();
+        for (final Request entry: entries) {
+            final String urlhash = ASCII.String(entry.url().hash());
+            if (!unique.containsKey(urlhash)) unique.put(urlhash, entry);
+        }
+
+        // apply the filters which do not need the index
+        final Map<String, CrawlProfile> profiles = new HashMap<String, CrawlProfile>();
+        final Map<String, Request> candidates = new LinkedHashMap<String, Request>();
+        for (final Map.Entry<String, Request> u: unique.entrySet()) {
+            final Request entry = u.getValue();
+            CrawlProfile profile = profiles.get(entry.profileHandle());
+            if (profile == null) {
+                profile = this.crawler.get(UTF8.getBytes(entry.profileHandle()));
+                if (profile == null) {
+                    final String error = "LOST STACKER PROFILE HANDLE '" + entry.profileHandle() + "' for URL " + entry.url().toNormalform(true);
+                    CrawlStacker.log.info(error); // this is NOT an error but a normal effect when terminating a crawl queue
+                    reject(entry, null, error);
+                    continue;
+                }
+                profiles.put(entry.profileHandle(), profile);
+            }
+            String error = checkAcceptanceChangeable(entry.url(), profile, entry.depth());
+            if (error == null) {
+                final HarvestProcess dbocc = this.nextQueue.exists(entry.url().hash());
+                if (dbocc != null) error = "double in: " + dbocc.name();
+            }
+            if (error != null) {
+                reject(entry, profile, error);
+                continue;
+            }
+            candidates.put(u.getKey(), entry);
+        }
+        if (candidates.size() == 0) return 0;
+
+        // one double-check for all remaining urls
+        final Map<String, LoadTimeURL> oldEntries;
+        try {
+            // urls which are not in the index are answered by the id filter of the connector without a solr request
+            oldEntries = this.indexSegment.fulltext().getDefaultConnector().getLoadTimeURLs(candidates.keySet());
+        } catch (final IOException e) {
+            // if an exception here occurs then there is the danger that urls which had been in the crawler are overwritten a second time
+            // to prevent that, we reject urls in these events
+            ConcurrentLog.logException(e);
+            for (final Request entry: candidates.values()) {
+                reject(entry, profiles.get(entry.profileHandle()), "exception during double-test: " + e.getMessage());
+            }
+            return 0;
+        }
+
+        // push the accepted entries grouped by host
+        final List<Map.Entry<String, Request>> sorted = new ArrayList<Map.Entry<String, Request>>(candidates.entrySet());
+        Collections.sort(sorted, hostOrder);
+        int stacked = 0;
+        for (final Map.Entry<String, Request> c: sorted) {
+            final Request entry = c.getValue();
+            final CrawlProfile profile = profiles.get(entry.profileHandle());
+            // the domain counter is tested here because it changes with each pushed entry
+            String error = checkAcceptanceLoaded(entry.url(), profile, oldEntries.get(c.getKey()));
+            if (error == null) error = stackAccepted(entry, profile);
+            if (error != null) {
+                reject(entry, profile, error);
+                continue;
+            }
+            stacked++;
+        }
+        return stacked;
+    }
+
+    /**
+     * order of url hash keys by the host hash part of the url hash
+     */
+    private static final Comparator<Map.Entry<String, Request>> hostOrder = new Comparator<Map.Entry<String, Request>>() {
+        @Override
+        public int compare(final Map.Entry<String, Request> o1, final Map.Entry<String, Request> o2) {
+            return o1.getKey().substring(6).compareTo(o2.getKey().substring(6));
+        }
+    };
+
+    /**
+     * stacks a crawl item which passed all acceptance tests
+     * @param entry
+     * @param profile
+     * @return null if successful, a reason string if not successful
+     */
+    private String stackAccepted(final Request entry, final CrawlProfile profile) {
+        String error;
+
         // store information
         final boolean local = Base64Order.enhancedCoder.equal(entry.initiator(), UTF8.getBytes(this.peers.mySeed().hash));
         final boolean proxy = (entry.initiator() == null || entry.initiator().length == 0 || ASCII.String(entry.initiator()).equals("------------")) && profile.handle().equals(this.crawler.defaultProxyProfile.handle());
@@ -381,6 +541,7 @@ public final class CrawlStacker {
         String urlhash = ASCII.String(url.hash());
         LoadTimeURL oldEntry = null;
         try {
+            // urls which are not in the index are answered by the id filter of the connector without a solr request
             oldEntry = this.indexSegment.fulltext().getDefaultConnector().getLoadTimeURL(urlhash);
         } catch (IOException e) {
             // if an exception here occurs then there is the danger that urls which had been in the crawler are overwritten a second time
@@ -388,6 +549,17 @@ public final class CrawlStacker {
             ConcurrentLog.logException(e);
             return "exception during double-test: " + e.getMessage();
         }
+        return checkAcceptanceLoaded(url, profile, oldEntry);
+    }
+
+    /**
+     * Test the domain counter and the recrawl date of an url which is not in the crawl queues.
+     * @param url
+     * @param profile
+     * @param oldEntry the load time metadata of the url from the index or null if the url is not in the index
+     * @return null if the url is accepted, an error string in case if the url is not accepted with an error description
+     */
+    private String checkAcceptanceLoaded(final DigestURL url, final CrawlProfile profile, final LoadTimeURL oldEntry) {
 
         // deny urls that exceed allowed number of occurrences
         final int maxAllowedPagesPerDomain = profile.domMaxPages();
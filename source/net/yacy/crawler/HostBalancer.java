@@ -26,8 +26,8 @@ import java.lang.reflect.Array;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.ConcurrentModificationException;
-import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -38,6 +38,7 @@ import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.order.Base64Order;
 import net.yacy.cora.protocol.ClientIdentification;
+import net.yacy.cora.protocol.Domains;
 import net.yacy.cora.storage.HandleMap;
 import net.yacy.cora.storage.HandleSet;
 import net.yacy.cora.util.ConcurrentLog;
@@ -49,6 +50,7 @@ import net.yacy.crawler.robots.RobotsTxt;
 import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.index.RowHandleMap;
 import net.yacy.kelondro.index.RowHandleSet;
+import net.yacy.kelondro.table.StackFile;
 import net.yacy.kelondro.util.FileUtils;
 
 /**
@@ -64,11 +66,19 @@ public class HostBalancer implements Balancer {
 
     private final static ConcurrentLog log = new ConcurrentLog("HostBalancer");
     public final static HandleMap depthCache = new RowHandleMap(Word.commonHashLength, Word.commonHashOrder, 2, 8 * 1024 * 1024, "HostBalancer.DepthCache");
-    
+
+    /**
+     * if true, the queues of all hosts are stored in one shared stack file instead of one directory
+     * with files for each host and depth; this prevents that wide crawls need a large number of file handles
+     */
+    public static boolean sharedStackFile = false;
+    public  final static String stackFileName = "hostqueues.stacks";
+
     private final File hostsPath;
+    private final StackFile stackFile;
     private final boolean exceed134217727;
     private final Map<String, HostQueue> queues;
-    private final Set<String> roundRobinHostHashes;
+    private final HostScheduler scheduler;
     private final int onDemandLimit;
 
     public HostBalancer(
@@ -81,8 +91,15 @@ public class HostBalancer implements Balancer {
         
         // create a stack for newly entered entries
         if (!(hostsPath.exists())) hostsPath.mkdirs(); // make the path
+        StackFile sf = null;
+        if (sharedStackFile) try {
+            sf = new StackFile(new File(hostsPath, stackFileName), Request.rowdef);
+        } catch (final IOException e) {
+            log.warn("cannot open the stack file in " + hostsPath + ", using one file for each host: " + e.getMessage(), e);
+        }
+        this.stackFile = sf;
         this.queues = new ConcurrentHashMap<String, HostQueue>();
-        this.roundRobinHostHashes = new HashSet<String>();
+        this.scheduler = new HostScheduler();
         init(); // return without wait but starts a thread to fill the queues
     }
 
@@ -94,18 +111,53 @@ public class HostBalancer implements Balancer {
         Thread t = new Thread() {
             @Override
             public void run() {
+                if (stackFile != null) {
+                    // the stacks in the stack file are named by the host directory and the depth
+                    final Set<String> hostdirs = new LinkedHashSet<String>();
+                    for (String name: stackFile.names("")) {
+                        int p = name.indexOf('/');
+                        if (p > 0) hostdirs.add(name.substring(0, p));
+                    }
+                    for (String hoststr: hostdirs) {
+                        try {
+                            HostQueue queue = new HostQueue(new File(hostsPath, hoststr), false, exceed134217727, stackFile);
+                            if (queue.isEmpty()) {
+                                queue.close();
+                            } else {
+                                register(DigestURL.hosthash(queue.getHost(), queue.getPort()), queue);
+                            }
+                        } catch (MalformedURLException | RuntimeException e) {
+                            log.warn("init error for " + hostsPath.getName() + " host=" + hoststr + " " + e.getLocalizedMessage());
+                        }
+                    }
+                }
                 final String[] hostlist = hostsPath.list();
                 for (String hoststr : hostlist) {
                     try {
                         File queuePath = new File(hostsPath, hoststr);
+                        if (!queuePath.isDirectory()) continue;
                         HostQueue queue = new HostQueue(queuePath, queues.size() > onDemandLimit, exceed134217727);
                         if (queue.isEmpty()) {
                             queue.close();
                             FileUtils.deletedelete(queuePath);
+                        } else if (stackFile != null) {
+                            // move the queue into the stack file
+                            final String hosthash = DigestURL.hosthash(queue.getHost(), queue.getPort());
+                            HostQueue target = queues.get(hosthash);
+                            if (target == null) target = new HostQueue(hostsPath, queue.getHost(), queue.getPort(), false, exceed134217727, stackFile);
+                            int c = 0;
+                            Iterator<Request> i = queue.iterator();
+                            while (i.hasNext()) {
+                                Request request = i.next();
+                                if (request != null && target.push(request, null, null) == null) c++;
+                            }
+                            queue.clear();
+                            log.info("moved " + c + " urls of host " + hoststr + " into the stack file");
+                            if (!target.isEmpty()) register(hosthash, target);
                         } else {
-                            queues.put(DigestURL.hosthash(queue.getHost(), queue.getPort()), queue);
+                            register(DigestURL.hosthash(queue.getHost(), queue.getPort()), queue);
                         }
-                    } catch (MalformedURLException | RuntimeException e) {
+                    } catch (IOException | SpaceExceededException | RuntimeException e) {
                         log.warn("init error for " + hostsPath.getName() + " host=" + hoststr + " " + e.getLocalizedMessage());
                     }
                 }
@@ -115,6 +167,11 @@ public class HostBalancer implements Balancer {
         t.start();
     }
 
+    private synchronized void register(final String hosthash, final HostQueue queue) {
+        this.queues.put(hosthash, queue);
+        this.scheduler.schedule(hosthash, System.currentTimeMillis(), queue.size());
+    }
+
     @Override
     public synchronized void close() {
         if (depthCache != null) {
@@ -122,6 +179,8 @@ public class HostBalancer implements Balancer {
         }
         for (HostQueue queue: this.queues.values()) queue.close();
         this.queues.clear();
+        this.scheduler.clear();
+        if (this.stackFile != null) this.stackFile.close();
     }
 
     @Override
@@ -130,7 +189,10 @@ public class HostBalancer implements Balancer {
             depthCache.clear();
         }
         for (HostQueue queue: this.queues.values()) queue.clear();
-        this.queues.clear();
+        synchronized (this) {
+            this.queues.clear();
+            this.scheduler.clear();
+        }
     }
 
     @Override
@@ -242,19 +304,37 @@ public class HostBalancer implements Balancer {
     public String push(final Request entry, CrawlProfile profile, final RobotsTxt robots) throws IOException, SpaceExceededException {
         if (this.has(entry.url().hash())) return "double occurrence";
         depthCache.put(entry.url().hash(), entry.depth());
+        Domains.dnsPrefetch(entry.url().getHost()); // resolve the host in the background until the url is loaded
         String hosthash = ASCII.String(entry.url().hash(), 6, 6);
         synchronized (this) {
             HostQueue queue = this.queues.get(hosthash);
             if (queue == null) {
-                queue = new HostQueue(this.hostsPath, entry.url().getHost(), entry.url().getPort(), this.queues.size() > this.onDemandLimit, this.exceed134217727);
+                queue = new HostQueue(this.hostsPath, entry.url().getHost(), entry.url().getPort(), this.queues.size() > this.onDemandLimit, this.exceed134217727, this.stackFile);
                 this.queues.put(hosthash, queue);
                 // profile might be null when continue crawls after YaCy restart
                 robots.ensureExist(entry.url(), profile == null ? ClientIdentification.yacyInternetCrawlerAgent : profile.getAgent(), true); // concurrently load all robots.txt
             }
-            return queue.push(entry, profile, robots);
+            final String error = queue.push(entry, profile, robots);
+            if (!this.scheduler.contains(hosthash)) {
+                this.scheduler.schedule(hosthash, readyTime(queue, hosthash, robots), queue.size());
+            }
+            return error;
         }
     }
 
+    /**
+     * compute the earliest time when a host may be accessed again, using the latency of the host and the robots.txt crawl-delay
+     */
+    private static long readyTime(final HostQueue hq, final String hosthash, final RobotsTxt robots) {
+        final int delta = Latency.waitingRemainingGuessed(hq.getHost(), hq.getPort(), hosthash, robots, ClientIdentification.yacyInternetCrawlerAgent);
+        return System.currentTimeMillis() + Math.max(0, delta);
+    }
+
+    /**
+     * number of hosts which are tested in one pop for a better ready time before the head of the schedule is taken
+     */
+    private final static int maxReadyChecks = 10;
+
     /**
      * get the next entry in this crawl queue in such a way that the domain access time delta is maximized
      * and always above the given minimum delay time. An additional delay time is computed using the robots.txt
@@ -272,173 +352,49 @@ public class HostBalancer implements Balancer {
         tryagain: while (true) try {
             HostQueue rhq = null;
             String rhh = null;
-        
+
             synchronized (this) {
-                if (this.roundRobinHostHashes.size() == 0) {
-                    // refresh the round-robin cache
-                    this.roundRobinHostHashes.addAll(this.queues.keySet());
-                    // quickly get rid of small stacks to reduce number of files:
-                    // remove all stacks with more than 10 entries
-                    // this shall kick out small stacks to prevent that too many files are opened for very wide crawls
-                    boolean smallStacksExist = false;
-                    boolean singletonStacksExist = false;
-                    smallsearch: for (String s: this.roundRobinHostHashes) {
-                        HostQueue hq = this.queues.get(s);
-                        if (hq != null) {
-                            int size = hq.size();
-                            if (size ==  1) {singletonStacksExist = true; break smallsearch;}
-                            if (size <= 10) {smallStacksExist = true; break smallsearch;}
-                        }
-                    }
-                    if (singletonStacksExist || smallStacksExist) {
-                        Iterator<String> i = this.roundRobinHostHashes.iterator();
-                        smallstacks: while (i.hasNext()) {
-                            if (this.roundRobinHostHashes.size() <= 10) break smallstacks; // don't shrink the hosts until nothing is left
-                            String s = i.next();
-                            HostQueue hq = this.queues.get(s);
-                            if (hq == null) {i.remove(); continue smallstacks;}
-                            int delta = Latency.waitingRemainingGuessed(hq.getHost(), hq.getPort(), s, robots, ClientIdentification.yacyInternetCrawlerAgent);
-                            if (delta < 0) continue; // keep all non-waiting stacks; they are useful to speed up things
-                            // to protect all small stacks which have a fast throughput, remove all with long waiting time
-                            if (delta >= 1000) {i.remove(); continue smallstacks;}
-                            int size = hq.size();
-                            if (singletonStacksExist) {
-                                if (size != 1) {i.remove(); continue smallstacks;} // remove all non-singletons
-                            } else /*smallStacksExist*/ {
-                                if (size > 10) {i.remove(); continue smallstacks;} // remove all large stacks
-                            }
-                        }
-                    }
-                    if (this.roundRobinHostHashes.size() == 1) {
-                        if (log.isFine()) log.fine("(re-)initialized the round-robin queue with one host");
-                    } else {
-                        log.info("(re-)initialized the round-robin queue; " + this.roundRobinHostHashes.size() + " hosts.");
-                    }
-                }
-                if (this.roundRobinHostHashes.size() == 0) return null;
-                
-                // if the queue size is 1, just take that
-                if (this.roundRobinHostHashes.size() == 1) {
-                    rhh = this.roundRobinHostHashes.iterator().next();
-                    rhq = this.queues.get(rhh);
-                }
-                
-                if (rhq == null) {
-                    // mixed minimum sleep time / largest queue strategy:
-                    // create a map of sleep time / queue relations with a fuzzy sleep time (ms / 500).
-                    // if the entry with the smallest sleep time contains at least two entries,
-                    // then the larger one from these queues are selected.
-                    TreeMap<Integer, List<String>> fastTree = new TreeMap<>();
-                    mixedstrategy: for (String h: this.roundRobinHostHashes) {
-                        HostQueue hq = this.queues.get(h);
-                        if (hq != null) {
-                            int delta = Latency.waitingRemainingGuessed(hq.getHost(), hq.getPort(), h, robots, ClientIdentification.yacyInternetCrawlerAgent) / 200;
-                            if (delta < 0) delta = 0;
-                            List<String> queueHashes = fastTree.get(delta);
-                            if (queueHashes == null) {
-                                queueHashes = new ArrayList<>(2);
-                                fastTree.put(delta, queueHashes);
-                            }
-                            queueHashes.add(h);
-                            // check stop criteria
-                            List<String> firstEntries = fastTree.firstEntry().getValue();
-                            if (firstEntries.size() > 1) {
-                                // select larger queue from that list
-                                int largest = Integer.MIN_VALUE;
-                                for (String hh: firstEntries) {
-                                    HostQueue hhq = this.queues.get(hh);
-                                    if (hhq != null) {
-                                        int s = hhq.size();
-                                        if (s > largest) {
-                                            largest = s;
-                                            rhh = hh;
-                                        }
-                                    }
-                                }
-                                rhq = this.queues.get(rhh);
-                                break mixedstrategy;
-                            }
-                        }
-                    }
-                    if (rhq == null && fastTree.size() > 0) {
-                        // it may be possible that the lowest entry never has more than one queues assigned
-                        // in this case just take the smallest entry
-                        List<String> firstEntries = fastTree.firstEntry().getValue();
-                        assert firstEntries.size() == 1;
-                        rhh = firstEntries.get(0);
-                        rhq = this.queues.get(rhh);
-                    }
-                    // to prevent that the complete roundrobinhosthashes are taken for each round, we remove the entries from the top of the fast queue
-                    List<String> lastEntries = fastTree.size() > 0 ? fastTree.lastEntry().getValue() : null;
-                    if (lastEntries != null) {
-                        for (String h: lastEntries) this.roundRobinHostHashes.remove(h);
-                    }
-                }
-                
-                /*
-                // first strategy: get one entry which does not need sleep time
-                Iterator<String> nhhi = this.roundRobinHostHashes.iterator();
-                nosleep: while (nhhi.hasNext()) {
-                    rhh = nhhi.next();
+                // take the host which can be accessed first from the schedule
+                int checks = 0;
+                while (rhq == null) {
+                    rhh = this.scheduler.take();
+                    if (rhh == null) return null;
                     rhq = this.queues.get(rhh);
                     if (rhq == null) {
-                        nhhi.remove();
-                        continue nosleep;
+                        this.scheduler.remove(rhh);
+                        continue;
                     }
-                    int delta = Latency.waitingRemainingGuessed(rhq.getHost(), rhh, robots, ClientIdentification.yacyInternetCrawlerAgent);
-                    if (delta <= 10 || this.roundRobinHostHashes.size() == 1 || rhq.size() == 1) {
-                        nhhi.remove();
-                        break nosleep;
+                    // the ready time in the schedule is a guess from the time when the host was scheduled;
+                    // the latency of a host changes with each access, so it is computed again for the taken host
+                    // and the host is put back if another host is ready earlier
+                    final long ready = readyTime(rhq, rhh, robots);
+                    if (ready > System.currentTimeMillis() && checks++ < maxReadyChecks && ready > this.scheduler.nextReady()) {
+                        this.scheduler.release(rhh, ready, rhq.size());
+                        rhq = null;
                     }
                 }
-                if (rhq == null) {
-                    // second strategy: take from the largest stack
-                    int largest = Integer.MIN_VALUE;
-                    for (String h: this.roundRobinHostHashes) {
-                        HostQueue hq = this.queues.get(h);
-                        if (hq != null) {
-                            int s = hq.size();
-                            if (s > largest) {
-                                largest = s;
-                                rhh = h;
-                            }
-                        }
-                    }
-                    rhq = this.queues.get(rhh);
-                }
-                */
             }
-            
-            if (rhq == null) {
-                this.roundRobinHostHashes.clear(); // force re-initialization
-                continue tryagain;
-            }
-            this.roundRobinHostHashes.remove(rhh); // prevent that the queue is used again
-            long timestamp = System.currentTimeMillis();
-            Request request = rhq.pop(delay, cs, robots); // this pop is outside of synchronization to prevent blocking of pushes
-            long actualwaiting = System.currentTimeMillis() - timestamp;
-            
-            if (actualwaiting > 1000) {
+
+            Request request = null;
+            boolean empty = false;
+            try {
+                request = rhq.pop(delay, cs, robots); // this pop is outside of synchronization to prevent blocking of pushes
+            } finally {
+                // put the host back into the schedule; the waiting time includes the access which is done with the request
                 synchronized (this) {
-                    // to prevent that this occurs again, remove all stacks with positive delay times (which may be less after that waiting)
-                    Iterator<String> i = this.roundRobinHostHashes.iterator();
-                    protectcheck: while (i.hasNext()) {
-                        if (this.roundRobinHostHashes.size() <= 3) break protectcheck; // don't shrink the hosts until nothing is left
-                        String s = i.next();
-                        HostQueue hq = this.queues.get(s);
-                        if (hq == null) {i.remove(); continue protectcheck;}
-                        int delta = Latency.waitingRemainingGuessed(hq.getHost(), hq.getPort(), s, robots, ClientIdentification.yacyInternetCrawlerAgent);
-                        if (delta >= 0) {i.remove();}
+                    if (this.queues.get(rhh) != rhq) {
+                        // the balancer was cleared in the meantime
+                        empty = true;
+                    } else if (rhq.isEmpty()) {
+                        this.queues.remove(rhh);
+                        this.scheduler.remove(rhh);
+                        empty = true;
+                    } else {
+                        this.scheduler.release(rhh, readyTime(rhq, rhh, robots), rhq.size());
                     }
                 }
             }
-            
-            if (rhq.isEmpty()) {
-                synchronized (this) {
-                    this.queues.remove(rhh);
-                }
-                rhq.close();
-            }
+            if (empty) rhq.close();
             if (request == null) continue tryagain;
             return request;
         } catch (ConcurrentModificationException e) {
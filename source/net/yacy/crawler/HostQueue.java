@@ -50,6 +50,7 @@ import net.yacy.kelondro.index.Index;
 import net.yacy.kelondro.index.OnDemandOpenFileIndex;
 import net.yacy.kelondro.index.Row;
 import net.yacy.kelondro.index.RowHandleSet;
+import net.yacy.kelondro.table.StackFile;
 import net.yacy.kelondro.table.Table;
 import static net.yacy.kelondro.util.FileUtils.deletedelete;
 import net.yacy.kelondro.util.kelondroException;
@@ -70,6 +71,7 @@ public class HostQueue implements Balancer {
     private final int           port;
     private final boolean       exceed134217727;
     private final boolean       onDemand;
+    private final StackFile     stackFile;
     private       TreeMap<Integer, Index> depthStacks;
 
     public HostQueue (
@@ -78,6 +80,27 @@ public class HostQueue implements Balancer {
             final int port,
             final boolean onDemand,
             final boolean exceed134217727) throws MalformedURLException {
+        this(hostsPath, hostName, port, onDemand, exceed134217727, null);
+    }
+
+    /**
+     * create a host queue
+     * @param hostsPath
+     * @param hostName
+     * @param port
+     * @param onDemand
+     * @param exceed134217727
+     * @param stackFile if not null, the depth stacks of the queue are stored in this shared file instead of own files in the host path
+     * @throws MalformedURLException
+     */
+    public HostQueue (
+            final File hostsPath,
+            final String hostName,
+            final int port,
+            final boolean onDemand,
+            final boolean exceed134217727,
+            final StackFile stackFile) throws MalformedURLException {
+        this.stackFile = stackFile;
         this.onDemand = onDemand;
         this.exceed134217727 = exceed134217727;
         this.hostName = (hostName == null)  ? "localhost" : hostName; // might be null (file://) but hostqueue needs a name (for queue file)
@@ -90,6 +113,15 @@ public class HostQueue implements Balancer {
             final File hostPath,
             final boolean onDemand,
             final boolean exceed134217727) throws MalformedURLException {
+        this(hostPath, onDemand, exceed134217727, null);
+    }
+
+    public HostQueue (
+            final File hostPath,
+            final boolean onDemand,
+            final boolean exceed134217727,
+            final StackFile stackFile) throws MalformedURLException {
+        this.stackFile = stackFile;
         this.onDemand = onDemand;
         this.exceed134217727 = exceed134217727;
         this.hostPath = hostPath;
@@ -111,7 +143,7 @@ public class HostQueue implements Balancer {
         } catch (MalformedURLException e) {
             this.hostHash = "";
         }
-        if (!(this.hostPath.exists())) {
+        if (this.stackFile == null && !(this.hostPath.exists())) {
             this.hostPath.mkdirs();
             if (!this.hostPath.exists()) { // check if directory created (if not, likely a name violation)
                 throw new MalformedURLException("hostPath could not be created: " + this.hostPath.toString());
@@ -131,7 +163,16 @@ public class HostQueue implements Balancer {
     }
     
     private int openAllStacks() {
-        String[] l = this.hostPath.list();
+        String[] l;
+        if (this.stackFile == null) {
+            l = this.hostPath.list();
+        } else {
+            // the stacks in the stack file are named like the stack files inside the host path
+            final String prefix = this.hostPath.getName() + "/";
+            final List<String> names = this.stackFile.names(prefix);
+            l = new String[names.size()];
+            for (int i = 0; i < l.length; i++) l[i] = names.get(i).substring(prefix.length());
+        }
         int c = 0;
         if (l != null) for (String s: l) {
             if (s.endsWith(indexSuffix)) try {
@@ -220,6 +261,7 @@ public class HostQueue implements Balancer {
     }
     
     private Index openStack(File f) {
+        if (this.stackFile != null) return this.stackFile.stack(this.hostPath.getName() + "/" + f.getName());
         for (int i = 0; i < 10; i++) {
             // we try that again if it fails because it shall not fail
             if (this.onDemand && (!f.exists() || f.length() < 10000)) {
@@ -262,6 +304,12 @@ public class HostQueue implements Balancer {
     @Override
     public synchronized void clear() {
         for (Map.Entry<Integer, Index> entry: this.depthStacks.entrySet()) {
+            if (this.stackFile != null) try {
+                // there is no own file which can be deleted
+                entry.getValue().clear();
+            } catch (final IOException e) {
+                ConcurrentLog.logException(e);
+            }
             entry.getValue().close();
             deletedelete(getFile(entry.getKey()));
         }
@@ -455,7 +503,7 @@ public class HostQueue implements Balancer {
             // in best case, this should never happen if the balancer works properly
             // this is only to protection against the worst case, where the crawler could
             // behave in a DoS-manner
-            if (log.isInfo()) log.info("forcing crawl-delay of " + sleeptime + " milliseconds for " + crawlEntry.url().getHost() + ": " + Latency.waitingRemainingExplain(crawlEntry.url(), robots, agent));
+            if (log.isInfo()) log.info("forcing crawl-delay of " + sleeptime + " milliseconds for " + crawlEntry.url().getHost() + ": " + Latency.waitingRemainingExplain(crawlEntry.url(), robots, agent, profileEntry));
             long loops = sleeptime / 1000;
             long rest = sleeptime % 1000;
             if (loops < 3) {
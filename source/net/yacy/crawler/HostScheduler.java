@@ -0,0 +1,149 @@
+// HostScheduler.java
+// -----------------------
+// (C) 2016 by the YaCy contributors
+// first published 2016 on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.crawler;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * A schedule of the hosts of a HostBalancer: every host is kept in a min-heap ordered by the earliest time
+ * when the host may be accessed again, so the next host is selected in O(log n) instead of a scan of all hosts.
+ * Hosts with the same ready time (in steps of 200 milliseconds) are ordered by the size of their queue, the
+ * smallest first, to get rid of small queues and their files quickly.
+ * A host which is taken from the schedule stays a member of the schedule until it is released with a new
+ * ready time or removed; this prevents that two threads take the same host concurrently.
+ * This class is not synchronized.
+ */
+public final class HostScheduler {
+
+    private final static class Slot {
+        private final String hosthash;
+        private final long ready;
+        private final int size;
+        private Slot(final String hosthash, final long ready, final int size) {
+            this.hosthash = hosthash;
+            this.ready = ready;
+            this.size = size;
+        }
+    }
+
+    private final static Slot TAKEN = new Slot(null, 0, 0);
+
+    private final static Comparator<Slot> slotOrder = new Comparator<Slot>() {
+        @Override
+        public int compare(final Slot o1, final Slot o2) {
+            final long r1 = o1.ready / 200, r2 = o2.ready / 200;
+            if (r1 != r2) return r1 < r2 ? -1 : 1;
+            if (o1.size != o2.size) return o1.size < o2.size ? -1 : 1;
+            return o1.hosthash.compareTo(o2.hosthash);
+        }
+    };
+
+    private final PriorityQueue<Slot> heap;
+    private final Map<String, Slot> slots; // the valid slot of each host in the heap or TAKEN
+
+    public HostScheduler() {
+        this.heap = new PriorityQueue<Slot>(64, slotOrder);
+        this.slots = new HashMap<String, Slot>();
+    }
+
+    /**
+     * @return the number of hosts in the schedule, including taken hosts
+     */
+    public int size() {
+        return this.slots.size();
+    }
+
+    public boolean contains(final String hosthash) {
+        return this.slots.containsKey(hosthash);
+    }
+
+    /**
+     * add a host to the schedule if it is not already a member
+     * @param hosthash
+     * @param ready the earliest time when the host may be accessed
+     * @param size the size of the host queue
+     * @return true if the host was added
+     */
+    public boolean schedule(final String hosthash, final long ready, final int size) {
+        if (this.slots.containsKey(hosthash)) return false;
+        add(hosthash, ready, size);
+        return true;
+    }
+
+    /**
+     * put a taken host back into the schedule
+     * @param hosthash
+     * @param ready the earliest time when the host may be accessed again
+     * @param size the size of the host queue
+     */
+    public void release(final String hosthash, final long ready, final int size) {
+        assert this.slots.get(hosthash) == TAKEN : "host " + hosthash + " is not taken";
+        add(hosthash, ready, size);
+    }
+
+    private void add(final String hosthash, final long ready, final int size) {
+        final Slot slot = new Slot(hosthash, ready, size);
+        this.slots.put(hosthash, slot);
+        this.heap.add(slot);
+    }
+
+    private void purge() {
+        // slots of removed or released hosts are removed lazily
+        Slot head;
+        while ((head = this.heap.peek()) != null && this.slots.get(head.hosthash) != head) this.heap.poll();
+    }
+
+    /**
+     * take the host with the earliest ready time from the schedule. The host must be released or removed afterwards.
+     * @return the host hash or null if no host is waiting in the schedule
+     */
+    public String take() {
+        purge();
+        final Slot head = this.heap.poll();
+        if (head == null) return null;
+        this.slots.put(head.hosthash, TAKEN);
+        return head.hosthash;
+    }
+
+    /**
+     * @return the ready time of the next host in the schedule or Long.MAX_VALUE if no host is waiting
+     */
+    public long nextReady() {
+        purge();
+        final Slot head = this.heap.peek();
+        return head == null ? Long.MAX_VALUE : head.ready;
+    }
+
+    /**
+     * remove a host from the schedule, regardless if it is taken or waiting
+     * @param hosthash
+     */
+    public void remove(final String hosthash) {
+        this.slots.remove(hosthash);
+    }
+
+    public void clear() {
+        this.heap.clear();
+        this.slots.clear();
+    }
+}
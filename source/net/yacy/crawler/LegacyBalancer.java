@@ -419,7 +419,7 @@ public class LegacyBalancer implements Balancer {
             // in best case, this should never happen if the balancer works properly
             // this is only to protection against the worst case, where the crawler could
             // behave in a DoS-manner
-            ConcurrentLog.info("BALANCER", "forcing crawl-delay of " + sleeptime + " milliseconds for " + crawlEntry.url().getHost() + ": " + Latency.waitingRemainingExplain(crawlEntry.url(), robots, agent) + ", domainStacks.size() = " + this.domainStacks.size() + ", domainStacksInitSize = " + this.domStackInitSize);
+            ConcurrentLog.info("BALANCER", "forcing crawl-delay of " + sleeptime + " milliseconds for " + crawlEntry.url().getHost() + ": " + Latency.waitingRemainingExplain(crawlEntry.url(), robots, agent, profileEntry) + ", domainStacks.size() = " + this.domainStacks.size() + ", domainStacksInitSize = " + this.domStackInitSize);
             long loops = sleeptime / 1000;
             long rest = sleeptime % 1000;
             if (loops < 3) {
@@ -487,7 +487,7 @@ public class LegacyBalancer implements Balancer {
                         ConcurrentLog.warn("Balancer", "no profile entry for handle " + crawlEntry.profileHandle());
                         continue;
                     }
-                    w = Latency.waitingRemaining(crawlEntry.url(), robots, profileEntry.getAgent());
+                    w = Latency.waitingRemaining(crawlEntry.url(), robots, profileEntry.getAgent(), profileEntry);
                 } catch (final IOException e1) {
                     ConcurrentLog.warn("Balancer", e1.getMessage(), e1);
                     continue;
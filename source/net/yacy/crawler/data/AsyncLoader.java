@@ -0,0 +1,428 @@
+// AsyncLoader.java
+// -----------------------
+// (C) 2016 by the YaCy contributors
+// first published 2016 on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.crawler.data;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jetty.client.HttpClient;
+import org.eclipse.jetty.client.api.Result;
+import org.eclipse.jetty.client.util.BufferingResponseListener;
+import org.eclipse.jetty.http.HttpField;
+import org.eclipse.jetty.util.HttpCookieStore;
+import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+
+import net.yacy.cora.document.id.DigestURL;
+import net.yacy.cora.federate.solr.FailCategory;
+import net.yacy.cora.federate.yacy.CacheStrategy;
+import net.yacy.cora.protocol.ClientIdentification;
+import net.yacy.cora.protocol.HeaderFramework;
+import net.yacy.cora.protocol.RequestHeader;
+import net.yacy.cora.protocol.ResponseHeader;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.crawler.CrawlSwitchboard;
+import net.yacy.crawler.retrieval.HTTPLoader;
+import net.yacy.crawler.retrieval.Request;
+import net.yacy.crawler.retrieval.Response;
+import net.yacy.crawler.robots.RobotsTxtEntry;
+import net.yacy.kelondro.io.ByteCount;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
+import net.yacy.kelondro.workflow.WorkflowJob;
+import net.yacy.repository.Blacklist.BlacklistType;
+import net.yacy.search.Switchboard;
+import net.yacy.search.SwitchboardConstants;
+import net.yacy.server.http.AlternativeDomainNames;
+
+/**
+ * An alternative to the loader threads of the CrawlQueues for http and https urls: the requests are
+ * sent with a non-blocking http client, so a large number of loads can be in flight without one thread
+ * for each load. A small pool of processor threads does the work which may block: the robots.txt check,
+ * the evaluation of the response and the hand-over to the indexer with Switchboard.toIndexer().
+ * If the latency of a host requires a delay before the next access, the request is scheduled for the
+ * time when the host may be accessed again instead of sleeping in a thread.
+ */
+public final class AsyncLoader {
+
+    private final static ConcurrentLog log = new ConcurrentLog("CRAWLER");
+
+    private final Switchboard sb;
+    private final HTTPLoader httpLoader; // used to create the request header and to evaluate redirects
+    private final HttpClient client;
+    private final ThreadPoolExecutor processor;
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final Semaphore slots;
+    private final int maxActive;
+    private final int socketTimeout;
+    private final Map<Request, DigestURL> active; // the requests with their url at the start of the load
+    private final Map<String, Integer> hostcount;
+
+    /**
+     * @param sb
+     * @param maxActive the maximum number of loads at the same time, including the loads which wait for the latency of the host
+     * @param maxConnectionsPerHost the maximum number of connections which are opened to the same host
+     * @param processors the number of threads for the robots.txt check and the indexer hand-over
+     * @throws IOException if the http client cannot be started
+     */
+    public AsyncLoader(final Switchboard sb, final int maxActive, final int maxConnectionsPerHost, final int processors) throws IOException {
+        this.sb = sb;
+        this.httpLoader = new HTTPLoader(sb, log);
+        this.maxActive = maxActive;
+        this.slots = new Semaphore(maxActive);
+        this.socketTimeout = (int) sb.getConfigLong("crawler.clientTimeout", 30000);
+        this.active = new ConcurrentHashMap<Request, DigestURL>();
+        this.hostcount = new HashMap<String, Integer>();
+        this.processor = new ThreadPoolExecutor(processors, processors, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamePrefixThreadFactory("AsyncLoader.processor"));
+        this.processor.allowCoreThreadTimeOut(true);
+        this.scheduler = new ScheduledThreadPoolExecutor(1, new NamePrefixThreadFactory("AsyncLoader.scheduler"));
+
+        final QueuedThreadPool pool = new QueuedThreadPool(Math.max(8, processors), 2);
+        pool.setName("AsyncLoader.client");
+        pool.setDaemon(true);
+        this.client = new HttpClient(new SslContextFactory(true)); // like the HTTPClient, the crawler accepts all certificates
+        this.client.setExecutor(pool);
+        this.client.setFollowRedirects(false); // redirects are handled like in the HTTPLoader, so we don't index pages twice
+        this.client.setUserAgentField(null); // the agent is set in the request header
+        this.client.setCookieStore(new HttpCookieStore.Empty());
+        this.client.setMaxConnectionsPerDestination(maxConnectionsPerHost);
+        this.client.setMaxRequestsQueuedPerDestination(maxActive);
+        this.client.setConnectTimeout(this.socketTimeout);
+        this.client.setIdleTimeout(this.socketTimeout);
+        try {
+            this.client.start();
+        } catch (final Exception e) {
+            throw new IOException("cannot start http client: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the number of loads which can be started now
+     */
+    public int available() {
+        return this.slots.availablePermits();
+    }
+
+    /**
+     * @return the number of loads in flight
+     */
+    public int size() {
+        return this.maxActive - this.slots.availablePermits();
+    }
+
+    public Map<DigestURL, Request> activeEntries() {
+        final Map<DigestURL, Request> map = new HashMap<DigestURL, Request>();
+        for (final Request request: this.active.keySet()) map.put(request.url(), request);
+        return map;
+    }
+
+    /**
+     * count the number of loads for the same host name
+     * @param host
+     * @return
+     */
+    public int hostcount(final String host) {
+        synchronized (this.hostcount) {
+            final Integer c = this.hostcount.get(host);
+            return c == null ? 0 : c.intValue();
+        }
+    }
+
+    /**
+     * start the load of a http or https url. The method does not block; it returns false if the
+     * maximum number of active loads is reached.
+     * @param request
+     * @param profile
+     * @return true if the load was started
+     */
+    public boolean load(final Request request, final CrawlProfile profile) {
+        if (!this.slots.tryAcquire()) return false;
+        this.active.put(request, request.url());
+        final String host = request.url().getHost();
+        if (host != null) synchronized (this.hostcount) {
+            final Integer c = this.hostcount.get(host);
+            this.hostcount.put(host, c == null ? 1 : c.intValue() + 1);
+        }
+        request.setStatus("worker-initialized", WorkflowJob.STATUS_INITIATED);
+        try {
+            this.processor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    prepare(request, profile);
+                }
+            });
+        } catch (final RuntimeException e) {
+            // the processor is shut down
+            done(request);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * check the robots.txt and wait for the latency of the host before the request is sent
+     */
+    private void prepare(final Request request, final CrawlProfile profile) {
+        try {
+            request.setStatus("worker-checkingrobots", WorkflowJob.STATUS_STARTED);
+            final ClientIdentification.Agent agent = profile.getAgent();
+            final RobotsTxtEntry robotsEntry = this.sb.robots.getEntry(request.url(), agent);
+            if (robotsEntry != null && robotsEntry.isDisallowed(request.url())) {
+                this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.FINAL_ROBOTS_RULE, "denied by robots.txt", -1);
+                request.setStatus("worker-disallowed", WorkflowJob.STATUS_FINISHED);
+                done(request);
+                return;
+            }
+            if (profile.cacheStrategy() != CacheStrategy.NOCACHE && Cache.hasContent(request.url().hash())) {
+                // no network access is needed for a cache hit; the loader dispatcher also handles stale entries
+                request.setStatus("loading", WorkflowJob.STATUS_RUNNING);
+                final Response response = this.sb.loader.load(request, profile.cacheStrategy(), BlacklistType.CRAWLER, agent);
+                finish(request, profile, response == null ? "no content (possibly caused by cache policy)" : index(request, response));
+                return;
+            }
+            final long delay = Latency.waitingRemaining(request.url(), this.sb.robots, agent, profile);
+            if (delay > 0) {
+                request.setStatus("worker-waiting", WorkflowJob.STATUS_STARTED);
+                this.scheduler.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        send(request, profile, HTTPLoader.DEFAULT_CRAWLING_RETRY_COUNT);
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            } else {
+                send(request, profile, HTTPLoader.DEFAULT_CRAWLING_RETRY_COUNT);
+            }
+        } catch (final Throwable e) {
+            this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, e.getMessage() + " - in worker", -1);
+            request.setStatus("worker-exception", WorkflowJob.STATUS_FINISHED);
+            done(request);
+        }
+    }
+
+    /**
+     * send the request; this does not block, the response is evaluated in the processor
+     */
+    private void send(final Request request, final CrawlProfile profile, final int retryCount) {
+        try {
+            if (retryCount < 0) {
+                this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, "retry counter exceeded", -1);
+                throw new IOException("retry counter exceeded for URL " + request.url().toString() + ". Processing aborted.$");
+            }
+            DigestURL url = request.url();
+            final String host = url.getHost();
+            if (host == null || host.length() < 2) throw new IOException("host is not well-formed: '" + host + "'");
+            final String path = url.getFile();
+
+            // check if url is in blacklist
+            if (Switchboard.urlBlacklist.isListed(BlacklistType.CRAWLER, host.toLowerCase(), path)) {
+                this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.FINAL_LOAD_CONTEXT, "url in blacklist", -1);
+                throw new IOException("CRAWLER Rejecting URL '" + request.url().toString() + "'. URL is in blacklist.$");
+            }
+
+            // resolve yacy and yacyh domains
+            final AlternativeDomainNames yacyResolver = this.sb.peers;
+            if (yacyResolver != null) {
+                final String yAddress = yacyResolver.resolve(host);
+                if (yAddress != null) url = new DigestURL(url.getProtocol() + "://" + yAddress + path);
+            }
+
+            final RequestHeader requestHeader = this.httpLoader.createRequestheader(request, profile.getAgent());
+            final org.eclipse.jetty.client.api.Request r = this.client.newRequest(url.toNormalform(true));
+            for (final Map.Entry<String, String> entry: requestHeader.entrySet()) {
+                // the client sets the content encodings which it can decode
+                if (!HeaderFramework.ACCEPT_ENCODING.equalsIgnoreCase(entry.getKey())) r.header(entry.getKey(), entry.getValue());
+            }
+            r.idleTimeout(this.socketTimeout, TimeUnit.MILLISECONDS);
+
+            final int maxFileSize = this.sb.getConfigInt("crawler.http.maxFileSize", HTTPLoader.DEFAULT_MAXFILESIZE);
+            final DigestURL requestURL = url;
+            request.setStatus("loading", WorkflowJob.STATUS_RUNNING);
+            Latency.updateBeforeLoad(request.url());
+            final long start = System.currentTimeMillis();
+            r.send(new BufferingResponseListener(maxFileSize < 0 ? Integer.MAX_VALUE : maxFileSize) {
+                @Override
+                public void onComplete(final Result result) {
+                    final long time = System.currentTimeMillis() - start;
+                    if (result.isFailed()) {
+                        // the host did not answer in time or dropped the connection
+                        if (result.getFailure() instanceof IOException || result.getFailure() instanceof TimeoutException) Latency.slowdown(request.url(), profile);
+                    } else if (result.getResponse().getStatus() == 429 || result.getResponse().getStatus() >= 500) {
+                        Latency.updateStatus(request.url(), profile, result.getResponse().getStatus());
+                    } else {
+                        Latency.updateRate(request.url(), profile, time);
+                    }
+                    Latency.updateAfterLoad(request.url(), time);
+                    final byte[] content = result.isFailed() ? null : getContent();
+                    try {
+                        AsyncLoader.this.processor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                complete(request, profile, retryCount, maxFileSize, requestURL, requestHeader, result, content);
+                            }
+                        });
+                    } catch (final RuntimeException e) {
+                        done(request); // shut down
+                    }
+                }
+            });
+        } catch (final Throwable e) {
+            finish(request, profile, "load error - " + e.getMessage());
+        }
+    }
+
+    /**
+     * evaluate the response like the HTTPLoader does and hand it over to the indexer
+     */
+    private void complete(final Request request, final CrawlProfile profile, final int retryCount, final int maxFileSize, final DigestURL url,
+            final RequestHeader requestHeader, final Result result, final byte[] content) {
+        try {
+            if (result.isFailed()) {
+                final Throwable e = result.getFailure();
+                if (maxFileSize >= 0 && e instanceof IllegalArgumentException) {
+                    // the buffering listener aborts a response if the content length or the content exceeds its capacity
+                    this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.FINAL_PROCESS_CONTEXT, "file size limit exceeded", result.getResponse().getStatus());
+                    throw new IOException("REJECTED URL " + request.url() + " because file size exceeds max filesize limit of " + maxFileSize + " bytes. (GET)$");
+                }
+                throw new IOException(e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage());
+            }
+            final org.eclipse.jetty.client.api.Response r = result.getResponse();
+            final int statusCode = r.getStatus();
+            final String statusline = r.getVersion() + " " + statusCode + " " + r.getReason();
+            final ResponseHeader responseHeader = new ResponseHeader(statusCode);
+            for (final HttpField field: r.getHeaders()) {
+                // the content was decoded by the client
+                if (HeaderFramework.CONTENT_ENCODING.equalsIgnoreCase(field.getName()) && "gzip".equalsIgnoreCase(field.getValue())) continue;
+                responseHeader.add(field.getName(), field.getValue());
+            }
+            final String requestURLString = request.url().toNormalform(true);
+
+            if (statusCode > 299 && statusCode < 310) {
+                final DigestURL redirectionUrl = this.httpLoader.extractRedirectURL(request, profile, url, statusline, statusCode, responseHeader, requestURLString);
+                if (this.sb.getConfigBool(SwitchboardConstants.CRAWLER_FOLLOW_REDIRECTS, true)) {
+                    request.redirectURL(redirectionUrl);
+                    if (!CrawlSwitchboard.DEFAULT_PROFILES.contains(profile.name())) {
+                        // put redirect url on the crawler queue to repeat a double-check
+                        this.sb.crawlStacker.stackCrawl(request);
+                        throw new IOException("CRAWLER Redirect of URL=" + requestURLString + " to " + redirectionUrl.toNormalform(false) + " placed on crawler queue for double-check");
+                    }
+                    // retry with the new url; the request keeps its slot
+                    send(request, profile, retryCount - 1);
+                    return;
+                }
+                this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.FINAL_PROCESS_CONTEXT, "redirection not wanted", statusCode);
+                throw new IOException("REJECTED UNWANTED REDIRECTION '" + statusline + "' for URL '" + requestURLString + "'$");
+            } else if (content == null) {
+                this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, "no response body", statusCode);
+                throw new IOException("REJECTED EMPTY RESPONSE BODY '" + statusline + "' for URL '" + requestURLString + "'$");
+            } else if (statusCode == 200 || statusCode == 203) {
+                ByteCount.addAccountCount(ByteCount.CRAWLER, content.length);
+                final Response response = new Response(request, requestHeader, responseHeader, profile, false, content);
+                if (profile.storeHTCache()) {
+                    final String storeError = response.shallStoreCacheForCrawler();
+                    if (storeError == null) {
+                        try {
+                            Cache.store(request.url(), responseHeader, content);
+                        } catch (final IOException e) {
+                            log.warn("cannot write " + request.url() + " to Cache (3): " + e.getMessage(), e);
+                        }
+                    } else {
+                        log.warn("cannot write " + request.url() + " to Cache (4): " + storeError);
+                    }
+                }
+                finish(request, profile, index(request, response));
+            } else {
+                this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, "wrong http status code", statusCode);
+                throw new IOException("REJECTED WRONG STATUS TYPE '" + statusline + "' for URL '" + requestURLString + "'$");
+            }
+        } catch (final IOException e) {
+            request.setStatus("error", WorkflowJob.STATUS_FINISHED);
+            if (log.isFine()) log.fine("problem loading " + request.url().toString() + ": " + e.getMessage());
+            finish(request, profile, "load error - " + e.getMessage());
+        } catch (final Throwable e) {
+            this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, e.getMessage() + " - in worker", -1);
+            request.setStatus("worker-exception", WorkflowJob.STATUS_FINISHED);
+            done(request);
+        }
+    }
+
+    /**
+     * hand over a loaded response to the indexer
+     * @return null if everything went fine, a fail reason string otherwise
+     */
+    private String index(final Request request, final Response response) {
+        request.setStatus("loaded", WorkflowJob.STATUS_RUNNING);
+        final String storedFailMessage = this.sb.toIndexer(response);
+        request.setStatus("enqueued-" + ((storedFailMessage == null) ? "ok" : "fail"), WorkflowJob.STATUS_FINISHED);
+        return (storedFailMessage == null) ? null : "not enqueued to indexer: " + storedFailMessage;
+    }
+
+    /**
+     * record the result of a load in the same way as the loader threads do
+     * @param error null if the load was successful
+     */
+    private void finish(final Request request, final CrawlProfile profile, String error) {
+        if (error != null) {
+            if (error.endsWith("$")) {
+                // the "$" mark at the end of the error message means, that the error was already pushed to the error-db by the reporting method
+                error = error.substring(0, error.length() - 1).trim();
+            } else {
+                this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile, FailCategory.TEMPORARY_NETWORK_FAILURE, "cannot load: " + error, -1);
+            }
+            request.setStatus("worker-error", WorkflowJob.STATUS_FINISHED);
+        } else {
+            request.setStatus("worker-processed", WorkflowJob.STATUS_FINISHED);
+        }
+        done(request);
+    }
+
+    private void done(final Request request) {
+        // the request url may have been changed by a redirect, the host is counted for the initial url
+        final DigestURL url = this.active.remove(request);
+        if (url == null) return;
+        final String host = url.getHost();
+        if (host != null) synchronized (this.hostcount) {
+            final Integer c = this.hostcount.get(host);
+            if (c == null || c.intValue() <= 1) this.hostcount.remove(host); else this.hostcount.put(host, c.intValue() - 1);
+        }
+        this.slots.release();
+    }
+
+    public void close() {
+        this.scheduler.shutdownNow();
+        this.processor.shutdown();
+        try {
+            this.processor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (final InterruptedException e) {
+        }
+        this.processor.shutdownNow();
+        try {
+            this.client.stop();
+        } catch (final Exception e) {
+            ConcurrentLog.logException(e);
+        }
+    }
+}
@@ -97,7 +97,8 @@ public class CrawlProfile extends ConcurrentHashMap<String, String> implements M
         INDEX_MEDIA                  ("indexMedia",                 false, CrawlAttribute.BOOLEAN, "Index Media"),
         COLLECTIONS                  ("collections",                false, CrawlAttribute.STRING,  "Collections (comma-separated list)"),
         SCRAPER                      ("scraper",                    false, CrawlAttribute.STRING,  "Declaration for Vocabulary Scraper"),
-        TIMEZONEOFFSET               ("timezoneOffset",             true,  CrawlAttribute.INTEGER, "Time Zone of Crawl Start Agent");
+        TIMEZONEOFFSET               ("timezoneOffset",             true,  CrawlAttribute.INTEGER, "Time Zone of Crawl Start Agent"),
+        ADAPTIVE_RATE                ("adaptiveRate",               false, CrawlAttribute.BOOLEAN, "Adaptive crawl rate for each host");
         
         public static final int BOOLEAN = 0;
         public static final int INTEGER = 1;
@@ -673,6 +674,15 @@ public class CrawlProfile extends ConcurrentHashMap<String, String> implements M
         return this.snapshotsMustnotmatch;
     }    
 
+    /**
+     * @return true if the crawl rate of each host shall be adapted to its response times and errors
+     */
+    public boolean adaptiveRate() {
+        final String r = get(CrawlAttribute.ADAPTIVE_RATE.key);
+        if (r == null) return false;
+        return (r.equals(Boolean.TRUE.toString()));
+    }
+
     public int timezoneOffset() {
         final String timezoneOffset = get(CrawlAttribute.TIMEZONEOFFSET.key);
         if (timezoneOffset == null) return 0;
@@ -60,6 +60,7 @@ import net.yacy.crawler.HarvestProcess;
 import net.yacy.crawler.data.NoticedURL.StackType;
 import net.yacy.crawler.retrieval.Request;
 import net.yacy.crawler.retrieval.Response;
+import net.yacy.crawler.retrieval.StreamResponse;
 import net.yacy.crawler.robots.RobotsTxtEntry;
 import net.yacy.kelondro.workflow.WorkflowJob;
 import net.yacy.peers.DHTSelection;
@@ -79,6 +80,7 @@ public class CrawlQueues {
     private final Switchboard sb;
     private final Loader[] worker;
     private final ArrayBlockingQueue<Request> workerQueue;
+    private final AsyncLoader asyncLoader; // null if http urls are loaded by the loader threads
     private ArrayList<String> remoteCrawlProviderHashes;
 
     public  NoticedURL noticeURL;
@@ -91,6 +93,19 @@ public class CrawlQueues {
         this.worker = new Loader[maxWorkers];
         this.workerQueue = new ArrayBlockingQueue<Request>(200);
         this.remoteCrawlProviderHashes = null;
+        AsyncLoader asyncLoader = null;
+        if (sb.getConfigBool(SwitchboardConstants.CRAWLER_LOADER_ASYNC, false)) {
+            try {
+                asyncLoader = new AsyncLoader(sb,
+                        sb.getConfigInt(SwitchboardConstants.CRAWLER_LOADER_ASYNC_MAXACTIVE, 1000),
+                        sb.getConfigInt(SwitchboardConstants.CRAWLER_LOADER_ASYNC_MAXPERHOST, 2),
+                        sb.getConfigInt(SwitchboardConstants.CRAWLER_LOADER_ASYNC_PROCESSORS, 10));
+                log.config("Started asynchronous http loader");
+            } catch (final IOException e) {
+                log.warn("cannot start asynchronous http loader, using loader threads: " + e.getMessage(), e);
+            }
+        }
+        this.asyncLoader = asyncLoader;
 
         // start crawling management
         log.config("Starting Crawling Management");
@@ -142,6 +157,7 @@ public class CrawlQueues {
                 }
             }
         }
+        if (this.asyncLoader != null) this.asyncLoader.close();
         this.noticeURL.close();
         if (this.delegatedURL != null) this.delegatedURL.clear();
     }
@@ -182,10 +198,13 @@ public class CrawlQueues {
      */
     public int hostcount(final String host) {
         if (host == null || host.length() == 0) return 0;
-        int c = 0;
-        for (final DigestURL url: activeWorkerEntries().keySet()) {
-            if (host.equals(url.getHost())) {
-                c++;
+        int c = this.asyncLoader == null ? 0 : this.asyncLoader.hostcount(host);
+        synchronized (this.worker) {
+            for (final Loader w: this.worker) {
+                if (w != null) {
+                    Request r = w.loading();
+                    if (r != null && host.equals(r.url().getHost())) c++;
+                }
             }
         }
         return c;
@@ -243,6 +262,7 @@ public class CrawlQueues {
                     if (r != null) map.put(r.url(), r);
                 }
             }
+            if (this.asyncLoader != null) map.putAll(this.asyncLoader.activeEntries());
             return map;
         }
     }
@@ -366,6 +386,7 @@ public class CrawlQueues {
                     CrawlQueues.log.info(stats + ": urlEntry = null");
                 } else {
                     if (!activeWorkerEntries().containsKey(urlEntry.url())) {
+                        if (this.asyncLoader != null && (url.isHTTP() || url.isHTTPS()) && this.asyncLoader.load(urlEntry, profile)) return;
                         try {
                             ensureLoaderRunning();
                             this.workerQueue.put(urlEntry);
@@ -415,7 +436,7 @@ public class CrawlQueues {
         }
 
         // check again
-        if (this.workerQueue.remainingCapacity() == 0) {
+        if (loaderFull()) {
             return "too many workers active: " + this.workerQueue.size();
         }
 
@@ -440,7 +461,7 @@ public class CrawlQueues {
         }
 
         // check again
-        if (this.workerQueue.remainingCapacity() == 0) {
+        if (loaderFull()) {
             if (CrawlQueues.log.isFine()) {
                 CrawlQueues.log.fine("remoteCrawlLoaderJob: too many processes in loader queue, dismissed (" + "workerQueue=" + this.workerQueue.size() + "), httpClients = " + ConnectionInfo.getCount());
             }
@@ -685,6 +706,13 @@ public class CrawlQueues {
         }
     }
 
+    /**
+     * @return true if no more loads can be started, neither by the loader threads nor by the async loader
+     */
+    private boolean loaderFull() {
+        return this.workerQueue.remainingCapacity() == 0 && (this.asyncLoader == null || this.asyncLoader.available() == 0);
+    }
+
     private void ensureLoaderRunning() {
         // check if there is at least one loader available
         for (int i = 0; i < this.worker.length; i++) {
@@ -735,18 +763,27 @@ public class CrawlQueues {
                             // returns null if everything went fine, a fail reason string if a problem occurred
                             try {
                                 request.setStatus("loading", WorkflowJob.STATUS_RUNNING);
-                                final Response response = CrawlQueues.this.sb.loader.load(request, profile == null ? CacheStrategy.IFEXIST : profile.cacheStrategy(), BlacklistType.CRAWLER, profile.getAgent());
-                                if (response == null) {
-                                    request.setStatus("error", WorkflowJob.STATUS_FINISHED);
-                                    if (CrawlQueues.log.isFine()) {
-                                        CrawlQueues.log.fine("problem loading " + request.url().toString() + ": no content (possibly caused by cache policy)");
-                                    }
-                                    error = "no content (possibly caused by cache policy)";
-                                } else {
-                                    request.setStatus("loaded", WorkflowJob.STATUS_RUNNING);
-                                    final String storedFailMessage = CrawlQueues.this.sb.toIndexer(response);
+                                if ((request.url().isHTTP() || request.url().isHTTPS()) && CrawlQueues.this.sb.getConfigBool(SwitchboardConstants.CRAWLER_HTTP_STREAMING, false)) {
+                                    // open the resource and parse it while it is loaded
+                                    final StreamResponse streamResponse = CrawlQueues.this.sb.loader.openStreamResponse(request, profile == null ? CacheStrategy.IFEXIST : profile.cacheStrategy(), BlacklistType.CRAWLER, profile.getAgent());
+                                    request.setStatus("loading-parsing", WorkflowJob.STATUS_RUNNING);
+                                    final String storedFailMessage = CrawlQueues.this.sb.toIndexer(streamResponse);
                                     request.setStatus("enqueued-" + ((storedFailMessage == null) ? "ok" : "fail"), WorkflowJob.STATUS_FINISHED);
                                     error = (storedFailMessage == null) ? null : "not enqueued to indexer: " + storedFailMessage;
+                                } else {
+                                    final Response response = CrawlQueues.this.sb.loader.load(request, profile == null ? CacheStrategy.IFEXIST : profile.cacheStrategy(), BlacklistType.CRAWLER, profile.getAgent());
+                                    if (response == null) {
+                                        request.setStatus("error", WorkflowJob.STATUS_FINISHED);
+                                        if (CrawlQueues.log.isFine()) {
+                                            CrawlQueues.log.fine("problem loading " + request.url().toString() + ": no content (possibly caused by cache policy)");
+                                        }
+                                        error = "no content (possibly caused by cache policy)";
+                                    } else {
+                                        request.setStatus("loaded", WorkflowJob.STATUS_RUNNING);
+                                        final String storedFailMessage = CrawlQueues.this.sb.toIndexer(response);
+                                        request.setStatus("enqueued-" + ((storedFailMessage == null) ? "ok" : "fail"), WorkflowJob.STATUS_FINISHED);
+                                        error = (storedFailMessage == null) ? null : "not enqueued to indexer: " + storedFailMessage;
+                                    }
                                 }
                             } catch (final IOException e) {
                                 request.setStatus("error", WorkflowJob.STATUS_FINISHED);
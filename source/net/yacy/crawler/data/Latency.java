@@ -101,6 +101,76 @@ public class Latency {
         }
     }
 
+    /**
+     * adapt the crawl rate of a host after a successful load: the rate is increased additively as long as
+     * the response time stays healthy and decreased multiplicatively if the response time rises.
+     * This is only done for crawl profiles with an adaptive rate; it must be called before updateAfterLoad
+     * because the time is compared with the average response time of the host.
+     * @param url
+     * @param profile the crawl profile of the load; may be null
+     * @param time the time to load the file in milliseconds
+     */
+    public static void updateRate(final DigestURL url, final CrawlProfile profile, final long time) {
+        if (profile == null || !profile.adaptiveRate()) return;
+        final Host h = host(url);
+        if (h == null) return;
+        if (time > 500 && time > 2L * h.average()) h.slowdown(minRate(), System.currentTimeMillis()); else h.speedup(maxRate());
+    }
+
+    /**
+     * decrease the crawl rate of a host multiplicatively after an error which indicates
+     * an overloaded host, like a network failure, a 429 or a 5xx response.
+     * This is only done for crawl profiles with an adaptive rate.
+     * @param url
+     * @param profile the crawl profile of the load; may be null
+     */
+    public static void slowdown(final DigestURL url, final CrawlProfile profile) {
+        if (profile == null || !profile.adaptiveRate()) return;
+        final Host h = host(url);
+        if (h != null) h.slowdown(minRate(), System.currentTimeMillis());
+    }
+
+    /**
+     * decrease the crawl rate of a host if the http status code indicates an overloaded host
+     * @param url
+     * @param profile the crawl profile of the load; may be null
+     * @param statusCode the http status code of the response
+     */
+    public static void updateStatus(final DigestURL url, final CrawlProfile profile, final int statusCode) {
+        if (statusCode == 429 || statusCode >= 500) slowdown(url, profile);
+    }
+
+    /**
+     * apply the adaptive crawl rate of the host to a delay
+     * @param url
+     * @param profile the crawl profile of the load; may be null
+     * @param delay a delay in milliseconds for the standard crawl rate
+     * @return the delay for the current crawl rate of the host, or the given delay if the profile has no adaptive rate
+     */
+    public static int adaptedDelay(final DigestURL url, final CrawlProfile profile, final int delay) {
+        final Host h = host(url);
+        return h == null ? delay : adapt(h, profile, delay);
+    }
+
+    private static int adapt(final Host host, final CrawlProfile profile, final int delay) {
+        if (profile == null || !profile.adaptiveRate()) return delay;
+        return host.adapt(delay);
+    }
+
+    private static int sameHostLimit(final Host host, final CrawlProfile profile) {
+        final int max = Switchboard.getSwitchboard().getConfigInt(SwitchboardConstants.CRAWLER_MAX_SAME_HOST_IN_QUEUE, 20);
+        if (profile == null || !profile.adaptiveRate()) return max;
+        return Math.max(1, (int) (max * host.rate()));
+    }
+
+    private static float minRate() {
+        return Switchboard.getSwitchboard().getConfigFloat(SwitchboardConstants.CRAWLER_ADAPTIVE_RATE_MIN, 0.125f);
+    }
+
+    private static float maxRate() {
+        return Switchboard.getSwitchboard().getConfigFloat(SwitchboardConstants.CRAWLER_ADAPTIVE_RATE_MAX, 4.0f);
+    }
+
     private static Host host(final DigestURL url) {
         final String host = url.getHost();
         if (host == null) return null;
@@ -138,7 +208,8 @@ public class Latency {
 
     /**
      * guess a minimum waiting time
-     * the time is not correct, because if the domain was not checked yet by the robots.txt delay value, it is too low
+     * the time is not correct, because if the domain was not checked yet by the robots.txt delay value, it is too low.
+     * The crawl profile is not known here, therefore the standard crawl rate is used.
      * @param hostname
      * @param hosthash
      * @param robots
@@ -164,7 +235,7 @@ public class Latency {
         waiting = Math.max(waiting, (int) (host.average() * Switchboard.getSwitchboard().getConfigFloat(SwitchboardConstants.CRAWLER_LATENCY_FACTOR, 0.5f)));
 
         // if the number of same hosts as in the url in the loading queue is greater than MaxSameHostInQueue, then increase waiting
-        if (Switchboard.getSwitchboard().crawlQueues.hostcount(hostname) > Switchboard.getSwitchboard().getConfigInt(SwitchboardConstants.CRAWLER_MAX_SAME_HOST_IN_QUEUE, 20)) waiting += 3000;
+        if (Switchboard.getSwitchboard().crawlQueues.hostcount(hostname) > sameHostLimit(host, null)) waiting += 3000;
         
         // the time since last access to the domain is the basis of the remaining calculation
         final int timeSinceLastAccess = (int) (System.currentTimeMillis() - host.lastacc());
@@ -187,10 +258,12 @@ public class Latency {
      * - the times that the domain was accessed (flux factor)
      * - the response latency of the domain
      * - and a given minimum access time as given in robots.txt
+     * - the adaptive crawl rate of the domain, if the crawl profile has an adaptive rate
      * @param agent
+     * @param profile the crawl profile of the load; may be null
      * @return the remaining waiting time in milliseconds. can be negative to reflect the due-time after a possible nex loading time
      */
-    public static int waitingRemaining(final DigestURL url, final RobotsTxt robots, final ClientIdentification.Agent agent) {
+    public static int waitingRemaining(final DigestURL url, final RobotsTxt robots, final ClientIdentification.Agent agent, final CrawlProfile profile) {
 
         // first check if the domain was _ever_ accessed before
         final Host host = host(url);
@@ -205,9 +278,12 @@ public class Latency {
 
         // use the access latency as rule how fast we can access the server
         waiting = Math.max(waiting, (int) (host.average() * Switchboard.getSwitchboard().getConfigFloat(SwitchboardConstants.CRAWLER_LATENCY_FACTOR, 0.5f)));
+
+        // apply the adaptive crawl rate of the host
+        waiting = adapt(host, profile, waiting);
         
         // if the number of same hosts as in the url in the loading queue is greater than MaxSameHostInQueue, then increase waiting
-        if (Switchboard.getSwitchboard().crawlQueues.hostcount(url.getHost()) > Switchboard.getSwitchboard().getConfigInt(SwitchboardConstants.CRAWLER_MAX_SAME_HOST_IN_QUEUE, 20)) waiting += 3000;
+        if (Switchboard.getSwitchboard().crawlQueues.hostcount(url.getHost()) > sameHostLimit(host, profile)) waiting += 3000;
 
         // the time since last access to the domain is the basis of the remaining calculation
         final int timeSinceLastAccess = (int) (System.currentTimeMillis() - host.lastacc());
@@ -220,7 +296,7 @@ public class Latency {
         return Math.min(60000, waiting) - timeSinceLastAccess;
     }
     
-    public static String waitingRemainingExplain(final DigestURL url, final RobotsTxt robots, final ClientIdentification.Agent agent) {
+    public static String waitingRemainingExplain(final DigestURL url, final RobotsTxt robots, final ClientIdentification.Agent agent, final CrawlProfile profile) {
 
         // first check if the domain was _ever_ accessed before
         final Host host = host(url);
@@ -246,10 +322,14 @@ public class Latency {
         // consider so many external accesses
         s.append(", host.average = ").append(host.average());
         waiting = Math.max(waiting, (int) (host.average() * Switchboard.getSwitchboard().getConfigFloat(SwitchboardConstants.CRAWLER_LATENCY_FACTOR, 0.5f)));
+
+        // apply the adaptive crawl rate of the host
+        if (profile != null && profile.adaptiveRate()) s.append(", host.rate = ").append(host.rate());
+        waiting = adapt(host, profile, waiting);
         
         // if the number of same hosts as in the url in the loading queue is greater than MaxSameHostInQueue, then increase waiting
         int hostcount = Switchboard.getSwitchboard().crawlQueues.hostcount(url.getHost());
-        if (hostcount > Switchboard.getSwitchboard().getConfigInt(SwitchboardConstants.CRAWLER_MAX_SAME_HOST_IN_QUEUE, 20)) {
+        if (hostcount > sameHostLimit(host, profile)) {
             s.append(", hostcount = ").append(hostcount);
             waiting += 5000;
         }
@@ -282,7 +362,7 @@ public class Latency {
         long sleeptime = (
             profileEntry.cacheStrategy() == CacheStrategy.CACHEONLY ||
             (profileEntry.cacheStrategy() == CacheStrategy.IFEXIST && Cache.has(crawlURL.hash()))
-            ) ? Integer.MIN_VALUE : waitingRemaining(crawlURL, robots, profileEntry.getAgent()); // this uses the robots.txt database and may cause a loading of robots.txt from the server
+            ) ? Integer.MIN_VALUE : waitingRemaining(crawlURL, robots, profileEntry.getAgent(), profileEntry); // this uses the robots.txt database and may cause a loading of robots.txt from the server
         return sleeptime;
     }
     
@@ -301,17 +381,41 @@ public class Latency {
     }
     
     public static final class Host {
+        private static final float RATE_INCREMENT = 0.05f; // additive increase of the crawl rate after a healthy load
         private AtomicLong timeacc;
         private AtomicLong lastacc;
         private AtomicInteger count;
         private final String host;
         private long robotsMinDelay;
-        private Host(final String host, final long time, long robotsMinDelay) {
+        private volatile float rate; // the crawl rate relative to the standard rate; the delay between two accesses is divided by this
+        private long lastSlowdown;
+        Host(final String host, final long time, long robotsMinDelay) {
             this.host = host;
             this.timeacc = new AtomicLong(time);
             this.count = new AtomicInteger(1);
             this.lastacc = new AtomicLong(System.currentTimeMillis());
             this.robotsMinDelay = robotsMinDelay;
+            this.rate = 1.0f;
+            this.lastSlowdown = 0;
+        }
+        synchronized void speedup(final float max) {
+            if (this.rate < max) this.rate = Math.min(max, this.rate + RATE_INCREMENT);
+        }
+        synchronized void slowdown(final float min, final long now) {
+            // the rate is halved only once in a time of the response latency because several loads
+            // which are in flight at the same time report the same overload
+            if (now - this.lastSlowdown < Math.max(1000, this.average())) return;
+            this.lastSlowdown = now;
+            this.rate = Math.max(min, this.rate / 2.0f);
+        }
+        int adapt(final int delay) {
+            return (int) (delay / this.rate);
+        }
+        /**
+         * @return the adaptive crawl rate of the host relative to the standard rate; 1.0 if not adapted
+         */
+        public float rate() {
+            return this.rate;
         }
         private void update(final long time) {
             if (this.count.get() > 100) {
@@ -25,9 +25,14 @@
 package net.yacy.crawler.retrieval;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.SocketException;
 
+import org.apache.http.NoHttpResponseException;
 import org.apache.http.StatusLine;
 
 import net.yacy.cora.document.id.DigestURL;
@@ -62,6 +67,10 @@ public final class HTTPLoader {
      * The socket timeout that should be used
      */
     private final int socketTimeout;
+    /**
+     * Keep the connections to crawled hosts alive for the next load
+     */
+    private final boolean keepAlive;
     private final Switchboard sb;
     private final ConcurrentLog log;
 
@@ -71,17 +80,64 @@ public final class HTTPLoader {
 
         // refreshing timeout value
         this.socketTimeout = (int) sb.getConfigLong("crawler.clientTimeout", 30000);
+
+        // connection pool settings for the crawler
+        this.keepAlive = sb.getConfigBool("crawler.http.keepAlive", true);
+        HTTPClient.setMaxConnectionsPerHost(sb.getConfigInt("crawler.http.maxConnectionsPerHost", 0));
+        HTTPClient.setKeepAliveTimeout(sb.getConfigLong("crawler.http.keepAliveTimeout", 25000));
     }
 
     public Response load(final Request entry, CrawlProfile profile, final int maxFileSize, final BlacklistType blacklistType, final ClientIdentification.Agent agent) throws IOException {
         // load fulltext of html page
         Latency.updateBeforeLoad(entry.url());
         final long start = System.currentTimeMillis();
-        final Response doc = load(entry, profile, DEFAULT_CRAWLING_RETRY_COUNT, maxFileSize, blacklistType, agent);
-        Latency.updateAfterLoad(entry.url(), System.currentTimeMillis() - start);
+        final Response doc;
+        try {
+            doc = load(entry, profile, DEFAULT_CRAWLING_RETRY_COUNT, maxFileSize, blacklistType, agent);
+        } catch (final IOException e) {
+            if (isNetworkFailure(e)) Latency.slowdown(entry.url(), profile);
+            throw e;
+        }
+        final long time = System.currentTimeMillis() - start;
+        Latency.updateRate(entry.url(), profile, time);
+        Latency.updateAfterLoad(entry.url(), time);
         return doc;
     }
-    
+
+    /**
+     * @return true if the exception or one of its causes shows that the host did not answer in time or dropped the connection
+     */
+    private static boolean isNetworkFailure(final IOException e) {
+        Throwable cause = e;
+        while (cause != null) {
+            if (cause instanceof InterruptedIOException || cause instanceof SocketException || cause instanceof NoHttpResponseException) return true;
+            cause = cause.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * Open a requested HTTP resource for parsing while it is loaded. Like load(), this follows redirects
+     * and updates the host latency, which is the time until the response header is received here.
+     * @return a response with an open content stream. Don't forget to close it.
+     * @throws IOException when an error occured
+     */
+    public StreamResponse openStreamResponse(final Request entry, CrawlProfile profile, final int maxFileSize, final BlacklistType blacklistType, final ClientIdentification.Agent agent) throws IOException {
+        Latency.updateBeforeLoad(entry.url());
+        final long start = System.currentTimeMillis();
+        final StreamResponse response;
+        try {
+            response = openInputStreamResponse(entry, profile, DEFAULT_CRAWLING_RETRY_COUNT, maxFileSize, blacklistType, agent);
+        } catch (final IOException e) {
+            if (isNetworkFailure(e)) Latency.slowdown(entry.url(), profile);
+            throw e;
+        }
+        final long time = System.currentTimeMillis() - start;
+        Latency.updateRate(entry.url(), profile, time);
+        Latency.updateAfterLoad(entry.url(), time);
+        return response;
+    }
+
     /**
      * Open input stream on a requested HTTP resource. When resource is small, fully load it and returns a ByteArrayInputStream instance.
      * @param request
@@ -96,6 +152,26 @@ public final class HTTPLoader {
 	public InputStream openInputStream(final Request request, CrawlProfile profile, final int retryCount,
 			final int maxFileSize, final BlacklistType blacklistType, final ClientIdentification.Agent agent)
 					throws IOException {
+		return openInputStreamResponse(request, profile, retryCount, maxFileSize, blacklistType, agent).getContentStream();
+	}
+
+    /**
+     * Open a requested HTTP resource. When resource is small and shall be cached, it is fully loaded.
+     * Otherwise the content is left on the connection and can be read from the stream of the returned response.
+     * Then the content is written to the cache when the stream was read to the end, if caching is wanted
+     * and the content is not too large.
+     * @param request
+     * @param profile crawl profile
+     * @param retryCount remaining redirect retries count
+     * @param maxFileSize max file size to load. -1 means no limit.
+     * @param blacklistType blacklist type to use
+     * @param agent agent identifier
+     * @return a response with an open content stream. Don't forget to close it.
+     * @throws IOException when an error occured
+     */
+	public StreamResponse openInputStreamResponse(final Request request, CrawlProfile profile, final int retryCount,
+			final int maxFileSize, final BlacklistType blacklistType, final ClientIdentification.Agent agent)
+					throws IOException {
 		if (retryCount < 0) {
 			this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile,
 					FailCategory.TEMPORARY_NETWORK_FAILURE, "retry counter exceeded", -1);
@@ -140,6 +216,7 @@ public final class HTTPLoader {
 										// ourselves, so we don't index pages
 										// twice
 		client.setTimout(this.socketTimeout);
+		client.setKeepAlive(this.keepAlive);
 		client.setHeader(requestHeader.entrySet());
 
 		// send request
@@ -148,12 +225,13 @@ public final class HTTPLoader {
 		final int statusCode = statusline.getStatusCode();
 		final ResponseHeader responseHeader = new ResponseHeader(statusCode, client.getHttpResponse().getAllHeaders());
 		String requestURLString = request.url().toNormalform(true);
+		Latency.updateStatus(url, profile, statusCode);
 
 		// check redirection
 		if (statusCode > 299 && statusCode < 310) {
 			client.finish();
 			
-			final DigestURL redirectionUrl = extractRedirectURL(request, profile, url, statusline,
+			final DigestURL redirectionUrl = extractRedirectURL(request, profile, url, statusline.toString(), statusCode,
 					responseHeader, requestURLString);
 
 			if (this.sb.getConfigBool(SwitchboardConstants.CRAWLER_FOLLOW_REDIRECTS, true)) {
@@ -181,7 +259,7 @@ public final class HTTPLoader {
 
 				// retry crawling with new url
 				request.redirectURL(redirectionUrl);
-				return openInputStream(request, profile, retryCount - 1, maxFileSize, blacklistType, agent);
+				return openInputStreamResponse(request, profile, retryCount - 1, maxFileSize, blacklistType, agent);
 			}
 			// we don't want to follow redirects
 			this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile,
@@ -191,11 +269,21 @@ public final class HTTPLoader {
 		} else if (statusCode == 200 || statusCode == 203) {
 			// the transfer is ok
 
+			long contentLength = client.getHttpResponse().getEntity().getContentLength();
+			final Response response = new Response(request, requestHeader, responseHeader, profile, false, null);
+			// the same cache policy as in LoaderDispatcher.loadInternal()
+			final boolean cache = profile != null && profile.storeHTCache() && response.shallStoreCacheForCrawler() == null;
+			if (maxFileSize >= 0 && contentLength > maxFileSize) {
+				client.finish();
+				this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile,
+						FailCategory.FINAL_PROCESS_CONTEXT, "file size limit exceeded", statusCode);
+				throw new IOException("REJECTED URL " + request.url() + " because file size '" + contentLength
+						+ "' exceeds max filesize limit of " + maxFileSize + " bytes. (GET)$");
+			}
 			/*
-			 * When content is not large (less than 1MB), we have better cache it if cache is enabled and url is not local
+			 * When content of known size is small enough to be cached, we load it completely and cache it
 			 */
-			long contentLength = client.getHttpResponse().getEntity().getContentLength();
-			if (profile != null && profile.storeHTCache() && contentLength > 0 && contentLength < (Response.CRAWLER_MAX_SIZE_TO_CACHE) && !url.isLocal()) {
+			if (cache && contentLength > 0 && contentLength <= Response.CRAWLER_MAX_SIZE_TO_CACHE) {
 				byte[] content = null;
 				try {
 					content = HTTPClient.getByteArray(client.getHttpResponse().getEntity(), maxFileSize);
@@ -205,15 +293,22 @@ public final class HTTPLoader {
 				} finally {
 					client.finish();
 				}
-
-				return new ByteArrayInputStream(content);
+				if (content == null) {
+					this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile,
+							FailCategory.TEMPORARY_NETWORK_FAILURE, "no response body", statusCode);
+					throw new IOException("REJECTED EMPTY RESPONSE BODY '" + statusline + "' for URL '" + requestURLString + "'$");
+				}
+				ByteCount.addAccountCount(ByteCount.CRAWLER, content.length);
+				response.setContent(content);
+				return new StreamResponse(response, new ByteArrayInputStream(content));
 			}
 			/*
 			 * Returns a HTTPInputStream delegating to
 			 * client.getContentstream(). Close method will ensure client is
-			 * properly closed.
+			 * properly closed. The content is copied to the cache while it is read,
+			 * if caching is wanted.
 			 */
-			return new HTTPInputStream(client);
+			return new StreamResponse(response, new ContentStream(new HTTPInputStream(client), url, responseHeader, maxFileSize, cache));
 		} else {
 			client.finish();
 			// if the response has not the right response type then reject file
@@ -229,8 +324,8 @@ public final class HTTPLoader {
 	 * @return redirect URL
 	 * @throws IOException when an error occured
 	 */
-	private DigestURL extractRedirectURL(final Request request, CrawlProfile profile, DigestURL url,
-			final StatusLine statusline, final ResponseHeader responseHeader, String requestURLString)
+	public DigestURL extractRedirectURL(final Request request, CrawlProfile profile, DigestURL url,
+			final String statusline, final int statusCode, final ResponseHeader responseHeader, String requestURLString)
 					throws IOException {
 		// read redirection URL
 		String redirectionUrlString = responseHeader.get(HeaderFramework.LOCATION);
@@ -239,7 +334,7 @@ public final class HTTPLoader {
 		if (redirectionUrlString.isEmpty()) {
 			this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile,
 					FailCategory.TEMPORARY_NETWORK_FAILURE,
-					"no redirection url provided, field '" + HeaderFramework.LOCATION + "' is empty", statusline.getStatusCode());
+					"no redirection url provided, field '" + HeaderFramework.LOCATION + "' is empty", statusCode);
 			throw new IOException("REJECTED EMTPY REDIRECTION '" + statusline
 					+ "' for URL '" + requestURLString + "'$");
 		}
@@ -256,7 +351,7 @@ public final class HTTPLoader {
 
 		if (this.sb.getConfigBool(SwitchboardConstants.CRAWLER_RECORD_REDIRECTS, true)) {
 			this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), profile,
-					FailCategory.FINAL_REDIRECT_RULE, "redirect to " + redirectionUrlString, statusline.getStatusCode());
+					FailCategory.FINAL_REDIRECT_RULE, "redirect to " + redirectionUrlString, statusCode);
 		}
 		return redirectionUrl;
 	}
@@ -268,7 +363,7 @@ public final class HTTPLoader {
 	 * @return a request header
 	 * @throws IOException when an error occured
 	 */
-	private RequestHeader createRequestheader(final Request request, final ClientIdentification.Agent agent)
+	public RequestHeader createRequestheader(final Request request, final ClientIdentification.Agent agent)
 			throws IOException {
 		final RequestHeader requestHeader = new RequestHeader();
 		requestHeader.put(HeaderFramework.USER_AGENT, agent.userAgent);
@@ -331,6 +426,7 @@ public final class HTTPLoader {
         final HTTPClient client = new HTTPClient(agent);
         client.setRedirecting(false); // we want to handle redirection ourselves, so we don't index pages twice
         client.setTimout(this.socketTimeout);
+        client.setKeepAlive(this.keepAlive);
         client.setHeader(requestHeader.entrySet());
 
         // send request
@@ -338,11 +434,12 @@ public final class HTTPLoader {
         final int statusCode = client.getHttpResponse().getStatusLine().getStatusCode();
     	final ResponseHeader responseHeader = new ResponseHeader(statusCode, client.getHttpResponse().getAllHeaders());
         String requestURLString = request.url().toNormalform(true);
+        Latency.updateStatus(url, profile, statusCode);
 
         // check redirection
     	if (statusCode > 299 && statusCode < 310) {
 
-    	    final DigestURL redirectionUrl = extractRedirectURL(request, profile, url, client.getHttpResponse().getStatusLine(),
+    	    final DigestURL redirectionUrl = extractRedirectURL(request, profile, url, client.getHttpResponse().getStatusLine().toString(), statusCode,
 					responseHeader, requestURLString);
 
     	    if (this.sb.getConfigBool(SwitchboardConstants.CRAWLER_FOLLOW_REDIRECTS, true)) {
@@ -494,4 +591,94 @@ public final class HTTPLoader {
         return response;
     }
 
+    /**
+     * The content stream of a response which is handed over before it is loaded completely.
+     * It enforces the maximum file size, counts the loaded bytes and keeps a copy of the content
+     * for the cache, if wanted. The copy is written to the cache on close if the stream was read to the end.
+     */
+    private class ContentStream extends FilterInputStream {
+
+        private final DigestURL url;
+        private final ResponseHeader responseHeader;
+        private final int maxFileSize;
+        private ByteArrayOutputStream cacheCopy;
+        private long count;
+        private boolean eof;
+        private boolean closed;
+
+        private ContentStream(final InputStream in, final DigestURL url, final ResponseHeader responseHeader, final int maxFileSize, final boolean cache) {
+            super(in);
+            this.url = url;
+            this.responseHeader = responseHeader;
+            this.maxFileSize = maxFileSize;
+            this.cacheCopy = cache ? new ByteArrayOutputStream(4096) : null;
+            this.count = 0;
+            this.eof = false;
+            this.closed = false;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int b = super.read();
+            if (b < 0) {
+                this.eof = true;
+            } else {
+                count(1);
+                if (this.cacheCopy != null) this.cacheCopy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int n = super.read(b, off, len);
+            if (n < 0) {
+                this.eof = true;
+            } else {
+                count(n);
+                if (this.cacheCopy != null) this.cacheCopy.write(b, off, n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(final long n) throws IOException {
+            // skipped content is not in the copy
+            this.cacheCopy = null;
+            final long skipped = super.skip(n);
+            count(skipped);
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        private void count(final long n) throws IOException {
+            this.count += n;
+            if (this.maxFileSize >= 0 && this.count > this.maxFileSize) {
+                throw new IOException("Download exceeded maximum value of " + this.maxFileSize + " bytes");
+            }
+            // content which is too large for the cache is not copied
+            if (this.cacheCopy != null && this.count > Response.CRAWLER_MAX_SIZE_TO_CACHE) this.cacheCopy = null;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.closed) return;
+            this.closed = true;
+            super.close();
+            ByteCount.addAccountCount(ByteCount.CRAWLER, this.count);
+            if (this.eof && this.cacheCopy != null) {
+                try {
+                    Cache.store(this.url, this.responseHeader, this.cacheCopy.toByteArray());
+                } catch (final IOException e) {
+                    HTTPLoader.this.log.warn("cannot write " + this.url + " to Cache (3): " + e.getMessage(), e);
+                }
+            }
+            this.cacheCopy = null;
+        }
+    }
+
 }
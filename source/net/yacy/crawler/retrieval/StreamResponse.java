@@ -0,0 +1,93 @@
+// StreamResponse.java
+// -----------------------
+// (C) 2016 by the YaCy contributors
+// first published 2016 on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.crawler.retrieval;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * A response whose content is not loaded yet but can be read from an open stream.
+ * This makes it possible to parse a document while it is downloaded.
+ * If the content was already loaded (i.e. from the cache), the stream reads the content of the response.
+ */
+public class StreamResponse {
+
+    /** the response with request and response header; the content may be null */
+    private final Response response;
+
+    /** the open content stream */
+    private final InputStream contentStream;
+
+    /**
+     * @param response the response; its content is null if it must be read from the stream
+     * @param contentStream an open stream on the content; it must be closed by the consumer
+     */
+    public StreamResponse(final Response response, final InputStream contentStream) {
+        this.response = response;
+        this.contentStream = contentStream;
+    }
+
+    /**
+     * @return the response; getContent() is null if the content has not been read yet
+     */
+    public Response getResponse() {
+        return this.response;
+    }
+
+    /**
+     * @return the open content stream. Don't forget to close it.
+     */
+    public InputStream getContentStream() {
+        return this.contentStream;
+    }
+
+    /**
+     * @return true if the content is already in the response and the stream just reads that
+     */
+    public boolean isLoaded() {
+        return this.response.getContent() != null;
+    }
+
+    /**
+     * read the remaining stream into the content of the response and close the stream
+     * @return the response with its content
+     * @throws IOException when the stream could not be read
+     */
+    public Response readResponse() throws IOException {
+        if (this.response.getContent() == null) {
+            this.response.setContent(FileUtils.read(this.contentStream)); // closes the stream
+        } else {
+            close();
+        }
+        return this.response;
+    }
+
+    /**
+     * close the content stream
+     */
+    public void close() {
+        try {
+            this.contentStream.close();
+        } catch (final IOException e) {
+        }
+    }
+}
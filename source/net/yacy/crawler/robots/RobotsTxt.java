@@ -43,6 +43,7 @@ import net.yacy.cora.document.id.MultiProtocolURL;
 import net.yacy.cora.federate.yacy.CacheStrategy;
 import net.yacy.cora.protocol.ClientIdentification;
 import net.yacy.cora.protocol.HeaderFramework;
+import net.yacy.cora.storage.ConcurrentARC;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.crawler.retrieval.Request;
@@ -60,17 +61,44 @@ public class RobotsTxt {
     protected static final String ROBOTS_DB_PATH_SEPARATOR = ";";
     protected static final Pattern ROBOTS_DB_PATH_SEPARATOR_MATCHER = Pattern.compile(ROBOTS_DB_PATH_SEPARATOR);
 
+    /**
+     * number of robots entries which are cached in memory
+     */
+    public static int cacheSize = 10000;
+    /**
+     * time after which a cached entry is read again from the robots table
+     */
+    private static final long cacheTTL = 60L * 60L * 1000L;
+    /**
+     * time after which the information that a host has no entry in the robots table is forgotten
+     */
+    private static final long negativeCacheTTL = 60L * 1000L;
+
     private final ConcurrentMap<String, DomSync> syncObjects;
     //private static final HashSet<String> loadedRobots = new HashSet<String>(); // only for debugging
     private final WorkTables tables;
     private final LoaderDispatcher loader;
+    private final ConcurrentARC<String, CachedEntry> cache;
 
     private static class DomSync {
     	private DomSync() {}
     }
 
+    /**
+     * a robots entry in the memory cache; the entry is null if the robots table has no entry for the host
+     */
+    private static class CachedEntry {
+        private final RobotsTxtEntry entry;
+        private final long expires;
+        private CachedEntry(final RobotsTxtEntry entry) {
+            this.entry = entry;
+            this.expires = System.currentTimeMillis() + (entry == null ? negativeCacheTTL : cacheTTL);
+        }
+    }
+
     public RobotsTxt(final WorkTables worktables, LoaderDispatcher loader) {
         this.syncObjects = new ConcurrentHashMap<String, DomSync>();
+        this.cache = new ConcurrentARC<String, CachedEntry>(cacheSize, Math.max(1, Runtime.getRuntime().availableProcessors()));
         this.tables = worktables;
         this.loader = loader;
         try {
@@ -88,6 +116,7 @@ public class RobotsTxt {
         log.info("clearing robots table");
         this.tables.getHeap(WorkTables.TABLE_ROBOTS_NAME).clear();
         this.syncObjects.clear();
+        this.cache.clear();
     }
 
     public int size() throws IOException {
@@ -100,26 +129,41 @@ public class RobotsTxt {
         return getEntry(getHostPort(theURL), agent, true);
     }
 
+    /**
+     * get a robots entry from the memory cache or the robots table; the result is put into the cache
+     * @param urlHostPort
+     * @param robotsTable
+     * @return the entry or null if the table has no entry for the host
+     */
+    private RobotsTxtEntry lookup(final String urlHostPort, final BEncodedHeap robotsTable) {
+        final CachedEntry cached = this.cache.get(urlHostPort);
+        if (cached != null && cached.expires > System.currentTimeMillis()) return cached.entry;
+        if (robotsTable == null) return null;
+        Map<String, byte[]> record;
+        try {
+            record = robotsTable.get(robotsTable.encodedKey(urlHostPort));
+        } catch (final SpaceExceededException e) {
+            log.warn("memory exhausted", e);
+            return null;
+        } catch (final IOException e) {
+            log.warn("cannot get robotstxt from table", e);
+            return null;
+        }
+        final RobotsTxtEntry entry = record == null ? null : new RobotsTxtEntry(urlHostPort, record);
+        this.cache.put(urlHostPort, new CachedEntry(entry));
+        return entry;
+    }
+
     public RobotsTxtEntry getEntry(final String urlHostPort, final ClientIdentification.Agent agent, final boolean fetchOnlineIfNotAvailableOrNotFresh) {
             // this method will always return a non-null value
         RobotsTxtEntry robotsTxt4Host = null;
-        Map<String, byte[]> record;
         BEncodedHeap robotsTable = null;
         try {
             robotsTable = this.tables.getHeap(WorkTables.TABLE_ROBOTS_NAME);
         } catch (final IOException e1) {
             log.severe("tables not available", e1);
         }
-        try {
-            record = robotsTable.get(robotsTable.encodedKey(urlHostPort));
-        } catch (final SpaceExceededException e) {
-            log.warn("memory exhausted", e);
-            record = null;
-        } catch (final IOException e) {
-            log.warn("cannot get robotstxt from table", e);
-            record = null;
-        }
-        if (record != null) robotsTxt4Host = new RobotsTxtEntry(urlHostPort, record);
+        robotsTxt4Host = lookup(urlHostPort, robotsTable);
 
         if (fetchOnlineIfNotAvailableOrNotFresh && (
              robotsTxt4Host == null ||
@@ -127,28 +171,15 @@ public class RobotsTxt {
              System.currentTimeMillis() - robotsTxt4Host.getLoadedDate().getTime() > 7*24*60*60*1000
            )) {
 
-            // make or get a synchronization object
-        	DomSync syncObj = this.syncObjects.get(urlHostPort);
-            if (syncObj == null) {
-                syncObj = new DomSync();
-                this.syncObjects.put(urlHostPort, syncObj);
-            }
+            // make or get a synchronization object; only one thread loads the robots.txt of a host
+            final DomSync syncObj = syncObject(urlHostPort);
 
             // we can now synchronize for each host separately
             synchronized (syncObj) {
                 // if we have not found any data or the data is older than 7 days, we need to load it from the remote server
-                // check the robots table again for all threads that come here because they waited for another one
+                // check the robots cache again for all threads that come here because they waited for another one
                 // to complete a download
-                try {
-                    record = robotsTable.get(robotsTable.encodedKey(urlHostPort));
-                } catch (final SpaceExceededException e) {
-                    log.warn("memory exhausted", e);
-                    record = null;
-                } catch (final IOException e) {
-                    log.warn("cannot get robotstxt from table", e);
-                    record = null;
-                }
-                if (record != null) robotsTxt4Host = new RobotsTxtEntry(urlHostPort, record);
+                robotsTxt4Host = lookup(urlHostPort, robotsTable);
                 if (robotsTxt4Host != null &&
                     robotsTxt4Host.getLoadedDate() != null &&
                     System.currentTimeMillis() - robotsTxt4Host.getLoadedDate().getTime() <= 1*24*60*60*1000) {
@@ -171,16 +202,27 @@ public class RobotsTxt {
                 }
 
                 if (response == null) {
-                    processOldEntry(robotsTxt4Host, robotsURL, robotsTable);
+                    robotsTxt4Host = processOldEntry(robotsTxt4Host, robotsURL, robotsTable);
                 } else {
-                    processNewEntry(robotsURL, response, agent.robotIDs);
+                    robotsTxt4Host = processNewEntry(robotsURL, response, agent.robotIDs);
                 }
             }
+            this.syncObjects.remove(urlHostPort, syncObj);
         }
 
         return robotsTxt4Host;
     }
-    
+
+    private DomSync syncObject(final String urlHostPort) {
+        DomSync syncObj = this.syncObjects.get(urlHostPort);
+        if (syncObj == null) {
+            syncObj = new DomSync();
+            final DomSync old = this.syncObjects.putIfAbsent(urlHostPort, syncObj);
+            if (old != null) syncObj = old;
+        }
+        return syncObj;
+    }
+
     public void delete(final MultiProtocolURL theURL) {
         final String urlHostPort = getHostPort(theURL);
         if (urlHostPort == null) return;
@@ -196,6 +238,7 @@ public class RobotsTxt {
             robotsTable.delete(robotsTable.encodedKey(urlHostPort));
         } catch (IOException e) {
         }
+        this.cache.remove(urlHostPort);
     }
     
     public void ensureExist(final MultiProtocolURL theURL, final ClientIdentification.Agent agent, boolean concurrent) {
@@ -209,19 +252,17 @@ public class RobotsTxt {
             log.severe("tables not available", e1);
             return;
         }
+        final CachedEntry cached = this.cache.get(urlHostPort);
+        if (cached != null && cached.entry != null) return;
         if (robotsTable != null && robotsTable.containsKey(robotsTable.encodedKey(urlHostPort))) return;
         Thread t = new Thread() {
             @Override
             public void run(){
                 this.setName("Robots.txt:ensureExist(" + theURL.toNormalform(true) + ")");
                 // make or get a synchronization object
-                DomSync syncObj = RobotsTxt.this.syncObjects.get(urlHostPort);
-                if (syncObj == null) {
-                    syncObj = new DomSync();
-                    RobotsTxt.this.syncObjects.put(urlHostPort, syncObj);
-                }
+                final DomSync syncObj = syncObject(urlHostPort);
                 // we can now synchronize for each host separately
-                synchronized (syncObj) {
+                try {synchronized (syncObj) {
                     if (robotsTable.containsKey(robotsTable.encodedKey(urlHostPort))) return;
 
                     // generating the proper url to download the robots txt
@@ -243,13 +284,15 @@ public class RobotsTxt {
                     } else {
                         processNewEntry(robotsURL, response, agent.robotIDs);
                     }
+                }} finally {
+                    RobotsTxt.this.syncObjects.remove(urlHostPort, syncObj);
                 }
             }
         };
         if (concurrent) t.start(); else t.run();
     }
 
-    private void processOldEntry(RobotsTxtEntry robotsTxt4Host, DigestURL robotsURL, BEncodedHeap robotsTable) {
+    private RobotsTxtEntry processOldEntry(RobotsTxtEntry robotsTxt4Host, DigestURL robotsURL, BEncodedHeap robotsTable) {
         // no robots.txt available, make an entry to prevent that the robots loading is done twice
         if (robotsTxt4Host == null) {
             // generate artificial entry
@@ -275,9 +318,10 @@ public class RobotsTxt {
             try {clear();} catch (final IOException e) {}
             addEntry(robotsTxt4Host);
         }
+        return robotsTxt4Host;
     }
     
-    private void processNewEntry(DigestURL robotsURL, Response response, final String[] thisAgents) {
+    private RobotsTxtEntry processNewEntry(DigestURL robotsURL, Response response, final String[] thisAgents) {
         final byte[] robotsTxt = response.getContent();
         //Log.logInfo("RobotsTxt", "robots of " + robotsURL.toNormalform(true, true) + ":\n" + ((robotsTxt == null) ? "null" : UTF8.String(robotsTxt))); // debug TODO remove
         RobotsTxtParser parserResult;
@@ -307,6 +351,7 @@ public class RobotsTxt {
                     parserResult.crawlDelayMillis(),
                     parserResult.agentName());
         addEntry(robotsTxt4Host);
+        return robotsTxt4Host;
     }
     
     private String addEntry(final RobotsTxtEntry entry) {
@@ -314,6 +359,7 @@ public class RobotsTxt {
         try {
             final BEncodedHeap robotsTable = this.tables.getHeap(WorkTables.TABLE_ROBOTS_NAME);
             robotsTable.insert(robotsTable.encodedKey(entry.getHostName()), entry.getMem());
+            this.cache.put(entry.getHostName(), new CachedEntry(entry));
             return entry.getHostName();
         } catch (final Exception e) {
             log.warn("cannot write robots.txt entry", e);
@@ -28,6 +28,7 @@
 
 package net.yacy.crawler.robots;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedHashMap;
@@ -57,13 +58,12 @@ public class RobotsTxtEntry {
     // this is a simple record structure that holds all properties of a single crawl start
     private final Map<String, byte[]> mem;
     private final List<String> allowPathList, denyPathList, sitemapList;
+    private final String[] denyPrefixes; // the deny path list, sorted and without paths which start with another path of the list
     private final String hostName, agentName;
-    private String info; // this is filled if robots disallowed access; then the reason is noted there;
 
     protected RobotsTxtEntry(final String hostName, final Map<String, byte[]> mem) {
         this.hostName = hostName.toLowerCase();
         this.mem = mem;
-        this.info = "";
 
         this.denyPathList = new LinkedList<String>();
         fillMultiValue(this.denyPathList, DISALLOW_PATH_LIST);
@@ -72,6 +72,41 @@ public class RobotsTxtEntry {
         this.sitemapList = new LinkedList<String>();
         fillMultiValue(this.sitemapList, SITEMAP_LIST);
         this.agentName = this.mem.containsKey(AGENT_NAME) ? UTF8.String(this.mem.get(AGENT_NAME)) : null;
+        this.denyPrefixes = compile(this.denyPathList);
+    }
+
+    /**
+     * compile a path list for a fast prefix test: the paths are sorted and all paths which start with
+     * another path from the list are removed, because they cannot change the result of the test.
+     * Then only the largest path which is not greater than a given path can be a prefix of it.
+     * @param pathList
+     * @return the sorted, prefix-free paths
+     */
+    private static String[] compile(final List<String> pathList) {
+        final String[] sorted = pathList.toArray(new String[pathList.size()]);
+        Arrays.sort(sorted);
+        final List<String> prefixes = new ArrayList<String>(sorted.length);
+        String last = null;
+        for (final String path: sorted) {
+            if (last != null && path.startsWith(last)) continue;
+            prefixes.add(path);
+            last = path;
+        }
+        return prefixes.toArray(new String[prefixes.size()]);
+    }
+
+    /**
+     * find the path from a compiled path list which is a prefix of the given path
+     * @param prefixes a list which was produced by compile()
+     * @param path
+     * @return the matching prefix or null if no path in the list is a prefix of the given path
+     */
+    private static String matchPrefix(final String[] prefixes, final String path) {
+        int p = Arrays.binarySearch(prefixes, path);
+        if (p >= 0) return prefixes[p];
+        p = -p - 2; // the position of the largest path which is smaller than the given path
+        if (p >= 0 && path.startsWith(prefixes[p])) return prefixes[p];
+        return null;
     }
 
     private void fillMultiValue(List<String> list, String listName) {
@@ -116,6 +151,7 @@ public class RobotsTxtEntry {
         readMultiValue(allowPathList,    this.allowPathList, ALLOW_PATH_LIST);
         readMultiValue(disallowPathList, this.denyPathList,  DISALLOW_PATH_LIST);
         readMultiValue(sitemapList,      this.sitemapList,   SITEMAP_LIST);
+        this.denyPrefixes = compile(this.denyPathList);
     }
 
     private void readMultiValue(List<String> externallist, List<String> internallist, String listName) {
@@ -209,35 +245,32 @@ public class RobotsTxtEntry {
         return 0;
     }
 
-    public boolean isDisallowed(final MultiProtocolURL subpathURL) {
-        String path = subpathURL.getFile();
-        if (this.mem == null) {
-            this.info = "no robots file available";
-            return false;
-        }
-        if (this.denyPathList.isEmpty()) {
-            this.info = "no entry in robots.txt";
-            return false;
-        }
-
+    private static String path(final MultiProtocolURL subpathURL) {
+        final String path = subpathURL.getFile();
         // if the path is null or empty we set it to /
-        if (path == null || path.isEmpty()) path = "/";
+        if (path == null || path.isEmpty()) return "/";
         // escaping all occurences of ; because this char is used as special char in the Robots DB
-        else  path = RobotsTxt.ROBOTS_DB_PATH_SEPARATOR_MATCHER.matcher(path).replaceAll("%3B");
-
-        for (final String element : this.denyPathList) {
+        if (path.indexOf(';') >= 0) return RobotsTxt.ROBOTS_DB_PATH_SEPARATOR_MATCHER.matcher(path).replaceAll("%3B");
+        return path;
+    }
 
-            // disallow rule
-            if (path.startsWith(element)) {
-                this.info = "path '" + path + "' starts with '" + element + "' from deny path list = " + this.denyPathList.toString();
-                return true;
-            }
-        }
-        this.info = "path '" + path + "' does not start with any element from deny path list";
-        return false;
+    public boolean isDisallowed(final MultiProtocolURL subpathURL) {
+        if (this.mem == null || this.denyPathList.isEmpty()) return false;
+        return matchPrefix(this.denyPrefixes, path(subpathURL)) != null;
     }
 
-    public String getInfo() {
-        return this.info;
+    /**
+     * the reason for the decision of isDisallowed(); the entry is shared by all threads, so the reason is
+     * computed again and not stored in the entry
+     * @param subpathURL
+     * @return a description why the url is allowed or disallowed
+     */
+    public String getInfo(final MultiProtocolURL subpathURL) {
+        if (this.mem == null) return "no robots file available";
+        if (this.denyPathList.isEmpty()) return "no entry in robots.txt";
+        final String path = path(subpathURL);
+        final String element = matchPrefix(this.denyPrefixes, path);
+        if (element != null) return "path '" + path + "' starts with '" + element + "' from deny path list = " + this.denyPathList.toString();
+        return "path '" + path + "' does not start with any element from deny path list";
     }
 }
\ No newline at end of file
@@ -74,6 +74,15 @@ public abstract class AbstractParser implements Parser {
         return this.SUPPORTED_EXTENSIONS;
     }
 
+    /**
+     * by default a parser is not considered to be streaming
+     * @return false
+     */
+    @Override
+    public boolean isStreamingSupported() {
+        return false;
+    }
+
     /**
      * check equivalence of parsers; this simply tests equality of parser names
      * @param o
@@ -63,6 +63,13 @@ public interface Parser {
             InputStream source
             ) throws Parser.Failure, InterruptedException;
 
+    /**
+     * check if the parser reads the source in one pass without loading it completely into memory;
+     * then the source can be parsed while it is downloaded
+     * @return true if the parser can parse a stream in one pass
+     */
+    public boolean isStreamingSupported();
+
 
     // methods to that shall make it possible to put Parser objects into a hashtable
 
@@ -261,6 +261,52 @@ public final class TextParser {
         return docs;
     }
 
+    /**
+     * parse a stream which can be read only once, i.e. while it is loaded from the web.
+     * Only the first parser that fits to the url and mime type is used; there is no retry with other parsers.
+     * Use supportsStreaming() to check if that parser reads the stream in one pass.
+     * @param sourceStream the content stream; it is not closed here
+     */
+    public static Document[] parseStream(
+            final DigestURL location,
+            String mimeType,
+            final String charset,
+            final VocabularyScraper scraper,
+            final int timezoneOffset,
+            final int depth,
+            final InputStream sourceStream
+        ) throws Parser.Failure {
+        if (AbstractParser.log.isFine()) AbstractParser.log.fine("Parsing '" + location + "' while loading");
+        mimeType = normalizeMimeType(mimeType);
+        Set<Parser> idioms = null;
+        try {
+            idioms = parsers(location, mimeType);
+        } catch (final Parser.Failure e) {
+            final String errorMsg = "Parser Failure for extension '" + MultiProtocolURL.getFileExtension(location.getFileName()) + "' or mimetype '" + mimeType + "': " + e.getMessage();
+            AbstractParser.log.warn(errorMsg);
+            throw new Parser.Failure(errorMsg, location);
+        }
+        final Document[] docs = parseSource(location, mimeType, idioms.iterator().next(), charset, scraper, timezoneOffset, sourceStream);
+        if (docs == null) throw new Parser.Failure("Parser returned null.", location);
+        for (final Document d: docs) d.setDepth(depth);
+        return docs;
+    }
+
+    /**
+     * check if content with the given url and mime type can be parsed while it is loaded
+     * @param url
+     * @param mimeType
+     * @return true if the first parser which fits to the content reads a stream in one pass
+     */
+    public static boolean supportsStreaming(final MultiProtocolURL url, final String mimeType) {
+        try {
+            final Set<Parser> idioms = parsers(url, mimeType);
+            return !idioms.isEmpty() && idioms.iterator().next().isStreamingSupported();
+        } catch (final Parser.Failure e) {
+            return false;
+        }
+    }
+
     private static Document[] parseSource(
             final DigestURL location,
             final String mimeType,
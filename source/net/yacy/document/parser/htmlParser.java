@@ -85,6 +85,14 @@ public class htmlParser extends AbstractParser implements Parser {
         this.SUPPORTED_MIME_TYPES.add("text/csv");
     }
 
+    /**
+     * the content is scraped while it is read from the source
+     */
+    @Override
+    public boolean isStreamingSupported() {
+        return true;
+    }
+
     @Override
     public Document[] parse(
             final DigestURL location,
@@ -57,6 +57,14 @@ public class rssParser extends AbstractParser implements Parser {
         this.SUPPORTED_MIME_TYPES.add("application/atom+xml");
     }
 
+    /**
+     * the feed is read with a SAX parser
+     */
+    @Override
+    public boolean isStreamingSupported() {
+        return true;
+    }
+
     @Override
     public Document[] parse(
             final DigestURL location,
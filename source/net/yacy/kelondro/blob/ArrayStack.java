@@ -31,10 +31,14 @@ import java.io.IOException;
 import java.lang.reflect.Array;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.PriorityQueue;
 import java.util.TreeMap;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
@@ -49,6 +53,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import net.yacy.cora.date.GenericFormatter;
 import net.yacy.cora.document.encoding.ASCII;
@@ -94,7 +99,7 @@ public class ArrayStack implements BLOB {
     private       long           fileSizeLimit;
     private       long           repositoryAgeMax;
     private       long           repositorySizeMax;
-    private       List<blobItem> blobs;
+    private volatile List<blobItem> blobs; // copy-on-write list: readers iterate over a snapshot without locking
     private final String         prefix;
     private final int            buffersize;
     private final boolean        trimall;
@@ -152,7 +157,7 @@ public class ArrayStack implements BLOB {
                 FileUtils.deletedelete(new File(heapLocation, file));
                 deletions = true;
             }
-            if (file.endsWith(".idx") || file.endsWith(".gap")) {
+            if (file.endsWith(".idx") || file.endsWith(".gap") || file.endsWith(".blm")) {
                 final String s = file.substring(0, file.length() - 17);
                 if (!fh.contains(s)) {
                     FileUtils.deletedelete(new File(heapLocation, file));
@@ -232,7 +237,11 @@ public class ArrayStack implements BLOB {
     @Override
     public long mem() {
         long m = 0;
-        if (this.blobs != null) for (final blobItem b: this.blobs) m += b.blob.mem();
+        final List<blobItem> bl = this.blobs;
+        if (bl != null) for (final blobItem b: bl) {
+            final BLOB blob = b.blob;
+            if (blob != null) m += blob.mem();
+        }
         return m;
     }
 
@@ -273,9 +282,7 @@ public class ArrayStack implements BLOB {
             b = this.blobs.get(i);
             if (b.location.getAbsolutePath().equals(location.getAbsolutePath())) {
                 this.blobs.remove(i);
-                b.blob.close(writeIDX);
-                b.blob = null;
-                b.location = null;
+                b.close(writeIDX);
                 return;
             }
         }
@@ -284,11 +291,8 @@ public class ArrayStack implements BLOB {
 
     private File unmount(final int idx) {
         final blobItem b = this.blobs.remove(idx);
-        b.blob.close(false);
-        b.blob = null;
-        final File f = b.location;
-        b.location = null;
-        return f;
+        b.close(false);
+        return b.location;
     }
 
     public synchronized File[] unmountBestMatch(final float maxq, long maxResultSize) {
@@ -325,6 +329,58 @@ public class ArrayStack implements BLOB {
         return bestMatch;
     }
 
+    /**
+     * find a set of files of similar size (a size tier) and unmount them to be merged together into one file.
+     * All files are sorted by size; then the longest run of neighbours is chosen where the largest file is
+     * not more than maxq times larger than the smallest file and where the sum of the sizes does not exceed
+     * maxResultSize. Smaller tiers are preferred if runs are of same length because merging small files
+     * reduces the number of files with the least IO. A tier is also limited to the files whose merge
+     * fits into the available memory.
+     * @param minFiles the minimum number of files in the tier
+     * @param maxFiles the maximum number of files in the tier
+     * @param maxq the maximum quotient of the largest and the smallest file size in the tier
+     * @param maxResultSize the maximum sum of the file sizes
+     * @return the unmounted files or null if no tier with at least minFiles files exists
+     */
+    public synchronized File[] unmountSizeTier(final int minFiles, final int maxFiles, final float maxq, final long maxResultSize) {
+        if (minFiles < 2 || this.blobs.size() < minFiles) return null;
+        final List<blobItem> sorted = new ArrayList<blobItem>(this.blobs);
+        final long[] length = new long[sorted.size()];
+        Collections.sort(sorted, new Comparator<blobItem>() {
+            @Override
+            public int compare(final blobItem o1, final blobItem o2) {
+                final long l1 = o1.location.length(), l2 = o2.location.length();
+                return l1 < l2 ? -1 : l1 == l2 ? 0 : 1;
+            }
+        });
+        for (int i = 0; i < length.length; i++) length[i] = 1 + sorted.get(i).location.length();
+        int bestStart = -1, bestCount = 0;
+        for (int start = 0; start < length.length - 1; start++) {
+            long sum = 0, m = 0;
+            int count = 0;
+            for (int j = start; j < length.length && count < maxFiles; j++) {
+                if ((float) length[j] / (float) length[start] > maxq) break;
+                if (sum + length[j] > maxResultSize) break;
+                m += sorted.get(j).blob.mem();
+                if (!MemoryControl.request(m, true)) break;
+                sum += length[j];
+                count++;
+            }
+            if (count > bestCount) {
+                bestStart = start;
+                bestCount = count;
+            }
+            if (bestCount >= maxFiles) break;
+        }
+        if (bestCount < minFiles) return null;
+        final File[] tier = new File[bestCount];
+        for (int i = 0; i < bestCount; i++) {
+            tier[i] = sorted.get(bestStart + i).location;
+            unmountBLOB(tier[i], false);
+        }
+        return tier;
+    }
+
     public synchronized File unmountOldest() {
         if (this.blobs.isEmpty()) return null;
         if (System.currentTimeMillis() - this.blobs.get(0).creation.getTime() < this.fileAgeLimit) return null;
@@ -374,8 +430,9 @@ public class ArrayStack implements BLOB {
      * return the number of BLOB files in this array
      * @return
      */
-    public synchronized int entries() {
-        return (this.blobs == null) ? 0 : this.blobs.size();
+    public int entries() {
+        final List<blobItem> b = this.blobs;
+        return (b == null) ? 0 : b.size();
     }
 
     /**
@@ -413,8 +470,7 @@ public class ArrayStack implements BLOB {
         while (!this.blobs.isEmpty() && System.currentTimeMillis() - this.blobs.get(0).creation.getTime() - this.fileAgeLimit > this.repositoryAgeMax) {
             // too old
             final blobItem oldestBLOB = this.blobs.remove(0);
-            oldestBLOB.blob.close(false);
-            oldestBLOB.blob = null;
+            oldestBLOB.close(false);
             FileUtils.deletedelete(oldestBLOB.location);
         }
 
@@ -422,7 +478,7 @@ public class ArrayStack implements BLOB {
         while (!this.blobs.isEmpty() && length() > this.repositorySizeMax) {
             // too large
             final blobItem oldestBLOB = this.blobs.remove(0);
-            oldestBLOB.blob.close(false);
+            oldestBLOB.close(false);
             FileUtils.deletedelete(oldestBLOB.location);
         }
     }
@@ -431,9 +487,11 @@ public class ArrayStack implements BLOB {
      * return the size of the repository (in bytes)
      */
     @Override
-    public synchronized long length() {
+    public long length() {
+        final List<blobItem> b = this.blobs;
+        if (b == null) return 0;
         long s = 0;
-        for (int i = 0; i < this.blobs.size(); i++) s += this.blobs.get(i).location.length();
+        for (final blobItem bi: b) s += bi.location.length();
         return s;
     }
 
@@ -442,21 +500,106 @@ public class ArrayStack implements BLOB {
         return this.ordering;
     }
 
+    /**
+     * a mounted BLOB. Read operations on the blob are guarded by a read lock, so they can run
+     * concurrently with each other and without the ArrayStack monitor; closing the blob takes
+     * the write lock. A reader that still holds a blobItem from a snapshot of the blobs list after
+     * the item was unmounted finds a closed item and treats it as empty.
+     */
     private class blobItem {
-        Date creation;
-        File location;
-        BLOB blob;
+        final Date creation;
+        final File location;
+        volatile BLOB blob;
+        private final ReentrantReadWriteLock lock;
         public blobItem(final Date creation, final File location, final BLOB blob) {
             assert blob != null;
             this.creation = creation;
             this.location = location;
             this.blob = blob;
+            this.lock = new ReentrantReadWriteLock();
         }
         public blobItem(final int buffer) throws IOException {
             // make a new blob file and assign it in this item
             this.creation = new Date();
             this.location = newBLOB(this.creation);
             this.blob = (buffer == 0) ? new HeapModifier(this.location, ArrayStack.this.keylength, ArrayStack.this.ordering) : new Heap(this.location, ArrayStack.this.keylength, ArrayStack.this.ordering, buffer);
+            this.lock = new ReentrantReadWriteLock();
+        }
+        public boolean containsKey(final byte[] key) {
+            this.lock.readLock().lock();
+            try {
+                return this.blob != null && this.blob.containsKey(key);
+            } finally {
+                this.lock.readLock().unlock();
+            }
+        }
+        public byte[] get(final byte[] key) throws IOException, SpaceExceededException {
+            this.lock.readLock().lock();
+            try {
+                return this.blob == null ? null : this.blob.get(key);
+            } finally {
+                this.lock.readLock().unlock();
+            }
+        }
+        public long length(final byte[] key) throws IOException {
+            this.lock.readLock().lock();
+            try {
+                return this.blob == null ? -1 : this.blob.length(key);
+            } finally {
+                this.lock.readLock().unlock();
+            }
+        }
+        public byte[] head(final byte[] key, final int len) throws IOException, SpaceExceededException {
+            this.lock.readLock().lock();
+            try {
+                if (this.blob == null) return null;
+                if (this.blob instanceof HeapReader) return ((HeapReader) this.blob).head(key, len);
+                final byte[] b = this.blob.get(key);
+                return b == null || b.length <= len ? b : Arrays.copyOf(b, len);
+            } finally {
+                this.lock.readLock().unlock();
+            }
+        }
+        public int size() {
+            this.lock.readLock().lock();
+            try {
+                return this.blob == null ? 0 : this.blob.size();
+            } finally {
+                this.lock.readLock().unlock();
+            }
+        }
+        public boolean isEmpty() {
+            this.lock.readLock().lock();
+            try {
+                return this.blob == null || this.blob.isEmpty();
+            } finally {
+                this.lock.readLock().unlock();
+            }
+        }
+        public CloneableIterator<byte[]> keys(final boolean up, final boolean rotating) throws IOException {
+            this.lock.readLock().lock();
+            try {
+                return this.blob == null ? null : this.blob.keys(up, rotating);
+            } finally {
+                this.lock.readLock().unlock();
+            }
+        }
+        public CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) throws IOException {
+            this.lock.readLock().lock();
+            try {
+                return this.blob == null ? null : this.blob.keys(up, firstKey);
+            } finally {
+                this.lock.readLock().unlock();
+            }
+        }
+        public void close(final boolean writeIDX) {
+            this.lock.writeLock().lock();
+            try {
+                if (this.blob != null) this.blob.close(writeIDX);
+                this.blob = null;
+            } finally {
+                this.lock.writeLock().unlock();
+            }
         }
     }
 
@@ -475,12 +618,13 @@ public class ArrayStack implements BLOB {
      */
     @Override
     public synchronized void clear() throws IOException {
-        for (final blobItem bi: this.blobs) {
-            bi.blob.clear();
-            bi.blob.close(false);
+        final List<blobItem> b = new ArrayList<blobItem>(this.blobs);
+        this.blobs.clear(); // unmount all before the files are deleted to let the readers see an empty stack
+        for (final blobItem bi: b) {
+            if (bi.blob != null) bi.blob.clear();
+            bi.close(false);
             HeapWriter.delete(bi.location);
         }
-        this.blobs.clear();
     }
 
     /**
@@ -488,15 +632,19 @@ public class ArrayStack implements BLOB {
      * @return the number of entries in the table
      */
     @Override
-    public synchronized int size() {
+    public int size() {
+        final List<blobItem> b = this.blobs;
+        if (b == null) return 0;
         int s = 0;
-        for (final blobItem bi: this.blobs) s += bi.blob.size();
+        for (final blobItem bi: b) s += bi.size();
         return s;
     }
 
     @Override
-    public synchronized boolean isEmpty() {
-        for (final blobItem bi: this.blobs) if (!bi.blob.isEmpty()) return false;
+    public boolean isEmpty() {
+        final List<blobItem> b = this.blobs;
+        if (b == null) return true;
+        for (final blobItem bi: b) if (!bi.isEmpty()) return false;
         return true;
     }
 
@@ -504,11 +652,13 @@ public class ArrayStack implements BLOB {
      * ask for the number of blob entries in each blob of the blob array
      * @return the number of entries in each blob
      */
-    public synchronized int[] sizes() {
-        if (this.blobs == null) return new int[0];
-        final int[] s = new int[this.blobs.size()];
+    public int[] sizes() {
+        final List<blobItem> b = this.blobs;
+        if (b == null) return new int[0];
+        final blobItem[] snapshot = b.toArray(new blobItem[b.size()]);
+        final int[] s = new int[snapshot.length];
         int c = 0;
-        for (final blobItem bi: this.blobs) s[c++] = bi.blob.size();
+        for (final blobItem bi: snapshot) s[c++] = bi.size();
         return s;
     }
 
@@ -520,12 +670,13 @@ public class ArrayStack implements BLOB {
      * @throws IOException
      */
     @Override
-    public synchronized CloneableIterator<byte[]> keys(final boolean up, final boolean rotating) throws IOException {
+    public CloneableIterator<byte[]> keys(final boolean up, final boolean rotating) throws IOException {
         assert rotating == false;
-        final List<CloneableIterator<byte[]>> c = new ArrayList<CloneableIterator<byte[]>>(this.blobs.size());
-        final Iterator<blobItem> i = this.blobs.iterator();
-        while (i.hasNext()) {
-            c.add(i.next().blob.keys(up, rotating));
+        final List<blobItem> b = this.blobs;
+        final List<CloneableIterator<byte[]>> c = new ArrayList<CloneableIterator<byte[]>>(b == null ? 0 : b.size());
+        if (b != null) for (final blobItem bi: b) {
+            final CloneableIterator<byte[]> k = bi.keys(up, rotating);
+            if (k != null) c.add(k);
         }
         return MergeIterator.cascade(c, this.ordering, MergeIterator.simpleMerge, up);
     }
@@ -538,11 +689,12 @@ public class ArrayStack implements BLOB {
      * @throws IOException
      */
     @Override
-    public synchronized CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) throws IOException {
-        final List<CloneableIterator<byte[]>> c = new ArrayList<CloneableIterator<byte[]>>(this.blobs.size());
-        final Iterator<blobItem> i = this.blobs.iterator();
-        while (i.hasNext()) {
-            c.add(i.next().blob.keys(up, firstKey));
+    public CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) throws IOException {
+        final List<blobItem> b = this.blobs;
+        final List<CloneableIterator<byte[]>> c = new ArrayList<CloneableIterator<byte[]>>(b == null ? 0 : b.size());
+        if (b != null) for (final blobItem bi: b) {
+            final CloneableIterator<byte[]> k = bi.keys(up, firstKey);
+            if (k != null) c.add(k);
         }
         return MergeIterator.cascade(c, this.ordering, MergeIterator.simpleMerge, up);
     }
@@ -554,7 +706,7 @@ public class ArrayStack implements BLOB {
      * @throws IOException
      */
     @Override
-    public synchronized boolean containsKey(final byte[] key) {
+    public boolean containsKey(final byte[] key) {
     	final blobItem bi = keeperOf(key);
     	return bi != null;
         //for (blobItem bi: blobs) if (bi.blob.has(key)) return true;
@@ -568,21 +720,25 @@ public class ArrayStack implements BLOB {
      * @return the blobItem that holds the key or null if no blobItem is found
      */
     private blobItem keeperOf(final byte[] key) {
-        if (this.blobs.isEmpty()) return null;
-        if (this.blobs.size() == 1) {
-            final blobItem bi = this.blobs.get(0);
-            if (bi.blob.containsKey(key)) return bi;
+        // work on a snapshot of the mounted blobs; mount and unmount operations do not affect it
+        final List<blobItem> bl = this.blobs;
+        if (bl == null) return null;
+        final blobItem[] snapshot = bl.toArray(new blobItem[bl.size()]);
+        if (snapshot.length == 0) return null;
+        if (snapshot.length == 1) {
+            final blobItem bi = snapshot[0];
+            if (bi.containsKey(key)) return bi;
             return null;
         }
 
         // first check the current blob only because that has most probably the key if any has that key
-        int bs1 = this.blobs.size() - 1;
-        blobItem bi = this.blobs.get(bs1);
-        if (bi.blob.containsKey(key)) return bi;
-        if (this.blobs.size() == 2) {
+        int bs1 = snapshot.length - 1;
+        blobItem bi = snapshot[bs1];
+        if (bi.containsKey(key)) return bi;
+        if (snapshot.length == 2) {
             // this should not be done concurrently
-            bi = this.blobs.get(0);
-            if (bi.blob.containsKey(key)) return bi;
+            bi = snapshot[0];
+            if (bi.containsKey(key)) return bi;
             return null;
         }
 
@@ -590,12 +746,12 @@ public class ArrayStack implements BLOB {
         final CompletionService<blobItem> cs = new ExecutorCompletionService<blobItem>(this.executor);
         int accepted = 0;
         for (int i = 0; i < bs1; i++) {
-            final blobItem b = this.blobs.get(i);
+            final blobItem b = snapshot[i];
             try {
                 cs.submit(new Callable<blobItem>() {
                     @Override
                     public blobItem call() {
-                        if (b.blob.containsKey(key)) return b;
+                        if (b.containsKey(key)) return b;
                         return null;
                     }
                 });
@@ -603,7 +759,7 @@ public class ArrayStack implements BLOB {
             } catch (final RejectedExecutionException e) {
                 // the executor is either shutting down or the blocking queue is full
                 // execute the search direct here without concurrency
-                if (b.blob.containsKey(key)) return b;
+                if (b.containsKey(key)) return b;
             }
         }
 
@@ -639,14 +795,8 @@ public class ArrayStack implements BLOB {
      */
     @Override
     public byte[] get(final byte[] key) throws IOException, SpaceExceededException {
-        if (this.blobs == null || this.blobs.isEmpty()) return null;
-        if (this.blobs.size() == 1) {
-            final blobItem bi = this.blobs.get(0);
-            return bi.blob.get(key);
-        }
-
         final blobItem bi = keeperOf(key);
-    	return (bi == null) ? null : bi.blob.get(key);
+    	return (bi == null) ? null : bi.get(key);
 
     	/*
     	byte[] b;
@@ -695,8 +845,7 @@ public class ArrayStack implements BLOB {
         @Override
         protected byte[] next0() {
             while (this.bii.hasNext()) {
-                final BLOB b = this.bii.next().blob;
-                if (b == null) continue;
+                final blobItem b = this.bii.next();
                 try {
                     final byte[] n = b.get(this.key);
                     if (n != null) return n;
@@ -719,10 +868,12 @@ public class ArrayStack implements BLOB {
      * @throws IOException
      */
     @Override
-    public synchronized long length(final byte[] key) throws IOException {
+    public long length(final byte[] key) throws IOException {
+        final List<blobItem> b = this.blobs;
+        if (b == null) return -1;
         long l;
-        for (final blobItem bi: this.blobs) {
-            l = bi.blob.length(key);
+        for (final blobItem bi: b) {
+            l = bi.length(key);
             if (l >= 0) return l;
         }
         return -1;
@@ -752,8 +903,7 @@ public class ArrayStack implements BLOB {
         @Override
         protected Long next0() {
             while (this.bii.hasNext()) {
-                final BLOB b = this.bii.next().blob;
-                if (b == null) continue;
+                final blobItem b = this.bii.next();
                 try {
                     final long l = b.length(this.key);
                     if (l >= 0) return Long.valueOf(l);
@@ -766,16 +916,61 @@ public class ArrayStack implements BLOB {
         }
     }
 
+    /**
+     * get the first bytes of the BLOBs for a key in all BLOBs in the array.
+     * this can be used to read headers of the BLOBs without loading them completely
+     * @param key
+     * @param len the maximum number of bytes to read from each BLOB
+     * @return
+     * @throws IOException
+     */
+    public Iterable<byte[]> headAll(final byte[] key, final int len) throws IOException {
+        return new BlobHeads(key, len);
+    }
+
+    private class BlobHeads extends LookAheadIterator<byte[]> {
+
+        private final Iterator<blobItem> bii;
+        private final byte[] key;
+        private final int len;
+
+        public BlobHeads(final byte[] key, final int len) {
+            this.bii = ArrayStack.this.blobs.iterator();
+            this.key = key;
+            this.len = len;
+        }
+
+        @Override
+        protected byte[] next0() {
+            while (this.bii.hasNext()) {
+                final blobItem b = this.bii.next();
+                try {
+                    final byte[] h = b.head(this.key, this.len);
+                    if (h != null) return h;
+                } catch (final IOException e) {
+                    ConcurrentLog.severe("ArrayStack", "", e);
+                    return null;
+                } catch (final SpaceExceededException e) {
+                    ConcurrentLog.severe("ArrayStack", "", e);
+                    return null;
+                }
+            }
+            return null;
+        }
+    }
+
     /**
      * retrieve the sizes of all BLOB
      * @param key
      * @return the size of the BLOB or -1 if the BLOB does not exist
      * @throws IOException
      */
-    public synchronized long lengthAdd(final byte[] key) throws IOException {
+    public long lengthAdd(final byte[] key) throws IOException {
+        final List<blobItem> b = this.blobs;
+        if (b == null) return 0;
         long l = 0;
-        for (final blobItem bi: this.blobs) {
-            l += bi.blob.length(key);
+        for (final blobItem bi: b) {
+            l += bi.length(key);
         }
         return l;
     }
@@ -886,9 +1081,11 @@ public class ArrayStack implements BLOB {
      */
     @Override
     public synchronized void close(final boolean writeIDX) {
-        for (final blobItem bi: this.blobs) bi.blob.close(writeIDX);
-        this.blobs.clear();
+        final List<blobItem> b = this.blobs;
+        if (b == null) return;
         this.blobs = null;
+        for (final blobItem bi: b) bi.close(writeIDX);
+        b.clear();
     }
 
     /**
@@ -938,6 +1135,122 @@ public class ArrayStack implements BLOB {
         return resultFile;
     }
 
+    /**
+     * merge any number of blob files into one in a single pass.
+     * All files are read at the same time and the containers for the same term are joined before they are written,
+     * so each reference is written only once, independent from the number of input files.
+     * @param files the files to merge; these must be unmounted before
+     * @param factory
+     * @param newFile
+     * @param writeBuffer
+     * @return the target file where the given files are merged in
+     */
+    public File mergeMount(final File[] files,
+            final ReferenceFactory<? extends Reference> factory,
+            final File newFile, final int writeBuffer) {
+        if (files.length == 1) return mergeMount(files[0], null, factory, newFile, writeBuffer);
+        if (files.length == 2) return mergeMount(files[0], files[1], factory, newFile, writeBuffer);
+        ConcurrentLog.info("BLOBArray", "merging " + files.length + " files into " + newFile.getName());
+        final File resultFile = mergeWorker(factory, this.keylength, this.ordering, files, newFile, writeBuffer);
+        if (resultFile == null) {
+            ConcurrentLog.warn("BLOBArray", "merge of " + files.length + " files returned null. newFile = " + newFile);
+            return null;
+        }
+        try {
+            mountBLOB(resultFile, false);
+        } catch (final IOException e) {
+            ConcurrentLog.warn("BLOBArray", "merge of " + files.length + " files successfull, but read failed. resultFile = " + resultFile);
+            return null;
+        }
+        ConcurrentLog.info("BLOBArray", "merged " + files.length + " files into " + resultFile);
+        return resultFile;
+    }
+
+    private static <ReferenceType extends Reference> File mergeWorker(
+                    final ReferenceFactory<ReferenceType> factory,
+                    final int keylength, final ByteOrder order, final File[] files, final File newFile, final int writeBuffer) {
+        final List<ReferenceIterator<ReferenceType>> iterators = new ArrayList<ReferenceIterator<ReferenceType>>(files.length);
+        try {
+            for (final File f: files) iterators.add(new ReferenceIterator<ReferenceType>(f, factory));
+        } catch (final IOException e) {
+            ConcurrentLog.severe("ArrayStack", "cannot merge because input files cannot be read: " + e.getMessage(), e);
+            for (final ReferenceIterator<ReferenceType> i: iterators) i.close();
+            return null;
+        }
+        final File tmpFile = new File(newFile.getParentFile(), newFile.getName() + ".prt");
+        try {
+            final HeapWriter writer = new HeapWriter(tmpFile, newFile, keylength, order, writeBuffer);
+            merge(iterators, order, writer);
+            writer.close(true);
+        } catch (final IOException e) {
+            ConcurrentLog.severe("ArrayStack", "cannot writing or close writing merge, newFile = " + newFile.toString() + ", tmpFile = " + tmpFile.toString() + ": " + e.getMessage(), e);
+            HeapWriter.delete(tmpFile);
+            HeapWriter.delete(newFile);
+            return null;
+        } catch (final SpaceExceededException e) {
+            ConcurrentLog.severe("ArrayStack", "cannot merge because of memory failure: " + e.getMessage(), e);
+            HeapWriter.delete(tmpFile);
+            HeapWriter.delete(newFile);
+            return null;
+        } finally {
+            for (final ReferenceIterator<ReferenceType> i: iterators) i.close();
+        }
+        // we don't need the old files any more
+        for (final File f: files) HeapWriter.delete(f);
+        return newFile;
+    }
+
+    /**
+     * the head of an input stream in a k-way merge: the current container and the iterator that produced it
+     */
+    private static class MergeHead<ReferenceType extends Reference> {
+        private ReferenceContainer<ReferenceType> container;
+        private final CloneableIterator<ReferenceContainer<ReferenceType>> iterator;
+        private MergeHead(final CloneableIterator<ReferenceContainer<ReferenceType>> iterator) {
+            this.iterator = iterator;
+            this.container = iterator.next();
+        }
+        private boolean advance(final ByteOrder ordering) {
+            if (!this.iterator.hasNext()) return false;
+            final byte[] lh = this.container.getTermHash();
+            this.container = this.iterator.next();
+            assert ordering.compare(this.container.getTermHash(), lh) > 0;
+            return true;
+        }
+    }
+
+    private static <ReferenceType extends Reference> void merge(
+            final List<? extends CloneableIterator<ReferenceContainer<ReferenceType>>> iterators,
+            final ByteOrder ordering, final HeapWriter writer) throws IOException, SpaceExceededException {
+        final PriorityQueue<MergeHead<ReferenceType>> heads = new PriorityQueue<MergeHead<ReferenceType>>(iterators.size(), new Comparator<MergeHead<ReferenceType>>() {
+            @Override
+            public int compare(final MergeHead<ReferenceType> o1, final MergeHead<ReferenceType> o2) {
+                return ordering.compare(o1.container.getTermHash(), o2.container.getTermHash());
+            }
+        });
+        for (final CloneableIterator<ReferenceContainer<ReferenceType>> i: iterators) {
+            if (i.hasNext()) heads.add(new MergeHead<ReferenceType>(i));
+        }
+        MergeHead<ReferenceType> head;
+        ReferenceContainer<ReferenceType> c;
+        int s;
+        while (!heads.isEmpty()) {
+            // take the smallest term and join all containers for the same term
+            head = heads.poll();
+            c = head.container;
+            if (head.advance(ordering)) heads.add(head);
+            while (!heads.isEmpty() && ordering.compare(heads.peek().container.getTermHash(), c.getTermHash()) == 0) {
+                head = heads.poll();
+                c = c.merge(head.container);
+                if (head.advance(ordering)) heads.add(head);
+            }
+            s = c.shrinkReferences();
+            if (s > 0) ConcurrentLog.info("ArrayStack", "shrinking index for " + ASCII.String(c.getTermHash()) + " by " + s + " to " + c.size() + " entries");
+            writer.add(c.getTermHash(), c.exportCollection());
+        }
+        // finished with writing
+    }
+
     private static <ReferenceType extends Reference> File mergeWorker(
                     final ReferenceFactory<ReferenceType> factory,
                     final int keylength, final ByteOrder order, final File f1, final File f2, final File newFile, final int writeBuffer) {
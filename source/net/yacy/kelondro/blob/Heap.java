@@ -28,6 +28,7 @@ package net.yacy.kelondro.blob;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -107,6 +108,15 @@ public final class Heap extends HeapModifier implements BLOB {
         System.out.println("*** DEBUG - counted " + c + " BLOBs");
         */
     }
+
+    /**
+     * the write buffer of a heap is flushed to the end of the file and gaps at the end are
+     * truncated during operation; such a file must not be mapped into memory
+     */
+    @Override
+    protected boolean mappable() {
+        return false;
+    }
     
     /**
      * the number of BLOBs in the heap
@@ -274,6 +284,28 @@ public final class Heap extends HeapModifier implements BLOB {
         }
     }
     
+    /**
+     * read the first bytes of a BLOB
+     * @param key the primary key
+     * @param len the maximum number of bytes to read
+     * @return at most len bytes from the start of the BLOB or null if the BLOB does not exist
+     * @throws IOException
+     */
+    @Override
+    public byte[] head(byte[] key, final int len) throws IOException {
+        key = normalizeKey(key);
+
+        synchronized (this) {
+            // check the buffer
+            if (this.buffer != null) {
+                byte[] blob = this.buffer.get(key);
+                if (blob != null) return blob.length <= len ? blob : Arrays.copyOf(blob, len);
+            }
+
+            return super.head(key, len);
+        }
+    }
+
     /**
      * clears the content of the database
      * @throws IOException
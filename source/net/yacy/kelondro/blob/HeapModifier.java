@@ -64,6 +64,7 @@ public class HeapModifier extends HeapReader implements BLOB {
      */
     @Override
     public synchronized void clear() throws IOException {
+        unmap();
         this.index.clear();
         this.free.clear();
         this.file.close();
@@ -78,7 +79,9 @@ public class HeapModifier extends HeapReader implements BLOB {
      */
     @Override
     public synchronized void close(boolean writeIDX) {
-        shrinkWithGapsAtEnd();
+        unmap();
+        // a file which was mapped is not truncated, the gaps at the end remain as free records
+        if (!wasMapped()) shrinkWithGapsAtEnd();
         super.close(writeIDX);
     }
 
@@ -46,8 +46,11 @@ import net.yacy.cora.storage.HandleMap;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.LookAheadIterator;
 import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.BloomFilter;
+import net.yacy.kelondro.index.MappedHandleMap;
 import net.yacy.kelondro.index.RowHandleMap;
 import net.yacy.kelondro.io.CachedFileWriter;
+import net.yacy.kelondro.io.MappedFileReader;
 import net.yacy.kelondro.io.Writer;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.MemoryControl;
@@ -60,6 +63,24 @@ public class HeapReader {
 
 	private final static ConcurrentLog log = new ConcurrentLog("HeapReader");
 
+    /**
+     * if set, heap files are mapped into memory after initialization and get/length
+     * requests are served from the mapping without locking the file handle
+     */
+    public static boolean mappedRead = false;
+
+    /**
+     * if set, the index dump (the idx file) of a heap is mapped into memory and used as index
+     * instead of being loaded into a RAM index; this applies only to heaps which are not written
+     */
+    public static boolean mappedIndex = false;
+
+    /**
+     * the false positive probability of the bloom filters of heaps which are not written.
+     * The filter is stored next to the idx dump and allows to skip a heap on key lookups.
+     */
+    public final static double bloomFpp = 0.01;
+
     // input values
     protected int                keylength;  // the length of the primary key
     protected File               heapFile;   // the file of the heap
@@ -69,8 +90,11 @@ public class HeapReader {
     protected Writer             file;       // a random access to the file
     protected HandleMap          index;      // key/seek relation for used records
     protected Gap                free;       // set of {seek, size} pairs denoting space and position of free records
-    private   File               fingerprintFileIdx, fingerprintFileGap; // files with dumped indexes. Will be deleted if file is written
+    private   File               fingerprintFileIdx, fingerprintFileGap, fingerprintFileBloom; // files with dumped indexes. Will be deleted if file is written
+    private volatile BloomFilter bloom;      // a filter over the keys of the index; null if the heap is written
     private   Date               closeDate;  // records a time when the file was closed; used for debugging
+    private volatile MappedFileReader mapped; // a read-only memory mapping of the file or null if reads go through this.file
+    private   boolean            wasMapped;  // true if the file was mapped once; the mapping may be alive until it is garbage collected
 
     public HeapReader(
             final File heapFile,
@@ -88,6 +112,8 @@ public class HeapReader {
         // read or initialize the index
         this.fingerprintFileIdx = null;
         this.fingerprintFileGap = null;
+        this.fingerprintFileBloom = null;
+        this.bloom = null;
         if (initIndexReadDump()) {
             // verify that everything worked just fine
             // pick some elements of the index
@@ -108,12 +134,14 @@ public class HeapReader {
             }
             if (!ok) {
                 log.warn("verification of idx file for " + heapFile.toString() + " failed, re-building index");
+                deleteBloom();
                 initIndexReadFromHeap();
             } else {
                 log.info("using a dump of the index of " + heapFile.toString() + ".");
             }
         } else {
             // if we did not have a dump, create a new index
+            deleteBloom();
             initIndexReadFromHeap();
         }
 
@@ -125,6 +153,95 @@ public class HeapReader {
         // of file descriptors is too low and the number of files is too high
         this.file.close();
         // the file will be opened again automatically when the next access to it comes.
+
+        // a bloom filter can only be used if no keys are added after initialization
+        if (mappable()) initBloom();
+
+        this.mapped = null;
+        if (mappedRead && mappable()) map();
+    }
+
+    private void initBloom() {
+        if (this.fingerprintFileBloom != null && this.fingerprintFileBloom.exists()) {
+            try {
+                this.bloom = BloomFilter.load(this.fingerprintFileBloom);
+                return;
+            } catch (final IOException e) {
+                log.warn("cannot read bloom filter " + this.fingerprintFileBloom.getName() + ", re-building it: " + e.getMessage());
+                FileUtils.deletedelete(this.fingerprintFileBloom);
+                this.fingerprintFileBloom = null;
+            }
+        }
+        // there is no dump, i.e. because the idx file was written by an older version; build the filter from the index
+        final long start = System.currentTimeMillis();
+        this.bloom = BloomFilter.of(this.index.keys(true, null), this.index.size(), bloomFpp);
+        log.info("generated bloom filter for the " + this.index.size() + " index entries of " + this.heapFile.getName() + " in " + (System.currentTimeMillis() - start) + " milliseconds.");
+    }
+
+    private void deleteBloom() {
+        if (this.fingerprintFileBloom != null) {
+            FileUtils.deletedelete(this.fingerprintFileBloom);
+            this.fingerprintFileBloom = null;
+        }
+    }
+
+    /**
+     * test with the bloom filter if a key may be in the heap
+     * @param key a normalized key
+     * @return false if the key is not in the heap
+     */
+    private boolean mayContain(final byte[] key) {
+        final BloomFilter b = this.bloom;
+        return b == null || b.mightContain(key);
+    }
+
+    /**
+     * a heap can only be mapped if the file is not truncated while it is open and if no
+     * new entries are added to the index. Subclasses which write to the heap during operation
+     * must overwrite this and return false.
+     * @return true if the file and its index dump may be mapped into memory
+     */
+    protected boolean mappable() {
+        return true;
+    }
+
+    private void map() {
+        if (this.heapFile.length() == 0) return;
+        try {
+            this.mapped = new MappedFileReader(this.heapFile);
+            this.wasMapped = true;
+        } catch (final IOException e) {
+            // i.e. if the virtual address space is exhausted; we just use the file handle instead
+            log.warn("cannot map " + this.heapFile.getName() + " into memory: " + e.getMessage());
+            this.mapped = null;
+        }
+    }
+
+    /**
+     * stop to use the memory mapping of the heap file; reads go through the file handle afterwards.
+     * The mapping itself is released later by the garbage collector, see wasMapped().
+     */
+    protected void unmap() {
+        final MappedFileReader m = this.mapped;
+        this.mapped = null;
+        if (m != null) m.close();
+    }
+
+    /**
+     * Java cannot release a memory mapping explicitly; it is released when the garbage collector frees it.
+     * Therefore a file which was mapped must not be truncated: an access to a truncated mapped region
+     * can crash the JVM and on some systems the truncation fails.
+     * @return true if the heap file was mapped into memory since it was opened
+     */
+    protected boolean wasMapped() {
+        return this.wasMapped;
+    }
+
+    /**
+     * @return true if read operations are served from a memory mapping of the heap file
+     */
+    public boolean isMapped() {
+        return this.mapped != null;
     }
 
     public long mem() {
@@ -168,15 +285,22 @@ public class HeapReader {
         if (!this.fingerprintFileIdx.exists()) this.fingerprintFileIdx = new File(this.fingerprintFileIdx.getAbsolutePath() + ".gz");
         this.fingerprintFileGap = HeapWriter.fingerprintGapFile(this.heapFile, fingerprint);
         if (!this.fingerprintFileGap.exists()) this.fingerprintFileGap = new File(this.fingerprintFileGap.getAbsolutePath() + ".gz");
+        this.fingerprintFileBloom = HeapWriter.fingerprintBloomFile(this.heapFile, fingerprint);
         if (!this.fingerprintFileIdx.exists() || !this.fingerprintFileGap.exists()) {
-            deleteAllFingerprints(this.heapFile, this.fingerprintFileIdx.getName(), this.fingerprintFileGap.getName());
+            deleteAllFingerprints(this.heapFile, this.fingerprintFileIdx.getName(), this.fingerprintFileGap.getName(), null);
+            this.fingerprintFileBloom = null;
             return false;
         }
+        deleteAllFingerprints(this.heapFile, this.fingerprintFileIdx.getName(), this.fingerprintFileGap.getName(), this.fingerprintFileBloom.getName());
 
         // there is an index and a gap file:
         // read the index file:
         try {
-            this.index = new RowHandleMap(this.keylength, this.ordering, 8, this.fingerprintFileIdx);
+            if (mappedIndex && mappable() && MappedHandleMap.canMap(this.fingerprintFileIdx, this.keylength, 8)) {
+                this.index = new MappedHandleMap(this.keylength, this.ordering, 8, this.fingerprintFileIdx);
+            } else {
+                this.index = new RowHandleMap(this.keylength, this.ordering, 8, this.fingerprintFileIdx);
+            }
         } catch (final IOException e) {
             ConcurrentLog.logException(e);
             return false;
@@ -212,14 +336,45 @@ public class HeapReader {
      * from all the data and just some key bytes it may be possible that the hash did not change.
      */
     public void deleteFingerprint() {
-        if (this.fingerprintFileIdx != null) {
-            FileUtils.deletedelete(this.fingerprintFileIdx);
-            this.fingerprintFileIdx = null;
-        }
+        // the gap file goes first: a dump is used only if both files exist, so the idx file is
+        // not used again even if it cannot be deleted because it is still mapped into memory
         if (this.fingerprintFileGap != null) {
             FileUtils.deletedelete(this.fingerprintFileGap);
             this.fingerprintFileGap = null;
         }
+        if (this.fingerprintFileIdx != null) {
+            if (releaseMappedIndex()) FileUtils.deletedelete(this.fingerprintFileIdx);
+            this.fingerprintFileIdx = null;
+        }
+        if (this.fingerprintFileBloom != null) {
+            // the bloom filter in memory stays valid, deletions only increase the false positive rate
+            FileUtils.deletedelete(this.fingerprintFileBloom);
+            this.fingerprintFileBloom = null;
+        }
+    }
+
+    /**
+     * a MappedHandleMap reads from the idx file. Before that file is deleted, the index is copied into
+     * a RAM index and the mapped index is closed and dropped, so the idx file is not used any more.
+     * @return true if the idx file is not used by the index; false if the index could not be copied
+     */
+    private boolean releaseMappedIndex() {
+        final HandleMap idx = this.index;
+        if (!(idx instanceof MappedHandleMap)) return true;
+        synchronized (idx) {
+            final RowHandleMap ram = new RowHandleMap(this.keylength, this.ordering, 8, idx.size(), this.heapFile.getAbsolutePath() + ".index");
+            try {
+                for (final Map.Entry<byte[], Long> entry: idx) ram.putUnique(entry.getKey(), entry.getValue().longValue());
+            } catch (final SpaceExceededException e) {
+                log.warn("cannot copy the mapped index of " + this.heapFile.getName() + " into memory, keeping the idx file: " + e.getMessage());
+                ram.close();
+                return false;
+            }
+            this.index = ram;
+            idx.close();
+            log.info("copied the mapped index of " + this.heapFile.getName() + " with " + ram.size() + " entries into memory");
+        }
+        return true;
     }
 
     protected static String fingerprintFileHash(File f) {
@@ -231,7 +386,7 @@ public class HeapReader {
         return fp.substring(0, 12);
     }
 
-    private static void deleteAllFingerprints(File f, String exception1, String exception2) {
+    private static void deleteAllFingerprints(File f, String exception1, String exception2, String exception3) {
         File d = f.getParentFile();
         String n = f.getName();
         String[] l = d.list();
@@ -239,8 +394,10 @@ public class HeapReader {
             if (!l[i].startsWith(n)) continue;
             if (exception1 != null && l[i].equals(exception1)) continue;
             if (exception2 != null && l[i].equals(exception2)) continue;
+            if (exception3 != null && l[i].equals(exception3)) continue;
             if (l[i].endsWith(".idx") ||
                 l[i].endsWith(".gap") ||
+                l[i].endsWith(".blm") ||
                 l[i].endsWith(".idx.gz") ||
                 l[i].endsWith(".gap.gz")
                ) FileUtils.deletedelete(new File(d, l[i]));
@@ -387,7 +544,13 @@ public class HeapReader {
             return false;
         }
         key = normalizeKey(key);
+        if (!mayContain(key)) return false;
 
+        if (this.mapped != null) {
+            // the index is thread-safe; the lock is only needed to protect the file pointer
+            final HandleMap idx = this.index;
+            return idx != null && idx.get(key) >= 0;
+        }
         synchronized (this.index) {
             // check if the file index contains the key
             return this.index.get(key) >= 0;
@@ -488,6 +651,19 @@ public class HeapReader {
             return null;
         }
         key = normalizeKey(key);
+        if (!mayContain(key)) return null;
+
+        // try a lock-free read from the memory mapping first
+        final MappedFileReader m = this.mapped;
+        if (m != null) {
+            final HandleMap idx = this.index;
+            if (idx == null) return null;
+            final long pos = idx.get(key);
+            if (pos < 0) return null;
+            final byte[] blob = getMapped(m, key, pos);
+            if (blob != null) return blob;
+            // otherwise the record is outside of the mapping or not consistent; the synchronized access handles that
+        }
 
         synchronized (this.index) {
             // check if the index contains the key
@@ -504,10 +680,7 @@ public class HeapReader {
                 this.index.remove(key);
                 return null;
             }
-            long memr = len + this.keylength + 64;
-            if (MemoryControl.available() < memr) {
-                if (!MemoryControl.request(memr, true)) throw new SpaceExceededException(memr, "HeapReader.get()/check"); // not enough memory available for this blob
-            }
+            checkMemory(len);
 
             // read the key
             byte[] keyf;
@@ -531,24 +704,105 @@ public class HeapReader {
             }
 
             // read the blob
-            byte[] blob;
-            try {
-                blob = new byte[len];
-            } catch (final OutOfMemoryError e) {
-                // try once again after GC
-                MemoryControl.gc(1000, "HeapReader.get()/blob");
-                try {
-                    blob = new byte[len];
-                } catch (final OutOfMemoryError ee) {
-                    throw new SpaceExceededException(len, "HeapReader.get()/blob");
-                }
-            }
+            final byte[] blob = newBlob(len);
             this.file.readFully(blob, 0, blob.length);
 
             return blob;
         }
     }
 
+    /**
+     * read the first bytes of a BLOB; this can be used to read a header without loading the whole BLOB
+     * @param key the primary key
+     * @param len the maximum number of bytes to read
+     * @return at most len bytes from the start of the BLOB or null if the BLOB does not exist
+     * @throws IOException
+     */
+    public byte[] head(byte[] key, final int len) throws IOException {
+        assert (this.index != null) : "index == null; closeDate=" + this.closeDate + ", now=" + new Date();
+        if (this.index == null) {
+            log.severe("this.index == null in head(); closeDate=" + this.closeDate + ", now=" + new Date() + this.heapFile == null ? "" : (" file = " + this.heapFile.toString()));
+            return null;
+        }
+        key = normalizeKey(key);
+        if (!mayContain(key)) return null;
+
+        final MappedFileReader m = this.mapped;
+        if (m != null) {
+            final HandleMap idx = this.index;
+            if (idx == null) return null;
+            final long pos = idx.get(key);
+            if (pos < 0) return null;
+            if (m.covers(pos, 4)) {
+                final int n = Math.min(len, m.readInt(pos) - this.keylength);
+                if (n >= 0 && m.covers(pos + 4 + this.keylength, n)) {
+                    final byte[] b = new byte[n];
+                    m.readFully(pos + 4 + this.keylength, b, 0, n);
+                    return b;
+                }
+            }
+        }
+
+        synchronized (this.index) {
+            final long pos = this.index.get(key);
+            if (pos < 0) return null;
+            this.file.seek(pos);
+            final int n = Math.min(len, this.file.readInt() - this.keylength);
+            if (n < 0) return null;
+            this.file.seek(pos + 4 + this.keylength);
+            final byte[] b = new byte[n];
+            this.file.readFully(b, 0, n);
+            return b;
+        }
+    }
+
+    /**
+     * read a blob from the memory mapping of the heap file
+     * @param m the mapping
+     * @param key the normalized key
+     * @param pos the seek position of the record as stored in the index
+     * @return the blob or null if the record cannot be read from the mapping
+     * @throws IOException
+     * @throws SpaceExceededException
+     */
+    private byte[] getMapped(final MappedFileReader m, final byte[] key, final long pos) throws IOException, SpaceExceededException {
+        if (!m.covers(pos, 4 + this.keylength)) return null;
+        final int len = m.readInt(pos) - this.keylength;
+        if (len < 0 || !m.covers(pos + 4 + this.keylength, len)) return null;
+        checkMemory(len);
+
+        // verify the key
+        final byte[] keyf = new byte[this.keylength];
+        m.readFully(pos + 4, keyf, 0, keyf.length);
+        if (!this.ordering.equal(key, keyf)) return null;
+
+        // read the blob
+        final byte[] blob = newBlob(len);
+        m.readFully(pos + 4 + this.keylength, blob, 0, blob.length);
+        return blob;
+    }
+
+    private void checkMemory(final int len) throws SpaceExceededException {
+        long memr = len + this.keylength + 64;
+        if (MemoryControl.available() < memr) {
+            if (!MemoryControl.request(memr, true)) throw new SpaceExceededException(memr, "HeapReader.get()/check"); // not enough memory available for this blob
+        }
+    }
+
+    private static byte[] newBlob(final int len) throws SpaceExceededException {
+        try {
+            return new byte[len];
+        } catch (final OutOfMemoryError e) {
+            // try once again after GC
+            MemoryControl.gc(1000, "HeapReader.get()/blob");
+            try {
+                return new byte[len];
+            } catch (final OutOfMemoryError ee) {
+                throw new SpaceExceededException(len, "HeapReader.get()/blob");
+            }
+        }
+    }
+
     public byte[] get(Object key) {
         if (!(key instanceof byte[])) return null;
         try {
@@ -585,6 +839,16 @@ public class HeapReader {
             return 0;
         }
         key = normalizeKey(key);
+        if (!mayContain(key)) return -1;
+
+        final MappedFileReader m = this.mapped;
+        if (m != null) {
+            final HandleMap idx = this.index;
+            if (idx == null) return -1;
+            final long pos = idx.get(key);
+            if (pos < 0) return -1;
+            if (m.covers(pos, 4)) return m.readInt(pos) - this.keylength;
+        }
 
         synchronized (this.index) {
             // check if the index contains the key
@@ -603,6 +867,7 @@ public class HeapReader {
     public void close(boolean writeIDX) {
         if (this.index == null) return;
         synchronized (this.index) {
+            unmap();
             try {
             if (this.file != null)
     			try {
@@ -643,6 +908,10 @@ public class HeapReader {
                             this.index.dump(newFingerprintFileIdx);
                             log.info("wrote a dump for the " + this.index.size() +  " index entries of " + this.heapFile.getName()+ " in " + (System.currentTimeMillis() - start) + " milliseconds.");
                         }
+                        File newFingerprintFileBloom = HeapWriter.fingerprintBloomFile(this.heapFile, fingerprint);
+                        if (this.bloom != null && !newFingerprintFileBloom.exists()) {
+                            this.bloom.dump(newFingerprintFileBloom);
+                        }
                     }
                     this.index.close();
                     this.index = null;
@@ -654,6 +923,7 @@ public class HeapReader {
             this.free = null;
             if (this.index != null) this.index.close();
             this.index = null;
+            this.bloom = null;
             this.closeDate = new Date();
             } catch (Throwable e) {ConcurrentLog.logException(e);}
             log.info("close HeapFile " + this.heapFile.getName() + "; trace: " + ConcurrentLog.stackTrace());
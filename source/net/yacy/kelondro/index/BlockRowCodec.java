@@ -0,0 +1,332 @@
+// BlockRowCodec.java
+// -----------------------
+// (C) 2016 by the YaCy contributors
+// first published 2016 on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.index;
+
+import java.io.ByteArrayOutputStream;
+
+import net.yacy.cora.order.NaturalOrder;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.util.MemoryControl;
+
+/**
+ * A compact export format for sorted row collections, used for the reference containers of the RWI.
+ * Other than RowCollection.exportCollection(), which writes the rows as they are, this format
+ * stores the rows in blocks:
+ *
+ * export   :== magic count blocksize skip* block*
+ * magic    :== <1 byte, 0x81; the old format starts with a positive 4-byte count, so the high bit is never set>
+ * count    :== <4 byte integer, number of rows>
+ * blocksize:== <2 byte integer, number of rows in each block but the last>
+ * skip     :== <primary key of the first row of the block> <4 byte integer, offset of the block after the skip table>
+ * block    :== frame* row*
+ * frame    :== base width  <one frame for each b256-encoded cardinal column but the key>
+ * base     :== <varint, the smallest value of the column in the block>
+ * width    :== <1 byte, the number of bits used for the values of the column in the block>
+ * row      :== [prefix suffix] packed cell*
+ * prefix   :== <1 byte, number of bytes that the key shares with the key of the previous row; not present in the first row of a block>
+ * suffix   :== <the remaining bytes of the key; not present in the first row of a block>
+ * packed   :== <the values - base of all cardinal columns with width bits each, big-endian bit order, padded to full bytes>
+ * cell     :== <the raw cell bytes of a column which is not a b256-encoded cardinal>
+ *
+ * Because the keys are sorted, the front-coding of the keys removes the common prefixes and the
+ * frames of reference remove the unused bits of the feature fields within a block. The skip
+ * table can be used to find a single row with a binary search and the decoding of only one block.
+ * Trailing bytes after the last block are ignored; this allows to pad an export to a given length.
+ */
+public final class BlockRowCodec {
+
+    public static final byte magic = (byte) 0x81;
+    public static int blockSize = 128;
+
+    private static final int headerSize = 7;
+
+    /**
+     * test if an exported collection was written with this codec
+     * @param b an exported collection
+     * @return true if the collection must be decoded with this codec
+     */
+    public static boolean isEncoded(final byte[] b) {
+        return b != null && b.length >= headerSize && b[0] == magic;
+    }
+
+    /**
+     * read the number of rows of an exported collection; this works for the old and the new format
+     * and needs only the first 5 bytes of the export
+     * @param head the first bytes of an exported collection
+     * @return the number of rows
+     */
+    public static int count(final byte[] head) {
+        if (head == null || head.length < 5) return 0;
+        if (head[0] == magic) return (int) NaturalOrder.decodeLong(head, 1, 4);
+        return (int) NaturalOrder.decodeLong(head, 0, 4);
+    }
+
+    /**
+     * encode a sorted collection
+     * @param rc the collection; must be sorted
+     * @return the encoded collection
+     */
+    public static byte[] encode(final RowCollection rc) {
+        final Row rowdef = rc.rowdef;
+        final int count = rc.size();
+        final int keylength = rowdef.primaryKeyLength;
+        final int bs = Math.max(1, Math.min(0xFFFF, blockSize));
+        final int blocks = (count + bs - 1) / bs;
+        final byte[] cache = rc.chunkcache;
+        final int objectsize = rowdef.objectsize;
+
+        final ByteArrayOutputStream data = new ByteArrayOutputStream(count * objectsize / 2 + 16);
+        final byte[] skip = new byte[blocks * (keylength + 4)];
+        final long[] base = new long[rowdef.columns()];
+        final int[] width = new int[rowdef.columns()];
+        for (int block = 0; block < blocks; block++) {
+            final int first = block * bs;
+            final int last = Math.min(count, first + bs);
+
+            // the key of the first row in a block is only stored in the skip table
+            final int s = block * (keylength + 4);
+            System.arraycopy(cache, first * objectsize, skip, s, keylength);
+            NaturalOrder.encodeLong(data.size(), skip, s + keylength, 4);
+
+            // compute the frames of the cardinal columns
+            for (int col = 1; col < rowdef.columns(); col++) {
+                if (!isCardinal(rowdef.column(col))) continue;
+                final int cellwidth = rowdef.column(col).cellwidth;
+                long min = Long.MAX_VALUE, max = 0;
+                for (int i = first; i < last; i++) {
+                    final long v = NaturalOrder.decodeLong(cache, i * objectsize + rowdef.colstart[col], cellwidth);
+                    if (v < min) min = v;
+                    if (v > max) max = v;
+                }
+                base[col] = min;
+                width[col] = bitWidth(max - min);
+                writeVarLong(data, min);
+                data.write(width[col]);
+            }
+
+            for (int i = first; i < last; i++) {
+                final int start = i * objectsize;
+                if (i > first) {
+                    final int prev = start - objectsize;
+                    int p = 0;
+                    while (p < keylength && p < 255 && cache[prev + p] == cache[start + p]) p++;
+                    data.write(p);
+                    data.write(cache, start + p, keylength - p);
+                }
+                long acc = 0; // bit accumulator, holds less than 8 bits between the columns
+                int bits = 0;
+                for (int col = 1; col < rowdef.columns(); col++) {
+                    final Column column = rowdef.column(col);
+                    if (!isCardinal(column)) continue;
+                    final long v = NaturalOrder.decodeLong(cache, start + rowdef.colstart[col], column.cellwidth) - base[col];
+                    for (int k = width[col] - 1; k >= 0; k--) {
+                        acc = (acc << 1) | ((v >>> k) & 1);
+                        if (++bits == 8) {
+                            data.write((int) acc);
+                            acc = 0;
+                            bits = 0;
+                        }
+                    }
+                }
+                if (bits > 0) data.write((int) (acc << (8 - bits)));
+                for (int col = 1; col < rowdef.columns(); col++) {
+                    final Column column = rowdef.column(col);
+                    if (!isCardinal(column)) data.write(cache, start + rowdef.colstart[col], column.cellwidth);
+                }
+            }
+        }
+
+        final byte[] b = new byte[headerSize + skip.length + data.size()];
+        b[0] = magic;
+        NaturalOrder.encodeLong(count, b, 1, 4);
+        NaturalOrder.encodeLong(bs, b, 5, 2);
+        System.arraycopy(skip, 0, b, headerSize, skip.length);
+        final byte[] d = data.toByteArray();
+        System.arraycopy(d, 0, b, headerSize + skip.length, d.length);
+        return b;
+    }
+
+    /**
+     * decode an exported collection
+     * @param b a byte array which was produced with encode()
+     * @param rowdef the row definition of the collection
+     * @return a sorted RowSet
+     * @throws SpaceExceededException
+     */
+    public static RowSet decode(final byte[] b, final Row rowdef) throws SpaceExceededException {
+        assert isEncoded(b);
+        final int count = (int) NaturalOrder.decodeLong(b, 1, 4);
+        final long alloc = ((long) count) * ((long) rowdef.objectsize);
+        if (count < 0 || alloc > Integer.MAX_VALUE) throw new SpaceExceededException(alloc, "BlockRowCodec.decode: alloc > Integer.MAX_VALUE");
+        MemoryControl.request(alloc, true);
+        final byte[] chunkcache;
+        try {
+            chunkcache = new byte[(int) alloc];
+        } catch (final OutOfMemoryError e) {
+            throw new SpaceExceededException(alloc, "BlockRowCodec.decode: OutOfMemoryError");
+        }
+        final int bs = (int) NaturalOrder.decodeLong(b, 5, 2);
+        final int blocks = (count + bs - 1) / bs;
+        final int dataStart = headerSize + blocks * (rowdef.primaryKeyLength + 4);
+        for (int block = 0; block < blocks; block++) {
+            decodeBlock(b, rowdef, dataStart, block, bs, count, chunkcache, block * bs * rowdef.objectsize);
+        }
+        return new RowSet(rowdef, count, chunkcache, count);
+    }
+
+    /**
+     * find a row using the skip table; only one block is decoded
+     * @param b a byte array which was produced with encode()
+     * @param rowdef the row definition of the collection
+     * @param key the primary key of the wanted row
+     * @return the row or null if the key is not in the collection
+     */
+    public static Row.Entry get(final byte[] b, final Row rowdef, final byte[] key) {
+        assert isEncoded(b);
+        final int count = (int) NaturalOrder.decodeLong(b, 1, 4);
+        if (count <= 0) return null;
+        final int keylength = rowdef.primaryKeyLength;
+        final int bs = (int) NaturalOrder.decodeLong(b, 5, 2);
+        final int blocks = (count + bs - 1) / bs;
+
+        // find the last block with a first key <= key
+        int l = 0, r = blocks - 1, block = -1;
+        while (l <= r) {
+            final int m = (l + r) >>> 1;
+            final int c = rowdef.objectOrder.compare(b, headerSize + m * (keylength + 4), key, 0, keylength);
+            if (c == 0) {block = m; break;}
+            if (c < 0) {block = m; l = m + 1;} else r = m - 1;
+        }
+        if (block < 0) return null;
+
+        final int rows = Math.min(bs, count - block * bs);
+        final byte[] chunk = new byte[rows * rowdef.objectsize];
+        decodeBlock(b, rowdef, headerSize + blocks * (keylength + 4), block, bs, count, chunk, 0);
+        for (int i = 0; i < rows; i++) {
+            final int c = rowdef.objectOrder.compare(chunk, i * rowdef.objectsize, key, 0, keylength);
+            if (c == 0) return rowdef.newEntry(chunk, i * rowdef.objectsize, true);
+            if (c > 0) break;
+        }
+        return null;
+    }
+
+    static int blockSize(final byte[] b) {
+        return (int) NaturalOrder.decodeLong(b, 5, 2);
+    }
+
+    /**
+     * compare the first key of a block with a key
+     */
+    static int compareBlockKey(final byte[] b, final Row rowdef, final int block, final byte[] key) {
+        return rowdef.objectOrder.compare(b, headerSize + block * (rowdef.primaryKeyLength + 4), key, 0, rowdef.primaryKeyLength);
+    }
+
+    /**
+     * decode a single block
+     * @return the number of rows that had been written to the target
+     */
+    static int decodeBlock(final byte[] b, final Row rowdef, final int block, final byte[] target) {
+        final int count = (int) NaturalOrder.decodeLong(b, 1, 4);
+        final int bs = blockSize(b);
+        final int blocks = (count + bs - 1) / bs;
+        decodeBlock(b, rowdef, headerSize + blocks * (rowdef.primaryKeyLength + 4), block, bs, count, target, 0);
+        return Math.min(bs, count - block * bs);
+    }
+
+    private static void decodeBlock(final byte[] b, final Row rowdef, final int dataStart, final int block, final int bs, final int count, final byte[] target, int tp) {
+        final int keylength = rowdef.primaryKeyLength;
+        final int objectsize = rowdef.objectsize;
+        final int s = headerSize + block * (keylength + 4);
+        final int[] p = new int[]{dataStart + (int) NaturalOrder.decodeLong(b, s + keylength, 4)};
+        final int rows = Math.min(bs, count - block * bs);
+
+        // read the frames
+        final long[] base = new long[rowdef.columns()];
+        final int[] width = new int[rowdef.columns()];
+        for (int col = 1; col < rowdef.columns(); col++) {
+            if (!isCardinal(rowdef.column(col))) continue;
+            base[col] = readVarLong(b, p);
+            width[col] = b[p[0]++];
+        }
+
+        int q = p[0];
+        for (int i = 0; i < rows; i++) {
+            if (i == 0) {
+                System.arraycopy(b, s, target, tp, keylength);
+            } else {
+                final int prefix = b[q++] & 0xFF;
+                System.arraycopy(target, tp - objectsize, target, tp, prefix);
+                System.arraycopy(b, q, target, tp + prefix, keylength - prefix);
+                q += keylength - prefix;
+            }
+            int bit = 0; // the number of bits consumed from b[q]
+            for (int col = 1; col < rowdef.columns(); col++) {
+                final Column column = rowdef.column(col);
+                if (!isCardinal(column)) continue;
+                long v = 0;
+                for (int k = 0; k < width[col]; k++) {
+                    v = (v << 1) | ((b[q] >>> (7 - bit)) & 1);
+                    if (++bit == 8) {
+                        q++;
+                        bit = 0;
+                    }
+                }
+                NaturalOrder.encodeLong(v + base[col], target, tp + rowdef.colstart[col], column.cellwidth);
+            }
+            if (bit > 0) q++;
+            for (int col = 1; col < rowdef.columns(); col++) {
+                final Column column = rowdef.column(col);
+                if (isCardinal(column)) continue;
+                System.arraycopy(b, q, target, tp + rowdef.colstart[col], column.cellwidth);
+                q += column.cellwidth;
+            }
+            tp += objectsize;
+        }
+    }
+
+    private static boolean isCardinal(final Column column) {
+        return column.encoder == Column.encoder_b256 && column.cellwidth <= 8;
+    }
+
+    private static int bitWidth(final long v) {
+        return 64 - Long.numberOfLeadingZeros(v);
+    }
+
+    private static long readVarLong(final byte[] b, final int[] p) {
+        long v = 0;
+        int shift = 0;
+        byte x;
+        do {
+            x = b[p[0]++];
+            v |= ((long) (x & 0x7F)) << shift;
+            shift += 7;
+        } while (x < 0);
+        return v;
+    }
+
+    private static void writeVarLong(final ByteArrayOutputStream os, long v) {
+        while ((v & ~0x7FL) != 0) {
+            os.write((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        os.write((int) v);
+    }
+
+}
@@ -0,0 +1,199 @@
+// BloomFilter.java
+// -----------------------
+// (C) 2016 by the YaCy contributors
+// first published 2016 on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.index;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * A bloom filter over byte[] keys. It answers the question if a key may be contained in a set:
+ * a negative answer is always correct, a positive answer is wrong with the probability given at
+ * construction time. The filter is made for key sets which are written once and then only read,
+ * like the keys of a heap file which is not written any more; put() is not synchronized but
+ * mightContain() can be called concurrently after the filter has been filled.
+ *
+ * The filter can be dumped to a file and loaded again. The file format is
+ * magic (int), number of hash functions (int), number of bits (long), bit array (long*)
+ */
+public final class BloomFilter {
+
+    private static final int magic = 0x424C4D32; // "BLM2", files with "BLM1" used 31 bit positions and are re-built
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    /**
+     * create an empty bloom filter
+     * @param expectedKeys the number of keys that shall be stored
+     * @param fpp the wanted false positive probability, i.e. 0.01
+     */
+    public BloomFilter(final long expectedKeys, final double fpp) {
+        final long n = Math.max(1, expectedKeys);
+        this.bits = new long[words(n, fpp)];
+        this.bitCount = ((long) this.bits.length) << 6;
+        this.hashCount = Math.max(1, Math.min(16, (int) Math.round((double) this.bitCount / n * Math.log(2))));
+    }
+
+    /**
+     * the memory which a filter needs for the given number of keys and false positive probability
+     * @param expectedKeys
+     * @param fpp
+     * @return number of bytes
+     */
+    public static long mem(final long expectedKeys, final double fpp) {
+        return ((long) words(Math.max(1, expectedKeys), fpp)) << 3;
+    }
+
+    private static int words(final long n, final double fpp) {
+        final long m = Math.max(64, (long) (-n * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+        return (int) Math.min(Integer.MAX_VALUE - 8, (m + 63) >>> 6);
+    }
+
+    private BloomFilter(final long[] bits, final int hashCount) {
+        this.bits = bits;
+        this.bitCount = ((long) bits.length) << 6;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * create a bloom filter containing all keys from an iterator
+     * @param keys the keys
+     * @param size the number of keys in the iterator
+     * @param fpp the false positive probability
+     * @return the filled filter
+     */
+    public static BloomFilter of(final Iterator<byte[]> keys, final long size, final double fpp) {
+        final BloomFilter filter = new BloomFilter(size, fpp);
+        while (keys.hasNext()) filter.put(keys.next());
+        return filter;
+    }
+
+    public void put(final byte[] key) {
+        final long h1 = hash(key);
+        final long h2 = secondHash(h1);
+        for (int i = 1; i <= this.hashCount; i++) {
+            final long bit = ((h1 + i * h2) & Long.MAX_VALUE) % this.bitCount;
+            this.bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * test if a key may be contained in the filter
+     * @param key
+     * @return false if the key is not in the set, true if the key may be in the set
+     */
+    public boolean mightContain(final byte[] key) {
+        final long h1 = hash(key);
+        final long h2 = secondHash(h1);
+        for (int i = 1; i <= this.hashCount; i++) {
+            final long bit = ((h1 + i * h2) & Long.MAX_VALUE) % this.bitCount;
+            if ((this.bits[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * the memory used by the bit array
+     * @return number of bytes
+     */
+    public long mem() {
+        return ((long) this.bits.length) << 3;
+    }
+
+    /**
+     * write the filter to a file; the file is first written to a temporary file which is renamed
+     * afterwards, so a crash during writing does not leave a broken filter behind
+     * @param file
+     * @throws IOException
+     */
+    public void dump(final File file) throws IOException {
+        final File tmp = new File(file.getParentFile(), file.getName() + ".prt");
+        final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024));
+        try {
+            os.writeInt(magic);
+            os.writeInt(this.hashCount);
+            os.writeLong(this.bitCount);
+            for (final long l: this.bits) os.writeLong(l);
+        } finally {
+            os.close();
+        }
+        if (file.exists()) FileUtils.deletedelete(file);
+        if (!tmp.renameTo(file)) throw new IOException("cannot rename " + tmp + " to " + file);
+    }
+
+    /**
+     * load a filter from a file which was written with dump()
+     * @param file
+     * @return the filter
+     * @throws IOException if the file cannot be read or has not the expected format
+     */
+    public static BloomFilter load(final File file) throws IOException {
+        final DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        try {
+            if (is.readInt() != magic) throw new IOException("wrong format of bloom filter file " + file);
+            final int hashCount = is.readInt();
+            final long bitCount = is.readLong();
+            if (hashCount < 1 || bitCount < 64 || (bitCount & 63) != 0 || (bitCount >>> 6) > Integer.MAX_VALUE ||
+                file.length() != 16 + (bitCount >>> 3)) throw new IOException("bad header in bloom filter file " + file);
+            final long[] bits = new long[(int) (bitCount >>> 6)];
+            for (int i = 0; i < bits.length; i++) bits[i] = is.readLong();
+            return new BloomFilter(bits, hashCount);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * a 64 bit hash of the key: FNV-1a followed by the finalizer of murmur3 to spread the bits
+     */
+    private static long hash(final byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (final byte b: key) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93f53e2e63bL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * the second hash for the double hashing of the bit positions; it is odd so the positions of one key do not
+     * collapse into one bit. All 64 bits of both hashes are used, so filters with more than 2^31 bits are
+     * addressed completely.
+     */
+    private static long secondHash(final long h) {
+        return (Long.rotateLeft(h, 32) * 0x9e3779b97f4a7c15L) | 1L;
+    }
+
+}
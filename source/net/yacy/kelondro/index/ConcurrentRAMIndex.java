@@ -0,0 +1,517 @@
+// ConcurrentRAMIndex.java
+// -----------------------
+// (C) 2016 by the YaCy contributors
+// first published 2016 on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.index;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.yacy.cora.order.CloneableIterator;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.Row.Entry;
+import net.yacy.kelondro.util.MergeIterator;
+import net.yacy.kelondro.util.StackIterator;
+import net.yacy.kelondro.workflow.WorkflowProcessor;
+
+/**
+ * A RAM index which is divided into stripes by a hash of the key. Each stripe is a RowSet with its own
+ * read-write lock, so lookups run concurrently, also within the same stripe, and writes only block the
+ * one stripe of the written key. Other than RAMIndexCluster the number of stripes does not depend on the
+ * expected size of the index but on the number of cores.
+ *
+ * Rows returned by get() are always copies, because a stripe may be changed as soon as the lock is released.
+ * Iterators work on the stripes in place: each stripe is sorted when the iterator is created and every step
+ * of the iteration is done with the read lock of the stripe. As with the RAMIndex, rows which are written
+ * during the iteration may or may not be enumerated.
+ */
+public final class ConcurrentRAMIndex implements Index, Iterable<Row.Entry> {
+
+    private final String name;
+    private final Row rowdef;
+    private final RowSet[] stripes;
+    private final ReentrantReadWriteLock[] locks;
+    private final int mask;
+
+    public ConcurrentRAMIndex(final String name, final Row rowdef) {
+        this(name, rowdef, WorkflowProcessor.availableCPU * 4);
+    }
+
+    /**
+     * @param name
+     * @param rowdef
+     * @param concurrency the expected number of concurrent threads; the number of stripes is the next power of two
+     */
+    public ConcurrentRAMIndex(final String name, final Row rowdef, final int concurrency) {
+        this(name, rowdef, concurrency, 0);
+    }
+
+    /**
+     * @param name
+     * @param rowdef
+     * @param concurrency the expected number of concurrent threads; the number of stripes is the next power of two
+     * @param expectedspace the expected number of rows; the stripes are allocated for this number of rows if enough memory is available
+     */
+    public ConcurrentRAMIndex(final String name, final Row rowdef, final int concurrency, final int expectedspace) {
+        this.name = name;
+        this.rowdef = rowdef;
+        final int n = Math.min(256, Integer.highestOneBit(Math.max(2, concurrency) * 2 - 1));
+        this.mask = n - 1;
+        this.stripes = new RowSet[n];
+        this.locks = new ReentrantReadWriteLock[n];
+        final int stripespace = Math.max(0, expectedspace) / n;
+        for (int i = 0; i < n; i++) {
+            RowSet s = null;
+            if (stripespace > 0) try {
+                s = new RowSet(rowdef, stripespace);
+            } catch (final SpaceExceededException e) {
+                // the stripe grows when rows are added
+            }
+            this.stripes[i] = s == null ? new RowSet(rowdef) : s;
+            this.locks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    private final int stripeFor(final byte[] key, final int keylength) {
+        int h = 0;
+        for (int i = 0; i < keylength; i++) h = 31 * h + key[i];
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h & this.mask;
+    }
+
+    private final int stripeFor(final byte[] key) {
+        return stripeFor(key, this.rowdef.primaryKeyLength);
+    }
+
+    private final int stripeFor(final Entry row) {
+        return stripeFor(row.getPrimaryKeyBytes(), row.getPrimaryKeyLength());
+    }
+
+    /**
+     * lock a stripe for reading; if the stripe must be sorted before a lookup, it is sorted with the write lock first
+     */
+    private final RowSet readLock(final int i) {
+        final ReentrantReadWriteLock lock = this.locks[i];
+        lock.readLock().lock();
+        if (this.stripes[i].needsSort()) {
+            lock.readLock().unlock();
+            lock.writeLock().lock();
+            try {
+                this.stripes[i].sort();
+            } finally {
+                // downgrade the lock
+                lock.readLock().lock();
+                lock.writeLock().unlock();
+            }
+        }
+        return this.stripes[i];
+    }
+
+    @Override
+    public final String filename() {
+        return null; // this does not have a file name
+    }
+
+    @Override
+    public final int size() {
+        int c = 0;
+        for (final RowSet s: this.stripes) c += s.size();
+        return c;
+    }
+
+    @Override
+    public final void optimize() {
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.locks[i].writeLock().lock();
+            try {
+                this.stripes[i].optimize();
+            } finally {
+                this.locks[i].writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public final long mem() {
+        long m = 0;
+        for (final RowSet s: this.stripes) m += s.mem();
+        return m;
+    }
+
+    @Override
+    public final boolean isEmpty() {
+        for (final RowSet s: this.stripes) if (!s.isEmpty()) return false;
+        return true;
+    }
+
+    @Override
+    public final Row row() {
+        return this.rowdef;
+    }
+
+    @Override
+    public final byte[] smallestKey() {
+        byte[] smallest = null;
+        for (int i = 0; i < this.stripes.length; i++) {
+            final byte[] k;
+            this.locks[i].writeLock().lock();
+            try {
+                k = this.stripes[i].smallestKey();
+            } finally {
+                this.locks[i].writeLock().unlock();
+            }
+            if (k != null && (smallest == null || this.rowdef.objectOrder.compare(k, smallest) < 0)) smallest = k;
+        }
+        return smallest;
+    }
+
+    @Override
+    public final byte[] largestKey() {
+        byte[] largest = null;
+        for (int i = 0; i < this.stripes.length; i++) {
+            final byte[] k;
+            this.locks[i].writeLock().lock();
+            try {
+                k = this.stripes[i].largestKey();
+            } finally {
+                this.locks[i].writeLock().unlock();
+            }
+            if (k != null && (largest == null || this.rowdef.objectOrder.compare(k, largest) > 0)) largest = k;
+        }
+        return largest;
+    }
+
+    @Override
+    public final boolean has(final byte[] key) {
+        assert (key != null);
+        final int i = stripeFor(key);
+        final RowSet s = readLock(i);
+        try {
+            return s.lookup(key) != null;
+        } finally {
+            this.locks[i].readLock().unlock();
+        }
+    }
+
+    @Override
+    public final Entry get(final byte[] key, final boolean forcecopy) {
+        assert (key != null);
+        final int i = stripeFor(key);
+        final RowSet s = readLock(i);
+        try {
+            return s.lookup(key);
+        } finally {
+            this.locks[i].readLock().unlock();
+        }
+    }
+
+    @Override
+    public Map<byte[], Row.Entry> get(final Collection<byte[]> keys, final boolean forcecopy) throws IOException, InterruptedException {
+        final Map<byte[], Row.Entry> map = new TreeMap<byte[], Row.Entry>(this.rowdef.objectOrder);
+        Row.Entry entry;
+        for (final byte[] key: keys) {
+            entry = get(key, forcecopy);
+            if (entry != null) map.put(key, entry);
+        }
+        return map;
+    }
+
+    @Override
+    public final Entry replace(final Entry row) throws SpaceExceededException {
+        assert (row != null);
+        final int i = stripeFor(row);
+        this.locks[i].writeLock().lock();
+        try {
+            return this.stripes[i].replace(row);
+        } finally {
+            this.locks[i].writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the row to the index. The row is identified by the primary key of the row.
+     * @param row a index row
+     * @return true if this set did _not_ already contain the given row.
+     * @throws SpaceExceededException
+     */
+    @Override
+    public final boolean put(final Entry row) throws SpaceExceededException {
+        assert (row != null);
+        final int i = stripeFor(row);
+        this.locks[i].writeLock().lock();
+        try {
+            return this.stripes[i].put(row);
+        } finally {
+            this.locks[i].writeLock().unlock();
+        }
+    }
+
+    @Override
+    public final void addUnique(final Entry row) throws SpaceExceededException {
+        assert (row != null);
+        final int i = stripeFor(row);
+        this.locks[i].writeLock().lock();
+        try {
+            this.stripes[i].addUnique(row);
+        } finally {
+            this.locks[i].writeLock().unlock();
+        }
+    }
+
+    public final void addUnique(final List<Entry> rows) throws SpaceExceededException {
+        for (final Entry row: rows) addUnique(row);
+    }
+
+    public final long inc(final byte[] key, final int col, final long add, final Entry initrow) throws SpaceExceededException {
+        final int i = stripeFor(key);
+        this.locks[i].writeLock().lock();
+        try {
+            return this.stripes[i].inc(key, col, add, initrow);
+        } finally {
+            this.locks[i].writeLock().unlock();
+        }
+    }
+
+    @Override
+    public final ArrayList<RowCollection> removeDoubles() throws SpaceExceededException {
+        final ArrayList<RowCollection> col = new ArrayList<RowCollection>();
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.locks[i].writeLock().lock();
+            try {
+                col.addAll(this.stripes[i].removeDoubles());
+            } finally {
+                this.locks[i].writeLock().unlock();
+            }
+        }
+        return col;
+    }
+
+    @Override
+    public final boolean delete(final byte[] key) {
+        final int i = stripeFor(key);
+        this.locks[i].writeLock().lock();
+        try {
+            return this.stripes[i].delete(key);
+        } finally {
+            this.locks[i].writeLock().unlock();
+        }
+    }
+
+    @Override
+    public final Entry remove(final byte[] key) {
+        final int i = stripeFor(key);
+        this.locks[i].writeLock().lock();
+        try {
+            return this.stripes[i].remove(key);
+        } finally {
+            this.locks[i].writeLock().unlock();
+        }
+    }
+
+    @Override
+    public final Entry removeOne() {
+        for (int i = 0; i < this.stripes.length; i++) {
+            if (this.stripes[i].isEmpty()) continue;
+            this.locks[i].writeLock().lock();
+            try {
+                final Entry entry = this.stripes[i].removeOne();
+                if (entry != null) return entry;
+            } finally {
+                this.locks[i].writeLock().unlock();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public final List<Row.Entry> top(final int count) {
+        final List<Row.Entry> list = new ArrayList<Row.Entry>();
+        for (int i = 0; i < this.stripes.length && list.size() < count; i++) {
+            this.locks[i].writeLock().lock();
+            try {
+                list.addAll(this.stripes[i].top(count - list.size()));
+            } finally {
+                this.locks[i].writeLock().unlock();
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public final List<Row.Entry> random(final int count) {
+        final List<Row.Entry> list = new ArrayList<Row.Entry>();
+        for (int i = 0; i < this.stripes.length && list.size() < count; i++) {
+            this.locks[i].writeLock().lock();
+            try {
+                list.addAll(this.stripes[i].random(count - list.size()));
+            } finally {
+                this.locks[i].writeLock().unlock();
+            }
+        }
+        return list;
+    }
+
+    /**
+     * an iterator on one stripe which is not copied; each step is done with the read lock of the stripe
+     */
+    private final class StripeIterator<E> implements CloneableIterator<E> {
+
+        private final int stripe;
+        private final CloneableIterator<E> iterator;
+
+        private StripeIterator(final int stripe, final CloneableIterator<E> iterator) {
+            this.stripe = stripe;
+            this.iterator = iterator;
+        }
+
+        @Override
+        public StripeIterator<E> clone(final Object modifier) {
+            // the iterator of the stripe sorts the stripe when it is created
+            ConcurrentRAMIndex.this.locks[this.stripe].writeLock().lock();
+            try {
+                return new StripeIterator<E>(this.stripe, this.iterator.clone(modifier));
+            } finally {
+                ConcurrentRAMIndex.this.locks[this.stripe].writeLock().unlock();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            ConcurrentRAMIndex.this.locks[this.stripe].readLock().lock();
+            try {
+                return this.iterator.hasNext();
+            } finally {
+                ConcurrentRAMIndex.this.locks[this.stripe].readLock().unlock();
+            }
+        }
+
+        @Override
+        public E next() {
+            ConcurrentRAMIndex.this.locks[this.stripe].readLock().lock();
+            try {
+                return this.iterator.next();
+            } finally {
+                ConcurrentRAMIndex.this.locks[this.stripe].readLock().unlock();
+            }
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            this.iterator.close();
+        }
+    }
+
+    @Override
+    public final CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) {
+        final Collection<CloneableIterator<byte[]>> col = new ArrayList<CloneableIterator<byte[]>>(this.stripes.length);
+        for (int i = 0; i < this.stripes.length; i++) {
+            if (this.stripes[i].isEmpty()) continue;
+            this.locks[i].writeLock().lock();
+            try {
+                col.add(new StripeIterator<byte[]>(i, this.stripes[i].keys(up, firstKey)));
+            } finally {
+                this.locks[i].writeLock().unlock();
+            }
+        }
+        return MergeIterator.cascade(col, this.rowdef.objectOrder, MergeIterator.simpleMerge, up);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public final CloneableIterator<Row.Entry> rows(final boolean up, final byte[] firstKey) {
+        final List<CloneableIterator<Row.Entry>> col = new ArrayList<CloneableIterator<Row.Entry>>(this.stripes.length);
+        for (int i = 0; i < this.stripes.length; i++) {
+            if (this.stripes[i].isEmpty()) continue;
+            this.locks[i].writeLock().lock();
+            try {
+                col.add(new StripeIterator<Row.Entry>(i, this.stripes[i].rows(up, firstKey)));
+            } finally {
+                this.locks[i].writeLock().unlock();
+            }
+        }
+        return StackIterator.stack(col.toArray((CloneableIterator<Row.Entry>[]) Array.newInstance(CloneableIterator.class, col.size())), getEntryComparator(), up);
+    }
+
+    private Comparator<Row.Entry> getEntryComparator() {
+        return new Comparator<Row.Entry>() {
+            @Override
+            public int compare(final Row.Entry o1, final Row.Entry o2) {
+                return ConcurrentRAMIndex.this.rowdef.objectOrder.compare(o1.getPrimaryKeyBytes(), o2.getPrimaryKeyBytes());
+            }
+        };
+    }
+
+    @Override
+    public final CloneableIterator<Row.Entry> rows() {
+        return rows(true, null);
+    }
+
+    @Override
+    public final Iterator<Row.Entry> iterator() {
+        return rows();
+    }
+
+    @Override
+    public final void deleteOnExit() {
+        // do nothing, there is no file
+    }
+
+    @Override
+    public final void clear() {
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.locks[i].writeLock().lock();
+            try {
+                this.stripes[i].clear();
+            } finally {
+                this.locks[i].writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public final void close() {
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.locks[i].writeLock().lock();
+            try {
+                this.stripes[i].close();
+            } finally {
+                this.locks[i].writeLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public final String toString() {
+        return this.name + " (" + this.stripes.length + " stripes)";
+    }
+}
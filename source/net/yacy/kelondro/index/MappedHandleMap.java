@@ -0,0 +1,402 @@
+// MappedHandleMap.java
+// -----------------------
+// (C) 2016 by the YaCy contributors
+// first published 2016 on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.index;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import net.yacy.cora.order.ByteOrder;
+import net.yacy.cora.order.CloneableIterator;
+import net.yacy.cora.storage.HandleMap;
+
+/**
+ * A HandleMap which is not stored in the java heap but is a memory mapping of an index dump file
+ * as written by RowHandleMap.dump(): a sequence of fixed-size records (key, value) sorted by the key order,
+ * the value is stored big-endian in idxbytes bytes. Lookups are done with a binary search on the mapped file.
+ *
+ * The map is read-only with the exception of removals: removed entries are marked in a bit set and skipped
+ * afterwards. The dump file itself is never written; it is therefore safe to delete the file while the map
+ * is in use (on systems which support deletion of mapped files). This map is made for index files of heap
+ * files which are not written any more, like the older files of an ArrayStack.
+ */
+public final class MappedHandleMap implements HandleMap {
+
+    private static final int chunksize = 1 << 30;
+
+    private final int keylength, idxbytes, recsize, chunkEntries;
+    private final ByteOrder ordering;
+    private final File file;
+    private volatile MappedByteBuffer[] chunks;
+    private volatile int count;
+    private volatile AtomicLongArray removed; // lazily initialized bit set of removed entries
+    private final AtomicInteger removedCount;
+
+    /**
+     * initialize a HandleMap with a mapping of a dumped index
+     * @param keylength
+     * @param ordering the order of the keys; this must be the order that was used to write the dump
+     * @param idxbytes
+     * @param file the index dump
+     * @throws IOException
+     */
+    public MappedHandleMap(final int keylength, final ByteOrder ordering, final int idxbytes, final File file) throws IOException {
+        if (!canMap(file, keylength, idxbytes)) throw new IOException("file " + file.getName() + " is not a plain index dump with record size " + (keylength + idxbytes));
+        this.keylength = keylength;
+        this.ordering = ordering;
+        this.idxbytes = idxbytes;
+        this.recsize = keylength + idxbytes;
+        this.chunkEntries = chunksize / this.recsize;
+        this.file = file;
+        this.removed = null;
+        this.removedCount = new AtomicInteger(0);
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            final long length = channel.size();
+            final long entries = length / this.recsize;
+            if (entries > Integer.MAX_VALUE) throw new IOException("file " + file.getName() + " has too many entries: " + entries);
+            this.count = (int) entries;
+            final int c = (this.count + this.chunkEntries - 1) / this.chunkEntries;
+            final MappedByteBuffer[] m = new MappedByteBuffer[c];
+            for (int i = 0; i < c; i++) {
+                final long start = ((long) i) * this.chunkEntries * this.recsize;
+                m[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(((long) this.chunkEntries) * this.recsize, length - start));
+            }
+            this.chunks = m;
+        } finally {
+            // the mapping stays valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * test if a file can be used as source for a MappedHandleMap
+     * @param file
+     * @param keylength
+     * @param idxbytes
+     * @return true if the file is a not compressed dump with the given record size
+     */
+    public static boolean canMap(final File file, final int keylength, final int idxbytes) {
+        return file.exists() && !file.getName().endsWith(".gz") && file.length() > 0 && file.length() % (keylength + idxbytes) == 0;
+    }
+
+    public File file() {
+        return this.file;
+    }
+
+    private ByteBuffer record(final MappedByteBuffer[] m, final int i) {
+        final ByteBuffer b = m[i / this.chunkEntries].duplicate();
+        b.position((i % this.chunkEntries) * this.recsize);
+        return b;
+    }
+
+    private byte[] key(final MappedByteBuffer[] m, final int i) {
+        final byte[] key = new byte[this.keylength];
+        record(m, i).get(key);
+        return key;
+    }
+
+    private long value(final MappedByteBuffer[] m, final int i) {
+        final byte[] r = new byte[this.recsize];
+        record(m, i).get(r);
+        return Row.bytes2long(r, this.keylength, this.idxbytes);
+    }
+
+    private boolean isRemoved(final int i) {
+        final AtomicLongArray r = this.removed;
+        return r != null && (r.get(i >> 6) & (1L << (i & 63))) != 0;
+    }
+
+    private synchronized boolean markRemoved(final int i) {
+        if (this.removed == null) this.removed = new AtomicLongArray((this.count >> 6) + 1);
+        final long mask = 1L << (i & 63);
+        final long old = this.removed.get(i >> 6);
+        if ((old & mask) != 0) return false;
+        this.removed.set(i >> 6, old | mask);
+        this.removedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * binary search for a key
+     * @param m the mapping
+     * @param key
+     * @return the position of the key or (-(insertion point) - 1) if the key does not exist
+     */
+    private int find(final MappedByteBuffer[] m, final byte[] key) {
+        int l = 0, r = this.count - 1, p, c;
+        while (l <= r) {
+            p = (l + r) >>> 1;
+            c = this.ordering.compare(key, key(m, p));
+            if (c == 0) return p;
+            if (c < 0) r = p - 1; else l = p + 1;
+        }
+        return -l - 1;
+    }
+
+    @Override
+    public long mem() {
+        final AtomicLongArray r = this.removed;
+        return r == null ? 0 : r.length() * 8L;
+    }
+
+    @Override
+    public void optimize() {
+        // there is nothing to optimize in a mapped file
+    }
+
+    @Override
+    public int dump(final File dumpfile) throws IOException {
+        final File tmp = new File(dumpfile.getParentFile(), dumpfile.getName() + ".prt");
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp), 4 * 1024 * 1024);
+        if (dumpfile.getName().endsWith(".gz")) os = new GZIPOutputStream(os, 65536){{def.setLevel(Deflater.BEST_COMPRESSION);}};
+        final MappedByteBuffer[] m = this.chunks;
+        final byte[] r = new byte[this.recsize];
+        int c = 0;
+        if (m != null) for (int i = 0; i < this.count; i++) {
+            if (isRemoved(i)) continue;
+            record(m, i).get(r);
+            os.write(r);
+            c++;
+        }
+        os.flush();
+        os.close();
+        tmp.renameTo(dumpfile);
+        return c;
+    }
+
+    @Override
+    public synchronized void clear() {
+        this.chunks = new MappedByteBuffer[0];
+        this.count = 0;
+        this.removed = null;
+        this.removedCount.set(0);
+    }
+
+    @Override
+    public byte[] smallestKey() {
+        final MappedByteBuffer[] m = this.chunks;
+        if (m == null) return null;
+        for (int i = 0; i < this.count; i++) if (!isRemoved(i)) return key(m, i);
+        return null;
+    }
+
+    @Override
+    public byte[] largestKey() {
+        final MappedByteBuffer[] m = this.chunks;
+        if (m == null) return null;
+        for (int i = this.count - 1; i >= 0; i--) if (!isRemoved(i)) return key(m, i);
+        return null;
+    }
+
+    @Override
+    public boolean has(final byte[] key) {
+        return get(key) >= 0;
+    }
+
+    @Override
+    public long get(final byte[] key) {
+        assert key != null;
+        final MappedByteBuffer[] m = this.chunks;
+        if (m == null) return -1;
+        final int i = find(m, key);
+        if (i < 0 || isRemoved(i)) return -1;
+        return value(m, i);
+    }
+
+    @Override
+    public long put(final byte[] key, final long l) {
+        throw new UnsupportedOperationException("put is not supported in MappedHandleMap");
+    }
+
+    @Override
+    public void putUnique(final byte[] key, final long l) {
+        throw new UnsupportedOperationException("putUnique is not supported in MappedHandleMap");
+    }
+
+    @Override
+    public long add(final byte[] key, final long a) {
+        throw new UnsupportedOperationException("add is not supported in MappedHandleMap");
+    }
+
+    @Override
+    public long inc(final byte[] key) {
+        throw new UnsupportedOperationException("inc is not supported in MappedHandleMap");
+    }
+
+    @Override
+    public long dec(final byte[] key) {
+        throw new UnsupportedOperationException("dec is not supported in MappedHandleMap");
+    }
+
+    @Override
+    public ArrayList<long[]> removeDoubles() {
+        // the dump is sorted and was written from a unique index
+        return new ArrayList<long[]>(0);
+    }
+
+    @Override
+    public ArrayList<byte[]> top(final int count) {
+        final ArrayList<byte[]> list = new ArrayList<byte[]>();
+        final Iterator<byte[]> i = keys(true, null);
+        while (i.hasNext() && list.size() < count) list.add(i.next());
+        return list;
+    }
+
+    @Override
+    public long remove(final byte[] key) {
+        assert key != null;
+        final MappedByteBuffer[] m = this.chunks;
+        if (m == null) return -1;
+        final int i = find(m, key);
+        if (i < 0 || !markRemoved(i)) return -1;
+        return value(m, i);
+    }
+
+    @Override
+    public long removeone() {
+        final MappedByteBuffer[] m = this.chunks;
+        if (m == null) return -1;
+        for (int i = 0; i < this.count; i++) {
+            if (!isRemoved(i) && markRemoved(i)) return value(m, i);
+        }
+        return -1;
+    }
+
+    @Override
+    public int size() {
+        return this.count - this.removedCount.get();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) {
+        return new keyIterator(up, firstKey);
+    }
+
+    @Override
+    public Iterator<Map.Entry<byte[], Long>> iterator() {
+        final MappedByteBuffer[] m = this.chunks;
+        final keyIterator i = new keyIterator(true, null);
+        return new Iterator<Map.Entry<byte[], Long>>() {
+            @Override
+            public boolean hasNext() {
+                return i.hasNext();
+            }
+            @Override
+            public Map.Entry<byte[], Long> next() {
+                final byte[] key = i.next();
+                return new AbstractMap.SimpleImmutableEntry<byte[], Long>(key, value(m, i.last));
+            }
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public synchronized void close() {
+        // the memory is unmapped by the garbage collector
+        this.chunks = null;
+        this.count = 0;
+        this.removed = null;
+    }
+
+    private final class keyIterator implements CloneableIterator<byte[]> {
+
+        private final boolean up;
+        private final MappedByteBuffer[] m;
+        private int p;
+        private int last;
+
+        public keyIterator(final boolean up, byte[] firstKey) {
+            this.up = up;
+            this.m = MappedHandleMap.this.chunks;
+            this.last = -1;
+            if (firstKey != null && firstKey.length == 0) firstKey = null;
+            if (this.m == null) {
+                this.p = -1;
+            } else if (firstKey == null) {
+                this.p = up ? 0 : MappedHandleMap.this.count - 1;
+            } else {
+                final int i = find(this.m, firstKey);
+                if (i >= 0) this.p = i; else this.p = up ? -i - 1 : -i - 2;
+            }
+            skipRemoved();
+        }
+
+        private void skipRemoved() {
+            while (this.p >= 0 && this.p < MappedHandleMap.this.count && isRemoved(this.p)) {
+                if (this.up) this.p++; else this.p--;
+            }
+        }
+
+        @Override
+        public keyIterator clone(final Object modifier) {
+            return new keyIterator(this.up, (byte[]) modifier);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.m != null && this.p >= 0 && this.p < MappedHandleMap.this.count;
+        }
+
+        @Override
+        public byte[] next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            final byte[] key = key(this.m, this.p);
+            this.last = this.p;
+            if (this.up) this.p++; else this.p--;
+            skipRemoved();
+            return key;
+        }
+
+        @Override
+        public void remove() {
+            if (this.last >= 0) markRemoved(this.last);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+}
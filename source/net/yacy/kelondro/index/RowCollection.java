@@ -32,6 +32,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Random;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.document.encoding.UTF8;
@@ -45,6 +50,7 @@ import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.index.Row.Entry;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
 import net.yacy.kelondro.util.kelondroException;
 
 
@@ -57,6 +63,19 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
     public  static final long growfactorSmall100 = 110L;
     private static final int isortlimit = 20;
 
+    /**
+     * collections with at least this number of rows are sorted and merged with several threads;
+     * the rows are sorted in runs, one for each thread, and the runs are merged afterwards.
+     * This needs a second buffer with the size of the collection.
+     */
+    public  static int parallelSortLimit = 100000;
+    static int sortThreads = Math.min(8, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()))); // must be a power of two
+    private static final ThreadPoolExecutor sortExecutor;
+    static {
+        sortExecutor = new ThreadPoolExecutor(sortThreads, sortThreads, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new NamePrefixThreadFactory("RowCollection.sort"));
+        sortExecutor.allowCoreThreadTimeOut(true);
+    }
+
     private static final int exp_chunkcount  = 0;
     private static final int exp_last_read   = 1;
     private static final int exp_last_wrote  = 2;
@@ -461,9 +480,41 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
     public synchronized final void addAllUnique(final RowCollection c) throws SpaceExceededException {
         if (c == null) return;
         assert(this.rowdef.objectsize == c.rowdef.objectsize);
-        ensureSize(this.chunkcount + c.size());
-        System.arraycopy(c.chunkcache, 0, this.chunkcache, this.rowdef.objectsize * this.chunkcount, this.rowdef.objectsize * c.size());
-        this.chunkcount += c.size();
+        final int csize = c.size();
+        if (csize == 0) return;
+        final boolean sorted = this.sortBound == this.chunkcount && c.sortBound == csize;
+        if (sorted && this.chunkcount > 0 && this.chunkcount + csize >= parallelSortLimit && mergeSorted(c)) return;
+        ensureSize(this.chunkcount + csize);
+        System.arraycopy(c.chunkcache, 0, this.chunkcache, this.rowdef.objectsize * this.chunkcount, this.rowdef.objectsize * csize);
+        // appending a sorted collection to an empty one or behind the greatest key keeps the order
+        if (sorted && (this.chunkcount == 0 || compareRows(this.chunkcache, this.chunkcount - 1, this.chunkcache, this.chunkcount) < 0)) this.sortBound += csize;
+        this.chunkcount += csize;
+    }
+
+    /**
+     * merge a sorted collection into this sorted collection with several threads.
+     * @param c
+     * @return false if there is not enough memory for the merge buffer; nothing is changed then
+     */
+    private boolean mergeSorted(final RowCollection c) {
+        final int csize = c.size();
+        final long needed = ((long) this.chunkcount + csize) * this.rowdef.objectsize;
+        if (needed > Integer.MAX_VALUE || !MemoryControl.request(needed + 32, true)) return false;
+        final byte[] target;
+        try {
+            target = new byte[(int) needed];
+        } catch (final OutOfMemoryError e) {
+            return false;
+        }
+        final int threads = sortThreads;
+        final List<Callable<Object>> jobs = new ArrayList<Callable<Object>>(threads);
+        addMergeJobs(jobs, this.chunkcache, 0, this.chunkcount, c.chunkcache, 0, csize, target, 0, threads);
+        runSortJobs(jobs);
+        this.chunkcache = target;
+        this.chunkcount += csize;
+        this.sortBound = this.chunkcount;
+        this.lastTimeWrote = System.currentTimeMillis();
+        return true;
     }
 
     /**
@@ -686,11 +737,186 @@ public class RowCollection implements Sortable<Row.Entry>, Iterable<Row.Entry>,
         synchronized (this) {
             if (this.sortBound == this.chunkcount) return; // check again
             //Log.logInfo("RowCollection.sort()", "sorting array of size " + this.chunkcount + ", sortBound = " + this.sortBound);
-            net.yacy.cora.sorting.Array.sort(this);
+            if (this.chunkcount < parallelSortLimit || sortThreads < 2 || !parallelSort()) {
+                net.yacy.cora.sorting.Array.sort(this);
+            }
             this.sortBound = this.chunkcount;
         }
     }
 
+    /**
+     * sort the collection with several threads: the chunkcache is divided into one run for each thread,
+     * the runs are sorted in place and then merged pairwise, alternating between the chunkcache and a buffer.
+     * The merge of two runs is also divided between the threads, so all threads are busy in every step.
+     * @return false if there is not enough memory for the merge buffer; nothing is changed then
+     */
+    private boolean parallelSort() {
+        final int threads = sortThreads;
+        final long needed = ((long) this.chunkcount) * this.rowdef.objectsize;
+        if (!MemoryControl.request(needed + 32, true)) return false;
+        byte[] buffer;
+        try {
+            buffer = new byte[(int) needed];
+        } catch (final OutOfMemoryError e) {
+            return false;
+        }
+
+        // sort the runs in place
+        final int[] bounds = new int[threads + 1];
+        for (int i = 0; i <= threads; i++) bounds[i] = (int) (((long) this.chunkcount) * i / threads);
+        final List<Callable<Object>> jobs = new ArrayList<Callable<Object>>(threads);
+        for (int i = 0; i < threads; i++) {
+            final RunSorter run = new RunSorter(bounds[i], bounds[i + 1]);
+            jobs.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    Array.sort(run);
+                    return null;
+                }
+            });
+        }
+        runSortJobs(jobs);
+
+        // merge the runs; in each step the number of runs is halved
+        byte[] source = this.chunkcache;
+        for (int width = 1; width < threads; width <<= 1) {
+            jobs.clear();
+            final int pieces = width << 1; // the number of runs to merge, so there are as many jobs as threads in each step
+            for (int i = 0; i < threads; i += width << 1) {
+                final int a = bounds[i], m = bounds[i + width], e = bounds[i + (width << 1)];
+                addMergeJobs(jobs, source, a, m - a, source, m, e - m, buffer, a, pieces);
+            }
+            runSortJobs(jobs);
+            final byte[] t = source; source = buffer; buffer = t;
+        }
+        this.chunkcache = source;
+        return true;
+    }
+
+    /**
+     * a view on a part of the chunkcache which can be sorted with Array.sort
+     */
+    private class RunSorter implements Sortable<Row.Entry> {
+
+        private final int from, size;
+
+        private RunSorter(final int from, final int to) {
+            this.from = from;
+            this.size = to - from;
+        }
+
+        @Override
+        public int compare(final Entry o1, final Entry o2) {
+            return o1.compareTo(o2);
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+
+        @Override
+        public Entry get(final int index, final boolean clone) {
+            return RowCollection.this.rowdef.newEntry(RowCollection.this.chunkcache, (this.from + index) * RowCollection.this.rowdef.objectsize, clone);
+        }
+
+        @Override
+        public void delete(final int i) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Entry buffer() {
+            return RowCollection.this.rowdef.newEntry();
+        }
+
+        @Override
+        public void swap(final int i, final int j, final Entry buffer) {
+            RowCollection.this.swap(this.from + i, this.from + j, buffer);
+        }
+    }
+
+    /**
+     * add jobs which merge the sorted rows a[aoff .. aoff + alen) and b[boff .. boff + blen) into target,
+     * starting at row toff. The output is divided into the given number of pieces which can be merged independently.
+     */
+    private void addMergeJobs(final List<Callable<Object>> jobs,
+                              final byte[] a, final int aoff, final int alen,
+                              final byte[] b, final int boff, final int blen,
+                              final byte[] target, final int toff, final int pieces) {
+        final int total = alen + blen;
+        int ia = 0;
+        for (int p = 0; p < pieces; p++) {
+            final int start = (int) (((long) total) * p / pieces);
+            final int end = (int) (((long) total) * (p + 1) / pieces);
+            if (end == start) continue;
+            final int sa = ia;
+            final int ea = ia = coRank(a, aoff, alen, b, boff, blen, end);
+            jobs.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    merge(a, aoff + sa, ea - sa, b, boff + start - sa, (end - ea) - (start - sa), target, toff + start);
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * find the number of rows from a which are in the first i rows of the merge of a and b;
+     * rows from a come first if keys are equal
+     */
+    private int coRank(final byte[] a, final int aoff, final int alen, final byte[] b, final int boff, final int blen, final int i) {
+        int lo = Math.max(0, i - blen), hi = Math.min(i, alen);
+        while (lo < hi) {
+            final int m = (lo + hi + 1) >>> 1;
+            final int ib = i - m;
+            if (ib >= blen || compareRows(a, aoff + m - 1, b, boff + ib) <= 0) lo = m; else hi = m - 1;
+        }
+        return lo;
+    }
+
+    private void merge(final byte[] a, int ia, final int alen, final byte[] b, int ib, final int blen, final byte[] target, int it) {
+        final int os = this.rowdef.objectsize;
+        final int ea = ia + alen, eb = ib + blen;
+        while (ia < ea && ib < eb) {
+            if (compareRows(a, ia, b, ib) <= 0) {
+                System.arraycopy(a, (ia++) * os, target, (it++) * os, os);
+            } else {
+                System.arraycopy(b, (ib++) * os, target, (it++) * os, os);
+            }
+        }
+        if (ia < ea) System.arraycopy(a, ia * os, target, it * os, (ea - ia) * os);
+        if (ib < eb) System.arraycopy(b, ib * os, target, it * os, (eb - ib) * os);
+    }
+
+    private int compareRows(final byte[] a, final int i, final byte[] b, final int j) {
+        return this.rowdef.objectOrder.compare(a, i * this.rowdef.objectsize, b, j * this.rowdef.objectsize, this.rowdef.primaryKeyLength);
+    }
+
+    /**
+     * run the jobs with the sort executor and wait until all are finished.
+     * An interrupt does not stop the waiting because the collection would be inconsistent; it is restored afterwards.
+     */
+    private static void runSortJobs(final List<Callable<Object>> jobs) {
+        final List<Future<Object>> futures = new ArrayList<Future<Object>>(jobs.size());
+        for (final Callable<Object> job: jobs) futures.add(sortExecutor.submit(job));
+        boolean interrupted = false;
+        for (final Future<Object> future: futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                } catch (final ExecutionException e) {
+                    throw new kelondroException("parallel sort failed: " + e.getCause());
+                }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
     public static class partitionthread implements Callable<Integer> {
         RowCollection rc;
         int L, R, S;
@@ -0,0 +1,412 @@
+// RowCursor.java
+// -----------------------
+// (C) 2016 by the YaCy contributors
+// first published 2016 on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.index;
+
+import java.util.List;
+
+import net.yacy.cora.order.NaturalOrder;
+import net.yacy.cora.storage.HandleSet;
+
+/**
+ * A forward-only cursor over rows which are sorted by their primary key.
+ * Other than an iterator, a cursor can skip forward to a given key; this is done with a galloping
+ * search, so a conjunction of a short and a long sorted list costs only about log(long) steps
+ * for each element of the short list. Cursors can be created on exported collections as they are
+ * stored in BLOBs without copying the rows into a RowSet; the rows returned by current() are views
+ * on the exported bytes and must be cloned if they are stored.
+ *
+ * A new cursor is positioned before the first row, next() or seek() must be called first.
+ */
+public abstract class RowCursor {
+
+    private static final int exportOrderBoundOffset = 10; // position of the orderbound column in the export header of a RowCollection
+
+    protected final Row rowdef;
+
+    protected RowCursor(final Row rowdef) {
+        this.rowdef = rowdef;
+    }
+
+    public Row row() {
+        return this.rowdef;
+    }
+
+    /**
+     * the row at the current position; only valid after next() or seek() returned true
+     * @return a view on the row
+     */
+    public abstract Row.Entry current();
+
+    /**
+     * compare the primary key of the current row with a key
+     * @param key
+     * @return a negative number if the current key is smaller, zero if equal, a positive number if it is greater
+     */
+    public abstract int compareKey(byte[] key);
+
+    /**
+     * the primary key of the current row
+     * @return a copy of the key
+     */
+    public byte[] key() {
+        return current().getPrimaryKeyBytes();
+    }
+
+    /**
+     * move to the next row
+     * @return false if there is no next row
+     */
+    public abstract boolean next();
+
+    /**
+     * move forward to the first row with a key which is equal to or greater than the given key.
+     * If the current row already fulfills that, the cursor does not move. A cursor never moves backwards.
+     * @param key
+     * @return false if there is no such row
+     */
+    public abstract boolean seek(byte[] key);
+
+    /**
+     * the number of rows of the cursor; this may be an upper bound if rows are skipped
+     * @return the number of rows
+     */
+    public abstract int size();
+
+    /**
+     * create a cursor on a sorted collection
+     * @param rc a sorted collection; the cursor works on the collection content, it must not be changed while the cursor is used
+     * @return a cursor
+     */
+    public static RowCursor of(final RowCollection rc) {
+        assert rc.sortBound == rc.size();
+        return new ArrayCursor(rc.rowdef, rc.chunkcache, 0, rc.size());
+    }
+
+    /**
+     * create a cursor on an exported collection, written by RowCollection.exportCollection() or by BlockRowCodec.encode()
+     * If the export is not sorted completely, the rows are copied into a RowSet and sorted there.
+     * @param b the exported collection
+     * @param rowdef the row definition of the collection
+     * @return a cursor
+     */
+    public static RowCursor of(final byte[] b, final Row rowdef) {
+        if (BlockRowCodec.isEncoded(b)) return new BlockCursor(rowdef, b);
+        if (b == null || b.length < RowCollection.exportOverheadSize) return new ArrayCursor(rowdef, new byte[0], 0, 0);
+        final int count = (int) Math.min(NaturalOrder.decodeLong(b, 0, 4), (b.length - RowCollection.exportOverheadSize) / rowdef.objectsize);
+        final int sortBound = (int) NaturalOrder.decodeLong(b, exportOrderBoundOffset, 4);
+        if (sortBound < count) {
+            final byte[] cache = new byte[count * rowdef.objectsize];
+            System.arraycopy(b, (int) RowCollection.exportOverheadSize, cache, 0, cache.length);
+            final RowSet rs = new RowSet(rowdef, count, cache, Math.max(0, sortBound));
+            rs.sort();
+            rs.uniq();
+            return of(rs);
+        }
+        return new ArrayCursor(rowdef, b, (int) RowCollection.exportOverheadSize, count);
+    }
+
+    /**
+     * create a cursor which enumerates the union of several cursors. If a key is in more than one
+     * cursor then the row of the cursor which comes first in the list is used.
+     * @param cursors
+     * @return a cursor
+     */
+    public static RowCursor union(final List<RowCursor> cursors) {
+        assert !cursors.isEmpty();
+        if (cursors.size() == 1) return cursors.get(0);
+        return new UnionCursor(cursors);
+    }
+
+    /**
+     * create a cursor which skips all rows with the given keys
+     * @param cursor
+     * @param keys the keys to skip, may be null
+     * @return a cursor
+     */
+    public static RowCursor exclude(final RowCursor cursor, final HandleSet keys) {
+        if (keys == null || keys.isEmpty()) return cursor;
+        return new ExcludeCursor(cursor, keys);
+    }
+
+    /**
+     * find the first row at or after position from with a key that is equal to or greater than the given key
+     * @return the position of the row or count if there is no such row
+     */
+    private static int gallop(final Row rowdef, final byte[] cache, final int offset, int from, final int count, final byte[] key) {
+        if (from >= count) return count;
+        if (compare(rowdef, cache, offset, from, key) >= 0) return from;
+        // exponential search for a range that contains the key, the row at lo is known to be smaller
+        int lo = from, step = 1, hi = from + 1;
+        while (hi < count && compare(rowdef, cache, offset, hi, key) < 0) {
+            lo = hi;
+            step <<= 1;
+            hi = from + step;
+        }
+        if (hi >= count) hi = count;
+        // binary search for the first row >= key in (lo, hi]
+        while (hi - lo > 1) {
+            final int m = (lo + hi) >>> 1;
+            if (compare(rowdef, cache, offset, m, key) < 0) lo = m; else hi = m;
+        }
+        return hi;
+    }
+
+    private static int compare(final Row rowdef, final byte[] cache, final int offset, final int i, final byte[] key) {
+        return rowdef.objectOrder.compare(cache, offset + i * rowdef.objectsize, key, 0, rowdef.primaryKeyLength);
+    }
+
+    private static class ArrayCursor extends RowCursor {
+
+        private final byte[] cache;
+        private final int offset, count;
+        private int pos;
+
+        private ArrayCursor(final Row rowdef, final byte[] cache, final int offset, final int count) {
+            super(rowdef);
+            this.cache = cache;
+            this.offset = offset;
+            this.count = count;
+            this.pos = -1;
+        }
+
+        @Override
+        public Row.Entry current() {
+            return this.rowdef.newEntry(this.cache, this.offset + this.pos * this.rowdef.objectsize, false);
+        }
+
+        @Override
+        public int compareKey(final byte[] key) {
+            return compare(this.rowdef, this.cache, this.offset, this.pos, key);
+        }
+
+        @Override
+        public boolean next() {
+            if (this.pos < this.count) this.pos++;
+            return this.pos < this.count;
+        }
+
+        @Override
+        public boolean seek(final byte[] key) {
+            this.pos = gallop(this.rowdef, this.cache, this.offset, Math.max(0, this.pos), this.count, key);
+            return this.pos < this.count;
+        }
+
+        @Override
+        public int size() {
+            return this.count;
+        }
+    }
+
+    /**
+     * a cursor on a BlockRowCodec export; only the blocks which are visited are decoded,
+     * the skip table is used to jump over blocks
+     */
+    private static class BlockCursor extends RowCursor {
+
+        private final byte[] b;
+        private final int count, blocks;
+        private final byte[] buffer;
+        private int block, rows, pos;
+
+        private BlockCursor(final Row rowdef, final byte[] b) {
+            super(rowdef);
+            this.b = b;
+            this.count = BlockRowCodec.count(b);
+            final int bs = BlockRowCodec.blockSize(b);
+            this.blocks = (this.count + bs - 1) / bs;
+            this.buffer = new byte[Math.min(bs, this.count) * rowdef.objectsize];
+            this.block = -1;
+            this.rows = 0;
+            this.pos = -1;
+        }
+
+        private boolean load(final int newBlock) {
+            if (newBlock >= this.blocks) {
+                this.block = this.blocks;
+                this.rows = 0;
+                this.pos = 0;
+                return false;
+            }
+            this.block = newBlock;
+            this.rows = BlockRowCodec.decodeBlock(this.b, this.rowdef, newBlock, this.buffer);
+            this.pos = 0;
+            return true;
+        }
+
+        @Override
+        public Row.Entry current() {
+            return this.rowdef.newEntry(this.buffer, this.pos * this.rowdef.objectsize, false);
+        }
+
+        @Override
+        public int compareKey(final byte[] key) {
+            return compare(this.rowdef, this.buffer, 0, this.pos, key);
+        }
+
+        @Override
+        public boolean next() {
+            if (this.block < 0) return load(0);
+            if (this.block >= this.blocks) return false;
+            if (++this.pos < this.rows) return true;
+            return load(this.block + 1);
+        }
+
+        @Override
+        public boolean seek(final byte[] key) {
+            if (this.block >= this.blocks) return false;
+            // find the last block with a first key <= key, starting with the current block
+            int target = Math.max(0, this.block);
+            int lo = target + 1, hi = this.blocks - 1;
+            while (lo <= hi) {
+                final int m = (lo + hi) >>> 1;
+                if (BlockRowCodec.compareBlockKey(this.b, this.rowdef, m, key) <= 0) {
+                    target = m;
+                    lo = m + 1;
+                } else {
+                    hi = m - 1;
+                }
+            }
+            if (target != this.block) load(target);
+            this.pos = gallop(this.rowdef, this.buffer, 0, Math.max(0, this.pos), this.rows, key);
+            if (this.pos < this.rows) return true;
+            // all rows of this block are smaller; the next block starts with a greater key
+            return load(this.block + 1);
+        }
+
+        @Override
+        public int size() {
+            return this.count;
+        }
+    }
+
+    private static class UnionCursor extends RowCursor {
+
+        private final RowCursor[] cursors;
+        private final boolean[] alive;
+        private boolean started;
+        private int cur;
+
+        private UnionCursor(final List<RowCursor> cursors) {
+            super(cursors.get(0).rowdef);
+            this.cursors = cursors.toArray(new RowCursor[cursors.size()]);
+            this.alive = new boolean[this.cursors.length];
+            this.started = false;
+            this.cur = -1;
+        }
+
+        private boolean select() {
+            this.cur = -1;
+            byte[] min = null;
+            for (int i = 0; i < this.cursors.length; i++) {
+                if (!this.alive[i]) continue;
+                if (min == null || this.cursors[i].compareKey(min) < 0) {
+                    this.cur = i;
+                    min = this.cursors[i].key();
+                }
+            }
+            return this.cur >= 0;
+        }
+
+        @Override
+        public Row.Entry current() {
+            return this.cursors[this.cur].current();
+        }
+
+        @Override
+        public int compareKey(final byte[] key) {
+            return this.cursors[this.cur].compareKey(key);
+        }
+
+        @Override
+        public boolean next() {
+            if (!this.started) {
+                for (int i = 0; i < this.cursors.length; i++) this.alive[i] = this.cursors[i].next();
+                this.started = true;
+                return select();
+            }
+            if (this.cur < 0) return false;
+            // advance all cursors which are positioned on the current key
+            final byte[] key = this.cursors[this.cur].key();
+            for (int i = 0; i < this.cursors.length; i++) {
+                if (this.alive[i] && this.cursors[i].compareKey(key) == 0) this.alive[i] = this.cursors[i].next();
+            }
+            return select();
+        }
+
+        @Override
+        public boolean seek(final byte[] key) {
+            if (this.started && this.cur < 0) return false;
+            for (int i = 0; i < this.cursors.length; i++) {
+                if (!this.started || this.alive[i]) this.alive[i] = this.cursors[i].seek(key);
+            }
+            this.started = true;
+            return select();
+        }
+
+        @Override
+        public int size() {
+            int s = 0;
+            for (final RowCursor c: this.cursors) s += c.size();
+            return s;
+        }
+    }
+
+    private static class ExcludeCursor extends RowCursor {
+
+        private final RowCursor cursor;
+        private final HandleSet keys;
+
+        private ExcludeCursor(final RowCursor cursor, final HandleSet keys) {
+            super(cursor.rowdef);
+            this.cursor = cursor;
+            this.keys = keys;
+        }
+
+        private boolean skip(boolean found) {
+            while (found && this.keys.has(this.cursor.key())) found = this.cursor.next();
+            return found;
+        }
+
+        @Override
+        public Row.Entry current() {
+            return this.cursor.current();
+        }
+
+        @Override
+        public int compareKey(final byte[] key) {
+            return this.cursor.compareKey(key);
+        }
+
+        @Override
+        public boolean next() {
+            return skip(this.cursor.next());
+        }
+
+        @Override
+        public boolean seek(final byte[] key) {
+            return skip(this.cursor.seek(key));
+        }
+
+        @Override
+        public int size() {
+            return this.cursor.size();
+        }
+    }
+}
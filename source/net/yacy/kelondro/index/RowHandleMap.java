@@ -60,7 +60,7 @@ import net.yacy.kelondro.workflow.WorkflowProcessor;
 public final class RowHandleMap implements HandleMap, Iterable<Map.Entry<byte[], Long>> {
 
     private   final Row rowdef;
-    private RAMIndexCluster index;
+    private ConcurrentRAMIndex index;
 
     /**
      * initialize a HandleMap
@@ -72,7 +72,7 @@ public final class RowHandleMap implements HandleMap, Iterable<Map.Entry<byte[],
      */
     public RowHandleMap(final int keylength, final ByteOrder objectOrder, final int idxbytes, final int expectedspace, final String name) {
         this.rowdef = new Row(new Column[]{new Column("key", Column.celltype_binary, Column.encoder_bytes, keylength, "key"), new Column("long c-" + idxbytes + " {b256}")}, objectOrder);
-        this.index = new RAMIndexCluster(name, this.rowdef, spread(expectedspace));
+        this.index = new ConcurrentRAMIndex(name, this.rowdef, WorkflowProcessor.availableCPU * 4, expectedspace);
     }
 
     /**
@@ -118,10 +118,6 @@ public final class RowHandleMap implements HandleMap, Iterable<Map.Entry<byte[],
         return this.index.mem();
     }
 
-    private static final int spread(final int expectedspace) {
-        return Math.min(WorkflowProcessor.availableCPU, Math.max(WorkflowProcessor.availableCPU, expectedspace / 8000));
-    }
-
     /**
      * Caclulate a statistic about the possible saving in the data structure when the data structure would be compressed.
      * A tuple of two values is computed:
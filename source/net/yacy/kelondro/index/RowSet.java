@@ -79,6 +79,7 @@ public class RowSet extends RowCollection implements Index, Iterable<Row.Entry>,
     }
 
     public final static RowSet importRowSet(final byte[] b, final Row rowdef) throws SpaceExceededException {
+        if (BlockRowCodec.isEncoded(b)) return BlockRowCodec.decode(b, rowdef);
     	assert b.length >= exportOverheadSize : "b.length = " + b.length;
     	if (b.length < exportOverheadSize) return new RowSet(rowdef, 0);
         final int size = (int) NaturalOrder.decodeLong(b, 0, 4);
@@ -186,6 +187,28 @@ public class RowSet extends RowCollection implements Index, Iterable<Row.Entry>,
     private final int collectionReSortLimit() {
         return Math.min(3000, Math.max(100, this.chunkcount / 3));
     }
+
+    /**
+     * test if a lookup would sort the set first; as long as this is false, lookup() can be used
+     * @return true if the unsorted part of the set is too large for a lookup
+     */
+    final boolean needsSort() {
+        return this.rowdef.objectOrder != null && (this.chunkcount - this.sortBound) > collectionReSortLimit();
+    }
+
+    /**
+     * find a row without sorting the set and without synchronization. This must only be used if the caller
+     * ensures that the set is not changed at the same time and that needsSort() is false.
+     * @param key
+     * @return a copy of the row or null if the key does not exist
+     */
+    final Row.Entry lookup(final byte[] key) {
+        assert key.length == this.rowdef.primaryKeyLength;
+        int index = this.rowdef.objectOrder == null ? -1 : binarySearch(key, 0);
+        if (index < 0) index = iterativeSearch(key, 0, this.rowdef.objectOrder == null ? 0 : this.sortBound, this.chunkcount);
+        if (index < 0) return null;
+        return this.rowdef.newEntry(this.chunkcache, index * this.rowdef.objectsize, true);
+    }
     
     @Override
     public final Row.Entry replace(final Row.Entry entry) throws SpaceExceededException {
@@ -27,6 +27,8 @@ package net.yacy.kelondro.io;
 import java.io.File;
 import java.io.IOException;
 import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.TreeMap;
 
 import net.yacy.cora.document.encoding.UTF8;
@@ -40,30 +42,132 @@ import net.yacy.kelondro.util.FileUtils;
  * write buffer to elements that are INSIDE the filed entries of the file
  * That means, each time, an entry is written to the end of the file, it is NOT buffered here,
  * but possibly buffered in the enclosed kelondroEcoFS
+ *
+ * If a write-ahead log is given, all changes are first written to the log with group commits and the
+ * buffer is only written to the file at a checkpoint. Then also the removal of records at the end of the
+ * file is delayed until the next checkpoint, so the file is never changed before the log.
  */
 public final class BufferedRecords {
 
+    /**
+     * a group of log entries is committed when it has this number of operations or if it is older than
+     * groupCommitDelay milliseconds
+     */
+    public static int  groupCommitOps = 1000;
+    public static long groupCommitDelay = 1000;
+
+    /**
+     * a checkpoint is made if the buffer has more than this number of records or the log is larger than checkpointLogSize
+     */
+    public static int  checkpointEntries = 10000;
+    public static long checkpointLogSize = 64L * 1024L * 1024L;
+
+    private static Timer committer = null;
+
     private final Records efs;
     private final int maxEntries;
     private final TreeMap<Long, byte[]> buffer;
+    private final RecordsLog log;
+    private final TimerTask commitTask;
+    private long size; // the number of records if a log is used; this may be less than the number of records in efs
+    private boolean closed;
 
     public BufferedRecords(final Records efs, final int maxEntries) {
         this.efs = efs;
         this.maxEntries = maxEntries;
         this.buffer = new TreeMap<Long, byte[]>();
+        this.log = null;
+        this.commitTask = null;
+        this.size = -1;
+        this.closed = false;
     }
-    
+
+    /**
+     * create buffered records with a write-ahead log
+     * @param efs
+     * @param maxEntries
+     * @param logfile the log file; a log of an earlier session must be replayed with RecordsLog.replay() before the records are opened
+     * @throws IOException
+     */
+    public BufferedRecords(final Records efs, final int maxEntries, final File logfile) throws IOException {
+        this.efs = efs;
+        this.maxEntries = Math.max(maxEntries, checkpointEntries);
+        this.buffer = new TreeMap<Long, byte[]>();
+        this.size = efs.size();
+        this.log = new RecordsLog(logfile, efs.recordsize);
+        this.log.reset(this.size);
+        this.closed = false;
+        this.commitTask = new TimerTask() {
+            @Override
+            public void run() {
+                commit();
+            }
+        };
+        synchronized (BufferedRecords.class) {
+            if (committer == null) committer = new Timer("BufferedRecords.groupCommit", true);
+            committer.schedule(this.commitTask, groupCommitDelay, groupCommitDelay);
+        }
+    }
+
     public synchronized void clear() {
+        if (this.log != null) {
+            this.log.truncate(0);
+            try {
+                this.log.commit(0);
+            } catch (final IOException e) {
+                ConcurrentLog.logException(e);
+            }
+            this.size = 0;
+        }
         this.efs.clear();
         this.buffer.clear();
     }
 
+    /**
+     * commit the pending operations of the log, if there are any
+     */
+    private synchronized void commit() {
+        if (this.log == null || this.closed || this.log.pendingOps() == 0) return;
+        try {
+            this.log.commit(this.size);
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+    }
+
+    /**
+     * called after each logged operation: do a group commit or a checkpoint if necessary
+     */
+    private void logged() throws IOException {
+        if (this.log.pendingOps() >= groupCommitOps || this.log.pendingAge() >= groupCommitDelay) this.log.commit(this.size);
+        if (this.buffer.size() > this.maxEntries || this.log.length() > checkpointLogSize) checkpoint();
+    }
+
+    /**
+     * write all changes to the file: the log is committed, the buffer is written and the file is
+     * synced; afterwards the log is empty.
+     */
+    private void checkpoint() throws IOException {
+        this.log.commit(this.size);
+        for (final Map.Entry<Long, byte[]> entry: this.buffer.entrySet()) {
+            if (entry.getKey().longValue() < this.size) this.efs.put(entry.getKey().intValue(), entry.getValue(), 0);
+        }
+        this.buffer.clear();
+        this.efs.truncate(this.size);
+        this.efs.sync();
+        this.log.reset(this.size);
+    }
+
     /**
      * flush the buffer: this shall be called before any file-based iterations
      * on data structures on records are made
      * @throws IOException
      */
     public synchronized void flushBuffer() throws IOException {
+        if (this.log != null) {
+            checkpoint();
+            return;
+        }
         flushBuffer0();
         if (this.efs != null) this.efs.flushBuffer();
     }
@@ -77,6 +181,7 @@ public final class BufferedRecords {
     }
 
     public final synchronized long size() throws IOException {
+        if (this.log != null) return this.size;
         return this.efs == null ? 0 : this.efs.size();
     }
 
@@ -85,7 +190,17 @@ public final class BufferedRecords {
     }
 
     public final synchronized void close() {
-        try {
+        if (this.closed) return;
+        this.closed = true;
+        if (this.log != null) {
+            this.commitTask.cancel();
+            try {
+                checkpoint();
+                this.log.close();
+            } catch (final IOException e) {
+                ConcurrentLog.logException(e);
+            }
+        } else try {
             flushBuffer0();
         } catch (final IOException e) {
             ConcurrentLog.logException(e);
@@ -103,6 +218,7 @@ public final class BufferedRecords {
         final byte[] bb;
         synchronized (this) {
             assert b.length - start >= this.efs.recordsize;
+            if (this.log != null && index >= this.size) throw new IndexOutOfBoundsException("kelondroBufferedEcoFS.get(" + index + ") outside bounds (" + this.size + ")");
             bb = this.buffer.get(idx);
             if (bb == null) {
                 this.efs.get(index, b, start);
@@ -116,6 +232,20 @@ public final class BufferedRecords {
         assert b.length - start >= this.efs.recordsize;
         final long s = size();
         if (index > s) throw new IndexOutOfBoundsException("kelondroBufferedEcoFS.put(" + index + ") outside bounds (" + size() + ")");
+        if (this.log != null) {
+            this.log.put(index, b, start);
+            if (index >= this.efs.size()) {
+                // the file has not been shortened, so this is also the end of the file
+                this.efs.add(b, start);
+            } else {
+                final byte[] bb = new byte[this.efs.recordsize];
+                System.arraycopy(b, start, bb, 0, this.efs.recordsize);
+                this.buffer.put(Long.valueOf(index), bb);
+            }
+            if (index == s) this.size++;
+            logged();
+            return;
+        }
         if (index == s) {
             this.efs.add(b, start);
         } else {
@@ -128,12 +258,22 @@ public final class BufferedRecords {
 
     public final synchronized void add(final byte[] b, final int start) throws IOException {
         assert b.length - start >= this.efs.recordsize;
+        if (this.log != null) {
+            put(this.size, b, start);
+            return;
+        }
         // index == size() == efs.size();
         this.efs.add(b, start);
     }
 
     public final synchronized void cleanLast(final byte[] b, final int start) throws IOException {
         assert b.length - start >= this.efs.recordsize;
+        if (this.log != null) {
+            if (this.size == 0) return;
+            get(this.size - 1, b, start);
+            cleanLast();
+            return;
+        }
         final byte[] bb = this.buffer.remove(Long.valueOf(size() - 1));
         if (bb == null) {
             this.efs.cleanLast(b, start);
@@ -144,6 +284,14 @@ public final class BufferedRecords {
     }
 
     public final synchronized void cleanLast() throws IOException {
+        if (this.log != null) {
+            if (this.size == 0) return;
+            this.size--;
+            this.buffer.remove(Long.valueOf(this.size));
+            this.log.truncate(this.size);
+            logged();
+            return;
+        }
         this.buffer.remove(Long.valueOf(size() - 1));
         this.efs.cleanLast();
     }
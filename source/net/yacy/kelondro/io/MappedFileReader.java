@@ -0,0 +1,137 @@
+// MappedFileReader.java
+// ---------------------
+// (C) 2016 by the YaCy contributors
+// first published 2016 on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+
+package net.yacy.kelondro.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A read-only view on a file which is mapped into memory in chunks.
+ * Other than the Reader implementations this class has no file pointer: all read methods
+ * take an absolute position and do not modify any state, therefore they can be called
+ * concurrently without synchronization. Files larger than 2GB are mapped into several
+ * chunks; a read that crosses a chunk border is split into two copies.
+ * The mapping covers the file length at the time of construction. Writes to the file that
+ * happen within that range (i.e. using a RandomAccessFile on the same file) are visible
+ * to the reader, content appended after the mapping was created is not.
+ */
+public final class MappedFileReader {
+
+    public static final int defaultChunkSize = 1 << 30;
+
+    private final File file;
+    private final long length;
+    private final int chunkSize;
+    private volatile MappedByteBuffer[] chunks;
+
+    public MappedFileReader(final File file) throws IOException {
+        this(file, defaultChunkSize);
+    }
+
+    public MappedFileReader(final File file, final int chunkSize) throws IOException {
+        assert chunkSize > 0;
+        this.file = file;
+        this.chunkSize = chunkSize;
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            this.length = channel.size();
+            final int count = (int) ((this.length + chunkSize - 1) / chunkSize);
+            final MappedByteBuffer[] c = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                final long start = ((long) i) * chunkSize;
+                c[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(chunkSize, this.length - start));
+            }
+            this.chunks = c;
+        } finally {
+            // the mapping stays valid after the channel is closed; this releases the file descriptor
+            raf.close();
+        }
+    }
+
+    public File file() {
+        return this.file;
+    }
+
+    /**
+     * the length of the mapped area; this is the file length at the time the mapping was created
+     * @return the number of bytes that can be read
+     */
+    public long length() {
+        return this.length;
+    }
+
+    /**
+     * test if a given range can be served from the mapping
+     * @param pos the start position in the file
+     * @param len the number of bytes
+     * @return true if the range is completely inside of the mapped area
+     */
+    public boolean covers(final long pos, final long len) {
+        return pos >= 0 && len >= 0 && pos + len <= this.length && this.chunks != null;
+    }
+
+    public void readFully(final long pos, final byte[] b, int off, int len) throws IOException {
+        final MappedByteBuffer[] c = this.chunks;
+        if (c == null) throw new IOException("mapping of " + this.file.getName() + " is closed");
+        if (pos < 0 || pos + len > this.length) throw new IOException("EOF in " + this.file.getName() + ", length = " + this.length + ", requested = " + len + ", pos = " + pos);
+        long p = pos;
+        while (len > 0) {
+            final int chunk = (int) (p / this.chunkSize);
+            final int inChunk = (int) (p % this.chunkSize);
+            final int n = Math.min(len, c[chunk].capacity() - inChunk);
+            // a duplicate has its own position, the shared buffer is not touched
+            final ByteBuffer d = c[chunk].duplicate();
+            d.position(inChunk);
+            d.get(b, off, n);
+            off += n;
+            len -= n;
+            p += n;
+        }
+    }
+
+    public int readInt(final long pos) throws IOException {
+        final MappedByteBuffer[] c = this.chunks;
+        if (c == null) throw new IOException("mapping of " + this.file.getName() + " is closed");
+        final int chunk = (int) (pos / this.chunkSize);
+        final int inChunk = (int) (pos % this.chunkSize);
+        if (pos >= 0 && chunk < c.length && inChunk + 4 <= c[chunk].capacity()) {
+            // the ByteBuffer default byte order is big endian, the same as RandomAccessFile.readInt
+            return c[chunk].getInt(inChunk);
+        }
+        final byte[] b = new byte[4];
+        this.readFully(pos, b, 0, 4);
+        return (((b[0] & 0xFF) << 24) | ((b[1] & 0xFF) << 16) | ((b[2] & 0xFF) << 8) | (b[3] & 0xFF));
+    }
+
+    /**
+     * release the mapping. The memory is unmapped by the garbage collector as soon as
+     * no reader holds a reference to the chunks any more.
+     */
+    public void close() {
+        this.chunks = null;
+    }
+
+}
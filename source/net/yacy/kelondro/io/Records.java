@@ -208,6 +208,32 @@ public final class Records {
         this.buffercount = 0;
     }
 
+    /**
+     * write the buffer to the file and force all changes of the file to the disk
+     * @throws IOException
+     */
+    public final synchronized void sync() throws IOException {
+        if (this.raf == null) return;
+        flushBuffer();
+        this.raf.getFD().sync();
+    }
+
+    /**
+     * remove all records at the end of the file, beginning with the given index
+     * @param size the new number of records
+     * @throws IOException
+     */
+    public final synchronized void truncate(final long size) throws IOException {
+        final long filesize = filesize();
+        if (size >= filesize + this.buffercount) return;
+        if (size >= filesize) {
+            this.buffercount = (int) (size - filesize);
+            return;
+        }
+        this.buffercount = 0;
+        this.raf.setLength(size * this.recordsize);
+    }
+
     public final synchronized void close() {
         // close the file
         if (this.raf != null) try {
@@ -0,0 +1,248 @@
+// RecordsLog.java
+// -----------------------
+// (C) 2016 by the YaCy contributors
+// first published 2016 on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.io;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import net.yacy.cora.order.NaturalOrder;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * A write-ahead log for a Records file. Changes of records are collected in memory and written to the log
+ * as one group with a single fsync (group commit). The records file itself must only be changed after the
+ * changes have been committed to the log; a checkpoint writes all changes to the records file, syncs it
+ * and empties the log. After a crash the log is replayed on the records file.
+ *
+ * The log consists of groups: magic (int), payload length (int), number of records after the group (long),
+ * payload, crc32 of the number and the payload (int). A payload is a sequence of operations:
+ * 'P' index (long) record (recordsize bytes) - write a record, the index may be the end of the file
+ * 'T' size (long) - truncate the file to the given number of records
+ * An incomplete group at the end of the log (written during a crash) is ignored.
+ */
+public final class RecordsLog {
+
+    private static final int magic = 0x57414C31; // "WAL1"
+    private static final byte OP_PUT = 'P';
+    private static final byte OP_TRUNCATE = 'T';
+
+    private final File logfile;
+    private final int recordsize;
+    private RandomAccessFile raf;
+    private byte[] pending;
+    private int pendingLength, pendingOps;
+    private long pendingSince;
+
+    public RecordsLog(final File logfile, final int recordsize) throws IOException {
+        this.logfile = logfile;
+        this.recordsize = recordsize;
+        this.raf = new RandomAccessFile(logfile, "rw");
+        this.raf.seek(this.raf.length());
+        this.pending = new byte[Math.max(1024, 64 * (recordsize + 9))];
+        this.pendingLength = 0;
+        this.pendingOps = 0;
+        this.pendingSince = 0;
+    }
+
+    /**
+     * the name of the log file which belongs to a records file
+     */
+    public static File logFile(final File tablefile) {
+        return new File(tablefile.getParentFile(), tablefile.getName() + ".wal");
+    }
+
+    private void ensure(final int length) {
+        if (this.pendingLength + length <= this.pending.length) return;
+        final byte[] b = new byte[Math.max(this.pending.length * 2, this.pendingLength + length)];
+        System.arraycopy(this.pending, 0, b, 0, this.pendingLength);
+        this.pending = b;
+    }
+
+    private void opened() {
+        if (this.pendingOps++ == 0) this.pendingSince = System.currentTimeMillis();
+    }
+
+    public void put(final long index, final byte[] b, final int start) {
+        ensure(9 + this.recordsize);
+        this.pending[this.pendingLength++] = OP_PUT;
+        NaturalOrder.encodeLong(index, this.pending, this.pendingLength, 8);
+        System.arraycopy(b, start, this.pending, this.pendingLength + 8, this.recordsize);
+        this.pendingLength += 8 + this.recordsize;
+        opened();
+    }
+
+    public void truncate(final long size) {
+        ensure(9);
+        this.pending[this.pendingLength++] = OP_TRUNCATE;
+        NaturalOrder.encodeLong(size, this.pending, this.pendingLength, 8);
+        this.pendingLength += 8;
+        opened();
+    }
+
+    /**
+     * @return the number of operations which are not committed
+     */
+    public int pendingOps() {
+        return this.pendingOps;
+    }
+
+    /**
+     * @return the time in milliseconds since the oldest not committed operation was logged
+     */
+    public long pendingAge() {
+        return this.pendingOps == 0 ? 0 : System.currentTimeMillis() - this.pendingSince;
+    }
+
+    /**
+     * write all pending operations as one group to the log and sync the log to the disk
+     * @param size the number of records after the operations
+     * @throws IOException
+     */
+    public void commit(final long size) throws IOException {
+        if (this.pendingOps == 0) return;
+        writeGroup(size);
+    }
+
+    private void writeGroup(final long size) throws IOException {
+        final ByteBuffer group = ByteBuffer.allocate(16 + this.pendingLength + 4);
+        group.putInt(magic);
+        group.putInt(this.pendingLength);
+        group.putLong(size);
+        group.put(this.pending, 0, this.pendingLength);
+        final CRC32 crc = new CRC32();
+        crc.update(group.array(), 8, 8 + this.pendingLength);
+        group.putInt((int) crc.getValue());
+        this.raf.write(group.array());
+        this.raf.getFD().sync();
+        this.pendingLength = 0;
+        this.pendingOps = 0;
+    }
+
+    /**
+     * @return the length of the log file
+     */
+    public long length() throws IOException {
+        return this.raf.length();
+    }
+
+    /**
+     * empty the log; this must only be done when all operations are synced to the records file.
+     * The log then contains only an empty group with the size of the records file, so records which are
+     * appended to the file but not committed before a crash can be removed at the replay.
+     * @param size the number of records in the records file
+     * @throws IOException
+     */
+    public void reset(final long size) throws IOException {
+        assert this.pendingOps == 0;
+        this.raf.setLength(0);
+        this.pendingLength = 0;
+        this.pendingOps = 0;
+        writeGroup(size);
+    }
+
+    /**
+     * close the log and delete the log file; this must only be done when all operations are synced to the records file
+     */
+    public void close() throws IOException {
+        if (this.raf == null) return;
+        assert this.pendingOps == 0;
+        this.raf.close();
+        this.raf = null;
+        FileUtils.deletedelete(this.logfile);
+    }
+
+    /**
+     * replay a log on its records file and delete the log. This must be done before the records file is opened.
+     * @param logfile
+     * @param tablefile
+     * @param recordsize
+     * @return the number of replayed operations
+     * @throws IOException
+     */
+    public static int replay(final File logfile, final File tablefile, final int recordsize) throws IOException {
+        if (!logfile.exists()) return 0;
+        if (!tablefile.exists()) {
+            // the table was deleted, the log must not create it again
+            FileUtils.deletedelete(logfile);
+            return 0;
+        }
+        int ops = 0;
+        long size = -1;
+        final RandomAccessFile table = new RandomAccessFile(tablefile, "rw");
+        final DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(logfile), 64 * 1024));
+        try {
+            final byte[] record = new byte[recordsize];
+            final CRC32 crc = new CRC32();
+            while (true) {
+                final byte[] payload;
+                final long groupsize;
+                try {
+                    if (is.readInt() != magic) break;
+                    final int length = is.readInt();
+                    if (length < 0 || length > logfile.length()) break;
+                    groupsize = is.readLong();
+                    payload = new byte[length];
+                    is.readFully(payload);
+                    crc.reset();
+                    final byte[] s = new byte[8];
+                    NaturalOrder.encodeLong(groupsize, s, 0, 8);
+                    crc.update(s);
+                    crc.update(payload);
+                    if (is.readInt() != (int) crc.getValue()) break;
+                } catch (final EOFException e) {
+                    break; // incomplete group
+                }
+                int p = 0;
+                while (p < payload.length) {
+                    final byte op = payload[p++];
+                    final long n = NaturalOrder.decodeLong(payload, p, 8);
+                    p += 8;
+                    if (op == OP_PUT) {
+                        System.arraycopy(payload, p, record, 0, recordsize);
+                        p += recordsize;
+                        table.seek(n * recordsize);
+                        table.write(record);
+                    } else if (op == OP_TRUNCATE) {
+                        if (table.length() > n * recordsize) table.setLength(n * recordsize);
+                    } else {
+                        throw new IOException("bad operation " + op + " in log " + logfile);
+                    }
+                    ops++;
+                }
+                size = groupsize;
+            }
+            // records which had been appended to the file but not committed to the log are removed
+            if (size >= 0 && table.length() > size * recordsize) table.setLength(size * recordsize);
+            table.getFD().sync();
+        } finally {
+            is.close();
+            table.close();
+        }
+        FileUtils.deletedelete(logfile);
+        return ops;
+    }
+}
@@ -36,6 +36,7 @@ import net.yacy.cora.storage.HandleSet;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.index.RowCursor;
 
 public abstract class AbstractIndex <ReferenceType extends Reference> implements Index<ReferenceType> {
 
@@ -127,6 +128,21 @@ public abstract class AbstractIndex <ReferenceType extends Reference> implements
         return containers;
     }
 
+    @Override
+    public RowCursor cursor(final byte[] termHash) throws IOException {
+        final ReferenceContainer<ReferenceType> c = get(termHash, null);
+        if (c == null || c.isEmpty()) return null;
+        try {
+            // the returned container may be a direct link to the stored index which must not be sorted here
+            final ReferenceContainer<ReferenceType> sorted = c.topLevelClone();
+            sorted.sort();
+            return RowCursor.of(sorted);
+        } catch (final SpaceExceededException e) {
+            ConcurrentLog.logException(e);
+            return null;
+        }
+    }
+
     public TermSearch<ReferenceType> query(
             final HandleSet queryHashes,
             final HandleSet excludeHashes,
@@ -136,6 +152,20 @@ public abstract class AbstractIndex <ReferenceType extends Reference> implements
         return new TermSearch<ReferenceType>(this, queryHashes, excludeHashes, urlselection, termFactory, maxDistance);
     }
 
+    /**
+     * a conjunction search which walks the sorted references of all terms at once instead of loading
+     * complete containers; see TermSearch. The result has no inclusion containers.
+     * @param maxResults the maximum number of joined references, 0 for no limit
+     */
+    public TermSearch<ReferenceType> query(
+            final HandleSet queryHashes,
+            final HandleSet excludeHashes,
+            final ReferenceFactory<ReferenceType> termFactory,
+            final int maxDistance,
+            final int maxResults) throws SpaceExceededException {
+        return new TermSearch<ReferenceType>(this, queryHashes, excludeHashes, termFactory, maxDistance, maxResults);
+    }
+
     @Override
     public Row referenceRow() {
         return this.factory.getRow();
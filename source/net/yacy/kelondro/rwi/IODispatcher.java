@@ -27,11 +27,16 @@ package net.yacy.kelondro.rwi;
 import java.io.File;
 import java.io.IOException;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.kelondro.blob.ArrayStack;
 import net.yacy.kelondro.util.MemoryControl;
+import net.yacy.kelondro.util.NamePrefixThreadFactory;
 
 
 /**
@@ -45,11 +50,19 @@ import net.yacy.kelondro.util.MemoryControl;
  * to use this class, first instantiate a object and then start the concurrent execution
  * of merging with a call to the start() - method. To shut down all mergings, call terminate()
  * only once.
+ *
+ * Dump jobs are always executed by the dispatcher thread itself. Merge jobs are handed over to
+ * a pool of mergeWorkers threads; with the default of one worker all merges are serialized as before.
  */
 public class IODispatcher extends Thread {
 
     private static final ConcurrentLog log = new ConcurrentLog("IODispatcher");
 
+    /**
+     * the number of concurrent merge jobs for new IODispatcher instances
+     */
+    public static int mergeWorkers = 1;
+
     private   Semaphore                    controlQueue;
     private   final Semaphore              termination;
     private   ArrayBlockingQueue<MergeJob> mergeQueue;
@@ -57,12 +70,20 @@ public class IODispatcher extends Thread {
     //private ReferenceFactory<ReferenceType> factory;
     private   boolean                      terminate;
     private final int                          writeBufferSize;
+    private final int                          workers;
+    private final Semaphore                    workerSlots;
+    private final Object                       workerSignal; // notified when a merge worker finishes or a dump job is queued
+    private final ExecutorService              mergeExecutor;
 
     public IODispatcher(final int dumpQueueLength, final int mergeQueueLength, final int writeBufferSize) {
         this.termination = new Semaphore(0);
         this.controlQueue = new Semaphore(0);
+        this.workers = Math.max(1, mergeWorkers);
+        this.workerSlots = new Semaphore(this.workers);
+        this.workerSignal = new Object();
+        this.mergeExecutor = Executors.newFixedThreadPool(this.workers, new NamePrefixThreadFactory("IODispatcher.merge"));
         this.dumpQueue = new ArrayBlockingQueue<DumpJob<? extends Reference>>(dumpQueueLength);
-        this.mergeQueue = new ArrayBlockingQueue<MergeJob>(mergeQueueLength);
+        this.mergeQueue = new ArrayBlockingQueue<MergeJob>(Math.max(mergeQueueLength, this.workers));
         this.writeBufferSize = writeBufferSize;
         this.terminate = false;
         this.setName("IODispatcher");
@@ -95,6 +116,7 @@ public class IODispatcher extends Thread {
                 try {
                     this.dumpQueue.add(job);
                     log.info("appended dump job for file " + file.getName());
+                    signalWorker();
                 } catch (final IllegalStateException e) {
                     log.warn("could not append dump job, emergency dump of file " + file.getName());
                     cache.dump(file, (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize), true);
@@ -112,6 +134,43 @@ public class IODispatcher extends Thread {
         return (this.controlQueue == null || !isAlive()) ? 0 : this.controlQueue.availablePermits();
     }
 
+    /**
+     * @return the number of merge jobs that can run at the same time
+     */
+    protected int mergeWorkers() {
+        return this.workers;
+    }
+
+    /**
+     * queue a merge of any number of files into one
+     * @param files the files to be merged; must be unmounted from the array before
+     * @param factory
+     * @param array
+     * @param newFile
+     */
+    protected synchronized void merge(final File[] files, final ReferenceFactory<? extends Reference> factory, final ArrayStack array, final File newFile) {
+        if (files.length <= 2) {
+            merge(files[0], files.length == 2 ? files[1] : null, factory, array, newFile);
+            return;
+        }
+        if (this.mergeQueue == null || this.controlQueue == null || !isAlive()) {
+            log.warn("emergency merge of " + files.length + " files to " + newFile.getName());
+            array.mergeMount(files, factory, newFile, (int) Math.min(MemoryControl.available() / 3, this.writeBufferSize));
+        } else {
+            final MergeJob job = new MergeJob(files, factory, array, newFile);
+            try {
+                this.mergeQueue.add(job);
+                log.info("appended merge job of " + files.length + " files to " + newFile.getName());
+            } catch (final IllegalStateException e) {
+                // the files are already unmounted, so we must not drop the job: merge them here
+                log.warn("Could not add merge job to queue, merging " + files.length + " files directly: " + e.getMessage());
+                job.merge();
+                return;
+            }
+            this.controlQueue.release();
+        }
+    }
+
     protected synchronized void merge(final File f1, final File f2, final ReferenceFactory<? extends Reference> factory, final ArrayStack array, final File newFile) {
         if (this.mergeQueue == null || this.controlQueue == null || !isAlive()) {
             if (f2 == null) {
@@ -171,21 +230,39 @@ public class IODispatcher extends Thread {
 
                 // otherwise do a merge operation
                 if (!this.mergeQueue.isEmpty() && !MemoryControl.shortStatus()) {
-                	File f = null, f1 = null, f2 = null;
                     try {
+                        // if all merge workers are busy, wait until one finishes or a dump job comes in;
+                        // the permit is given back because the merge job is still in the queue
+                        if (!this.workerSlots.tryAcquire()) {
+                            synchronized (this.workerSignal) {
+                                while (this.workerSlots.availablePermits() == 0 && this.dumpQueue.isEmpty()) this.workerSignal.wait();
+                            }
+                            this.controlQueue.release();
+                            continue loop;
+                        }
                         mergeJob = this.mergeQueue.take();
-                        f = mergeJob.newFile;
-                        f1 = mergeJob.f1;
-                        f2 = mergeJob.f2;
-                        mergeJob.merge();
+                        final MergeJob job = mergeJob;
+                        try {
+                            this.mergeExecutor.execute(new Runnable() {
+                                @Override
+                                public void run() {
+                                    try {
+                                        job.merge();
+                                    } catch (final Throwable e) {
+                                        log.severe("merge job had errors (2), dump to " + job.newFile + " failed. Input files are " + job.filesList(), e);
+                                    } finally {
+                                        releaseWorker();
+                                    }
+                                }
+                            });
+                        } catch (final RejectedExecutionException e) {
+                            // the files are already unmounted, so we must not drop the job: merge them here
+                            releaseWorker();
+                            log.warn("merge executor rejected the merge job, merging " + job.filesList() + " directly");
+                            job.merge();
+                        }
                     } catch (final InterruptedException e) {
                         log.severe("main run job was interrupted (2)", e);
-                    } catch (final Throwable e) {
-                        if (f2 == null) {
-                            log.severe("main run job had errors (2), dump to " + f + " failed. Input file is " + f1, e);
-                        } else {
-                            log.severe("main run job had errors (2), dump to " + f + " failed. Input files are " + f1 + " and " + f2, e);
-                        }
                     }
                     continue loop;
                 }
@@ -204,6 +281,13 @@ public class IODispatcher extends Thread {
             log.severe("main run job failed (4)", e);
         } finally {
             log.info("terminating run job");
+            // wait until running merges are finished
+            this.mergeExecutor.shutdown();
+            try {
+                this.mergeExecutor.awaitTermination(1, TimeUnit.HOURS);
+            } catch (final InterruptedException e) {
+                ConcurrentLog.logException(e);
+            }
             this.controlQueue = null;
             this.dumpQueue = null;
             this.mergeQueue = null;
@@ -211,6 +295,17 @@ public class IODispatcher extends Thread {
         }
     }
 
+    private void releaseWorker() {
+        this.workerSlots.release();
+        signalWorker();
+    }
+
+    private void signalWorker() {
+        synchronized (this.workerSignal) {
+            this.workerSignal.notifyAll();
+        }
+    }
+
     private class DumpJob<ReferenceType extends Reference> {
         private final ReferenceContainerCache<ReferenceType> cache;
         private final File file;
@@ -232,7 +327,8 @@ public class IODispatcher extends Thread {
 
     private class MergeJob {
 
-        private final File f1, f2, newFile;
+        private final File[] files;
+        private final File newFile;
         private final ArrayStack array;
         private final ReferenceFactory<? extends Reference> factory;
 
@@ -242,23 +338,39 @@ public class IODispatcher extends Thread {
                 final ReferenceFactory<? extends Reference> factory,
                 final ArrayStack array,
                 final File newFile) {
-            this.f1 = f1;
-            this.f2 = f2;
+            this(f2 == null ? new File[]{f1} : new File[]{f1, f2}, factory, array, newFile);
+        }
+
+        private MergeJob(
+                final File[] files,
+                final ReferenceFactory<? extends Reference> factory,
+                final ArrayStack array,
+                final File newFile) {
+            this.files = files;
             this.factory = factory;
             this.newFile = newFile;
             this.array = array;
         }
 
+        private String filesList() {
+            final StringBuilder sb = new StringBuilder();
+            for (final File f: this.files) {
+                if (sb.length() > 0) sb.append(", ");
+                sb.append(f.getName());
+            }
+            return sb.toString();
+        }
+
         private File merge() {
-        	if (!this.f1.exists()) {
-        	    log.warn("merge of file (1) " + this.f1.getName() + " failed: file does not exists");
-        		return null;
-        	}
-        	if (this.f2 != null && !this.f2.exists()) {
-        	    log.warn("merge of file (2) " + this.f2.getName() + " failed: file does not exists");
-        		return null;
-        	}
-            return this.array.mergeMount(this.f1, this.f2, this.factory, this.newFile, (int) Math.min(MemoryControl.available() / 3, IODispatcher.this.writeBufferSize));
+            for (int i = 0; i < this.files.length; i++) {
+                if (!this.files[i].exists()) {
+                    log.warn("merge of file (" + (i + 1) + ") " + this.files[i].getName() + " failed: file does not exists");
+                    return null;
+                }
+            }
+            // the merge buffer is shared by all concurrent workers
+            final int writeBuffer = (int) Math.min(MemoryControl.available() / 3 / IODispatcher.this.workers, IODispatcher.this.writeBufferSize);
+            return this.array.mergeMount(this.files, this.factory, this.newFile, writeBuffer);
         }
     }
 
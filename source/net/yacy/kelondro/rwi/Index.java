@@ -37,6 +37,7 @@ import net.yacy.cora.sorting.Rating;
 import net.yacy.cora.storage.HandleSet;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.index.RowCursor;
 
 
 public interface Index <ReferenceType extends Reference> extends Iterable<ReferenceContainer<ReferenceType>> {
@@ -103,6 +104,15 @@ public interface Index <ReferenceType extends Reference> extends Iterable<Refere
 	 */
 	public ReferenceContainer<ReferenceType> get(byte[] termHash, HandleSet referenceselection) throws IOException;
 
+    /**
+     * get a cursor on the references to a given word, sorted by the url hash.
+     * Other than get(), this does not need to merge the references into one container
+     * @param termHash
+     * @return a cursor or null if there are no references
+     * @throws IOException
+     */
+    public RowCursor cursor(byte[] termHash) throws IOException;
+
     /**
      * remove all references for a word
      * @param termHash
@@ -31,6 +31,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -44,6 +45,7 @@ import net.yacy.cora.util.ByteArray;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.index.RowCursor;
 import net.yacy.kelondro.index.RowHandleSet;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.kelondro.util.MergeIterator;
@@ -185,8 +187,15 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         if (this.array.entries() < 2) return false;
         boolean donesomething = false;
 
-        // first try to merge small files that match
+        // first merge tiers of files with similar size in one pass each
         int term = 10;
+        while (term-- > 0 && (this.merger.queueLength() < this.merger.mergeWorkers())) {
+            if (!this.array.shrinkSizeTieredFiles(this.merger, targetFileSize)) break;
+            donesomething = true;
+        }
+
+        // then try to merge small files that match
+        term = 10;
         while (term-- > 0 && (this.merger.queueLength() < 3 || this.array.entries() >= 50)) {
             if (!this.array.shrinkBestSmallFiles(this.merger, targetFileSize)) break;
             donesomething = true;
@@ -383,6 +392,25 @@ public final class IndexCell<ReferenceType extends Reference> extends AbstractBu
         return result;
     }
 
+    /**
+     * a cursor over the references in the BLOBs and the RAM; the containers are not merged but
+     * enumerated together. Like in get(), entries in the BLOBs are preferred over entries in RAM.
+     */
+    @Override
+    public RowCursor cursor(final byte[] termHash) throws IOException {
+        final List<RowCursor> cursors = this.array.cursors(termHash);
+        final RowCursor c0 = this.ram.cursor(termHash);
+        if (c0 != null) cursors.add(c0);
+        if (cursors.isEmpty()) return null;
+        // remove the failed urls
+        HandleSet s;
+        synchronized (this.removeDelayedURLs) {
+            s = this.removeDelayedURLs.get(termHash);
+            if (s != null) s = s.clone();
+        }
+        return RowCursor.exclude(RowCursor.union(cursors), s);
+    }
+
     /**
      * deleting a container affects the containers in RAM and all the BLOB files
      * the deleted containers are merged and returned as result of the method
@@ -42,7 +42,9 @@ import net.yacy.cora.order.ByteOrder;
 import net.yacy.cora.storage.HandleSet;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.BlockRowCodec;
 import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.index.RowCursor;
 import net.yacy.kelondro.index.RowSet;
 
 
@@ -60,6 +62,7 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
     private   byte[] termHash;
     protected ReferenceFactory<ReferenceType> factory;
     public static int maxReferences = 0; // overwrite this to enable automatic index shrinking. 0 means no shrinking
+    public static boolean blockCompressed = false; // if set, exportCollection() writes the BlockRowCodec format. Both formats can always be read.
 
     public ReferenceContainer(final ReferenceFactory<ReferenceType> factory, final byte[] termHash, final RowSet collection) {
         super(collection);
@@ -100,6 +103,24 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
         return new ReferenceContainer<ReferenceType>(factory, termHash, elementCount);
     }
 
+    /**
+     * export the container for the storage in a BLOB; depending on blockCompressed this is the
+     * plain collection export or the block-compressed format. RowSet.importRowSet() reads both.
+     */
+    @Override
+    public synchronized byte[] exportCollection() {
+        if (!blockCompressed || isEmpty()) return super.exportCollection();
+        sort();
+        return BlockRowCodec.encode(this);
+    }
+
+    /**
+     * export the container always in the plain collection format
+     */
+    public byte[] exportPlainCollection() {
+        return super.exportCollection();
+    }
+
     public void setWordHash(final byte[] newTermHash) {
     	assert this.termHash == null || (this.termHash[2] != '@' && this.termHash.length == this.rowdef.primaryKeyLength);
         this.termHash = newTermHash;
@@ -370,6 +391,60 @@ public class ReferenceContainer<ReferenceType extends Reference> extends RowSet
         return searchResult;
     }
 
+    /**
+     * join the references of several cursors and exclude the references of other cursors without
+     * loading the referenced containers. The first include cursor drives the join: all other cursors
+     * are moved forward to its current key with a galloping search (leapfrog join), and if a cursor
+     * has a greater key, the driving cursor is moved forward to that key.
+     * @param factory
+     * @param includeCursors the cursors of the terms that must appear; the smallest should be the first
+     * @param excludeCursors the cursors of the terms that must not appear
+     * @param maxDistance
+     * @param maxResults the join terminates after that number of references was found; 0 means no limit
+     * @return the joined references
+     * @throws SpaceExceededException
+     */
+    public static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> joinExcludeCursors(
+            final ReferenceFactory<ReferenceType> factory,
+            final List<RowCursor> includeCursors,
+            final List<RowCursor> excludeCursors,
+            final int maxDistance,
+            final int maxResults) throws SpaceExceededException {
+        final ReferenceContainer<ReferenceType> conj = new ReferenceContainer<ReferenceType>(factory, null, 0);
+        if (includeCursors == null || includeCursors.isEmpty()) return conj;
+        final RowCursor pivot = includeCursors.get(0);
+        boolean found = pivot.next();
+        search: while (found) {
+            final byte[] key = pivot.key();
+            for (int i = 1; i < includeCursors.size(); i++) {
+                final RowCursor c = includeCursors.get(i);
+                if (!c.seek(key)) break search; // one term has no more references, the conjunction is complete
+                if (c.compareKey(key) > 0) {
+                    found = pivot.seek(c.key());
+                    continue search;
+                }
+            }
+            boolean excluded = false;
+            if (excludeCursors != null) for (final RowCursor c: excludeCursors) {
+                if (c.seek(key) && c.compareKey(key) == 0) {
+                    excluded = true;
+                    break;
+                }
+            }
+            if (!excluded) {
+                // we have found the same url in all cursors
+                final ReferenceType ie = factory.produceFast(factory.produceSlow(pivot.current()), true);
+                for (int i = 1; i < includeCursors.size(); i++) ie.join(factory.produceSlow(includeCursors.get(i).current()));
+                if (ie.distance() <= maxDistance) {
+                    conj.add(ie);
+                    if (maxResults > 0 && conj.size() >= maxResults) break;
+                }
+            }
+            found = pivot.next();
+        }
+        return conj;
+    }
+
     public static <ReferenceType extends Reference> ReferenceContainer<ReferenceType> excludeContainers(
                             final ReferenceFactory<ReferenceType> factory,
                             ReferenceContainer<ReferenceType> pivot,
@@ -26,9 +26,13 @@ package net.yacy.kelondro.rwi;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
+import net.yacy.cora.document.encoding.ASCII;
 import net.yacy.cora.order.ByteOrder;
 import net.yacy.cora.order.CloneableIterator;
 import net.yacy.cora.sorting.Rating;
@@ -36,8 +40,11 @@ import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.blob.ArrayStack;
 import net.yacy.kelondro.blob.BLOB;
+import net.yacy.kelondro.blob.HeapWriter;
 import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.index.BlockRowCodec;
 import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.index.RowCursor;
 import net.yacy.kelondro.index.RowSet;
 
 
@@ -45,6 +52,11 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
 
     private final static long METHOD_MAXRUNTIME = 5000L;
 
+    /**
+     * the maximum number of files that are merged together in one size-tiered merge
+     */
+    public static int maxMergeFiles = 8;
+
     private final ReferenceFactory<ReferenceType> factory;
     private final ArrayStack array;
 
@@ -324,20 +336,41 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
     	return c;
     }
 
+    /**
+     * get cursors on the containers of a term in all BLOBs; the containers are not merged.
+     * The cursors are in the order of the BLOBs, which is the order that get() uses when entries are merged.
+     * @param termHash
+     * @return a list of cursors, may be empty
+     * @throws IOException
+     */
+    public List<RowCursor> cursors(final byte[] termHash) throws IOException {
+        final long timeout = System.currentTimeMillis() + METHOD_MAXRUNTIME;
+        final List<RowCursor> cursors = new ArrayList<RowCursor>();
+        for (final byte[] b: this.array.getAll(termHash)) {
+            cursors.add(RowCursor.of(b, this.factory.getRow()));
+            if (System.currentTimeMillis() > timeout) {
+                ConcurrentLog.warn("ReferenceContainerArray", "timout in cursors(): " + cursors.size() + " tables searched. timeout = " + METHOD_MAXRUNTIME);
+                break;
+            }
+        }
+        return cursors;
+    }
+
     public int count(final byte[] termHash) throws IOException {
         final long timeout = System.currentTimeMillis() + METHOD_MAXRUNTIME;
-        final Iterator<Long> entries = this.array.lengthAll(termHash).iterator();
+        // the number of references is stored in the head of the plain and the block-compressed format
+        final Iterator<byte[]> entries = this.array.headAll(termHash, 5).iterator();
         if (entries == null || !entries.hasNext()) return 0;
-        final Long a = entries.next();
+        final byte[] a = entries.next();
         int k = 1;
-        int c = RowSet.importRowCount(a, this.factory.getRow());
+        int c = BlockRowCodec.count(a);
         assert c >= 0;
         if (System.currentTimeMillis() > timeout) {
             ConcurrentLog.warn("ReferenceContainerArray", "timout in count() (1): " + k + " tables searched. timeout = " + METHOD_MAXRUNTIME);
             return c;
         }
         while (entries.hasNext()) {
-            c += RowSet.importRowCount(entries.next(), this.factory.getRow());
+            c += BlockRowCodec.count(entries.next());
             assert c >= 0;
             k++;
             if (System.currentTimeMillis() > timeout) {
@@ -360,26 +393,72 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
     	this.array.delete(termHash);
     }
 
+    /**
+     * reduce the containers of a term in all BLOBs. The containers are rewritten in place; if a block-compressed
+     * container does not fit in place after the reduction, the term is deleted in all BLOBs and the merged
+     * reduced containers are written again to a new BLOB file.
+     * @param termHash
+     * @param reducer
+     * @return the number of bytes that the reduction removed
+     * @throws IOException
+     * @throws SpaceExceededException
+     */
     public int reduce(final byte[] termHash, final ContainerReducer<ReferenceType> reducer) throws IOException, SpaceExceededException {
-        return this.array.reduce(termHash, new BLOBReducer(termHash, reducer));
+        synchronized (this.array) {
+            final BLOBReducer blobReducer = new BLOBReducer(termHash, reducer);
+            final int reduced = this.array.reduce(termHash, blobReducer);
+            if (blobReducer.grownRemoved < 0) return reduced;
+
+            ReferenceContainer<ReferenceType> c = null;
+            for (final ReferenceContainer<ReferenceType> r: blobReducer.reduced) c = (c == null) ? r : c.merge(r);
+            if (c == null || c.isEmpty()) {
+                this.array.delete(termHash);
+            } else {
+                final File location = newContainerBLOBFile();
+                final HeapWriter writer = new HeapWriter(new File(location.getParentFile(), location.getName() + ".prt"), location, this.array.keylength(), this.array.ordering(), 1024 * 64);
+                writer.add(termHash, c.exportCollection());
+                writer.close(true);
+                this.array.delete(termHash);
+                mountBLOBFile(location);
+            }
+            ConcurrentLog.info("ReferenceContainerArray", "reduced container of " + ASCII.String(termHash) + " written again, the compressed container did not fit in place");
+            return reduced + blobReducer.grownRemoved * this.factory.getRow().objectsize;
+        }
     }
 
     public class BLOBReducer implements BLOB.Reducer {
 
         ContainerReducer<ReferenceType> rewriter;
         byte[] wordHash;
+        List<ReferenceContainer<ReferenceType>> reduced; // the reduced containers of all BLOBs
+        int grownRemoved; // the number of removed references in containers which did not fit in place; -1 if all fitted
 
         public BLOBReducer(final byte[] wordHash, final ContainerReducer<ReferenceType> rewriter) {
             this.rewriter = rewriter;
             this.wordHash = wordHash;
+            this.reduced = new ArrayList<ReferenceContainer<ReferenceType>>(1);
+            this.grownRemoved = -1;
         }
 
         @Override
         public byte[] rewrite(final byte[] b) throws SpaceExceededException {
             if (b == null) return null;
-            final ReferenceContainer<ReferenceType> c = this.rewriter.reduce(new ReferenceContainer<ReferenceType>(ReferenceContainerArray.this.factory, this.wordHash, RowSet.importRowSet(b, ReferenceContainerArray.this.factory.getRow())));
+            final ReferenceContainer<ReferenceType> a = new ReferenceContainer<ReferenceType>(ReferenceContainerArray.this.factory, this.wordHash, RowSet.importRowSet(b, ReferenceContainerArray.this.factory.getRow()));
+            final int size = a.size();
+            final ReferenceContainer<ReferenceType> c = this.rewriter.reduce(a);
             if (c == null) return null;
+            this.reduced.add(c);
             final byte bb[] = c.exportCollection();
+            if (BlockRowCodec.isEncoded(bb) && bb.length > b.length - 4) {
+                // a compressed container does not always shrink when references are removed because the block heads move;
+                // the heap needs a reduction of at least 4 bytes or a replacement of the same size
+                if (bb.length <= b.length) return Arrays.copyOf(bb, b.length); // trailing bytes are ignored by the codec
+                final byte pb[] = c.exportPlainCollection();
+                if (pb.length <= b.length - 4) return pb;
+                // the container is left unchanged here and written again by reduce()
+                this.grownRemoved = Math.max(0, this.grownRemoved) + size - c.size();
+                return b;
+            }
             assert bb.length <= b.length;
             return bb;
         }
@@ -399,6 +478,21 @@ public final class ReferenceContainerArray<ReferenceType extends Reference> {
         return this.array.entries();
     }
 
+    /**
+     * merge a tier of files with similar size in one pass. This reduces the number of files
+     * much faster than pairwise merging and writes each reference only once per tier.
+     * @param merger
+     * @param targetFileSize the maximum size of the merged file
+     * @return true if a merge job was queued
+     */
+    public boolean shrinkSizeTieredFiles(final IODispatcher merger, final long targetFileSize) {
+        final File[] ff = this.array.unmountSizeTier(3, maxMergeFiles, 4.0f, targetFileSize);
+        if (ff == null) return false;
+        ConcurrentLog.info("RICELL-shrink0", "unmountSizeTier(3, " + maxMergeFiles + ", 4.0, " + targetFileSize + "): " + ff.length + " files");
+        merger.merge(ff, this.factory, this.array, newContainerBLOBFile());
+        return true;
+    }
+
     public boolean shrinkBestSmallFiles(final IODispatcher merger, final long targetFileSize) {
         final File[] ff = this.array.unmountBestMatch(2.0f, targetFileSize);
         if (ff == null) return false;
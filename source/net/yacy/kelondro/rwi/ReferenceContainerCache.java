@@ -47,6 +47,7 @@ import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.kelondro.blob.HeapWriter;
 import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.index.RowCursor;
 import net.yacy.kelondro.util.FileUtils;
 
 /**
@@ -438,6 +439,21 @@ public final class ReferenceContainerCache<ReferenceType extends Reference> exte
         return this.cache.containsKey(new ByteArray(key));
     }
 
+    @Override
+    public RowCursor cursor(final byte[] termHash) {
+        final ReferenceContainer<ReferenceType> c = get(termHash, null);
+        if (c == null || c.isEmpty()) return null;
+        try {
+            // the container in the cache may be changed concurrently; the cursor needs a sorted copy
+            final ReferenceContainer<ReferenceType> sorted = c.topLevelClone();
+            sorted.sort();
+            return RowCursor.of(sorted);
+        } catch (final SpaceExceededException e) {
+            ConcurrentLog.logException(e);
+            return null;
+        }
+    }
+
     /**
      * get a indexContainer from a heap
      * @param key
@@ -27,11 +27,19 @@
 
 package net.yacy.kelondro.rwi;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
 import java.util.TreeMap;
 
 import net.yacy.cora.order.Base64Order;
 import net.yacy.cora.storage.HandleSet;
+import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.RowCursor;
 
 
 public class TermSearch <ReferenceType extends Reference> {
@@ -39,6 +47,17 @@ public class TermSearch <ReferenceType extends Reference> {
     private final ReferenceContainer<ReferenceType> joinResult;
     private TreeMap<byte[], ReferenceContainer<ReferenceType>> inclusionContainers;
 
+    /**
+     * if set, searches which do not need the containers of the single terms use the streaming join
+     */
+    public static boolean streamingJoin = true;
+
+    /**
+     * the maximum number of references that a streaming join collects; 0 means no limit.
+     * The join runs in url hash order, therefore a limit cuts off references independently from their rank.
+     */
+    public static int maxJoinResults = 0;
+
     public TermSearch(
             Index<ReferenceType> base,
             final HandleSet queryHashes,
@@ -69,6 +88,61 @@ public class TermSearch <ReferenceType extends Reference> {
                 maxDistance);
     }
 
+    /**
+     * a conjunction search that walks the sorted references of all terms with cursors: the containers
+     * of the single terms are not loaded into RAM, only the joined references are collected.
+     * Because of that the inclusion containers are not available after this search.
+     * @param maxResults the join terminates after that number of references was found; 0 means no limit
+     */
+    public TermSearch(
+            Index<ReferenceType> base,
+            final HandleSet queryHashes,
+            final HandleSet excludeHashes,
+            ReferenceFactory<ReferenceType> termFactory,
+            int maxDistance,
+            int maxResults) throws SpaceExceededException {
+
+        this.inclusionContainers = null;
+        final List<RowCursor> include = cursors(base, queryHashes, true);
+        if (include == null) {
+            this.joinResult = ReferenceContainer.emptyContainer(termFactory, null, 0);
+            return;
+        }
+
+        // the smallest cursor drives the join
+        Collections.sort(include, new Comparator<RowCursor>() {
+            @Override
+            public int compare(final RowCursor o1, final RowCursor o2) {
+                return o1.size() < o2.size() ? -1 : o1.size() == o2.size() ? 0 : 1;
+            }
+        });
+        final List<RowCursor> exclude = cursors(base, excludeHashes, false);
+
+        this.joinResult = ReferenceContainer.joinExcludeCursors(termFactory, include, exclude, maxDistance, maxResults);
+    }
+
+    private static <ReferenceType extends Reference> List<RowCursor> cursors(final Index<ReferenceType> base, final HandleSet hashes, final boolean conjunction) {
+        final List<RowCursor> cursors = new ArrayList<RowCursor>(hashes.size());
+        final Iterator<byte[]> i = hashes.iterator();
+        while (i.hasNext()) {
+            RowCursor c;
+            try {
+                c = base.cursor(i.next());
+            } catch (final IOException e) {
+                ConcurrentLog.logException(e);
+                c = null;
+            }
+            if (c != null) {
+                cursors.add(c);
+            } else if (conjunction) {
+                // as this is a conjunction of searches, we have no result if any word is not known
+                return null;
+            }
+        }
+        if (conjunction && cursors.isEmpty()) return null;
+        return cursors;
+    }
+
     public ReferenceContainer<ReferenceType> joined() {
         return this.joinResult;
     }
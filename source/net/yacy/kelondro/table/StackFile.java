@@ -0,0 +1,699 @@
+// StackFile.java
+// -----------------------
+// (C) 2016 by the YaCy contributors
+// first published 2016 on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.kelondro.table;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.TreeMap;
+
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.order.CloneableIterator;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.Column;
+import net.yacy.kelondro.index.Index;
+import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.index.RowCollection;
+import net.yacy.kelondro.index.RowSet;
+import net.yacy.kelondro.util.FileUtils;
+
+/**
+ * A single log-structured file which holds many small indexes (stacks) with the same row definition.
+ * This replaces a large number of small Table files, i.e. the crawl queues of a wide crawl with one
+ * stack file for each host and depth, with one file and one file handle.
+ *
+ * Every change is appended to the file as a record: 'P' (put a row), 'R' (remove a key) or 'C' (clear a stack),
+ * followed by the name of the stack and the row or key. In memory only the keys of each stack and the position
+ * of their rows in the file are stored. When the file is opened, the records are replayed to build this index.
+ * If the file contains more removed than live records, it is compacted by writing all live rows to a new file.
+ * Records are collected in a write buffer which is written to the file when it is full and once every second,
+ * so a crash loses at most the changes of the last second.
+ */
+public final class StackFile {
+
+    private final static ConcurrentLog log = new ConcurrentLog("StackFile");
+
+    private static final byte OP_PUT = 'P';
+    private static final byte OP_REMOVE = 'R';
+    private static final byte OP_CLEAR = 'C';
+
+    private static final int writeBufferSize = 64 * 1024;
+    private static final long minCompactGarbage = 16L * 1024L * 1024L;
+    private static final long flushDelay = 1000;
+    private static Timer flusher = null;
+
+    private final File file;
+    private final Row rowdef;
+    private final Row idxdef; // the key of a row and the position of the row in the file
+    private final TreeMap<String, Stack> stacks;
+    private RandomAccessFile raf;
+    private long fileLength; // the length of the file without the write buffer
+    private final byte[] buffer;
+    private int bufferPos;
+    private long liveBytes, garbageBytes;
+    private long compactGarbage; // the garbage size which triggers a compaction
+    private final TimerTask flushTask;
+
+    public StackFile(final File file, final Row rowdef) throws IOException {
+        this.file = file;
+        this.rowdef = rowdef;
+        this.idxdef = new Row(new Column[]{
+                new Column("key", Column.celltype_binary, Column.encoder_bytes, rowdef.primaryKeyLength, "key"),
+                new Column("long c-6 {b256}")}, rowdef.objectOrder);
+        this.stacks = new TreeMap<String, Stack>();
+        this.buffer = new byte[writeBufferSize];
+        this.bufferPos = 0;
+        this.liveBytes = 0;
+        this.garbageBytes = 0;
+        this.compactGarbage = minCompactGarbage;
+        if (file.getParentFile() != null && !file.getParentFile().exists()) file.getParentFile().mkdirs();
+        // a compaction may have been interrupted between the replacement of the file and the deletion of the old file
+        final File old = oldFile();
+        if (old.exists()) {
+            if (file.exists()) FileUtils.deletedelete(old); else old.renameTo(file);
+        }
+        replay();
+        this.raf = new RandomAccessFile(file, "rw");
+        this.fileLength = this.raf.length();
+        if (this.garbageBytes > this.liveBytes) tryCompact();
+        this.flushTask = new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    flush();
+                } catch (final IOException e) {
+                    log.warn("cannot flush " + StackFile.this.file + ": " + e.getMessage());
+                }
+            }
+        };
+        synchronized (StackFile.class) {
+            if (flusher == null) flusher = new Timer("StackFile.flush", true);
+            flusher.schedule(this.flushTask, flushDelay, flushDelay);
+        }
+        log.info("opened " + file.toString() + " with " + this.stacks.size() + " stacks, " + (this.fileLength / 1024 / 1024) + " MB");
+    }
+
+    private File oldFile() {
+        return new File(this.file.getParentFile(), this.file.getName() + ".old");
+    }
+
+    private int recordLength(final Stack stack, final byte op) {
+        return 3 + stack.nameBytes.length + (op == OP_PUT ? this.rowdef.objectsize : op == OP_REMOVE ? this.rowdef.primaryKeyLength : 0);
+    }
+
+    /**
+     * read all records of the file and build the index of the stacks. An incomplete record at the end
+     * of the file (written during a crash) is removed.
+     */
+    private void replay() throws IOException {
+        if (!this.file.exists()) return;
+        long pos = 0;
+        final DataInputStream is = new DataInputStream(new BufferedInputStream(new FileInputStream(this.file), 64 * 1024));
+        try {
+            final byte[] row = new byte[this.rowdef.objectsize];
+            final byte[] key = new byte[this.rowdef.primaryKeyLength];
+            while (true) {
+                try {
+                    final byte op = is.readByte();
+                    final int namelength = is.readUnsignedShort();
+                    final byte[] name = new byte[namelength];
+                    is.readFully(name);
+                    final Stack stack = stack(UTF8.String(name));
+                    final long rowpos = pos + 3 + namelength;
+                    if (op == OP_PUT) {
+                        is.readFully(row);
+                        stack.index(this.rowdef.newEntry(row).getPrimaryKeyBytes(), rowpos);
+                    } else if (op == OP_REMOVE) {
+                        is.readFully(key);
+                        stack.unindex(key);
+                        this.garbageBytes += recordLength(stack, op);
+                    } else if (op == OP_CLEAR) {
+                        stack.unindexAll();
+                        this.garbageBytes += recordLength(stack, op);
+                    } else {
+                        log.warn("bad operation " + op + " in " + this.file + " at position " + pos + "; the file is truncated");
+                        break;
+                    }
+                    pos += recordLength(stack, op);
+                } catch (final EOFException e) {
+                    break; // incomplete record
+                }
+            }
+        } catch (final SpaceExceededException e) {
+            throw new IOException(e.getMessage());
+        } finally {
+            is.close();
+        }
+        if (this.file.length() > pos) {
+            final RandomAccessFile f = new RandomAccessFile(this.file, "rw");
+            try {
+                f.setLength(pos);
+            } finally {
+                f.close();
+            }
+        }
+        // stacks which are empty after the replay are not needed
+        final Iterator<Stack> i = this.stacks.values().iterator();
+        while (i.hasNext()) if (i.next().idx.isEmpty()) i.remove();
+    }
+
+    /**
+     * get a stack; the stack is created if it does not exist
+     * @param name
+     * @return the stack with the given name
+     */
+    public synchronized Stack stack(final String name) {
+        Stack stack = this.stacks.get(name);
+        if (stack == null) {
+            stack = new Stack(name);
+            this.stacks.put(name, stack);
+        }
+        return stack;
+    }
+
+    /**
+     * @param prefix
+     * @return the names of all stacks which start with the given prefix
+     */
+    public synchronized List<String> names(final String prefix) {
+        final SortedMap<String, Stack> m = prefix.length() == 0 ? this.stacks : this.stacks.subMap(prefix, prefix + Character.MAX_VALUE);
+        return new ArrayList<String>(m.keySet());
+    }
+
+    private long append(final Stack stack, final byte op, final byte[] b, final int start, final int length) throws IOException {
+        final int recordlength = 3 + stack.nameBytes.length + length;
+        if (this.bufferPos + recordlength > this.buffer.length) flush();
+        final long pos = this.fileLength + this.bufferPos;
+        if (recordlength > this.buffer.length) {
+            // too large for the buffer
+            final byte[] r = new byte[recordlength];
+            writeRecord(r, 0, stack, op, b, start, length);
+            this.raf.seek(this.fileLength);
+            this.raf.write(r);
+            this.fileLength += recordlength;
+        } else {
+            writeRecord(this.buffer, this.bufferPos, stack, op, b, start, length);
+            this.bufferPos += recordlength;
+        }
+        return pos + 3 + stack.nameBytes.length;
+    }
+
+    private static void writeRecord(final byte[] target, int p, final Stack stack, final byte op, final byte[] b, final int start, final int length) {
+        target[p++] = op;
+        target[p++] = (byte) (stack.nameBytes.length >>> 8);
+        target[p++] = (byte) stack.nameBytes.length;
+        System.arraycopy(stack.nameBytes, 0, target, p, stack.nameBytes.length);
+        p += stack.nameBytes.length;
+        if (length > 0) System.arraycopy(b, start, target, p, length);
+    }
+
+    /**
+     * write the buffered records to the file
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        if (this.bufferPos == 0 || this.raf == null) return;
+        this.raf.seek(this.fileLength);
+        this.raf.write(this.buffer, 0, this.bufferPos);
+        this.fileLength += this.bufferPos;
+        this.bufferPos = 0;
+    }
+
+    private byte[] read(final long pos) throws IOException {
+        final byte[] b = new byte[this.rowdef.objectsize];
+        if (pos >= this.fileLength) {
+            System.arraycopy(this.buffer, (int) (pos - this.fileLength), b, 0, b.length);
+        } else {
+            this.raf.seek(pos);
+            this.raf.readFully(b);
+        }
+        return b;
+    }
+
+    private void garbage(final long bytes) {
+        this.garbageBytes += bytes;
+        if (this.garbageBytes > this.compactGarbage && this.garbageBytes > this.liveBytes) tryCompact();
+    }
+
+    /**
+     * compact the file; if this fails, the original file is used further and the next compaction is
+     * tried when the garbage has doubled
+     */
+    private void tryCompact() {
+        try {
+            compact();
+            this.compactGarbage = minCompactGarbage;
+        } catch (final IOException e) {
+            this.compactGarbage = 2 * Math.max(minCompactGarbage, this.garbageBytes);
+            log.warn("cannot compact " + this.file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * write all live rows to a new file which replaces the current file
+     * @throws IOException
+     */
+    private void compact() throws IOException {
+        final long start = System.currentTimeMillis();
+        flush();
+        final File tmp = new File(this.file.getParentFile(), this.file.getName() + ".tmp");
+        FileUtils.deletedelete(tmp);
+        final Map<Stack, RowSet> newidx = new TreeMap<Stack, RowSet>();
+        long pos = 0;
+        final OutputStream os = new BufferedOutputStream(new FileOutputStream(tmp), writeBufferSize);
+        try {
+            final byte[] record = new byte[3 + 0xFFFF + this.rowdef.objectsize];
+            for (final Stack stack: this.stacks.values()) {
+                final RowSet idx = new RowSet(this.idxdef);
+                for (final Row.Entry e: stack.idx) {
+                    final byte[] row = read(e.getColLong(1));
+                    writeRecord(record, 0, stack, OP_PUT, row, 0, row.length);
+                    final int recordlength = recordLength(stack, OP_PUT);
+                    os.write(record, 0, recordlength);
+                    final Row.Entry ie = this.idxdef.newEntry();
+                    ie.setCol(0, e.getPrimaryKeyBytes());
+                    ie.setCol(1, pos + 3 + stack.nameBytes.length);
+                    idx.put(ie);
+                    pos += recordlength;
+                }
+                newidx.put(stack, idx);
+            }
+        } catch (final SpaceExceededException e) {
+            os.close();
+            FileUtils.deletedelete(tmp);
+            throw new IOException(e.getMessage());
+        }
+        os.close();
+        this.raf.close();
+        final File old = oldFile();
+        FileUtils.deletedelete(old);
+        if (!this.file.renameTo(old) || !tmp.renameTo(this.file)) {
+            // go on with the original file and its index
+            if (!this.file.exists()) old.renameTo(this.file);
+            FileUtils.deletedelete(tmp);
+            this.raf = new RandomAccessFile(this.file, "rw");
+            this.fileLength = this.raf.length();
+            throw new IOException("cannot rename " + tmp + " to " + this.file);
+        }
+        FileUtils.deletedelete(old);
+        this.raf = new RandomAccessFile(this.file, "rw");
+        this.fileLength = this.raf.length();
+        for (final Map.Entry<Stack, RowSet> entry: newidx.entrySet()) entry.getKey().idx = entry.getValue();
+        this.liveBytes = pos;
+        this.garbageBytes = 0;
+        log.info("compacted " + this.file.toString() + " to " + (pos / 1024 / 1024) + " MB in " + (System.currentTimeMillis() - start) + " milliseconds");
+    }
+
+    /**
+     * @return the number of stacks
+     */
+    public synchronized int stacks() {
+        return this.stacks.size();
+    }
+
+    public synchronized void close() {
+        if (this.raf == null) return;
+        this.flushTask.cancel();
+        try {
+            flush();
+            this.raf.close();
+        } catch (final IOException e) {
+            log.warn("cannot close " + this.file + ": " + e.getMessage(), e);
+        }
+        this.raf = null;
+        this.stacks.clear();
+    }
+
+    /**
+     * an index inside the stack file. The rows are stored in the file, the index holds only the keys in memory.
+     */
+    public final class Stack implements Index, Comparable<Stack> {
+
+        private final String name;
+        private final byte[] nameBytes;
+        private RowSet idx;
+
+        private Stack(final String name) {
+            this.name = name;
+            this.nameBytes = UTF8.getBytes(name);
+            if (this.nameBytes.length > 0xFFFF) throw new IllegalArgumentException("name too long: " + name);
+            this.idx = new RowSet(StackFile.this.idxdef);
+        }
+
+        private long index(final byte[] key, final long pos) throws SpaceExceededException {
+            final Row.Entry ie = StackFile.this.idxdef.newEntry();
+            ie.setCol(0, key);
+            ie.setCol(1, pos);
+            final Row.Entry old = this.idx.replace(ie);
+            StackFile.this.liveBytes += recordLength(this, OP_PUT);
+            if (old == null) return -1;
+            StackFile.this.liveBytes -= recordLength(this, OP_PUT);
+            StackFile.this.garbageBytes += recordLength(this, OP_PUT);
+            return old.getColLong(1);
+        }
+
+        private long unindex(final byte[] key) {
+            final Row.Entry old = this.idx.remove(key);
+            if (old == null) return -1;
+            StackFile.this.liveBytes -= recordLength(this, OP_PUT);
+            StackFile.this.garbageBytes += recordLength(this, OP_PUT);
+            return old.getColLong(1);
+        }
+
+        private void unindexAll() {
+            final long bytes = (long) this.idx.size() * recordLength(this, OP_PUT);
+            StackFile.this.liveBytes -= bytes;
+            StackFile.this.garbageBytes += bytes;
+            this.idx.clear();
+        }
+
+        private Row.Entry entry(final long pos) throws IOException {
+            if (pos < 0) return null;
+            return StackFile.this.rowdef.newEntry(read(pos));
+        }
+
+        @Override
+        public int compareTo(final Stack o) {
+            return this.name.compareTo(o.name);
+        }
+
+        @Override
+        public String filename() {
+            return StackFile.this.file.toString() + "/" + this.name;
+        }
+
+        @Override
+        public int size() {
+            synchronized (StackFile.this) {
+                return this.idx.size();
+            }
+        }
+
+        @Override
+        public boolean isEmpty() {
+            synchronized (StackFile.this) {
+                return this.idx.isEmpty();
+            }
+        }
+
+        @Override
+        public void optimize() {
+        }
+
+        @Override
+        public long mem() {
+            synchronized (StackFile.this) {
+                return this.idx.mem();
+            }
+        }
+
+        @Override
+        public Row row() {
+            return StackFile.this.rowdef;
+        }
+
+        @Override
+        public byte[] smallestKey() {
+            synchronized (StackFile.this) {
+                return this.idx.smallestKey();
+            }
+        }
+
+        @Override
+        public byte[] largestKey() {
+            synchronized (StackFile.this) {
+                return this.idx.largestKey();
+            }
+        }
+
+        @Override
+        public boolean has(final byte[] key) {
+            synchronized (StackFile.this) {
+                return this.idx.has(key);
+            }
+        }
+
+        @Override
+        public Map<byte[], Row.Entry> get(final Collection<byte[]> keys, final boolean forcecopy) throws IOException, InterruptedException {
+            final Map<byte[], Row.Entry> map = new TreeMap<byte[], Row.Entry>(row().objectOrder);
+            Row.Entry entry;
+            for (final byte[] key: keys) {
+                entry = get(key, forcecopy);
+                if (entry != null) map.put(key, entry);
+            }
+            return map;
+        }
+
+        @Override
+        public Row.Entry get(final byte[] key, final boolean forcecopy) throws IOException {
+            synchronized (StackFile.this) {
+                final Row.Entry ie = this.idx.get(key, false);
+                return ie == null ? null : entry(ie.getColLong(1));
+            }
+        }
+
+        @Override
+        public Row.Entry replace(final Row.Entry row) throws SpaceExceededException, IOException {
+            synchronized (StackFile.this) {
+                final long pos = append(this, OP_PUT, row.bytes(), 0, StackFile.this.rowdef.objectsize);
+                final long oldpos = index(row.getPrimaryKeyBytes(), pos);
+                return entry(oldpos);
+            }
+        }
+
+        @Override
+        public boolean put(final Row.Entry row) throws IOException, SpaceExceededException {
+            synchronized (StackFile.this) {
+                final long pos = append(this, OP_PUT, row.bytes(), 0, StackFile.this.rowdef.objectsize);
+                final boolean isnew = index(row.getPrimaryKeyBytes(), pos) < 0;
+                if (!isnew) garbage(0);
+                return isnew;
+            }
+        }
+
+        @Override
+        public void addUnique(final Row.Entry row) throws SpaceExceededException, IOException {
+            put(row);
+        }
+
+        @Override
+        public List<RowCollection> removeDoubles() throws IOException, SpaceExceededException {
+            // the index does not contain doubles
+            return new ArrayList<RowCollection>(0);
+        }
+
+        @Override
+        public boolean delete(final byte[] key) throws IOException {
+            return remove(key) != null;
+        }
+
+        @Override
+        public Row.Entry remove(final byte[] key) throws IOException {
+            synchronized (StackFile.this) {
+                final Row.Entry ie = this.idx.get(key, false);
+                if (ie == null) return null;
+                final Row.Entry entry = entry(ie.getColLong(1));
+                append(this, OP_REMOVE, key, 0, StackFile.this.rowdef.primaryKeyLength);
+                unindex(key);
+                garbage(recordLength(this, OP_REMOVE));
+                return entry;
+            }
+        }
+
+        @Override
+        public Row.Entry removeOne() throws IOException {
+            synchronized (StackFile.this) {
+                final Row.Entry ie = this.idx.removeOne();
+                if (ie == null) return null;
+                final byte[] key = ie.getPrimaryKeyBytes();
+                final Row.Entry entry = entry(ie.getColLong(1));
+                StackFile.this.liveBytes -= recordLength(this, OP_PUT);
+                append(this, OP_REMOVE, key, 0, StackFile.this.rowdef.primaryKeyLength);
+                garbage(recordLength(this, OP_PUT) + recordLength(this, OP_REMOVE));
+                return entry;
+            }
+        }
+
+        @Override
+        public List<Row.Entry> top(final int count) throws IOException {
+            final List<Row.Entry> list = new ArrayList<Row.Entry>(count);
+            final Iterator<Row.Entry> i = rows();
+            while (i.hasNext() && list.size() < count) list.add(i.next());
+            return list;
+        }
+
+        @Override
+        public List<Row.Entry> random(final int count) throws IOException {
+            return top(count);
+        }
+
+        @Override
+        public CloneableIterator<byte[]> keys(final boolean up, final byte[] firstKey) throws IOException {
+            return new RowIterator(up, firstKey).keys;
+        }
+
+        @Override
+        public CloneableIterator<Row.Entry> rows(final boolean up, final byte[] firstKey) throws IOException {
+            return new RowIterator(up, firstKey);
+        }
+
+        @Override
+        public CloneableIterator<Row.Entry> rows() throws IOException {
+            return new RowIterator(true, null);
+        }
+
+        @Override
+        public Iterator<Row.Entry> iterator() {
+            return new RowIterator(true, null);
+        }
+
+        @Override
+        public void deleteOnExit() {
+        }
+
+        @Override
+        public void clear() throws IOException {
+            synchronized (StackFile.this) {
+                if (this.idx.isEmpty()) return;
+                append(this, OP_CLEAR, null, 0, 0);
+                unindexAll();
+                garbage(recordLength(this, OP_CLEAR));
+            }
+        }
+
+        /**
+         * an empty stack is removed from the stack file when it is closed
+         */
+        @Override
+        public void close() {
+            synchronized (StackFile.this) {
+                if (this.idx.isEmpty() && StackFile.this.stacks.get(this.name) == this) StackFile.this.stacks.remove(this.name);
+            }
+        }
+
+        /**
+         * iterates over a copy of the keys, the rows are read when they are requested.
+         * Rows which are removed during the iteration are skipped.
+         */
+        private final class RowIterator implements CloneableIterator<Row.Entry> {
+
+            private final boolean up;
+            private final Iterator<byte[]> ki;
+            private final CloneableIterator<byte[]> keys;
+            private Row.Entry next;
+            private byte[] last;
+
+            private RowIterator(final boolean up, final byte[] firstKey) {
+                this.up = up;
+                final List<byte[]> k = new ArrayList<byte[]>();
+                synchronized (StackFile.this) {
+                    final Iterator<byte[]> i = Stack.this.idx.keys(up, firstKey);
+                    while (i.hasNext()) k.add(i.next());
+                }
+                this.ki = k.iterator();
+                this.keys = new CloneableIterator<byte[]>() {
+                    private final Iterator<byte[]> i = new ArrayList<byte[]>(k).iterator();
+                    @Override
+                    public boolean hasNext() {
+                        return this.i.hasNext();
+                    }
+                    @Override
+                    public byte[] next() {
+                        return this.i.next();
+                    }
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                    @Override
+                    public CloneableIterator<byte[]> clone(final Object modifier) {
+                        return new RowIterator(RowIterator.this.up, (byte[]) modifier).keys;
+                    }
+                    @Override
+                    public void close() {
+                    }
+                };
+                this.next = advance();
+            }
+
+            private Row.Entry advance() {
+                while (this.ki.hasNext()) {
+                    try {
+                        final Row.Entry e = get(this.ki.next(), false);
+                        if (e != null) return e;
+                    } catch (final IOException e) {
+                        log.warn("cannot read " + filename() + ": " + e.getMessage());
+                        return null;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.next != null;
+            }
+
+            @Override
+            public Row.Entry next() {
+                final Row.Entry e = this.next;
+                this.last = e == null ? null : e.getPrimaryKeyBytes();
+                this.next = advance();
+                return e;
+            }
+
+            @Override
+            public void remove() {
+                if (this.last == null) throw new IllegalStateException();
+                try {
+                    Stack.this.remove(this.last);
+                } catch (final IOException e) {
+                    log.warn("cannot remove from " + filename() + ": " + e.getMessage());
+                }
+                this.last = null;
+            }
+
+            @Override
+            public CloneableIterator<Row.Entry> clone(final Object modifier) {
+                return new RowIterator(this.up, (byte[]) modifier);
+            }
+
+            @Override
+            public void close() {
+            }
+        }
+    }
+}
@@ -53,6 +53,7 @@ import net.yacy.kelondro.index.RowHandleMap;
 import net.yacy.kelondro.index.RowSet;
 import net.yacy.kelondro.io.BufferedRecords;
 import net.yacy.kelondro.io.Records;
+import net.yacy.kelondro.io.RecordsLog;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.kelondro.util.kelondroException;
@@ -75,6 +76,13 @@ public class Table implements Index, Iterable<Row.Entry> {
     private final static TreeMap<String, Table> tableTracker = new TreeMap<String, Table>();
     private final static long maxarraylength = 134217727L; // (2^27-1) that may be the maximum size of array length in some JVMs
 
+    /**
+     * if true, changes of the table file are written to a write-ahead log with group commits and
+     * the table file is only written at checkpoints; a log which is found at opening is always replayed.
+     * Each table then needs another open file and a commit timer, therefore this is switched off by default.
+     */
+    public static boolean writeAheadLog = false;
+
     private final long minmemremaining; // if less than this memory is remaininig, the memory copy of a table is abandoned
     private final int buffersize;
     private final Row rowdef;
@@ -103,6 +111,16 @@ public class Table implements Index, Iterable<Row.Entry> {
         }
         this.taildef = new Row(cols, NaturalOrder.naturalOrder);
 
+        // replay the write-ahead log of a session which was not closed properly
+        final File logfile = RecordsLog.logFile(tablefile);
+        if (logfile.exists()) try {
+            final int ops = RecordsLog.replay(logfile, tablefile, rowdef.objectsize);
+            log.info("replayed " + ops + " operations from write-ahead log " + logfile.getName());
+        } catch (final IOException e) {
+            log.severe("cannot replay write-ahead log " + logfile, e);
+            throw new kelondroException(e.getMessage());
+        }
+
         // initialize table file
         boolean freshFile = false;
         if (!tablefile.exists()) {
@@ -203,7 +221,9 @@ public class Table implements Index, Iterable<Row.Entry> {
             optimize();
 
             // open the file
-            this.file = new BufferedRecords(new Records(tablefile, rowdef.objectsize), this.buffersize);
+            this.file = writeAheadLog ?
+                    new BufferedRecords(new Records(tablefile, rowdef.objectsize), this.buffersize, logfile) :
+                    new BufferedRecords(new Records(tablefile, rowdef.objectsize), this.buffersize);
             assert this.file.size() == this.index.size() : "file.size() = " + this.file.size() + ", index.size() = " + this.index.size() + ", file = " + filename();
 
             // clean up the file by cleaning badly formed entries
@@ -28,6 +28,7 @@ package net.yacy.repository;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
@@ -53,12 +54,14 @@ import net.yacy.cora.protocol.ResponseHeader;
 import net.yacy.cora.util.ConcurrentLog;
 import net.yacy.crawler.data.Cache;
 import net.yacy.crawler.data.CrawlProfile;
+import net.yacy.crawler.data.Latency;
 import net.yacy.crawler.retrieval.FTPLoader;
 import net.yacy.crawler.retrieval.FileLoader;
 import net.yacy.crawler.retrieval.HTTPLoader;
 import net.yacy.crawler.retrieval.Request;
 import net.yacy.crawler.retrieval.Response;
 import net.yacy.crawler.retrieval.SMBLoader;
+import net.yacy.crawler.retrieval.StreamResponse;
 import net.yacy.document.Document;
 import net.yacy.document.Parser;
 import net.yacy.document.TextParser;
@@ -226,7 +229,7 @@ public final class LoaderDispatcher {
 
         // check access time: this is a double-check (we checked possibly already in the balancer)
         // to make sure that we don't DoS the target by mistake
-        checkAccessTime(agent, url);
+        checkAccessTime(agent, url, crawlProfile);
 
         // now it's for sure that we will access the target. Remember the access time
         if (host != null) {
@@ -353,19 +356,73 @@ public final class LoaderDispatcher {
 													// system
 		}
         final String protocol = url.getProtocol();
-        final String host = url.getHost();
         final CrawlProfile crawlProfile = request.profileHandle() == null ? null : this.sb.crawler.get(UTF8.getBytes(request.profileHandle()));
-        
+
+        // check blacklist and cache
+        final Response cachedResponse = prepareOpen(request, cacheStrategy, blacklistType, agent, crawlProfile);
+        if(cachedResponse != null) {
+        	return new ByteArrayInputStream(cachedResponse.getContent());
+        }
+
+        // load resource from the internet
+        InputStream inStream = null;
+        if (protocol.equals("http") || protocol.equals("https")) {
+        	inStream = this.httpLoader.openInputStream(request, crawlProfile, 1, maxFileSize, blacklistType, agent);
+        } else if (protocol.equals("ftp") || protocol.equals("smb") || protocol.equals("file")) {
+        	// may also open directly stream with ftp loader
+        	inStream = url.getInputStream(agent, null, null);
+        } else {
+            throw new IOException("Unsupported protocol '" + protocol + "' in url " + url);
+        }
+        if (inStream == null) {
+            throw new IOException("Unable to open content stream");
+        }
+
+        return inStream;
+    }
+
+    /**
+     * Open a http or https resource from the web for parsing while it is loaded
+     * @param request the request essentials
+     * @param cacheStratgy strategy according to NOCACHE, IFFRESH, IFEXIST, CACHEONLY
+     * @return a response with an open content stream. Don't forget to close it!
+     * @throws IOException when url is malformed, blacklisted, or CacheStrategy is CACHEONLY and content is unavailable
+     */
+    private StreamResponse openStreamResponseInternal(final Request request, final CacheStrategy cacheStrategy, final int maxFileSize, final BlacklistType blacklistType, ClientIdentification.Agent agent) throws IOException {
+        final DigestURL url = request.url();
+        final CrawlProfile crawlProfile = request.profileHandle() == null ? null : this.sb.crawler.get(UTF8.getBytes(request.profileHandle()));
+
+        // check blacklist and cache
+        final Response cachedResponse = prepareOpen(request, cacheStrategy, blacklistType, agent, crawlProfile);
+        if (cachedResponse != null) {
+            return new StreamResponse(cachedResponse, new ByteArrayInputStream(cachedResponse.getContent()));
+        }
+
+        // load resource from the internet
+        if (!url.isHTTP() && !url.isHTTPS()) throw new IOException("Unsupported protocol '" + url.getProtocol() + "' for streaming in url " + url);
+        return this.httpLoader.openStreamResponse(request, crawlProfile, maxFileSize, blacklistType, agent);
+    }
+
+    /**
+     * Do the checks before a resource is opened: the url must not be blacklisted, and the access time of the
+     * host is checked if the resource is not in the cache. Then the access time is recorded.
+     * @return the cached response or null if the resource must be loaded from the internet
+     * @throws IOException when the url is blacklisted, or CacheStrategy is CACHEONLY and the content is not in the cache
+     */
+    private Response prepareOpen(final Request request, final CacheStrategy cacheStrategy, final BlacklistType blacklistType, final ClientIdentification.Agent agent, final CrawlProfile crawlProfile) throws IOException {
+        final DigestURL url = request.url();
+        final String host = url.getHost();
+
         // check if url is in blacklist
         if (blacklistType != null && host != null && Switchboard.urlBlacklist.isListed(blacklistType, host.toLowerCase(), url.getFile())) {
             this.sb.crawlQueues.errorURL.push(request.url(), request.depth(), crawlProfile, FailCategory.FINAL_LOAD_CONTEXT, "url in blacklist", -1);
             throw new IOException("DISPATCHER Rejecting URL '" + request.url().toString() + "'. URL is in blacklist.$");
         }
-        
+
         // check if we have the page in the cache
-        Response cachedResponse = loadFromCache(request, cacheStrategy, agent, url, crawlProfile);
-        if(cachedResponse != null) {
-        	return new ByteArrayInputStream(cachedResponse.getContent());
+        final Response cachedResponse = loadFromCache(request, cacheStrategy, agent, url, crawlProfile);
+        if (cachedResponse != null && cachedResponse.getContent() != null) {
+            return cachedResponse;
         }
 
         // check case where we want results from the cache exclusively, and never from the Internet (offline mode)
@@ -378,29 +435,14 @@ public final class LoaderDispatcher {
 
         // check access time: this is a double-check (we checked possibly already in the balancer)
         // to make sure that we don't DoS the target by mistake
-		checkAccessTime(agent, url);
+        checkAccessTime(agent, url, crawlProfile);
 
         // now it's for sure that we will access the target. Remember the access time
         if (host != null) {
             if (accessTime.size() > accessTimeMaxsize) accessTime.clear(); // prevent a memory leak here
             accessTime.put(host, System.currentTimeMillis());
         }
-
-        // load resource from the internet
-        InputStream inStream = null;
-        if (protocol.equals("http") || protocol.equals("https")) {
-        	inStream = this.httpLoader.openInputStream(request, crawlProfile, 1, maxFileSize, blacklistType, agent);
-        } else if (protocol.equals("ftp") || protocol.equals("smb") || protocol.equals("file")) {
-        	// may also open directly stream with ftp loader
-        	inStream = url.getInputStream(agent, null, null);
-        } else {
-            throw new IOException("Unsupported protocol '" + protocol + "' in url " + url);
-        }
-        if (inStream == null) {
-            throw new IOException("Unable to open content stream");
-        }
-
-        return inStream;
+        return null;
     }
     
 
@@ -409,14 +451,15 @@ public final class LoaderDispatcher {
      * to make sure that we don't DoS the target by mistake
      * @param agent agent identifier
      * @param url target url
+     * @param crawlProfile crawl profile of the load; may be null
      */
-	private void checkAccessTime(ClientIdentification.Agent agent, final DigestURL url) {
+	private void checkAccessTime(ClientIdentification.Agent agent, final DigestURL url, final CrawlProfile crawlProfile) {
 		if (!url.isLocal()) {
 			String host = url.getHost();
 			final Long lastAccess = accessTime.get(host);
 			long wait = 0;
 			if (lastAccess != null)
-				wait = Math.max(0, agent.minimumDelta + lastAccess.longValue() - System.currentTimeMillis());
+				wait = Math.max(0, Latency.adaptedDelay(url, crawlProfile, agent.minimumDelta) + lastAccess.longValue() - System.currentTimeMillis());
 			if (wait > 0) {
 				// force a sleep here. Instead just sleep we clean up the
 				// accessTime map
@@ -508,6 +551,75 @@ public final class LoaderDispatcher {
 		return stream;
 	}
 
+    /**
+     * Open a resource from the web or the cache for parsing while it is loaded.
+     * Only http and https resources are opened as stream; other protocols are loaded completely
+     * and the stream of the returned response reads the loaded content.
+     * Other loaders of the same url wait until the stream is closed, so they may find the content in the cache.
+     * @param request must be not null
+     * @param cacheStrategy cache strategy to use
+     * @param blacklistType black list
+     * @param agent agent identification for HTTP requests
+     * @return a response with an open content stream. Don't forget to close it once used.
+     * @throws IOException when url is malformed or blacklisted
+     */
+    public StreamResponse openStreamResponse(final Request request, final CacheStrategy cacheStrategy,
+            final BlacklistType blacklistType, final ClientIdentification.Agent agent) throws IOException {
+        final DigestURL url = request.url();
+        final int maxFileSize = protocolMaxFileSize(url);
+        if (!url.isHTTP() && !url.isHTTPS()) {
+            final Response response = load(request, cacheStrategy, maxFileSize, blacklistType, agent);
+            if (response == null) throw new IOException("no response (NULL) for url " + url);
+            return new StreamResponse(response, new ByteArrayInputStream(response.getContent()));
+        }
+
+        Semaphore check = this.loaderSteering.get(url);
+        if (check != null && cacheStrategy != CacheStrategy.NOCACHE) {
+            // a loading process is going on for that url
+            long t = System.currentTimeMillis();
+            try { check.tryAcquire(5, TimeUnit.SECONDS);} catch (final InterruptedException e) {}
+            ConcurrentLog.info("LoaderDispatcher", "waited " + (System.currentTimeMillis() - t) + " ms for " + url.toNormalform(true));
+        }
+
+        final Semaphore steering = new Semaphore(0);
+        this.loaderSteering.put(url, steering);
+        final StreamResponse streamResponse;
+        try {
+            streamResponse = openStreamResponseInternal(request, cacheStrategy, maxFileSize, blacklistType, agent);
+        } catch (final IOException e) {
+            releaseSteering(url, steering);
+            throw e;
+        } catch (final Throwable e) {
+            releaseSteering(url, steering);
+            throw new IOException(e);
+        }
+        if (streamResponse.isLoaded()) {
+            releaseSteering(url, steering);
+            return streamResponse;
+        }
+
+        // the content is loaded while the stream is read: release the semaphore when the stream is closed
+        return new StreamResponse(streamResponse.getResponse(), new FilterInputStream(streamResponse.getContentStream()) {
+            private boolean released = false;
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (!this.released) {
+                        this.released = true;
+                        releaseSteering(url, steering);
+                    }
+                }
+            }
+        });
+    }
+
+    private void releaseSteering(final DigestURL url, final Semaphore steering) {
+        this.loaderSteering.remove(url, steering);
+        steering.release(1000); // don't block any other
+    }
+
     public Document[] loadDocuments(final Request request, final CacheStrategy cacheStrategy, final int maxFileSize, BlacklistType blacklistType, final ClientIdentification.Agent agent) throws IOException, Parser.Failure {
 
         // load resource
@@ -103,6 +103,7 @@ import net.yacy.cora.federate.solr.Ranking;
 import net.yacy.cora.federate.solr.SchemaConfiguration;
 import net.yacy.cora.federate.solr.connector.ShardSelection;
 import net.yacy.cora.federate.solr.connector.SolrConnector.LoadTimeURL;
+import net.yacy.cora.federate.solr.instance.InstanceMirror;
 import net.yacy.cora.federate.solr.instance.RemoteInstance;
 import net.yacy.cora.federate.yacy.CacheStrategy;
 import net.yacy.cora.lod.vocabulary.Tagging;
@@ -125,6 +126,7 @@ import net.yacy.cora.util.Memory;
 import net.yacy.crawler.CrawlStacker;
 import net.yacy.crawler.CrawlSwitchboard;
 import net.yacy.crawler.HarvestProcess;
+import net.yacy.crawler.HostBalancer;
 import net.yacy.crawler.data.Cache;
 import net.yacy.crawler.data.CrawlProfile;
 import net.yacy.crawler.data.CrawlQueues;
@@ -136,6 +138,7 @@ import net.yacy.crawler.data.ResultURLs.EventOrigin;
 import net.yacy.crawler.data.Transactions;
 import net.yacy.crawler.retrieval.Request;
 import net.yacy.crawler.retrieval.Response;
+import net.yacy.crawler.retrieval.StreamResponse;
 import net.yacy.crawler.robots.RobotsTxt;
 import net.yacy.data.BlogBoard;
 import net.yacy.data.BlogBoardComments;
@@ -168,11 +171,16 @@ import net.yacy.gui.Audio;
 import net.yacy.gui.Tray;
 import net.yacy.http.YaCyHttpServer;
 import net.yacy.kelondro.blob.BEncodedHeap;
+import net.yacy.kelondro.blob.HeapReader;
 import net.yacy.kelondro.blob.Tables;
 import net.yacy.kelondro.data.meta.URIMetadataNode;
 import net.yacy.kelondro.data.word.Word;
 import net.yacy.kelondro.logging.GuiHandler;
+import net.yacy.kelondro.rwi.IODispatcher;
 import net.yacy.kelondro.rwi.ReferenceContainer;
+import net.yacy.kelondro.rwi.ReferenceContainerArray;
+import net.yacy.kelondro.rwi.TermSearch;
+import net.yacy.kelondro.table.Table;
 import net.yacy.kelondro.util.FileUtils;
 import net.yacy.kelondro.util.MemoryControl;
 import net.yacy.kelondro.util.OS;
@@ -202,9 +210,12 @@ import net.yacy.search.index.Fulltext;
 import net.yacy.search.index.Segment;
 import net.yacy.search.index.Segment.ReferenceReportCache;
 import net.yacy.search.query.AccessTracker;
+import net.yacy.search.query.QueryResultCache;
 import net.yacy.search.query.SearchEvent;
 import net.yacy.search.query.SearchEventCache;
+import net.yacy.search.query.SnippetExecutor;
 import net.yacy.search.ranking.RankingProfile;
+import net.yacy.search.ranking.ReferenceOrder;
 import net.yacy.search.schema.CollectionConfiguration;
 import net.yacy.search.schema.CollectionSchema;
 import net.yacy.search.schema.WebgraphConfiguration;
@@ -342,6 +353,14 @@ public final class Switchboard extends serverSwitch {
         if ( MemoryControl.available() > tableCachingLimit ) {
             this.useTailCache = true;
         }
+        HeapReader.mappedRead = getConfigBool("heapMappedRead", false);
+        HeapReader.mappedIndex = getConfigBool("heapMappedIndex", false);
+        Table.writeAheadLog = getConfigBool("table.writeAheadLog", false);
+        InstanceMirror.idFilterEnabled = getConfigBool("core.service.fulltext.idFilter", true);
+        CrawlStacker.batchStacking = getConfigBool("stacker.batch", true);
+        HostBalancer.sharedStackFile = getConfigBool("crawler.queue.sharedStackFile", false);
+        IODispatcher.mergeWorkers = (int) getConfigLong("index.merge.workers", 1);
+        ReferenceContainerArray.maxMergeFiles = (int) getConfigLong("index.merge.maxFiles", 8);
         this.exceed134217727 = getConfigBool("exceed134217727", true);
         if ( MemoryControl.available() > 1024L * 1024L * 1024L * 2L ) {
             this.exceed134217727 = true;
@@ -547,6 +566,10 @@ public final class Switchboard extends serverSwitch {
 
         // initialize index
         ReferenceContainer.maxReferences = getConfigInt("index.maxReferences", 0);
+        ReferenceContainer.blockCompressed = getConfigBool("index.rwi.blockCompressed", false);
+        TermSearch.streamingJoin = getConfigBool("search.rwi.streamingJoin", true);
+        TermSearch.maxJoinResults = getConfigInt("search.rwi.maxJoinResults", 0);
+        ReferenceOrder.topk = getConfigBool("search.rwi.topk", true);
         final File segmentsPath = new File(new File(indexPath, networkName), "SEGMENTS");
         try {this.index = new Segment(this.log, segmentsPath, archivePath, solrCollectionConfigurationWork, solrWebgraphConfigurationWork);} catch (IOException e) {ConcurrentLog.logException(e);}
         if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_RWI, true)) try {
@@ -555,6 +578,9 @@ public final class Switchboard extends serverSwitch {
         if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_CITATION, true)) try {
             this.index.connectCitation(wordCacheMaxCount, fileSizeMax);
         } catch (final IOException e) {ConcurrentLog.logException(e);}
+        if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_SENTENCES, false)) try {
+            this.index.connectSentences(this.getConfigLong(SwitchboardConstants.CORE_SERVICE_SENTENCES_MAXSIZE, 1024) * 1024L * 1024L);
+        } catch (final IOException e) {ConcurrentLog.logException(e);}
         if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_FULLTEXT, true)) {
             try {this.index.fulltext().connectLocalSolr();} catch (final IOException e) {ConcurrentLog.logException(e);}
         }
@@ -927,6 +953,11 @@ public final class Switchboard extends serverSwitch {
                             + " property: " + pse.getMessage());
             System.exit(-1);
         }
+        Domains.setCacheTTL(getConfigLong(SwitchboardConstants.HTTPC_NAME_CACHE_TTL, 3600000L), getConfigLong(SwitchboardConstants.HTTPC_NAME_CACHE_NEGATIVE_TTL, 600000L));
+        Domains.setResolverThreads(getConfigInt(SwitchboardConstants.HTTPC_DNS_RESOLVER_THREADS, 64));
+        SnippetExecutor.setThreads(getConfigInt(SwitchboardConstants.SEARCH_SNIPPET_THREADS, 32));
+        SnippetExecutor.setTasksPerLane(getConfigInt(SwitchboardConstants.SEARCH_SNIPPET_TASKS_PER_QUERY, 10));
+        QueryResultCache.setMaxSize(getConfigInt(SwitchboardConstants.SEARCH_RESULTCACHE_SIZE, 100));
 
         // generate snippets cache
         this.log.config("Initializing Snippet Cache");
@@ -1380,6 +1411,7 @@ public final class Switchboard extends serverSwitch {
             this.index = new Segment(this.log, segmentsPath, archivePath, collectionConfiguration, webgraphConfiguration);
             if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_RWI, true)) this.index.connectRWI(wordCacheMaxCount, fileSizeMax);
             if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_CITATION, true)) this.index.connectCitation(wordCacheMaxCount, fileSizeMax);
+            if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_SENTENCES, false)) this.index.connectSentences(this.getConfigLong(SwitchboardConstants.CORE_SERVICE_SENTENCES_MAXSIZE, 1024) * 1024L * 1024L);
             if (this.getConfigBool(SwitchboardConstants.CORE_SERVICE_FULLTEXT, true)) {
                 this.index.fulltext().connectLocalSolr();
             }
@@ -1899,6 +1931,79 @@ public final class Switchboard extends serverSwitch {
      * @return null if successful, an error message otherwise
      */
     public String toIndexer(final Response response) {
+        final String rejectReason = indexingRejectReason(response);
+        if (rejectReason != null) return rejectReason;
+
+        this.indexingDocumentProcessor.enQueue(new IndexingQueueEntry(
+            response,
+            null,
+            null));
+        return null;
+    }
+
+    /**
+     * pass a response with an open content stream to the indexer.
+     * Documents of a type supported by a streaming parser are parsed in the calling thread while they are loaded
+     * and the parsed documents are passed directly to the condenser. Other content is read completely and
+     * passed to the indexer as with {@link #toIndexer(Response)}. The content stream is closed in any case.
+     *
+     * @param streamResponse
+     * @return null if successful, an error message otherwise
+     * @throws IOException when the content could not be loaded
+     */
+    public String toIndexer(final StreamResponse streamResponse) throws IOException {
+        final Response response = streamResponse.getResponse();
+        try {
+            final String rejectReason = indexingRejectReason(response);
+            if (rejectReason != null) return rejectReason;
+
+            final long size = response.size();
+            if (streamResponse.isLoaded() || (size >= 0 && size < this.getConfigLong(SwitchboardConstants.CRAWLER_HTTP_STREAMING_MINSIZE, 1048576L)) ||
+                !TextParser.supportsStreaming(response.url(), response.getMimeType())) {
+                // load the content completely and parse it in the indexing queue
+                streamResponse.readResponse();
+                this.indexingDocumentProcessor.enQueue(new IndexingQueueEntry(response, null, null));
+                return null;
+            }
+
+            // parse the content while it is loaded
+            response.updateStatus(Response.QUEUE_STATE_PARSING);
+            final long parsingStartTime = System.currentTimeMillis();
+            Document[] documents;
+            try {
+                documents =
+                    TextParser.parseStream(
+                        new AnchorURL(response.url()),
+                        response.getMimeType(),
+                        response.getCharacterEncoding(),
+                        response.profile().scraper(),
+                        response.profile().timezoneOffset(),
+                        response.depth(),
+                        streamResponse.getContentStream());
+            } catch (final Parser.Failure e ) {
+                this.log.warn("Unable to parse the resource '" + response.url().toNormalform(true) + "'. " + e.getMessage());
+                // create a new errorURL DB entry
+                this.crawlQueues.errorURL.push(response.url(), response.depth(), response.profile(), FailCategory.FINAL_PROCESS_CONTEXT, e.getMessage(), -1);
+                return "parser failure: " + e.getMessage() + "$";
+            }
+            final long parsingEndTime = System.currentTimeMillis();
+            documents = stackParsedDocuments(response, documents, parsingStartTime, parsingEndTime);
+            this.indexingCondensementProcessor.enQueue(new IndexingQueueEntry(response, documents, null));
+            return null;
+        } catch (final InterruptedException e) {
+            return "interrupted";
+        } finally {
+            streamResponse.close();
+        }
+    }
+
+    /**
+     * check if a response may be indexed; if not, an error url entry is written
+     *
+     * @param response
+     * @return null if indexing is allowed, an error message otherwise
+     */
+    private String indexingRejectReason(final Response response) {
         assert response != null;
 
         // get next queue entry and start a queue processing
@@ -1951,11 +2056,6 @@ public final class Switchboard extends serverSwitch {
             // finish this entry
             return "not allowed: " + noIndexReason;
         }
-
-        this.indexingDocumentProcessor.enQueue(new IndexingQueueEntry(
-            response,
-            null,
-            null));
         return null;
     }
 
@@ -2750,8 +2850,18 @@ public final class Switchboard extends serverSwitch {
             return null;
         }
         final long parsingEndTime = System.currentTimeMillis();
-        
-        
+        return stackParsedDocuments(response, documents, parsingStartTime, parsingEndTime);
+    }
+
+    /**
+     * remove parsed documents which are not accepted by the crawl profile and put the anchors
+     * of the remaining documents on the crawl stack
+     *
+     * @return the accepted documents
+     */
+    private Document[] stackParsedDocuments(final Response response, Document[] documents, final long parsingStartTime, final long parsingEndTime) throws InterruptedException {
+        final EventOrigin processCase = response.processCase(this.peers.mySeed().hash);
+
         // put anchors on crawl stack
         final long stackStartTime = System.currentTimeMillis();
         // check if the documents have valid urls; this is not a bug patch; it is possible that
@@ -2807,6 +2917,7 @@ public final class Switchboard extends serverSwitch {
 
             // insert those hyperlinks to the crawler
             MultiProtocolURL nextUrl;
+            final List<Request> links = new ArrayList<Request>(hl.size());
             for ( final Map.Entry<AnchorURL, String> nextEntry : hl.entrySet() ) {
                 // check for interruption
                 checkInterruption();
@@ -2833,7 +2944,7 @@ public final class Switchboard extends serverSwitch {
                 // enqueue the hyperlink into the pre-notice-url db
                 int nextdepth = nextEntry.getValue() != null && nextEntry.getValue().equals(Document.CANONICAL_MARKER) ? response.depth() : response.depth() + 1; // canonical documents are on the same depth
                 try {
-                    this.crawlStacker.enqueueEntry(new Request(
+                    links.add(new Request(
                         response.initiator(),
                         new DigestURL(u),
                         response.url().hash(),
@@ -2846,6 +2957,7 @@ public final class Switchboard extends serverSwitch {
                     ConcurrentLog.logException(e);
                 }
             }
+            this.crawlStacker.enqueueBatch(links);
             final long stackEndTime = System.currentTimeMillis();
             if ( this.log.isInfo() ) {
                 this.log.info("CRAWL: ADDED "
@@ -365,6 +365,8 @@ public final class SwitchboardConstants {
     public static final String CORE_SERVICE_RWI                 = "core.service.rwi.tmp";
     public static final String CORE_SERVICE_CITATION            = "core.service.citation.tmp";
     public static final String CORE_SERVICE_WEBGRAPH            = "core.service.webgraph.tmp";
+    public static final String CORE_SERVICE_SENTENCES           = "core.service.sentences";
+    public static final String CORE_SERVICE_SENTENCES_MAXSIZE   = "core.service.sentences.maxSize"; // in MB
 
     /**
      * <p><code>public static final String <strong>CRAWLER_THREADS_ACTIVE_MAX</strong> = "crawler.MaxActiveThreads"</code></p>
@@ -373,8 +375,17 @@ public final class SwitchboardConstants {
     public static final String CRAWLER_THREADS_ACTIVE_MAX       = "crawler.MaxActiveThreads";
     public static final String CRAWLER_LATENCY_FACTOR           = "crawler.latencyFactor";
     public static final String CRAWLER_MAX_SAME_HOST_IN_QUEUE   = "crawler.MaxSameHostInQueue";
+    public static final String CRAWLER_ADAPTIVE_RATE            = "crawler.adaptiveRate"; // default for the adaptive crawl rate of new crawl profiles
+    public static final String CRAWLER_ADAPTIVE_RATE_MAX        = "crawler.adaptiveRate.max"; // the highest crawl rate relative to the standard rate
+    public static final String CRAWLER_ADAPTIVE_RATE_MIN        = "crawler.adaptiveRate.min"; // the lowest crawl rate relative to the standard rate
     public static final String CRAWLER_FOLLOW_REDIRECTS         = "crawler.http.FollowRedirects"; // ignore the target url and follow to the redirect
     public static final String CRAWLER_RECORD_REDIRECTS         = "crawler.http.RecordRedirects"; // record the ignored redirected page to the index store
+    public static final String CRAWLER_HTTP_STREAMING           = "crawler.http.streaming"; // parse html and rss documents while they are loaded
+    public static final String CRAWLER_HTTP_STREAMING_MINSIZE   = "crawler.http.streaming.minSize"; // documents with a known smaller size are loaded completely before parsing
+    public static final String CRAWLER_LOADER_ASYNC             = "crawler.loader.async"; // load http urls with the non-blocking AsyncLoader instead of loader threads
+    public static final String CRAWLER_LOADER_ASYNC_MAXACTIVE   = "crawler.loader.async.maxActive";
+    public static final String CRAWLER_LOADER_ASYNC_MAXPERHOST  = "crawler.loader.async.maxConnectionsPerHost";
+    public static final String CRAWLER_LOADER_ASYNC_PROCESSORS  = "crawler.loader.async.processors";
     
     public static final String CRAWLER_USER_AGENT_NAME          = "crawler.userAgent.name";
     public static final String CRAWLER_USER_AGENT_STRING        = "crawler.userAgent.string";
@@ -398,6 +409,9 @@ public final class SwitchboardConstants {
      */
     public static final String WORDCACHE_MAX_COUNT              = "wordCacheMaxCount";
     public static final String HTTPC_NAME_CACHE_CACHING_PATTERNS_NO = "httpc.nameCacheNoCachingPatterns";
+    public static final String HTTPC_NAME_CACHE_TTL             = "httpc.nameCacheTTL";
+    public static final String HTTPC_NAME_CACHE_NEGATIVE_TTL    = "httpc.nameCacheNegativeTTL";
+    public static final String HTTPC_DNS_RESOLVER_THREADS       = "httpc.dnsResolverThreads";
     public static final String ROBOTS_TXT                       = "httpd.robots.txt";
     public static final String ROBOTS_TXT_DEFAULT               = RobotsTxtConfig.LOCKED + "," + RobotsTxtConfig.DIRS;
 
@@ -551,6 +565,9 @@ public final class SwitchboardConstants {
     public static final String SEARCH_TARGET_SPECIAL_PATTERN  = "search.target.special.pattern"; // ie 'own' addresses in topframe, 'other' in iframe
     public static final String SEARCH_VERIFY  = "search.verify";
     public static final String SEARCH_VERIFY_DELETE = "search.verify.delete";
+    public static final String SEARCH_SNIPPET_THREADS = "search.snippet.threads"; // maximum number of threads for the snippet computation of all searches
+    public static final String SEARCH_SNIPPET_TASKS_PER_QUERY = "search.snippet.tasksPerQuery"; // maximum number of concurrent snippet computations of one search
+    public static final String SEARCH_RESULTCACHE_SIZE = "search.resultcache.size"; // maximum number of cached local search results
 
     /**
      * ranking+evaluation
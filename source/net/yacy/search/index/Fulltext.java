@@ -40,6 +40,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
@@ -97,6 +98,7 @@ public final class Fulltext {
     private final CollectionConfiguration collectionConfiguration;
     private final WebgraphConfiguration   webgraphConfiguration;
     private       boolean                 writeWebgraph;
+    private final AtomicLong              writeGeneration; // incremented with every change of the index, used to invalidate cached search results
 
     protected Fulltext(final File segmentPath, final File archivePath,
             final CollectionConfiguration collectionConfiguration, final WebgraphConfiguration webgraphConfiguration) {
@@ -107,8 +109,25 @@ public final class Fulltext {
         this.collectionConfiguration = collectionConfiguration;
         this.webgraphConfiguration = webgraphConfiguration;
         this.writeWebgraph = false;
+        this.writeGeneration = new AtomicLong(0);
     }
     
+    /**
+     * the write generation is incremented each time documents are added, removed or made visible with a commit.
+     * Search results which had been computed for one generation are valid as long as the generation does not change.
+     * @return the current write generation of this index
+     */
+    public long writeGeneration() {
+        return this.writeGeneration.get();
+    }
+
+    /**
+     * signal that the content of the index has changed
+     */
+    void incWriteGeneration() {
+        this.writeGeneration.incrementAndGet();
+    }
+
     public void setUseWebgraph(boolean check) {
         this.writeWebgraph = check;
     }
@@ -144,10 +163,12 @@ public final class Fulltext {
         assert SOLR_PATH.endsWith(lvn) : "luceneVersion = " + lvn + ", solrPath = " + SOLR_PATH + ", check defaults/solr/solrconfig.xml";
         ConcurrentLog.info("Fulltext", "connected solr in " + solrLocation.toString() + ", lucene version " + lvn);
         this.solrInstances.connectEmbedded(localCollectionInstance);
+        this.incWriteGeneration();
     }
 
     public void disconnectLocalSolr() {
         this.solrInstances.disconnectEmbedded();
+        this.incWriteGeneration();
     }
 
     public boolean connectedRemoteSolr() {
@@ -156,10 +177,12 @@ public final class Fulltext {
 
     public void connectRemoteSolr(final ArrayList<RemoteInstance> instances, final ShardSelection.Method shardMethod, final boolean writeEnabled) {
         this.solrInstances.connectRemote(new ShardInstance(instances, shardMethod, writeEnabled));
+        this.incWriteGeneration();
     }
 
     public void disconnectRemoteSolr() {
         this.solrInstances.disconnectRemote();
+        this.incWriteGeneration();
     }
 
     public EmbeddedSolrConnector getDefaultEmbeddedConnector() {
@@ -230,6 +253,7 @@ public final class Fulltext {
             this.commit(false);
             this.solrInstances.clearCaches();
         }
+        this.incWriteGeneration();
     }
 
     public void clearRemoteSolr() throws IOException {
@@ -242,6 +266,7 @@ public final class Fulltext {
             }
             this.solrInstances.clearCaches();
         }
+        this.incWriteGeneration();
     }
 
     /**
@@ -282,6 +307,7 @@ public final class Fulltext {
         lastCommit = t;
         getDefaultConnector().commit(softCommit);
         if (this.writeWebgraph) getWebgraphConnector().commit(softCommit);
+        this.incWriteGeneration();
     }
     
     public URIMetadataNode getMetadata(final WeakPriorityBlockingQueue.Element<WordReferenceVars> element) {
@@ -325,6 +351,8 @@ public final class Fulltext {
             connector.add(doc);
         } catch (final SolrException e) {
             throw new IOException(e.getMessage(), e);
+        } finally {
+            this.incWriteGeneration();
         }
         if (MemoryControl.shortStatus()) clearCaches();
     }
@@ -411,8 +439,9 @@ public final class Fulltext {
         deleteDomainWithConstraint(this.getDefaultConnector(), CollectionSchema.host_id_s.getSolrFieldName(), hosthashes, CollectionSchema.failreason_s.getSolrFieldName() + AbstractSolrConnector.CATCHALL_DTERM);
     }
     
-    private static void deleteDomainWithConstraint(SolrConnector connector, String fieldname, final Set<String> hosthashes, String constraintQuery) {
+    private void deleteDomainWithConstraint(SolrConnector connector, String fieldname, final Set<String> hosthashes, String constraintQuery) {
         if (hosthashes == null || hosthashes.size() == 0) return;
+        this.incWriteGeneration();
         int subsetscount = 1 + (hosthashes.size() / 255); // if the list is too large, we get a "too many boolean clauses" exception
         int c = 0;
         @SuppressWarnings("unchecked")
@@ -437,6 +466,7 @@ public final class Fulltext {
         Date deleteageDate = new Date(System.currentTimeMillis() - deltaToNow);
         final String collection1Query = (loaddate ? CollectionSchema.load_date_dt : CollectionSchema.last_modified).getSolrFieldName() + ":[* TO " + ISO8601Formatter.FORMATTER.format(deleteageDate) + "]";
         final String webgraphQuery = (loaddate ? WebgraphSchema.load_date_dt : WebgraphSchema.last_modified).getSolrFieldName() + ":[* TO " + ISO8601Formatter.FORMATTER.format(deleteageDate) + "]";
+        this.incWriteGeneration();
         try {
             this.getDefaultConnector().deleteByQuery(collection1Query);
             if (this.getWebgraphConnector() != null) this.getWebgraphConnector().deleteByQuery(webgraphQuery);
@@ -482,6 +512,7 @@ public final class Fulltext {
      */
     public void remove(final Collection<String> deleteIDs) {
         if (deleteIDs == null || deleteIDs.size() == 0) return;
+        this.incWriteGeneration();
         try {
             this.getDefaultConnector().deleteByIds(deleteIDs);
             if (this.writeWebgraph) this.getWebgraphConnector().deleteByIds(deleteIDs);
@@ -492,6 +523,7 @@ public final class Fulltext {
     
     public boolean remove(final byte[] urlHash) {
         if (urlHash == null) return false;
+        this.incWriteGeneration();
         try {
             String id = ASCII.String(urlHash);
             this.getDefaultConnector().deleteById(id);
@@ -110,6 +110,7 @@ public class Segment {
     public static final String termIndexName = "text.index";
     public static final String citationIndexName = "citation.index";
     public static final String firstseenIndexName = "firstseen.index";
+    public static final String sentenceStoreName = "sentences.array";
 
     // the reference factory
     public static final ReferenceFactory<WordReference> wordReferenceFactory = new WordReferenceFactory();
@@ -122,6 +123,7 @@ public class Segment {
     protected       IndexCell<WordReference>       termIndex;
     protected       IndexCell<CitationReference>   urlCitationIndex;
     protected       IndexTable                     firstSeenIndex;
+    protected       SentenceStore                  sentenceStore;
     protected       IODispatcher                   merger = null; // shared iodispatcher for kelondro indexes
 
     /**
@@ -142,6 +144,7 @@ public class Segment {
         this.fulltext = new Fulltext(segmentPath, archivePath, collectionConfiguration, webgraphConfiguration);
         this.termIndex = null;
         this.urlCitationIndex = null;
+        this.sentenceStore = null;
         this.firstSeenIndex = new IndexTable(new File(segmentPath, firstseenIndexName), 12, 8, false, false);
     }
     
@@ -205,6 +208,36 @@ public class Segment {
         this.urlCitationIndex = null;
     }
 
+    public boolean connectedSentences() {
+        return this.sentenceStore != null;
+    }
+
+    /**
+     * connect the store for the sentences of indexed documents which is used for the snippet computation
+     * @param maxSize the maximum size of the store in bytes
+     * @throws IOException
+     */
+    public void connectSentences(final long maxSize) throws IOException {
+        if (this.sentenceStore != null) {
+            this.sentenceStore.setMaxSize(maxSize);
+            return;
+        }
+        this.sentenceStore = new SentenceStore(new File(new File(this.segmentPath, "default"), sentenceStoreName), "sentences", maxSize);
+    }
+
+    public void disconnectSentences() {
+        if (this.sentenceStore == null) return;
+        this.sentenceStore.close();
+        this.sentenceStore = null;
+    }
+
+    /**
+     * @return the store for the sentences of indexed documents or null if the store is not connected
+     */
+    public SentenceStore sentences() {
+        return this.sentenceStore;
+    }
+
     public int citationCount() {
         return this.urlCitationIndex == null ? 0 : this.urlCitationIndex.sizesMax();
     }
@@ -463,6 +496,7 @@ public class Segment {
             if (this.fulltext != null) this.fulltext.clearLocalSolr();
             if (this.fulltext != null) this.fulltext.clearRemoteSolr();
             if (this.urlCitationIndex != null) this.urlCitationIndex.clear();
+            if (this.sentenceStore != null) this.sentenceStore.clear();
         } catch (final IOException e) {
             ConcurrentLog.logException(e);
         }
@@ -483,6 +517,7 @@ public class Segment {
         if (this.fulltext != null) this.fulltext.close();
         if (this.urlCitationIndex != null) this.urlCitationIndex.close();
         if (this.firstSeenIndex != null) this.firstSeenIndex.close();
+        if (this.sentenceStore != null) this.sentenceStore.close();
         if (this.merger != null) {
             this.merger.terminate();
             this.merger = null;
@@ -537,10 +572,12 @@ public class Segment {
 
     public void storeRWI(final ReferenceContainer<WordReference> wordContainer) throws IOException, SpaceExceededException {
         if (this.termIndex != null) this.termIndex.add(wordContainer);
+        this.fulltext.incWriteGeneration();
     }
 
     public void storeRWI(final byte[] termHash, final WordReference entry) throws IOException, SpaceExceededException {
         if (this.termIndex != null) this.termIndex.add(termHash, entry);
+        this.fulltext.incWriteGeneration();
     }
 
     /**
@@ -636,6 +673,9 @@ public class Segment {
         // REMEMBER FIRST SEEN
         setFirstSeenTime(url.hash(), Math.min(document.getLastModified().getTime(), System.currentTimeMillis())); // should exist already in the index at this time, but just to make sure
 
+        // STORE SENTENCES FOR THE SNIPPET COMPUTATION
+        if (this.sentenceStore != null) this.sentenceStore.put(url.hash(), document.getSentences(false));
+
         // write the edges to the citation reference index
         if (this.connectedCitation()) try {
             // we use the subgraph to write the citation index, that shall cause that the webgraph and the citation index is identical
@@ -793,9 +833,11 @@ public class Segment {
             // delete all word references
             int count = 0;
             if (words != null && termIndex() != null) count = termIndex().remove(Word.words2hashesHandles(words), urlhash);
+            this.fulltext.incWriteGeneration();
 
             // finally delete the url entry itself
             fulltext().remove(urlhash);
+            if (this.sentenceStore != null) this.sentenceStore.delete(urlhash);
             return count;
         } catch (final Parser.Failure e) {
             return 0;
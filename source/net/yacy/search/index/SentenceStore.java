@@ -0,0 +1,188 @@
+// SentenceStore.java
+// -----------------------
+// (C) 2016 by the YaCy contributors
+// first published 2016 on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.search.index;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.yacy.cora.document.encoding.UTF8;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.storage.HandleSet;
+import net.yacy.cora.util.ConcurrentLog;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.document.WordTokenizer;
+import net.yacy.kelondro.blob.ArrayStack;
+import net.yacy.kelondro.blob.Compressor;
+import net.yacy.kelondro.data.word.Word;
+
+/**
+ * A store for the sentences of indexed documents, keyed by the url hash.
+ * Each sentence is stored together with the hashes of its words, so the sentences which can be used for a
+ * snippet are found without tokenizing the whole document again. The snippet computation can use this
+ * store instead of loading and parsing the document from the cache or the web.
+ * The store is a compressed BLOB with a size limit; if the limit is reached, the oldest entries are deleted.
+ */
+public class SentenceStore {
+
+    public static final int maxSentences = 1000; // the maximum number of sentences stored for one document
+    private static final int maxWords = 100; // the number of words of a sentence which are hashed, same as in the SnippetExtractor
+
+    private final ArrayStack backend;
+    private final Compressor store;
+
+    public SentenceStore(final File location, final String prefix, final long maxSize) throws IOException {
+        this.backend = new ArrayStack(location, prefix, Base64Order.enhancedCoder, Word.commonHashLength, 1024 * 1024 * 2, false, true);
+        this.backend.setMaxSize(maxSize);
+        this.store = new Compressor(this.backend, 2 * 1024 * 1024);
+    }
+
+    public void setMaxSize(final long maxSize) {
+        this.backend.setMaxSize(maxSize);
+    }
+
+    public int size() {
+        return this.store.size();
+    }
+
+    public long length() {
+        return this.store.length();
+    }
+
+    /**
+     * store the sentences of a document
+     * @param urlhash
+     * @param sentences the sentences as computed with Document.getSentences(false)
+     */
+    public void put(final byte[] urlhash, final List<StringBuilder> sentences) {
+        if (sentences == null) return;
+        final int count = Math.min(maxSentences, sentences.size());
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + 64 * count);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeBoolean(count == sentences.size()); // true if the document is stored completely
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                final String sentence = sentences.get(i).toString();
+                final List<byte[]> hashes = new ArrayList<byte[]>(WordTokenizer.hashSentence(sentence, maxWords).keySet());
+                out.writeShort(hashes.size());
+                for (final byte[] hash: hashes) out.write(hash);
+                final byte[] b = UTF8.getBytes(sentence);
+                out.writeInt(b.length);
+                out.write(b);
+            }
+            out.close();
+            this.store.insert(urlhash, bytes.toByteArray());
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+    }
+
+    /**
+     * get the sentences of a document which contain at least one of the given words.
+     * The first sentence is always returned, so the position of the sentences can be weighted as in the
+     * complete document.
+     * @param urlhash
+     * @param wordhashes
+     * @return the sentences in the order of the document or null if the document is not in the store
+     */
+    public Sentences get(final byte[] urlhash, final HandleSet wordhashes) {
+        final byte[] b;
+        try {
+            b = this.store.get(urlhash);
+        } catch (final IOException e) {
+            return null;
+        } catch (final SpaceExceededException e) {
+            return null;
+        }
+        if (b == null) return null;
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(b));
+        try {
+            final boolean complete = in.readBoolean();
+            final int count = in.readInt();
+            final List<StringBuilder> sentences = new ArrayList<StringBuilder>();
+            final byte[] hash = new byte[Word.commonHashLength];
+            for (int i = 0; i < count; i++) {
+                boolean match = i == 0;
+                final int hashcount = in.readUnsignedShort();
+                for (int j = 0; j < hashcount; j++) {
+                    in.readFully(hash);
+                    if (!match && wordhashes.has(hash)) match = true;
+                }
+                final int length = in.readInt();
+                if (match) {
+                    final byte[] s = new byte[length];
+                    in.readFully(s);
+                    sentences.add(new StringBuilder(UTF8.String(s)));
+                } else {
+                    in.skipBytes(length);
+                }
+            }
+            return new Sentences(sentences, complete);
+        } catch (final IOException e) {
+            // the entry is damaged
+            delete(urlhash);
+            return null;
+        }
+    }
+
+    public boolean has(final byte[] urlhash) {
+        return this.store.containsKey(urlhash);
+    }
+
+    public void delete(final byte[] urlhash) {
+        try {
+            this.store.delete(urlhash);
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+    }
+
+    public void clear() {
+        try {
+            this.store.clear();
+            this.backend.clear();
+        } catch (final IOException e) {
+            ConcurrentLog.logException(e);
+        }
+    }
+
+    public void close() {
+        this.store.close(true);
+    }
+
+    /**
+     * the sentences of a document which match with a query
+     */
+    public static class Sentences {
+        public final List<StringBuilder> sentences;
+        public final boolean complete; // false if the document had more than maxSentences sentences; then the other sentences are unknown
+
+        private Sentences(final List<StringBuilder> sentences, final boolean complete) {
+            this.sentences = sentences;
+            this.complete = complete;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+// QueryResultCache.java
+// -----------------------
+// (C) 2016 by the YaCy contributors
+// first published 2016 on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.search.query;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import net.yacy.cora.sorting.ScoreMap;
+import net.yacy.cora.sorting.WeakPriorityBlockingQueue.Element;
+import net.yacy.cora.storage.HandleSet;
+import net.yacy.kelondro.data.meta.URIMetadataNode;
+import net.yacy.kelondro.data.word.WordReferenceVars;
+
+/**
+ * A second-level cache for the results of local searches.
+ * When a finished local search event is removed from the SearchEventCache, its ranked results, the remaining
+ * stacked entries and the navigator counts are stored here, keyed by the query id. A new search event for the
+ * same query is then restored from this cache without a search in the index, as long as the write generation
+ * of the index is the same as when the search had been started.
+ */
+public class QueryResultCache {
+
+    private static final long maxAge = 3600000; // the time an entry will stay in the cache at most, 1 hour; a guard for index changes which do not pass the write generation
+    private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true); // access order: the eldest entry is the least recently used
+    private static volatile int maxSize = 100;
+    public static long cacheInsert = 0, cacheHit = 0, cacheMiss = 0, cacheDelete = 0;
+
+    /**
+     * set the maximum number of entries in the cache
+     * @param size the number of entries; zero switches the cache off
+     */
+    public static void setMaxSize(final int size) {
+        maxSize = Math.max(0, size);
+        synchronized (entries) {
+            shrink();
+        }
+    }
+
+    public static int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public static void clear() {
+        synchronized (entries) {
+            cacheDelete += entries.size();
+            entries.clear();
+        }
+    }
+
+    protected static void put(final String id, final Entry entry) {
+        if (maxSize == 0 || entry == null) return;
+        synchronized (entries) {
+            if (entries.put(id, entry) == null) cacheInsert++;
+            shrink();
+        }
+    }
+
+    /**
+     * get a cached search result
+     * @param id the query id
+     * @param writeGeneration the current write generation of the index
+     * @return the cache entry or null if there is no entry or the index has been changed since the entry had been computed
+     */
+    protected static Entry get(final String id, final long writeGeneration) {
+        synchronized (entries) {
+            final Entry entry = entries.get(id);
+            if (entry == null) {
+                cacheMiss++;
+                return null;
+            }
+            if (entry.writeGeneration != writeGeneration || entry.time + maxAge < System.currentTimeMillis()) {
+                entries.remove(id);
+                cacheDelete++;
+                cacheMiss++;
+                return null;
+            }
+            cacheHit++;
+            return entry;
+        }
+    }
+
+    private static void shrink() {
+        final Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator();
+        while (entries.size() > maxSize && i.hasNext()) {
+            i.next();
+            i.remove();
+            cacheDelete++;
+        }
+    }
+
+    /**
+     * The state of a finished local search event. The content is never changed; events which are restored
+     * from an entry copy the lists, maps and navigators, but the result and stack elements and the
+     * URIMetadataNode and WordReferenceVars objects in them are shared by the entry and all restored events.
+     * A search event must therefore not change these objects after they have been put on its stacks.
+     */
+    protected static class Entry {
+
+        final long writeGeneration, time;
+        final List<Element<URIMetadataNode>> results; // the ranked results in the order of the result list
+        final List<Element<URIMetadataNode>> nodes; // the remaining entries of the solr stack
+        final List<Element<WordReferenceVars>> rwis; // the remaining entries of the rwi stack
+        final Map<String, List<Element<WordReferenceVars>>> doubleDom; // the remaining entries of the double domain stacks
+        final Map<String, LinkedHashSet<String>> snippets; // the solr snippets of the remaining solr entries
+        final HandleSet urlhashes;
+        final Map<String, ScoreMap<String>> navigators; // the navigator counts; key is the navigator name from search.navigation
+        final Map<String, ScoreMap<String>> vocabularyNavigator;
+        final ScoreMap<String> topics;
+        final int[] flagcount;
+        final int localsolroffset, local_rwi_available, local_rwi_stored, local_solr_available, local_solr_stored;
+
+        Entry(
+                final long writeGeneration,
+                final List<Element<URIMetadataNode>> results,
+                final List<Element<URIMetadataNode>> nodes,
+                final List<Element<WordReferenceVars>> rwis,
+                final Map<String, List<Element<WordReferenceVars>>> doubleDom,
+                final Map<String, LinkedHashSet<String>> snippets,
+                final HandleSet urlhashes,
+                final Map<String, ScoreMap<String>> navigators,
+                final Map<String, ScoreMap<String>> vocabularyNavigator,
+                final ScoreMap<String> topics,
+                final int[] flagcount,
+                final int localsolroffset,
+                final int local_rwi_available,
+                final int local_rwi_stored,
+                final int local_solr_available,
+                final int local_solr_stored) {
+            this.writeGeneration = writeGeneration;
+            this.time = System.currentTimeMillis();
+            this.results = results;
+            this.nodes = nodes;
+            this.rwis = rwis;
+            this.doubleDom = doubleDom;
+            this.snippets = snippets;
+            this.urlhashes = urlhashes;
+            this.navigators = navigators;
+            this.vocabularyNavigator = vocabularyNavigator;
+            this.topics = topics;
+            this.flagcount = flagcount;
+            this.localsolroffset = localsolroffset;
+            this.local_rwi_available = local_rwi_available;
+            this.local_rwi_stored = local_rwi_stored;
+            this.local_solr_available = local_solr_available;
+            this.local_solr_stored = local_solr_stored;
+        }
+    }
+}
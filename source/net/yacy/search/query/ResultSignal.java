@@ -0,0 +1,101 @@
+// ResultSignal.java
+// -----------------------
+// (C) 2016 by the YaCy contributors
+// first published 2016 on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.search.query;
+
+/**
+ * The signal of a search event which is notified when results or stacked entries are added or a feeder terminates.
+ * A thread which waits for a result drives the result computation itself and waits on the signal only
+ * if it cannot make progress, so it neither polls nor misses a result which is added by another thread.
+ */
+final class ResultSignal {
+
+    /**
+     * the result computation which is driven by a waiting thread
+     */
+    interface Source {
+
+        /**
+         * @return true if the wanted result is available
+         */
+        boolean available();
+
+        /**
+         * @return true if more results can be expected
+         */
+        boolean pending();
+
+        /**
+         * move stacked entries towards the result list
+         * @return true if a result was added or a feeder was started which will add one; false if nothing was done
+         */
+        boolean drain();
+    }
+
+    private long changeCount = 0; // counts the notifications
+
+    /**
+     * @return the number of notifications so far; read it before a check for results to not miss a signal
+     */
+    synchronized long changeCount() {
+        return this.changeCount;
+    }
+
+    /**
+     * wake up all threads which wait for results
+     */
+    synchronized void signal() {
+        this.changeCount++;
+        this.notifyAll();
+    }
+
+    /**
+     * wait until signal() is called or the deadline is reached
+     * @param changeCount the value of changeCount() which was read before the last check for results
+     * @param deadline the latest time to return
+     */
+    synchronized void await(final long changeCount, final long deadline) {
+        long wait;
+        while (this.changeCount == changeCount && (wait = deadline - System.currentTimeMillis()) > 0) {
+            try {
+                this.wait(wait);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * drain the source as long as the wanted result is not available and more results can be expected.
+     * If draining makes no progress, wait for a new result, new stacked entries or a terminating feeder;
+     * the one second limit of that wait is only a guard.
+     * @param source the result computation
+     * @param deadline the latest time to wait for a signal
+     */
+    void drain(final Source source, final long deadline) {
+        long count = changeCount();
+        while (!source.available() && source.pending()) {
+            if (!source.drain()) {
+                await(count, Math.min(deadline, System.currentTimeMillis() + 1000));
+            }
+            count = changeCount();
+        }
+    }
+}
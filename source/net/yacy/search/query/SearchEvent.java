@@ -126,6 +126,7 @@ public final class SearchEvent {
     private static final int MAX_TOPWORDS = 12; // default count of words for topicnavigagtor
 
     private long eventTime;
+    private final long writeGeneration; // the write generation of the index when this search had been started
     public QueryParams query;
     public final SeedDB peers;
     final WorkTables workTables;
@@ -168,7 +169,9 @@ public final class SearchEvent {
     private final long maxtime;
     private final ConcurrentHashMap<String, WeakPriorityBlockingQueue<WordReferenceVars>> doubleDomCache; // key = domhash (6 bytes); value = like stack
     private final int[] flagcount; // flag counter
-    private final AtomicInteger feedersAlive, feedersTerminated, snippetFetchAlive;
+    private final AtomicInteger feedersAlive, feedersTerminated;
+    private final SnippetExecutor.Lane snippetLane; // the snippet computation tasks of this search event
+    private final ResultSignal resultSignal = new ResultSignal(); // notified when results or stacked entries are added or a feeder terminates
     private boolean addRunning;
     private final AtomicInteger receivedRemoteReferences;
     private final ReferenceOrder order;
@@ -226,7 +229,8 @@ public final class SearchEvent {
         final int remote_maxcount,
         final long remote_maxtime,
         final boolean deleteIfSnippetFail,
-        final boolean addResultsToLocalIdx) {
+        final boolean addResultsToLocalIdx,
+        final QueryResultCache.Entry cached) {
 
         long ab = MemoryControl.available();
         if (ab < 1024 * 1024 * 200) {
@@ -246,6 +250,7 @@ public final class SearchEvent {
         }
         
         this.eventTime = System.currentTimeMillis(); // for lifetime check
+        this.writeGeneration = query.getSegment().fulltext().writeGeneration();
         this.peers = peers;
         this.workTables = workTables;
         this.query = query;
@@ -278,6 +283,8 @@ public final class SearchEvent {
         this.IAmaxcounthash = null;
         this.IAneardhthash = null;
         this.remote = (peers != null && peers.sizeConnected() > 0) && (this.query.domType == QueryParams.Searchdom.CLUSTER || (this.query.domType == QueryParams.Searchdom.GLOBAL && Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.INDEX_RECEIVE_ALLOW_SEARCH, false)));
+        // a cached result of a local search can replace the search only if this is also a local search
+        final boolean restore = cached != null && !this.remote;
         this.addResultsToLocalIndex = addResultsToLocalIdx;
         /* Défault : no size limit to store remote result documents to local index. Use setter to eventually modify it. */
         this.remoteStoredDocMaxSize = -1;
@@ -310,27 +317,34 @@ public final class SearchEvent {
         }
         this.feedersAlive = new AtomicInteger(0);
         this.feedersTerminated = new AtomicInteger(0);
-        this.snippetFetchAlive = new AtomicInteger(0);
+        this.snippetLane = new SnippetExecutor.Lane();
         this.addRunning = true;
         this.receivedRemoteReferences = new AtomicInteger(0);
         this.order = new ReferenceOrder(this.query.ranking, this.query.targetlang);
-        this.urlhashes = new RowHandleSet(Word.commonHashLength, Word.commonHashOrder, 100);
+        this.urlhashes = restore ? cached.urlhashes.clone() : new RowHandleSet(Word.commonHashLength, Word.commonHashOrder, 100);
         this.taggingPredicates = new HashMap<String, String>();
         for (Tagging t: LibraryProvider.autotagging.getVocabularies()) {
             this.taggingPredicates.put(t.getName(), t.getPredicate());
         }
 
-        // start a local solr search
-        if (!Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.DEBUG_SEARCH_LOCAL_SOLR_OFF, false)) {
-            this.localsolrsearch = RemoteSearch.solrRemoteSearch(this, this.query.solrQuery(this.query.contentdom, true, this.excludeintext_image), 0, this.query.itemsPerPage, null /*this peer*/, 0, Switchboard.urlBlacklist);
+        if (restore) {
+            // the index has not been changed since the same search had been done: take the results from the cache
+            this.localsolrsearch = null;
+            this.localsolroffset = cached.localsolroffset;
+        } else {
+            // start a local solr search
+            if (!Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.DEBUG_SEARCH_LOCAL_SOLR_OFF, false)) {
+                this.localsolrsearch = RemoteSearch.solrRemoteSearch(this, this.query.solrQuery(this.query.contentdom, true, this.excludeintext_image), 0, this.query.itemsPerPage, null /*this peer*/, 0, Switchboard.urlBlacklist);
+            }
+            this.localsolroffset = this.query.itemsPerPage;
         }
-        this.localsolroffset = this.query.itemsPerPage;
         
         // start a local RWI search concurrently
         this.rwiProcess = null;
-        if (query.getSegment().connectedRWI() && !Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.DEBUG_SEARCH_LOCAL_DHT_OFF, false)) {
+        if (!restore && query.getSegment().connectedRWI() && !Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.DEBUG_SEARCH_LOCAL_DHT_OFF, false)) {
             // we start the local search only if this peer is doing a remote search or when it is doing a local search and the peer is old
-            rwiProcess = new RWIProcess(this.localsolrsearch);
+            // the index abstracts need the complete containers of the single terms, otherwise the references can be joined while they are read
+            rwiProcess = new RWIProcess(this.localsolrsearch, !generateAbstracts && TermSearch.streamingJoin);
             rwiProcess.start();
         }
 
@@ -445,6 +459,7 @@ public final class SearchEvent {
         if (filtered) { // remove stopwords
             this.snippetFetchWordHashes.excludeDestructive(Switchboard.stopwordHashes);
         }
+        if (restore) restore(cached);
 
         // clean up events
         SearchEventCache.cleanupEvents(false);
@@ -460,10 +475,22 @@ public final class SearchEvent {
     private class RWIProcess extends Thread {
     
         final Thread waitForThread;
+        final boolean streaming;
         
-        public RWIProcess(final Thread waitForThread) {
+        public RWIProcess(final Thread waitForThread, final boolean streaming) {
             super();
             this.waitForThread = waitForThread;
+            this.streaming = streaming;
+        }
+
+        private TermSearch<WordReference> search(final HandleSet includeHashes) throws SpaceExceededException {
+            final HandleSet excludeHashes = SearchEvent.this.query.getQueryGoal().getExcludeHashes();
+            if (this.streaming) {
+                return SearchEvent.this.query.getSegment().termIndex().query(
+                        includeHashes, excludeHashes, Segment.wordReferenceFactory, SearchEvent.this.query.maxDistance, TermSearch.maxJoinResults);
+            }
+            return SearchEvent.this.query.getSegment().termIndex().query(
+                    includeHashes, excludeHashes, null, Segment.wordReferenceFactory, SearchEvent.this.query.maxDistance);
         }
         
         @Override
@@ -478,16 +505,7 @@ public final class SearchEvent {
             // so following sortings together with the global results will be fast
             try {
                 final long timer = System.currentTimeMillis();
-                TermSearch<WordReference> search =
-                    SearchEvent.this.query
-                        .getSegment()
-                        .termIndex()
-                        .query(
-                                SearchEvent.this.query.getQueryGoal().getIncludeHashes(),
-                                SearchEvent.this.query.getQueryGoal().getExcludeHashes(),
-                            null,
-                            Segment.wordReferenceFactory,
-                            SearchEvent.this.query.maxDistance);
+                TermSearch<WordReference> search = search(SearchEvent.this.query.getQueryGoal().getIncludeHashes());
                 SearchEvent.this.localSearchInclusion = search.inclusion();
                 ReferenceContainer<WordReference> index = search.joined();
                 if ( !index.isEmpty() ) {
@@ -504,16 +522,7 @@ public final class SearchEvent {
                         ) {
                         // try again with sitehost
                         String newGoal = Domains.getSmartSLD(SearchEvent.this.query.modifier.sitehost);
-                        search =
-                                SearchEvent.this.query
-                                    .getSegment()
-                                    .termIndex()
-                                    .query(
-                                            QueryParams.hashes2Set(ASCII.String(Word.word2hash(newGoal))),
-                                            SearchEvent.this.query.getQueryGoal().getExcludeHashes(),
-                                        null,
-                                        Segment.wordReferenceFactory,
-                                        SearchEvent.this.query.maxDistance);
+                        search = search(QueryParams.hashes2Set(ASCII.String(Word.word2hash(newGoal))));
                         SearchEvent.this.localSearchInclusion = search.inclusion();
                         index = search.joined();
                         if (!index.isEmpty()) {
@@ -562,8 +571,9 @@ public final class SearchEvent {
         }
         long timer = System.currentTimeMillis();
 
-        // normalize entries
-        final BlockingQueue<WordReferenceVars> decodedEntries = this.order.normalizeWith(index, maxtime, local);
+        // normalize entries; large containers are normalized completely before ranking to skip entries which cannot enter the rwiStack
+        final boolean topk = ReferenceOrder.topk && index.size() > max_results_rwi;
+        final BlockingQueue<WordReferenceVars> decodedEntries = topk ? this.order.normalizeAll(index, maxtime, local) : this.order.normalizeWith(index, maxtime, local);
         int is = index.size();
         EventTracker.update(EventTracker.EClass.SEARCH, new ProfilingGraph.EventSearch(
             this.query.id(true),
@@ -650,6 +660,15 @@ public final class SearchEvent {
 
                 // finally extend the double-check and insert result to stack
                 this.urlhashes.putUnique(iEntry.urlhash());
+                if (topk) {
+                    // an entry which is ranked lower than the worst entry of a full stack would be removed again at once
+                    final Element<WordReferenceVars> worst = this.rwiStack.peekLastIfFull();
+                    if (worst != null && this.order.maxCardinal(iEntry) < worst.getWeight()) {
+                        if (local) this.local_rwi_available.incrementAndGet(); else this.remote_rwi_available.incrementAndGet();
+                        successcounter++;
+                        continue pollloop;
+                    }
+                }
                 rankingtryloop: while (true) {
                     try {
                         this.rwiStack.put(new ReverseElement<WordReferenceVars>(iEntry, this.order.cardinal(iEntry))); // inserts the element and removes the worst (which is smallest)
@@ -671,6 +690,7 @@ public final class SearchEvent {
         }
 
         //if ((query.neededResults() > 0) && (container.size() > query.neededResults())) remove(true, true);
+        if (successcounter > 0) signalResultChange();
         EventTracker.update(EventTracker.EClass.SEARCH, new ProfilingGraph.EventSearch(
             this.query.id(true),
             SearchEventType.PRESORT,
@@ -691,6 +711,7 @@ public final class SearchEvent {
     protected void cleanup() {
 
         // stop all threads
+        this.snippetLane.cancel();
         if (this.localsolrsearch != null) {
             if (localsolrsearch.isAlive()) synchronized (this.localsolrsearch) {this.localsolrsearch.interrupt();}
         }
@@ -724,6 +745,102 @@ public final class SearchEvent {
         this.rwiStack.clear();
         this.nodeStack.clear();
         this.resultList.clear();
+        signalResultChange();
+    }
+
+    /**
+     * Store the state of this search event for the QueryResultCache. This is possible only for a local search
+     * which has finished feeding. The stacks of this event are drained, so this must only be called when the
+     * event is removed from the SearchEventCache.
+     * @return the cache entry or null if the state of this event cannot be cached
+     */
+    protected QueryResultCache.Entry snapshot() {
+        if (this.remote || !this.feedingIsFinished()) return null;
+        if (this.localsolrsearch != null && this.localsolrsearch.isAlive()) return null;
+        if (this.rwiProcess != null && this.rwiProcess.isAlive()) return null;
+        final List<Element<URIMetadataNode>> results = new ArrayList<Element<URIMetadataNode>>(this.resultList.sizeAvailable());
+        final Iterator<Element<URIMetadataNode>> i = this.resultList.iterator();
+        while (i.hasNext()) results.add(i.next());
+        final Map<String, List<Element<WordReferenceVars>>> doubleDom = new HashMap<String, List<Element<WordReferenceVars>>>();
+        for (final Map.Entry<String, WeakPriorityBlockingQueue<WordReferenceVars>> entry: this.doubleDomCache.entrySet()) {
+            doubleDom.put(entry.getKey(), drain(entry.getValue()));
+        }
+        final Map<String, LinkedHashSet<String>> snippets = new HashMap<String, LinkedHashSet<String>>();
+        for (final Map.Entry<String, LinkedHashSet<String>> entry: this.snippets.entrySet()) {
+            snippets.put(entry.getKey(), new LinkedHashSet<String>(entry.getValue()));
+        }
+        final Map<String, ScoreMap<String>> navigators = new HashMap<String, ScoreMap<String>>();
+        if (this.locationNavigator != null) navigators.put("location", copy(this.locationNavigator));
+        if (this.hostNavigator != null) navigators.put("hosts", copy(this.hostNavigator));
+        if (this.authorNavigator != null) navigators.put("authors", copy(this.authorNavigator));
+        if (this.collectionNavigator != null) navigators.put("collections", copy(this.collectionNavigator));
+        if (this.namespaceNavigator != null) navigators.put("namespace", copy(this.namespaceNavigator));
+        if (this.protocolNavigator != null) navigators.put("protocol", copy(this.protocolNavigator));
+        if (this.filetypeNavigator != null) navigators.put("filetype", copy(this.filetypeNavigator));
+        if (this.dateNavigator != null) navigators.put("date", copy(this.dateNavigator));
+        if (this.languageNavigator != null) navigators.put("language", copy(this.languageNavigator));
+        final Map<String, ScoreMap<String>> vocabularyNavigator = new TreeMap<String, ScoreMap<String>>();
+        for (final Map.Entry<String, ScoreMap<String>> entry: this.vocabularyNavigator.entrySet()) {
+            vocabularyNavigator.put(entry.getKey(), copy(entry.getValue()));
+        }
+        return new QueryResultCache.Entry(
+                this.writeGeneration, results, drain(this.nodeStack), drain(this.rwiStack), doubleDom, snippets, this.urlhashes.clone(),
+                navigators, vocabularyNavigator, copy(this.ref), this.flagcount.clone(), this.localsolroffset,
+                this.local_rwi_available.get(), this.local_rwi_stored.get(), this.local_solr_available.get(), this.local_solr_stored.get());
+    }
+
+    /**
+     * fill this search event with the state of a cached search event
+     * @param cached
+     */
+    private void restore(final QueryResultCache.Entry cached) {
+        for (final Element<URIMetadataNode> element: cached.results) {
+            this.resultList.put(element);
+            this.resultList.poll(); // keep the order of the cached result list
+        }
+        for (final Element<URIMetadataNode> element: cached.nodes) this.nodeStack.put(element);
+        for (final Element<WordReferenceVars> element: cached.rwis) this.rwiStack.put(element);
+        for (final Map.Entry<String, List<Element<WordReferenceVars>>> entry: cached.doubleDom.entrySet()) {
+            final WeakPriorityBlockingQueue<WordReferenceVars> m = new WeakPriorityBlockingQueue<WordReferenceVars>(max_results_rwi, false);
+            for (final Element<WordReferenceVars> element: entry.getValue()) m.put(element);
+            this.doubleDomCache.put(entry.getKey(), m);
+        }
+        for (final Map.Entry<String, LinkedHashSet<String>> entry: cached.snippets.entrySet()) {
+            this.snippets.put(entry.getKey(), new LinkedHashSet<String>(entry.getValue()));
+        }
+        if (this.locationNavigator != null) this.locationNavigator.inc(cached.navigators.get("location"));
+        if (this.hostNavigator != null) this.hostNavigator.inc(cached.navigators.get("hosts"));
+        if (this.authorNavigator != null) this.authorNavigator.inc(cached.navigators.get("authors"));
+        if (this.collectionNavigator != null) this.collectionNavigator.inc(cached.navigators.get("collections"));
+        if (this.namespaceNavigator != null) this.namespaceNavigator.inc(cached.navigators.get("namespace"));
+        if (this.protocolNavigator != null) this.protocolNavigator.inc(cached.navigators.get("protocol"));
+        if (this.filetypeNavigator != null) this.filetypeNavigator.inc(cached.navigators.get("filetype"));
+        if (this.dateNavigator != null) this.dateNavigator.inc(cached.navigators.get("date"));
+        if (this.languageNavigator != null) this.languageNavigator.inc(cached.navigators.get("language"));
+        for (final Map.Entry<String, ScoreMap<String>> entry: cached.vocabularyNavigator.entrySet()) {
+            this.vocabularyNavigator.put(entry.getKey(), copy(entry.getValue()));
+        }
+        this.ref.inc(cached.topics);
+        System.arraycopy(cached.flagcount, 0, this.flagcount, 0, this.flagcount.length);
+        this.local_rwi_available.set(cached.local_rwi_available);
+        this.local_rwi_stored.set(cached.local_rwi_stored);
+        this.local_solr_available.set(cached.local_solr_available);
+        this.local_solr_stored.set(cached.local_solr_stored);
+        this.addFinalize();
+        this.feedersTerminated.incrementAndGet(); // the cached search is finished
+    }
+
+    private static <E> List<Element<E>> drain(final WeakPriorityBlockingQueue<E> queue) {
+        final List<Element<E>> list = new ArrayList<Element<E>>(queue.sizeQueue());
+        Element<E> element;
+        while ((element = queue.poll()) != null) list.add(element);
+        return list;
+    }
+
+    private static ScoreMap<String> copy(final ScoreMap<String> map) {
+        final ScoreMap<String> copy = new ConcurrentScoreMap<String>();
+        copy.inc(map);
+        return copy;
     }
 
     public String abstractsString(final byte[] hash) {
@@ -1017,6 +1134,7 @@ public final class SearchEvent {
             }
         } catch (final SpaceExceededException e ) {
         }
+        signalResultChange();
         EventTracker.update(EventTracker.EClass.SEARCH, new ProfilingGraph.EventSearch(this.query.id(true), SearchEventType.PRESORT, resourceName, nodeList.size(), System.currentTimeMillis() - timer), false);
     }
     
@@ -1337,9 +1455,14 @@ public final class SearchEvent {
         return null;
     }
 
+    /**
+     * take one entry from the node stack and one from the rwi stack and compute their results
+     * @return true if a result was added or a feeder was started which will add one; false if there was nothing to do
+     */
     public boolean drainStacksToResult() {
         // we take one entry from both stacks at the same time
         boolean success = false;
+        final boolean rwiAvailable = this.rwiQueueSize() > 0;
         final Element<URIMetadataNode> localEntryElement = this.nodeStack.sizeQueue() > 0 ? this.nodeStack.poll() : null;
         final URIMetadataNode node = localEntryElement == null ? null : localEntryElement.getElement();
         if (node != null) {
@@ -1361,65 +1484,69 @@ public final class SearchEvent {
                 success = true;
             } else {
                 // we don't have a snippet from solr, try to get it in our way (by reloading, if necessary)
-                if (SearchEvent.this.snippetFetchAlive.get() >= 10) {
+                final boolean submitted = submitFeeder(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            addResult(getSnippet(node, SearchEvent.this.query.snippetCacheStrategy), localEntryElement.getWeight());
+                        } catch (final Throwable e) {} finally {
+                            SearchEvent.this.oneFeederTerminated();
+                        }
+                    }
+                });
+                if (!submitted) {
                     // too many concurrent processes
                     addResult(getSnippet(node, null), localEntryElement.getWeight());
-                    success = true;
-                } else {
-
-                    new Thread() {
-                        @Override
-                        public void run() {
-                            SearchEvent.this.oneFeederStarted();
-                            try {
-                                SearchEvent.this.snippetFetchAlive.incrementAndGet();
-                                try {
-                                    addResult(getSnippet(node, SearchEvent.this.query.snippetCacheStrategy), localEntryElement.getWeight());
-                                } catch (final Throwable e) {} finally {
-                                    SearchEvent.this.snippetFetchAlive.decrementAndGet();
-                                }
-                            } catch (final Throwable e) {} finally {
-                                SearchEvent.this.oneFeederTerminated();
-                            }
-                        }
-                    }.start();
                 }
+                success = true;
             }
         }
-        if (SearchEvent.this.snippetFetchAlive.get() >= 10 || MemoryControl.shortStatus()) {
+        final Runnable rwiTask = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    final URIMetadataNode noderwi = pullOneFilteredFromRWI(true);
+                    if (noderwi != null) {
+                        try {
+                            addResult(getSnippet(noderwi, SearchEvent.this.query.snippetCacheStrategy), noderwi.score());
+                        } catch (final Throwable e) {
+                            ConcurrentLog.logException(e);
+                        }
+                    }
+                } catch (final Throwable e) {} finally {
+                    SearchEvent.this.oneFeederTerminated();
+                }
+            }
+        };
+        if (SearchEvent.this.query.snippetCacheStrategy == null) {
+            this.oneFeederStarted();
+            rwiTask.run(); //no need for concurrency if there is no latency
+        } else if (this.snippetLane.isBusy() || MemoryControl.shortStatus() || !submitFeeder(rwiTask)) {
             // too many concurrent processes
             final URIMetadataNode noderwi = pullOneFilteredFromRWI(true);
             if (noderwi != null) {
                 addResult(getSnippet(noderwi, null), noderwi.score());
                 success = true;
             }
-        } else {
-            Thread t = new Thread() {
-                @Override
-                public void run() {
-                    SearchEvent.this.oneFeederStarted();
-                    try {
-                        final URIMetadataNode noderwi = pullOneFilteredFromRWI(true);
-                        if (noderwi != null) {
-                            SearchEvent.this.snippetFetchAlive.incrementAndGet();
-                            try {
-                                addResult(getSnippet(noderwi, SearchEvent.this.query.snippetCacheStrategy), noderwi.score());
-                            } catch (final Throwable e) {
-                                ConcurrentLog.logException(e);
-                            } finally {    
-                                SearchEvent.this.snippetFetchAlive.decrementAndGet();
-                            }
-                        }
-                    } catch (final Throwable e) {} finally {
-                        SearchEvent.this.oneFeederTerminated();
-                    }
-                }
-            };
-            if (SearchEvent.this.query.snippetCacheStrategy == null) t.run(); else t.start(); //no need for concurrency if there is no latency
+        } else if (rwiAvailable) {
+            // the feeder adds the result; meanwhile more entries can be drained
+            success = true;
         }
         return success;
     }
     
+    /**
+     * submit a feeder task to the snippet executor. The feeder is counted as started already when it is
+     * submitted, because the task may wait in the queue of the executor; the task must call oneFeederTerminated()
+     * @return true if the task was submitted
+     */
+    private boolean submitFeeder(final Runnable task) {
+        this.oneFeederStarted();
+        if (this.snippetLane.execute(task)) return true;
+        this.oneFeederTerminated();
+        return false;
+    }
+
     /**
      * place the result to the result vector and apply post-ranking
      * post-ranking is added to the current score, 
@@ -1433,6 +1560,14 @@ public final class SearchEvent {
         this.resultList.put(new ReverseElement<URIMetadataNode>(resultEntry, ranking)); // remove smallest in case of overflow
         if (pollImmediately) this.resultList.poll(); // prevent re-ranking in case there is only a single index source which has already ranked entries.
         this.addTopics(resultEntry);
+        signalResultChange();
+    }
+
+    /**
+     * wake up all threads which wait for results
+     */
+    private void signalResultChange() {
+        this.resultSignal.signal();
     }
 
     private long postRanking(final URIMetadataNode rentry, final ScoreMap<String> topwords) {
@@ -1541,7 +1676,7 @@ public final class SearchEvent {
         EventTracker.update(EventTracker.EClass.SEARCH, new ProfilingGraph.EventSearch(this.query.id(true), SearchEventType.ONERESULT, "started, item = " + item + ", available = " + this.getResultCount(), 0, 0), false);
         // wait until a local solr is finished, we must do that to be able to check if we need more
         if (this.localsolrsearch != null && this.localsolrsearch.isAlive()) {try {this.localsolrsearch.join(100);} catch (final InterruptedException e) {}}
-        if (item >= this.localsolroffset && this.local_solr_stored.get() == 0 && this.localsolrsearch.isAlive()) {try {this.localsolrsearch.join();} catch (final InterruptedException e) {}}
+        if (item >= this.localsolroffset && this.local_solr_stored.get() == 0 && this.localsolrsearch != null && this.localsolrsearch.isAlive()) {try {this.localsolrsearch.join();} catch (final InterruptedException e) {}}
         if (item >= this.localsolroffset && this.local_solr_stored.get() >= item) {
             // load remaining solr results now
             int nextitems = item - this.localsolroffset + this.query.itemsPerPage; // example: suddenly switch to item 60, just 10 had been shown, 20 loaded.
@@ -1553,12 +1688,25 @@ public final class SearchEvent {
         }
         
         // now pull results as long as needed and as long as possible
-        if (this.remote && item < 10 && this.resultList.sizeAvailable() <= item) try {Thread.sleep(100);} catch (final InterruptedException e) {ConcurrentLog.logException(e);}
-        while ( this.resultList.sizeAvailable() <= item &&
-                (this.rwiQueueSize() > 0 || this.nodeStack.sizeQueue() > 0 ||
-                (!this.feedingIsFinished() && System.currentTimeMillis() < finishTime))) {
-            if (!drainStacksToResult()) try {Thread.sleep(10);} catch (final InterruptedException e) {ConcurrentLog.logException(e);}
-        }
+        // give remote peers a short time to deliver before the first results are taken from the stacks
+        if (this.remote && item < 10 && this.resultList.sizeAvailable() <= item && this.rwiQueueSize() == 0 && this.nodeStack.sizeQueue() == 0) {
+            this.resultSignal.await(this.resultSignal.changeCount(), Math.min(finishTime, System.currentTimeMillis() + 100));
+        }
+        this.resultSignal.drain(new ResultSignal.Source() {
+            @Override
+            public boolean available() {
+                return SearchEvent.this.resultList.sizeAvailable() > item;
+            }
+            @Override
+            public boolean pending() {
+                return SearchEvent.this.rwiQueueSize() > 0 || SearchEvent.this.nodeStack.sizeQueue() > 0 ||
+                       (!SearchEvent.this.feedingIsFinished() && System.currentTimeMillis() < finishTime);
+            }
+            @Override
+            public boolean drain() {
+                return drainStacksToResult();
+            }
+        }, finishTime);
         
         // check if we have a success
         if (this.resultList.sizeAvailable() > item) {
@@ -1703,14 +1851,41 @@ public final class SearchEvent {
         }
     }
     
-    public ArrayList<WeakPriorityBlockingQueue.Element<URIMetadataNode>> completeResults(final long waitingtime) {
+    /**
+     * A consumer of the results of a search event which gets each result as soon as it is available
+     */
+    public interface ResultListener {
+        /**
+         * @param item the position of the result
+         * @param result the result at that position
+         * @return true if more results are wanted, false to stop the delivery
+         */
+        public boolean result(int item, URIMetadataNode result);
+    }
+
+    /**
+     * deliver the results at the positions offset to offset + count - 1 to the listener, each one as soon as
+     * it is available. The calling thread drives the result computation and waits for new results on the result signal.
+     * @param offset the position of the first result
+     * @param count the number of wanted results
+     * @param waitingtime the maximum time in milliseconds to wait for all results
+     * @param listener the receiver of the results; may be null if the results are only wanted in the result list
+     * @return the number of delivered results
+     */
+    public int streamResults(final int offset, final int count, final long waitingtime, final ResultListener listener) {
         final long timeout = waitingtime == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + waitingtime;
-        int i = 0;
-        
-        while (this.resultList.sizeAvailable() < this.query.neededResults() && System.currentTimeMillis() < timeout) {
-            URIMetadataNode re = oneResult(i++, timeout - System.currentTimeMillis());
+        int c = 0;
+        for (int item = offset; item < offset + count && System.currentTimeMillis() < timeout; item++) {
+            final URIMetadataNode re = oneResult(item, timeout == Long.MAX_VALUE ? Long.MAX_VALUE : timeout - System.currentTimeMillis());
             if (re == null) break;
+            c++;
+            if (listener != null && !listener.result(item, re)) break;
         }
+        return c;
+    }
+
+    public ArrayList<WeakPriorityBlockingQueue.Element<URIMetadataNode>> completeResults(final long waitingtime) {
+        streamResults(0, this.query.neededResults(), waitingtime, null);
         return this.resultList.list(Math.min(this.query.neededResults(), this.resultList.sizeAvailable()));
     }
 
@@ -1750,6 +1925,7 @@ public final class SearchEvent {
         this.feedersTerminated.incrementAndGet();
         final int c = this.feedersAlive.decrementAndGet();
         assert c >= 0 : "feeders = " + c;
+        signalResultChange();
     }
 
     public void oneFeederStarted() {
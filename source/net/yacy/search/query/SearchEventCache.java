@@ -72,9 +72,21 @@ public class SearchEventCache {
         return false;
     }
 
+    /**
+     * remove an event from the cache; the result of a finished local search is kept in the QueryResultCache
+     * @param eventID
+     * @param event
+     */
+    private static void evict(final String eventID, final SearchEvent event) {
+        QueryResultCache.put(eventID, event.snapshot());
+        event.cleanup();
+    }
+
     public static void cleanupEvents(boolean all) {
         // remove old events in the event cache
         if (MemoryControl.shortStatus()) all = true;
+        // all events are removed if the memory is short or if the search configuration has been changed; then the cached results are also invalid
+        if (all) QueryResultCache.clear();
         // the less memory is there, the less time is acceptable for elements in the cache
         final long memx = MemoryControl.available();
         final long acceptTime = memx > memlimitHigh ? eventLifetimeBigMem : memx > memlimitMedium ? eventLifetimeMediumMem : eventLifetimeShortMem;
@@ -86,10 +98,14 @@ public class SearchEventCache {
                 eventEntry = i.next();
                 event = eventEntry.getValue();
                 if (event == null) continue;
-                if (all || event.getEventTime() + acceptTime < System.currentTimeMillis()) {
+                if (all) {
                     event.cleanup();
                     i.remove();
                     cacheDelete++;
+                } else if (event.getEventTime() + acceptTime < System.currentTimeMillis()) {
+                    evict(eventEntry.getKey(), event);
+                    i.remove();
+                    cacheDelete++;
                 }
             }
         }
@@ -108,7 +124,7 @@ public class SearchEventCache {
                 eventEntry = i.next();
                 event = eventEntry.getValue();
                 if (event == null) continue;
-                event.cleanup();
+                evict(eventEntry.getKey(), event);
                 i.remove();
                 cacheDelete++;
                 dc--;
@@ -173,7 +189,9 @@ public class SearchEventCache {
             final boolean delete = sb == null || Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.SEARCH_VERIFY_DELETE, true)
                     || (sb.getConfigBool(SwitchboardConstants.NETWORK_SEARCHVERIFY, false) && sb.peers.mySeed().getFlagAcceptRemoteIndex());
             final boolean addToLocalIdx = sb == null || Switchboard.getSwitchboard().getConfigBool(SwitchboardConstants.REMOTESEARCH_RESULT_STORE, true);
-            event = new SearchEvent(query, peers, workTables, preselectedPeerHashes, generateAbstracts, loader, remote_maxcount, remote_maxtime, delete, addToLocalIdx);
+            // a local search which had been done before on the same index content is restored from the result cache
+            final QueryResultCache.Entry cached = generateAbstracts ? null : QueryResultCache.get(id, query.getSegment().fulltext().writeGeneration());
+            event = new SearchEvent(query, peers, workTables, preselectedPeerHashes, generateAbstracts, loader, remote_maxcount, remote_maxtime, delete, addToLocalIdx, cached);
             /* Optional config option may be valued to limit size of remote documents added to local index */
             if(sb != null) {
             	event.setRemoteDocStoredMaxSize(sb.getConfigLong(SwitchboardConstants.REMOTESEARCH_RESULT_STORE_MAXSIZE, -1));
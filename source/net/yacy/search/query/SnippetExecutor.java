@@ -0,0 +1,191 @@
+// SnippetExecutor.java
+// -----------------------
+// (C) 2016 by the YaCy contributors
+// first published 2016 on http://yacy.net
+//
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; either version 2 of the License, or
+// (at your option) any later version.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License
+// along with this program; if not, write to the Free Software
+// Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+
+package net.yacy.search.query;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A shared pool for the snippet computation of all search events.
+ * The pool has a fixed maximum number of threads and a bounded queue. Each search event submits its tasks
+ * through its own lane which limits the number of tasks of one search event in the pool, so a single search
+ * with many results cannot occupy the pool. If a task cannot be submitted, the caller must do the work itself
+ * without a page reload. When a search event is removed from the cache, its lane is cancelled: queued tasks
+ * are dropped and running tasks are interrupted.
+ */
+public class SnippetExecutor {
+
+    private static final int DEFAULT_THREADS = 32;
+    private static final int DEFAULT_TASKS_PER_LANE = 10;
+    private static final int MAX_QUEUE = 1000;
+    private static final ThreadPoolExecutor POOL = new ThreadPoolExecutor(
+            DEFAULT_THREADS, DEFAULT_THREADS, 10, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(MAX_QUEUE),
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger(0);
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread t = new Thread(r, "SnippetExecutor-" + this.count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+    static {
+        POOL.allowCoreThreadTimeOut(true);
+    }
+    private static volatile int tasksPerLane = DEFAULT_TASKS_PER_LANE;
+    private static final AtomicLong submittedTasks = new AtomicLong(0), rejectedTasks = new AtomicLong(0), cancelledTasks = new AtomicLong(0), taskTime = new AtomicLong(0); // for statistics only
+
+    /**
+     * set the maximum number of threads of the pool
+     * @param threads
+     */
+    public static void setThreads(final int threads) {
+        if (threads < 1) return;
+        if (threads > POOL.getMaximumPoolSize()) {
+            POOL.setMaximumPoolSize(threads);
+            POOL.setCorePoolSize(threads);
+        } else {
+            POOL.setCorePoolSize(threads);
+            POOL.setMaximumPoolSize(threads);
+        }
+    }
+
+    /**
+     * set the maximum number of queued and running tasks of one search event
+     * @param tasks
+     */
+    public static void setTasksPerLane(final int tasks) {
+        if (tasks > 0) tasksPerLane = tasks;
+    }
+
+    public static int activeCount() {
+        return POOL.getActiveCount();
+    }
+
+    public static int queueSize() {
+        return POOL.getQueue().size();
+    }
+
+    public static long submittedCount() {
+        return submittedTasks.get();
+    }
+
+    public static long rejectedCount() {
+        return rejectedTasks.get();
+    }
+
+    public static long cancelledCount() {
+        return cancelledTasks.get();
+    }
+
+    /**
+     * @return the average time of a task in milliseconds
+     */
+    public static long averageTaskTime() {
+        final long c = submittedTasks.get() - rejectedTasks.get() - cancelledTasks.get();
+        return c <= 0 ? 0 : taskTime.get() / c;
+    }
+
+    /**
+     * The tasks of one search event
+     */
+    public static class Lane {
+
+        private final AtomicInteger alive;
+        private final Set<FutureTask<Void>> tasks;
+        private volatile boolean cancelled;
+
+        public Lane() {
+            this.alive = new AtomicInteger(0);
+            this.tasks = Collections.newSetFromMap(new ConcurrentHashMap<FutureTask<Void>, Boolean>());
+            this.cancelled = false;
+        }
+
+        /**
+         * @return the number of queued and running tasks of this lane
+         */
+        public int alive() {
+            return this.alive.get();
+        }
+
+        /**
+         * @return true if this lane can not take another task; then the caller should do the work itself
+         */
+        public boolean isBusy() {
+            return this.alive.get() >= tasksPerLane || POOL.getQueue().remainingCapacity() == 0;
+        }
+
+        /**
+         * submit a task to the pool
+         * @param task
+         * @return true if the task was submitted, false if the lane is busy, cancelled or the pool is full
+         */
+        public boolean execute(final Runnable task) {
+            if (this.cancelled) return false;
+            if (this.alive.incrementAndGet() > tasksPerLane) {
+                this.alive.decrementAndGet();
+                rejectedTasks.incrementAndGet();
+                submittedTasks.incrementAndGet();
+                return false;
+            }
+            final long start = System.currentTimeMillis();
+            final FutureTask<Void> f = new FutureTask<Void>(task, null) {
+                @Override
+                protected void done() {
+                    Lane.this.tasks.remove(this);
+                    Lane.this.alive.decrementAndGet();
+                    if (isCancelled()) cancelledTasks.incrementAndGet(); else taskTime.addAndGet(System.currentTimeMillis() - start);
+                }
+            };
+            this.tasks.add(f);
+            submittedTasks.incrementAndGet();
+            try {
+                POOL.execute(f);
+            } catch (final RejectedExecutionException e) {
+                this.tasks.remove(f);
+                this.alive.decrementAndGet();
+                rejectedTasks.incrementAndGet();
+                return false;
+            }
+            return true;
+        }
+
+        /**
+         * drop the queued tasks and interrupt the running tasks of this lane; no more tasks are accepted
+         */
+        public void cancel() {
+            this.cancelled = true;
+            for (final FutureTask<Void> f: this.tasks) {
+                f.cancel(true);
+                POOL.remove(f);
+            }
+        }
+    }
+}
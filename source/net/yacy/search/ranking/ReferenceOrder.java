@@ -52,11 +52,18 @@ public class ReferenceOrder {
 
     private static int cores = Runtime.getRuntime().availableProcessors();
 
+    /**
+     * if set, large reference containers are normalized with normalizeAll and entries which cannot enter
+     * the ranking stack are skipped using maxCardinal
+     */
+    public static boolean topk = true;
+
     private       int maxdomcount;
     private       WordReferenceVars min, max;
     private final ConcurrentScoreMap<String> doms; // collected for "authority" heuristic
     private final RankingProfile ranking;
     private final String language;
+    private final long normalizedBound; // the largest sum of the ranking criteria which are normalized with min/max
 
     public ReferenceOrder(final RankingProfile profile, final String language) {
         this.min = null;
@@ -65,6 +72,22 @@ public class ReferenceOrder {
         this.doms = new ConcurrentScoreMap<String>();
         this.maxdomcount = 0;
         this.language = language;
+        this.normalizedBound =
+             (256L << profile.coeff_urlcomps)
+           + (256L << profile.coeff_urllength)
+           + (256L << profile.coeff_posintext)
+           + (256L << profile.coeff_posofphrase)
+           + (256L << profile.coeff_posinphrase)
+           + (256L << profile.coeff_worddistance)
+           + (256L << profile.coeff_date)
+           + (256L << profile.coeff_wordsintitle)
+           + (256L << profile.coeff_wordsintext)
+           + (256L << profile.coeff_phrasesintext)
+           + (256L << profile.coeff_llocal)
+           + (256L << profile.coeff_lother)
+           + (256L << profile.coeff_hitcount)
+           + (256L << profile.coeff_termfrequency)
+           + ((profile.coeff_authority > 12) ? (256L << profile.coeff_authority) : 0);
     }
 
     public BlockingQueue<WordReferenceVars> normalizeWith(final ReferenceContainer<WordReference> container, long maxtime, final boolean local) {
@@ -208,6 +231,61 @@ public class ReferenceOrder {
         }
     }
 
+    /**
+     * normalize ranking in one pass within the calling thread: the entries are decoded while the minimum and
+     * maximum of the ranking criteria and the domain counts are computed. In contrast to normalizeWith, the
+     * returned queue is complete when this method returns; then the normalization of all returned entries is
+     * final and maxCardinal() is an upper bound of their cardinal().
+     * @param container
+     * @param maxtime
+     * @param local
+     * @return all decoded entries, terminated with WordReferenceVars.poison
+     */
+    public BlockingQueue<WordReferenceVars> normalizeAll(final ReferenceContainer<WordReference> container, final long maxtime, final boolean local) {
+        final LinkedBlockingQueue<WordReferenceVars> out = new LinkedBlockingQueue<WordReferenceVars>();
+        final Map<String, Integer> doms0 = new HashMap<String, Integer>();
+        final Integer int1 = 1;
+        WordReferenceVars iEntry, min0 = null, max0 = null;
+        String dom;
+        Integer count;
+        int p = 0;
+        final long timeout = maxtime == Long.MAX_VALUE ? Long.MAX_VALUE : System.currentTimeMillis() + maxtime;
+        final Iterator<WordReference> i = container.entries();
+        while (i.hasNext()) {
+            iEntry = new WordReferenceVars(i.next(), local);
+            // find min/max
+            if (min0 == null) min0 = iEntry.clone(); else min0.min(iEntry);
+            if (max0 == null) max0 = iEntry.clone(); else max0.max(iEntry);
+            out.add(iEntry);
+            // update domcount
+            dom = iEntry.hosthash();
+            count = doms0.get(dom);
+            if (count == null) {
+                doms0.put(dom, int1);
+            } else {
+                doms0.put(dom, LargeNumberCache.valueOf(count.intValue() + 1));
+            }
+            if (++p % 100 == 0 && System.currentTimeMillis() > timeout) {
+                ConcurrentLog.warn("ReferenceOrder", "normalization of rows ended with timeout = " + maxtime);
+                break;
+            }
+        }
+
+        // extend the min/max of other containers before any entry is ranked
+        if (min0 != null) synchronized (this) {
+            if (this.min == null) this.min = min0; else this.min.min(min0);
+            if (this.max == null) this.max = max0; else this.max.max(max0);
+        }
+
+        // update domain score
+        for (final Map.Entry<String, Integer> entry: doms0.entrySet()) {
+            this.doms.inc(entry.getKey(), entry.getValue().intValue());
+        }
+        if (!this.doms.isEmpty()) this.maxdomcount = this.doms.getMaxScore();
+        out.add(WordReferenceVars.poison);
+        return out;
+    }
+
     public int authority(final String hostHash) {
         assert hostHash.length() == 6;
         return (this.doms.get(hostHash) << 8) / (1 + this.maxdomcount);
@@ -265,6 +343,31 @@ public class ReferenceOrder {
         return r; // the higher the number the better the ranking.
     }
     
+    /**
+     * return an upper bound of the ranking of a given word entry: the flags, the language and the domain length
+     * are scored as in cardinal(), all criteria which are normalized with min/max are scored with their maximum.
+     * The bound is only valid for entries which are within the min/max bounds, i.e. entries from normalizeAll().
+     * @param t
+     * @return a value which is not lower than cardinal(t)
+     */
+    public long maxCardinal(final WordReference t) {
+        final Bitfield flags = t.flags();
+        return this.normalizedBound
+           + ((256 - DigestURL.domLengthNormalized(t.urlhash())) << this.ranking.coeff_domlength)
+           + ((flags.get(WordReferenceRow.flag_app_dc_identifier))  ? 255 << this.ranking.coeff_appurl             : 0)
+           + ((flags.get(WordReferenceRow.flag_app_dc_title))       ? 255 << this.ranking.coeff_app_dc_title       : 0)
+           + ((flags.get(WordReferenceRow.flag_app_dc_creator))     ? 255 << this.ranking.coeff_app_dc_creator     : 0)
+           + ((flags.get(WordReferenceRow.flag_app_dc_subject))     ? 255 << this.ranking.coeff_app_dc_subject     : 0)
+           + ((flags.get(WordReferenceRow.flag_app_dc_description)) ? 255 << this.ranking.coeff_app_dc_description : 0)
+           + ((flags.get(WordReferenceRow.flag_app_emphasized))     ? 255 << this.ranking.coeff_appemph            : 0)
+           + ((flags.get(Tokenizer.flag_cat_indexof))      ? 255 << this.ranking.coeff_catindexof         : 0)
+           + ((flags.get(Tokenizer.flag_cat_hasimage))     ? 255 << this.ranking.coeff_cathasimage        : 0)
+           + ((flags.get(Tokenizer.flag_cat_hasaudio))     ? 255 << this.ranking.coeff_cathasaudio        : 0)
+           + ((flags.get(Tokenizer.flag_cat_hasvideo))     ? 255 << this.ranking.coeff_cathasvideo        : 0)
+           + ((flags.get(Tokenizer.flag_cat_hasapp))       ? 255 << this.ranking.coeff_cathasapp          : 0)
+           + ((ByteBuffer.equals(t.getLanguage(), ASCII.getBytes(this.language))) ? 255 << this.ranking.coeff_language    : 0);
+    }
+
     public long cardinal(final URIMetadataNode t) {
         //return Long.MAX_VALUE - preRanking(ranking, iEntry, this.entryMin, this.entryMax, this.searchWords);
         // the normalizedEntry must be a normalized indexEntry
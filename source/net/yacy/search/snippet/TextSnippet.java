@@ -56,6 +56,7 @@ import net.yacy.peers.RemoteSearch;
 import net.yacy.repository.Blacklist.BlacklistType;
 import net.yacy.repository.LoaderDispatcher;
 import net.yacy.search.Switchboard;
+import net.yacy.search.index.SentenceStore;
 import net.yacy.search.query.QueryGoal;
 
 public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnippet> {
@@ -180,6 +181,7 @@ public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnip
         String textline = null;
         HandleSet remainingHashes = queryhashes.clone();
         List<StringBuilder> sentences = null;
+        SentenceStore.Sentences stored = null;
         
         // try to get the snippet from metadata
         removeMatchingHashes(row.url().toTokens(), remainingHashes);
@@ -200,6 +202,9 @@ public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnip
             if (solrText != null && solrText.length() > 0) { // TODO: instead of join with desc, we could check if snippet already complete and skip further computation
                 // compute sentences from solr query
                 if (sentences == null) sentences = row.getSentences(pre); else sentences.addAll(row.getSentences(pre));
+            } else if ((stored = storedSentences(url.hash(), remainingHashes, pre)) != null) {
+                // get the sentences from the sentence store of the index
+                if (sentences == null) sentences = stored.sentences; else sentences.addAll(stored.sentences);
             } else if (net.yacy.crawler.data.Cache.has(url.hash())) {
                 // get the sentences from the cache
                 final Request request = loader == null ? null : loader.request(url, true, reindexing);
@@ -281,6 +286,32 @@ public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnip
         }
         sentences = null; // we don't need this here any more
 
+        // try to get the snippet from the sentence store before the document is loaded again
+        if (stored == null) stored = storedSentences(url.hash(), remainingHashes, pre);
+        if (stored != null) {
+            String storedline = null;
+            HandleSet storedRemainingHashes = remainingHashes;
+            try {
+                final SnippetExtractor tsr = new SnippetExtractor(stored.sentences, remainingHashes, snippetMaxLength);
+                storedline = tsr.getSnippet();
+                storedRemainingHashes = tsr.getRemainingWords();
+            } catch (final UnsupportedOperationException e) {
+            }
+            if (storedline != null && storedRemainingHashes.isEmpty()) {
+                if (storedline.length() > snippetMaxLength) storedline = storedline.substring(0, snippetMaxLength);
+                snippetsCache.put(wordhashes, urls, storedline);
+                init(url.hash(), storedline, false, source, null);
+                return;
+            }
+            if (stored.complete && (cacheStrategy == null || cacheStrategy.mustBeOffline())) {
+                // the store has all sentences of the document and we must not load it from the net. This is only a miss of the store,
+                // the document may have been changed since it was indexed; a miss of a cache-only load is reported in the same way
+                init(url.hash(), null, false, ResultClass.ERROR_SOURCE_LOADING, "omitted network load (not allowed), no matching stored sentence");
+                return;
+            }
+            // otherwise the document is loaded again, so a missing word is only reported for the current content
+        }
+
         // try to load the resource from the cache
         Response response = null;
         try {
@@ -350,6 +381,20 @@ public class TextSnippet implements Comparable<TextSnippet>, Comparator<TextSnip
         init(url.hash(), textline, false, source, null);
     }
 
+    /**
+     * get the sentences of a document from the sentence store of the index
+     * @param urlhash
+     * @param wordhashes
+     * @param pre
+     * @return the sentences which contain any of the words or null if the document is not in the store
+     */
+    private static SentenceStore.Sentences storedSentences(final byte[] urlhash, final HandleSet wordhashes, final boolean pre) {
+        if (pre) return null; // the store has the sentences without pre-formatted lines
+        final Switchboard sb = Switchboard.getSwitchboard();
+        final SentenceStore store = sb == null || sb.index == null ? null : sb.index.sentences();
+        return store == null ? null : store.get(urlhash, wordhashes);
+    }
+
     /**
      * Init a snippet line for urlhash
      *
@@ -0,0 +1,120 @@
+package net.yacy.cora.federate.solr.connector;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import net.yacy.cora.federate.solr.connector.SolrConnector.LoadTimeURL;
+import net.yacy.cora.federate.solr.instance.EmbeddedInstance;
+import net.yacy.kelondro.util.FileUtils;
+import net.yacy.search.schema.CollectionSchema;
+import net.yacy.search.schema.WebgraphSchema;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.AfterClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import org.junit.BeforeClass;
+
+
+public class ConcurrentUpdateSolrConnectorTest {
+
+    static File storage;
+    static EmbeddedInstance instance;
+    static EmbeddedSolrConnector solr;
+
+    @BeforeClass
+    public static void initTesting() throws IOException {
+        File solr_config = new File("defaults/solr");
+        storage = new File(System.getProperty("java.io.tmpdir"), "ConcurrentUpdateSolrConnectorTest");
+        FileUtils.deletedelete(storage);
+        storage.mkdirs();
+        instance = new EmbeddedInstance(solr_config, storage, CollectionSchema.CORE_NAME, new String[]{CollectionSchema.CORE_NAME, WebgraphSchema.CORE_NAME});
+        solr = new EmbeddedSolrConnector(instance);
+        solr.clear();
+    }
+
+    @AfterClass
+    public static void finalizeTesting() {
+        solr.close();
+        FileUtils.deletedelete(storage);
+    }
+
+    private static SolrInputDocument doc(final String id) {
+        SolrInputDocument doc = new SolrInputDocument();
+        doc.addField(CollectionSchema.id.name(), id);
+        doc.addField(CollectionSchema.sku.name(), "http://yacy.net/" + id + ".html");
+        doc.addField(CollectionSchema.load_date_dt.name(), new Date());
+        return doc;
+    }
+
+    /**
+     * Test of the id filter: documents which are in the index before the connector is created
+     * and documents which are added with the connector must be found, others are not in the index.
+     */
+    @Test
+    public void testIdFilter() throws IOException, InterruptedException {
+        solr.add(doc("AAAAAAAAAAAA"));
+        solr.add(doc("BBBBBBBBBBBB"));
+        solr.commit(false);
+
+        ConcurrentUpdateSolrConnector cusc = new ConcurrentUpdateSolrConnector(solr, 100, 1000, 1, true);
+        for (int i = 0; i < 100 && !cusc.hasIdFilter(); i++) Thread.sleep(100);
+        assertTrue(cusc.hasIdFilter());
+
+        assertNotNull(cusc.getLoadTimeURL("AAAAAAAAAAAA"));
+        assertNotNull(cusc.getLoadTimeURL("BBBBBBBBBBBB"));
+        assertEquals(0, cusc.idFilterSkipCount());
+        assertNull(cusc.getLoadTimeURL("CCCCCCCCCCCC"));
+        assertEquals(1, cusc.idFilterSkipCount()); // answered by the filter, not by the index
+
+        cusc.add(doc("CCCCCCCCCCCC"));
+        cusc.commit(false);
+        cusc.clearCaches(); // the lookup must use the filter and the index, not the metadata cache
+        assertNotNull(cusc.getLoadTimeURL("CCCCCCCCCCCC"));
+        assertNotNull(cusc.getDocumentById("CCCCCCCCCCCC"));
+        assertEquals(1, cusc.idFilterSkipCount());
+        assertNull(cusc.getDocumentById("DDDDDDDDDDDD"));
+        assertEquals(2, cusc.idFilterSkipCount());
+    }
+
+    /**
+     * Test of the id filter with documents which are not yet visible in the index when the connector is created:
+     * the filter is built after a commit, so they must be found.
+     */
+    @Test
+    public void testIdFilterUncommitted() throws IOException, InterruptedException {
+        solr.add(doc("IIIIIIIIIIII"));
+
+        ConcurrentUpdateSolrConnector cusc = new ConcurrentUpdateSolrConnector(solr, 100, 1000, 1, true);
+        for (int i = 0; i < 100 && !cusc.hasIdFilter(); i++) Thread.sleep(100);
+        assertTrue(cusc.hasIdFilter());
+
+        assertNotNull(cusc.getLoadTimeURL("IIIIIIIIIIII"));
+        assertNull(cusc.getLoadTimeURL("JJJJJJJJJJJJ"));
+        assertEquals(1, cusc.idFilterSkipCount());
+    }
+
+    /**
+     * Test of the lookup of several ids with one request, from the index and from the document buffer.
+     */
+    @Test
+    public void testLoadTimeURLs() throws IOException {
+        solr.add(doc("EEEEEEEEEEEE"));
+        solr.add(doc("FFFFFFFFFFFF"));
+        solr.commit(false);
+
+        Map<String, LoadTimeURL> md = solr.getLoadTimeURLs(Arrays.asList("EEEEEEEEEEEE", "FFFFFFFFFFFF", "GGGGGGGGGGGG"));
+        assertEquals(2, md.size());
+        assertEquals("http://yacy.net/EEEEEEEEEEEE.html", md.get("EEEEEEEEEEEE").url);
+        assertFalse(md.containsKey("GGGGGGGGGGGG"));
+
+        ConcurrentUpdateSolrConnector cusc = new ConcurrentUpdateSolrConnector(solr, 100, 1000, 1);
+        cusc.add(doc("GGGGGGGGGGGG"));
+        md = cusc.getLoadTimeURLs(Arrays.asList("EEEEEEEEEEEE", "GGGGGGGGGGGG", "HHHHHHHHHHHH"));
+        assertEquals(2, md.size());
+        assertTrue(md.containsKey("EEEEEEEEEEEE"));
+        assertTrue(md.containsKey("GGGGGGGGGGGG"));
+        cusc.commit(false);
+    }
+}
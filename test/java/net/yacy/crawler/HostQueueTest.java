@@ -7,6 +7,8 @@ import java.net.MalformedURLException;
 import net.yacy.cora.document.id.DigestURL;
 import net.yacy.cora.util.SpaceExceededException;
 import net.yacy.crawler.retrieval.Request;
+import net.yacy.kelondro.table.StackFile;
+import net.yacy.kelondro.util.FileUtils;
 import static org.junit.Assert.*;
 import org.junit.Test;
 
@@ -59,4 +61,38 @@ public class HostQueueTest {
 
     }
 
+    /**
+     * Test of a HostQueue which stores its stacks in a shared stack file.
+     */
+    @Test
+    public void testStackFile() throws MalformedURLException, IOException, SpaceExceededException {
+        File stackDirFile = new File(stackDir);
+        stackDirFile.mkdirs();
+        File f = new File(stackDirFile, "test.stacks");
+        FileUtils.deletedelete(f);
+        StackFile sf = new StackFile(f, Request.rowdef);
+
+        HostQueue testhq = new HostQueue(stackDirFile, "b.com", 80, false, true, sf);
+        DigestURL url0 = new DigestURL("http://b.com/test0.html");
+        DigestURL url1 = new DigestURL("http://b.com/test1.html");
+        assertNull(testhq.push(new Request(url0, null), null, null));
+        assertNull(testhq.push(new Request(url1, null), null, null));
+        assertNotNull(testhq.push(new Request(url1, null), null, null)); // double occurrence
+        assertEquals(2, testhq.size());
+        assertFalse(new File(stackDirFile, "b.com.80").exists()); // no host directory
+        testhq.close();
+        sf.close();
+
+        // open again
+        sf = new StackFile(f, Request.rowdef);
+        testhq = new HostQueue(new File(stackDirFile, "b.com.80"), false, true, sf);
+        assertEquals(2, testhq.size());
+        assertTrue(testhq.has(url0.hash()));
+        testhq.clear();
+        assertEquals(0, testhq.size());
+        testhq.close();
+        assertEquals(0, sf.names("").size());
+        sf.close();
+        FileUtils.deletedelete(f);
+    }
 }
@@ -0,0 +1,54 @@
+package net.yacy.crawler;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class HostSchedulerTest {
+
+    /**
+     * Test of the order of taken hosts: earliest ready time first, on the same ready time the smallest queue.
+     */
+    @Test
+    public void testTakeOrder() {
+        HostScheduler scheduler = new HostScheduler();
+        long now = 1000000;
+        assertTrue(scheduler.schedule("host000large", now, 100));
+        assertTrue(scheduler.schedule("host000small", now, 1));
+        assertTrue(scheduler.schedule("host000later", now + 5000, 1));
+        assertFalse(scheduler.schedule("host000small", now - 5000, 1)); // already scheduled
+        assertEquals(3, scheduler.size());
+
+        assertEquals("host000small", scheduler.take());
+        assertEquals("host000large", scheduler.take());
+        assertEquals(now + 5000, scheduler.nextReady());
+
+        // a taken host is still a member and can not be scheduled twice
+        assertFalse(scheduler.schedule("host000small", now, 1));
+        scheduler.release("host000small", now + 10000, 1);
+        assertEquals("host000later", scheduler.take());
+        assertEquals("host000small", scheduler.take());
+        assertNull(scheduler.take());
+        assertEquals(Long.MAX_VALUE, scheduler.nextReady());
+    }
+
+    /**
+     * Test that removed hosts are not returned and can be scheduled again.
+     */
+    @Test
+    public void testRemove() {
+        HostScheduler scheduler = new HostScheduler();
+        long now = 1000000;
+        scheduler.schedule("host0000000a", now, 1);
+        scheduler.schedule("host0000000b", now + 1000, 1);
+        scheduler.remove("host0000000a");
+        assertEquals(1, scheduler.size());
+        assertEquals(now + 1000, scheduler.nextReady());
+
+        assertTrue(scheduler.schedule("host0000000a", now + 2000, 1));
+        assertEquals("host0000000b", scheduler.take());
+        scheduler.remove("host0000000b");
+        assertEquals("host0000000a", scheduler.take());
+        assertNull(scheduler.take());
+        assertEquals(1, scheduler.size());
+    }
+}
@@ -0,0 +1,62 @@
+package net.yacy.crawler.data;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * test the adaptive crawl rate of Latency.Host
+ */
+public class LatencyTest {
+
+    private static final float MIN = 0.125f;
+    private static final float MAX = 4.0f;
+    private static final float DELTA = 0.0001f;
+
+    /**
+     * the rate increases additively up to the maximum
+     */
+    @Test
+    public void testSpeedup() {
+        final Latency.Host host = new Latency.Host("example.org", 100, 0);
+        assertEquals(1.0f, host.rate(), DELTA);
+        host.speedup(MAX);
+        assertEquals(1.05f, host.rate(), DELTA);
+        for (int i = 0; i < 100; i++) host.speedup(MAX);
+        assertEquals(MAX, host.rate(), DELTA);
+    }
+
+    /**
+     * the rate is halved down to the minimum, but only once within the response latency
+     */
+    @Test
+    public void testSlowdown() {
+        final Latency.Host host = new Latency.Host("example.org", 100, 0);
+        long now = 1000000L;
+        host.slowdown(MIN, now);
+        assertEquals(0.5f, host.rate(), DELTA);
+
+        // a second overload signal of loads which were in flight at the same time is ignored
+        host.slowdown(MIN, now + 10);
+        assertEquals(0.5f, host.rate(), DELTA);
+
+        for (int i = 0; i < 10; i++) {
+            now += 1000;
+            host.slowdown(MIN, now);
+        }
+        assertEquals(MIN, host.rate(), DELTA);
+    }
+
+    /**
+     * a delay is divided by the rate
+     */
+    @Test
+    public void testAdapt() {
+        final Latency.Host host = new Latency.Host("example.org", 100, 0);
+        assertEquals(500, host.adapt(500));
+        host.slowdown(MIN, 1000000L);
+        assertEquals(1000, host.adapt(500));
+        for (int i = 0; i < 20; i++) host.speedup(MAX);
+        assertEquals(333, host.adapt(500));
+    }
+}
@@ -0,0 +1,39 @@
+package net.yacy.crawler.robots;
+
+import static org.junit.Assert.*;
+
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+
+import net.yacy.cora.document.id.MultiProtocolURL;
+import org.junit.Test;
+
+public class RobotsTxtEntryTest {
+
+    /**
+     * Test the deny path matching of the compiled deny path list.
+     */
+    @Test
+    public void testIsDisallowed() throws MalformedURLException {
+        RobotsTxtEntry entry = new RobotsTxtEntry(
+                new MultiProtocolURL("http://www.example.com/robots.txt"),
+                new ArrayList<String>(),
+                Arrays.asList("/private/", "/private/secret/", "/cgi-bin", "/a;b", "/z"),
+                new Date(), new Date(), null, new ArrayList<String>(), 0, "yacybot");
+
+        assertTrue(entry.isDisallowed(new MultiProtocolURL("http://www.example.com/private/index.html")));
+        assertTrue(entry.isDisallowed(new MultiProtocolURL("http://www.example.com/private/secret/x.html")));
+        assertTrue(entry.isDisallowed(new MultiProtocolURL("http://www.example.com/cgi-bin/test.cgi")));
+        assertTrue(entry.isDisallowed(new MultiProtocolURL("http://www.example.com/cgi-binary")));
+        assertTrue(entry.isDisallowed(new MultiProtocolURL("http://www.example.com/zzz")));
+        assertFalse(entry.isDisallowed(new MultiProtocolURL("http://www.example.com/")));
+        assertFalse(entry.isDisallowed(new MultiProtocolURL("http://www.example.com/private")));
+        assertFalse(entry.isDisallowed(new MultiProtocolURL("http://www.example.com/public/index.html")));
+        assertFalse(entry.isDisallowed(new MultiProtocolURL("http://www.example.com/cgi")));
+        assertFalse(entry.isDisallowed(new MultiProtocolURL("http://www.example.com/a")));
+        assertTrue(entry.getInfo(new MultiProtocolURL("http://www.example.com/private/index.html")).startsWith("path '/private/index.html' starts with '/private/'"));
+        assertTrue(entry.getInfo(new MultiProtocolURL("http://www.example.com/a")).endsWith("does not start with any element from deny path list"));
+    }
+}
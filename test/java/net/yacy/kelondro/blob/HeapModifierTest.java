@@ -0,0 +1,79 @@
+package net.yacy.kelondro.blob;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.NaturalOrder;
+import net.yacy.kelondro.index.MappedHandleMap;
+import net.yacy.kelondro.util.FileUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class HeapModifierTest {
+
+    private File testDir;
+
+    @Before
+    public void setUp() {
+        this.testDir = new File(System.getProperty("java.io.tmpdir"), "HeapModifierTest");
+        FileUtils.deletedelete(this.testDir);
+        this.testDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        HeapReader.mappedIndex = false;
+        FileUtils.deletedelete(this.testDir);
+    }
+
+    /**
+     * a delete in a heap with a mapped index must drop the mapped index before the idx file is deleted
+     */
+    @Test
+    public void testDeleteWithMappedIndex() throws Exception {
+        final File f = new File(this.testDir, "test.heap");
+        final Heap heap = new Heap(f, 12, NaturalOrder.naturalOrder, 1024);
+        for (int i = 0; i < 10; i++) heap.insert(key(i), ASCII.getBytes("value" + i));
+        heap.close(); // writes the idx dump
+
+        HeapReader.mappedIndex = true;
+        HeapModifier hm = new HeapModifier(f, 12, NaturalOrder.naturalOrder);
+        assertTrue(hm.index instanceof MappedHandleMap);
+
+        hm.delete(key(3));
+        assertFalse(hm.index instanceof MappedHandleMap);
+        assertFalse(idxFileExists());
+        assertNull(hm.get(key(3)));
+        assertNotNull(hm.get(key(4)));
+        assertEquals(9, hm.size());
+        hm.close();
+
+        // the deletion is persistent
+        HeapReader.mappedIndex = false;
+        hm = new HeapModifier(f, 12, NaturalOrder.naturalOrder);
+        assertNull(hm.get(key(3)));
+        assertEquals(9, hm.size());
+        hm.close();
+    }
+
+    private boolean idxFileExists() {
+        for (final String s: this.testDir.list()) {
+            if (s.endsWith(".idx") || s.endsWith(".idx.gz")) return true;
+        }
+        return false;
+    }
+
+    private static byte[] key(final int i) {
+        String s = Integer.toString(i);
+        while (s.length() < 12) s = "x" + s;
+        return ASCII.getBytes(s);
+    }
+}
@@ -0,0 +1,60 @@
+package net.yacy.kelondro.index;
+
+import java.util.Arrays;
+import java.util.Random;
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.order.Digest;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+
+public class BlockRowCodecTest {
+
+    /**
+     * Test that a collection of word references is decoded to the same rows,
+     * that single rows are found with the skip table and that the count is in the head
+     */
+    @Test
+    public void testEncodeDecode() throws Exception {
+        final Row rowdef = WordReferenceRow.urlEntryRow;
+        final Random r = new Random(1);
+        final RowSet rs = new RowSet(rowdef, 0);
+        for (int i = 0; i < 1000; i++) {
+            final Row.Entry e = rowdef.newEntry();
+            e.setCol(0, ASCII.getBytes(Base64Order.enhancedCoder.encode(Digest.encodeMD5Raw("url" + i)).substring(0, 12)));
+            for (int col = 1; col < rowdef.columns(); col++) {
+                final Column c = rowdef.column(col);
+                // the feature fields are mostly small numbers or dates close to each other
+                if (c.encoder == Column.encoder_b256) e.setCol(col, c.cellwidth == 1 ? r.nextInt(8) : 16000 + r.nextInt(300));
+                else {byte[] b = new byte[c.cellwidth]; r.nextBytes(b); e.setCol(col, b);}
+            }
+            rs.addUnique(e);
+        }
+        rs.sort();
+        final byte[] plain = rs.exportCollection();
+        final byte[] encoded = BlockRowCodec.encode(rs);
+        assertTrue(BlockRowCodec.isEncoded(encoded));
+        assertTrue("encoded = " + encoded.length + ", plain = " + plain.length, encoded.length < plain.length);
+        assertEquals(1000, BlockRowCodec.count(encoded));
+        assertEquals(1000, BlockRowCodec.count(plain));
+
+        // trailing bytes must be ignored
+        final RowSet decoded = RowSet.importRowSet(Arrays.copyOf(encoded, encoded.length + 10), rowdef);
+        assertEquals(rs.size(), decoded.size());
+        for (int i = 0; i < rs.size(); i++) assertArrayEquals(rs.get(i, false).bytes(), decoded.get(i, false).bytes());
+
+        for (int i = 0; i < rs.size(); i += 7) {
+            final Row.Entry e = rs.get(i, false);
+            final Row.Entry f = BlockRowCodec.get(encoded, rowdef, e.getPrimaryKeyBytes());
+            assertNotNull(f);
+            assertArrayEquals(e.bytes(), f.bytes());
+        }
+        assertNull(BlockRowCodec.get(encoded, rowdef, ASCII.getBytes("------------")));
+    }
+}
@@ -0,0 +1,41 @@
+package net.yacy.kelondro.index;
+
+import java.io.File;
+import net.yacy.cora.document.encoding.ASCII;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+
+public class BloomFilterTest {
+
+    final String tesDir = "test/DATA/INDEX";
+
+    /**
+     * Test that all stored keys are found, that the false positive rate is close to
+     * the requested one and that a dumped filter gives the same answers
+     */
+    @Test
+    public void testPutDumpLoad() throws Exception {
+        BloomFilter filter = new BloomFilter(10000, 0.01);
+        for (int i = 0; i < 10000; i++) filter.put(key(i));
+        for (int i = 0; i < 10000; i++) assertTrue(filter.mightContain(key(i)));
+        int fp = 0;
+        for (int i = 10000; i < 20000; i++) if (filter.mightContain(key(i))) fp++;
+        assertTrue("false positives: " + fp, fp < 300);
+
+        File dumpfile = new File(tesDir, "test.blm");
+        dumpfile.getParentFile().mkdirs();
+        filter.dump(dumpfile);
+        BloomFilter loaded = BloomFilter.load(dumpfile);
+        assertEquals(filter.mem(), loaded.mem());
+        for (int i = 0; i < 20000; i++) assertEquals(filter.mightContain(key(i)), loaded.mightContain(key(i)));
+        dumpfile.delete();
+    }
+
+    private static byte[] key(int i) {
+        String s = Integer.toString(i);
+        while (s.length() < 12) s = "x" + s;
+        return ASCII.getBytes(s);
+    }
+}
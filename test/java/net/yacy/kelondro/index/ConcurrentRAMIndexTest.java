@@ -0,0 +1,110 @@
+package net.yacy.kelondro.index;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+
+public class ConcurrentRAMIndexTest {
+
+    private static final Row row = new Row("byte[] key-12, Cardinal value-4 {b256}", Base64Order.enhancedCoder);
+
+    /**
+     * Test the basic index operations and that the rows iterator is sorted over all stripes
+     */
+    @Test
+    public void testPutGetRemove() throws Exception {
+        final ConcurrentRAMIndex index = new ConcurrentRAMIndex("test", row, 4);
+        for (int i = 0; i < 10000; i++) index.addUnique(entry(i, i));
+        assertEquals(10000, index.size());
+        for (int i = 0; i < 10000; i += 7) assertEquals(i, index.get(key(i), false).getColLong(1));
+        assertNotNull(index.replace(entry(5, 55)));
+        assertEquals(55, index.get(key(5), false).getColLong(1));
+        assertTrue(index.delete(key(6)));
+        assertFalse(index.has(key(6)));
+        assertNull(index.get(key(6), false));
+        assertEquals(9999, index.size());
+
+        final Iterator<Row.Entry> i = index.rows(true, null);
+        byte[] last = null;
+        int c = 0;
+        while (i.hasNext()) {
+            final byte[] k = i.next().getPrimaryKeyBytes();
+            if (last != null) assertTrue(row.objectOrder.compare(last, k) < 0);
+            last = k;
+            c++;
+        }
+        assertEquals(9999, c);
+    }
+
+    /**
+     * Test that the keys of a pre-sized index are enumerated in order and that a cloned key iterator starts at its first key
+     */
+    @Test
+    public void testKeys() throws Exception {
+        final ConcurrentRAMIndex index = new ConcurrentRAMIndex("test", row, 4, 1000);
+        for (int i = 999; i >= 0; i--) index.put(entry(i, i));
+        Iterator<byte[]> i = index.keys(true, null);
+        int c = 0;
+        while (i.hasNext()) {
+            assertEquals(ASCII.String(key(c)), ASCII.String(i.next()));
+            c++;
+        }
+        assertEquals(1000, c);
+        i = index.keys(true, null).clone(key(500));
+        assertEquals(ASCII.String(key(500)), ASCII.String(i.next()));
+    }
+
+    /**
+     * Test that concurrent writers and readers do not lose or break entries
+     */
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        final ConcurrentRAMIndex index = new ConcurrentRAMIndex("test", row, 4);
+        final AtomicInteger errors = new AtomicInteger(0);
+        final Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t * 100000;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    final Random r = new Random(offset);
+                    try {
+                        for (int i = 0; i < 5000; i++) {
+                            index.put(entry(offset + i, i));
+                            final int j = offset + r.nextInt(i + 1);
+                            final Row.Entry e = index.get(key(j), false);
+                            if (e == null || e.getColLong(1) != j - offset) errors.incrementAndGet();
+                        }
+                    } catch (final Exception e) {
+                        errors.incrementAndGet();
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (final Thread t: threads) t.join();
+        assertEquals(0, errors.get());
+        assertEquals(20000, index.size());
+    }
+
+    private static byte[] key(final int i) {
+        return ASCII.getBytes(Base64Order.enhancedCoder.encodeLongSB(i, 12).toString());
+    }
+
+    private static Row.Entry entry(final int k, final int v) {
+        final Row.Entry e = row.newEntry();
+        e.setCol(0, key(k));
+        e.setCol(1, v);
+        return e;
+    }
+}
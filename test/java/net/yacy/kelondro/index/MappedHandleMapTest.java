@@ -0,0 +1,66 @@
+package net.yacy.kelondro.index;
+
+import java.io.File;
+import java.util.Iterator;
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+
+public class MappedHandleMapTest {
+
+    final String tesDir = "test/DATA/INDEX";
+
+    /**
+     * Test of get, remove and keys of a mapped dump of a RowHandleMap
+     */
+    @Test
+    public void testMappedDump() throws Exception {
+        File dumpfile = new File(tesDir, "test.mapped.idx");
+        dumpfile.getParentFile().mkdirs();
+
+        RowHandleMap rhm = new RowHandleMap(12, Base64Order.enhancedCoder, 8, 100, "test");
+        for (int i = 0; i < 100; i++) {
+            rhm.put(key(i), i * 1000L);
+        }
+        rhm.dump(dumpfile);
+        rhm.close();
+
+        MappedHandleMap mhm = new MappedHandleMap(12, Base64Order.enhancedCoder, 8, dumpfile);
+        assertEquals(100, mhm.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i * 1000L, mhm.get(key(i)));
+        }
+        assertEquals(-1, mhm.get(ASCII.getBytes("AAAAAAAAAAAA")));
+
+        // remove an entry
+        assertEquals(5000L, mhm.remove(key(5)));
+        assertEquals(-1, mhm.remove(key(5)));
+        assertFalse(mhm.has(key(5)));
+        assertEquals(99, mhm.size());
+
+        // the iteration must be sorted and must skip the removed entry
+        Iterator<byte[]> i = mhm.keys(true, null);
+        byte[] last = null, k;
+        int c = 0;
+        while (i.hasNext()) {
+            k = i.next();
+            if (last != null) assertTrue(Base64Order.enhancedCoder.compare(last, k) < 0);
+            last = k;
+            c++;
+        }
+        assertEquals(99, c);
+
+        mhm.close();
+        dumpfile.delete();
+    }
+
+    private static byte[] key(int i) {
+        String s = Integer.toString(i);
+        while (s.length() < 12) s = "x" + s;
+        return ASCII.getBytes(s);
+    }
+}
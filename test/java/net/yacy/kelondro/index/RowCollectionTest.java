@@ -0,0 +1,82 @@
+package net.yacy.kelondro.index;
+
+import java.util.Random;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+
+public class RowCollectionTest {
+
+    private static final Row row = new Row("byte[] key-12, Cardinal value-4 {b256}", Base64Order.enhancedCoder);
+
+    /**
+     * Test that the parallel sort produces the same order as the sequential sort
+     */
+    @Test
+    public void testParallelSort() throws Exception {
+        final int limit = RowCollection.parallelSortLimit;
+        final int threads = RowCollection.sortThreads;
+        try {
+            RowCollection.sortThreads = 4;
+            final Random r = new Random(1);
+            final RowCollection a = new RowCollection(row, 0);
+            for (int i = 0; i < 50000; i++) a.addUnique(entry(r.nextLong(), i));
+            final RowCollection b = (RowCollection) a.clone();
+
+            RowCollection.parallelSortLimit = Integer.MAX_VALUE;
+            a.sort();
+            RowCollection.parallelSortLimit = 1000;
+            b.sort();
+
+            assertEquals(a.size(), b.size());
+            assertTrue(b.isSorted());
+            for (int i = 0; i < a.size(); i++) {
+                assertArrayEquals(a.get(i, false).getPrimaryKeyBytes(), b.get(i, false).getPrimaryKeyBytes());
+            }
+        } finally {
+            RowCollection.parallelSortLimit = limit;
+            RowCollection.sortThreads = threads;
+        }
+    }
+
+    /**
+     * Test that adding a sorted collection to a sorted collection keeps the order
+     */
+    @Test
+    public void testAddAllUniqueSorted() throws Exception {
+        final int limit = RowCollection.parallelSortLimit;
+        final int threads = RowCollection.sortThreads;
+        try {
+            RowCollection.sortThreads = 4;
+            RowCollection.parallelSortLimit = 1000;
+            final Random r = new Random(2);
+            final RowCollection a = new RowCollection(row, 0);
+            final RowCollection b = new RowCollection(row, 0);
+            for (int i = 0; i < 20000; i++) a.addUnique(entry(r.nextLong(), i));
+            for (int i = 0; i < 7000; i++) b.addUnique(entry(r.nextLong(), i));
+            a.sort();
+            b.sort();
+            a.addAllUnique(b);
+            assertEquals(27000, a.size());
+            assertEquals(27000, a.sorted());
+            for (int i = 1; i < a.size(); i++) {
+                assertTrue(row.objectOrder.compare(a.get(i - 1, false).getPrimaryKeyBytes(), a.get(i, false).getPrimaryKeyBytes()) <= 0);
+            }
+        } finally {
+            RowCollection.parallelSortLimit = limit;
+            RowCollection.sortThreads = threads;
+        }
+    }
+
+    private static Row.Entry entry(final long k, final int v) {
+        final Row.Entry e = row.newEntry();
+        e.setCol(0, ASCII.getBytes(Base64Order.enhancedCoder.encodeLongSB(k, 12).toString()));
+        e.setCol(1, v);
+        return e;
+    }
+}
@@ -0,0 +1,112 @@
+package net.yacy.kelondro.index;
+
+import java.util.ArrayList;
+import java.util.List;
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.Base64Order;
+import net.yacy.cora.order.NaturalOrder;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+
+public class RowCursorTest {
+
+    private final Row rowdef = new Row("byte[] key-12, int value-4 {b256}", Base64Order.enhancedCoder);
+
+    /**
+     * Test seek and next on plain and block-compressed exports
+     */
+    @Test
+    public void testSeek() throws Exception {
+        final RowSet rs = rows(0, 1000, 3); // keys 0, 3, 6, ...
+        for (final byte[] b: new byte[][]{rs.exportCollection(), BlockRowCodec.encode(rs)}) {
+            RowCursor c = RowCursor.of(b, this.rowdef);
+            assertEquals(334, c.size());
+            assertTrue(c.seek(key(10)));
+            assertEquals(0, c.compareKey(key(12)));
+            assertTrue(c.seek(key(12))); // does not move
+            assertEquals(12, c.current().getColLong(1));
+            assertTrue(c.next());
+            assertEquals(15, c.current().getColLong(1));
+            assertTrue(c.seek(key(900)));
+            assertEquals(900, c.current().getColLong(1));
+            assertTrue(c.seek(key(999)));
+            assertFalse(c.seek(key(1000)));
+
+            // enumerate all
+            c = RowCursor.of(b, this.rowdef);
+            int count = 0;
+            while (c.next()) assertEquals(3 * count++, c.current().getColLong(1));
+            assertEquals(334, count);
+        }
+    }
+
+    /**
+     * Test the union of cursors: the first cursor wins on equal keys
+     */
+    @Test
+    public void testUnion() throws Exception {
+        final RowSet a = rows(0, 100, 2);
+        final RowSet b = rows(0, 100, 3);
+        final Row.Entry e = b.get(key(6), false);
+        e.setCol(1, 1006);
+        b.put(e);
+        final List<RowCursor> cursors = new ArrayList<RowCursor>();
+        cursors.add(RowCursor.of(BlockRowCodec.encode(a), this.rowdef));
+        cursors.add(RowCursor.of(b));
+        final RowCursor u = RowCursor.union(cursors);
+        int count = 0;
+        long last = -1;
+        while (u.next()) {
+            final long v = u.current().getColLong(1);
+            assertTrue(v > last);
+            assertTrue(v % 2 == 0 || v % 3 == 0);
+            last = v;
+            count++;
+        }
+        assertEquals(67, count); // 50 + 34 - 17
+    }
+
+    /**
+     * Test that a cursor on an export which is not sorted enumerates the rows in key order
+     */
+    @Test
+    public void testUnsortedExport() throws Exception {
+        final RowSet rs = rows(0, 100, 1);
+        final byte[] b = rs.exportCollection();
+        // swap the first and the last row and mark the export as unsorted
+        final int o = (int) RowCollection.exportOverheadSize, s = this.rowdef.objectsize, l = o + 99 * s;
+        final byte[] first = new byte[s];
+        System.arraycopy(b, o, first, 0, s);
+        System.arraycopy(b, l, b, o, s);
+        System.arraycopy(first, 0, b, l, s);
+        NaturalOrder.encodeLong(0, b, 10, 4);
+        final RowCursor c = RowCursor.of(b, this.rowdef);
+        int count = 0;
+        while (c.next()) {
+            assertEquals(count, c.current().getColLong(1));
+            count++;
+        }
+        assertEquals(100, count);
+    }
+
+    private RowSet rows(final int from, final int to, final int step) throws Exception {
+        final RowSet rs = new RowSet(this.rowdef, 0);
+        for (int i = from; i < to; i += step) {
+            final Row.Entry e = this.rowdef.newEntry();
+            e.setCol(0, key(i));
+            e.setCol(1, i);
+            rs.put(e);
+        }
+        rs.sort();
+        return rs;
+    }
+
+    private static byte[] key(final int i) {
+        String s = Integer.toString(i);
+        while (s.length() < 12) s = "A" + s;
+        return ASCII.getBytes(s);
+    }
+}
@@ -0,0 +1,47 @@
+package net.yacy.kelondro.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+
+public class MappedFileReaderTest {
+
+    final String tesDir = "test/DATA/INDEX/QUEUE";
+
+    /**
+     * Test of readFully and readInt with reads crossing the chunk borders
+     */
+    @Test
+    public void testReadAcrossChunks() throws Exception {
+        File testfile = new File(tesDir, "test.mapped");
+        testfile.getParentFile().mkdirs();
+        byte[] content = new byte[1000];
+        for (int i = 0; i < content.length; i++) content[i] = (byte) i;
+        FileOutputStream os = new FileOutputStream(testfile);
+        os.write(content);
+        os.close();
+
+        MappedFileReader reader = new MappedFileReader(testfile, 64); // use tiny chunks to force split reads
+        assertEquals(content.length, reader.length());
+        assertTrue(reader.covers(0, content.length));
+        assertFalse(reader.covers(990, 20));
+
+        byte[] b = new byte[300];
+        reader.readFully(50, b, 0, b.length);
+        byte[] expected = new byte[300];
+        System.arraycopy(content, 50, expected, 0, expected.length);
+        assertArrayEquals(expected, b);
+
+        // an int starting two bytes before the chunk border at 128
+        int expectedInt = ((content[126] & 0xFF) << 24) | ((content[127] & 0xFF) << 16) | ((content[128] & 0xFF) << 8) | (content[129] & 0xFF);
+        assertEquals(expectedInt, reader.readInt(126));
+
+        reader.close();
+        testfile.delete();
+    }
+}
@@ -0,0 +1,124 @@
+package net.yacy.kelondro.io;
+
+import java.io.File;
+import java.io.IOException;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.kelondro.util.FileUtils;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+public class RecordsLogTest {
+
+    private File tesDir;
+
+    @Before
+    public void setUp() {
+        this.tesDir = new File(System.getProperty("java.io.tmpdir"), "RecordsLogTest");
+        FileUtils.deletedelete(this.tesDir);
+        this.tesDir.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deletedelete(this.tesDir);
+    }
+
+    private static byte[] record(final int i) {
+        return ASCII.getBytes("record" + (10000 + i));
+    }
+
+    /**
+     * Changes which are committed to the log but not written to the table file
+     * must be restored by a replay of the log.
+     */
+    @Test
+    public void testReplay() throws Exception {
+        final File tablefile = new File(this.tesDir, "wal.stack");
+        final File logfile = RecordsLog.logFile(tablefile);
+        final int recordsize = record(0).length;
+
+        // write some records and close the file: the log is deleted
+        BufferedRecords br = new BufferedRecords(new Records(tablefile, recordsize), 100, logfile);
+        for (int i = 0; i < 10; i++) br.add(record(i), 0);
+        br.close();
+        assertFalse(logfile.exists());
+        assertEquals(10 * recordsize, tablefile.length());
+
+        // change records without closing, every operation is committed at once
+        final int ops = BufferedRecords.groupCommitOps;
+        BufferedRecords.groupCommitOps = 1;
+        try {
+            br = new BufferedRecords(new Records(tablefile, recordsize), 100, logfile);
+            br.put(3, record(33), 0);
+            br.cleanLast();
+            br.cleanLast();
+            br.add(record(88), 0);
+            br.add(record(99), 0);
+            br.add(record(100), 0);
+            assertEquals(11, br.size());
+        } finally {
+            BufferedRecords.groupCommitOps = ops;
+        }
+        // crash: br is not closed
+        assertTrue(logfile.exists());
+
+        final int replayed = RecordsLog.replay(logfile, tablefile, recordsize);
+        assertEquals(6, replayed);
+        assertFalse(logfile.exists());
+
+        final Records rec = new Records(tablefile, recordsize);
+        assertEquals(11, rec.size());
+        final byte[] b = new byte[recordsize];
+        final int[] expected = new int[]{0, 1, 2, 33, 4, 5, 6, 7, 88, 99, 100};
+        for (int i = 0; i < expected.length; i++) {
+            rec.get(i, b, 0);
+            assertEquals(ASCII.String(record(expected[i])), ASCII.String(b));
+        }
+        rec.close();
+    }
+
+    /**
+     * An incomplete group at the end of the log and records which were appended
+     * to the table file after the last commit must be ignored.
+     */
+    @Test
+    public void testIncompleteGroup() throws IOException {
+        final File tablefile = new File(this.tesDir, "walpartial.stack");
+        final File logfile = RecordsLog.logFile(tablefile);
+        final int recordsize = record(0).length;
+
+        final Records rec = new Records(tablefile, recordsize);
+        for (int i = 0; i < 4; i++) rec.add(record(i), 0);
+        rec.close();
+
+        final RecordsLog log = new RecordsLog(logfile, recordsize);
+        log.reset(4);
+        log.put(1, record(11), 0);
+        log.commit(4);
+        log.put(2, record(22), 0);
+        log.put(4, record(44), 0);
+        // not committed: this group is lost in the crash
+
+        // an appended record which was not committed
+        final Records rec1 = new Records(tablefile, recordsize);
+        rec1.add(record(44), 0);
+        rec1.close();
+        assertEquals(5 * recordsize, tablefile.length());
+
+        assertEquals(1, RecordsLog.replay(logfile, tablefile, recordsize));
+        final Records rec2 = new Records(tablefile, recordsize);
+        assertEquals(4, rec2.size());
+        final byte[] b = new byte[recordsize];
+        rec2.get(1, b, 0);
+        assertEquals(ASCII.String(record(11)), ASCII.String(b));
+        rec2.get(2, b, 0);
+        assertEquals(ASCII.String(record(2)), ASCII.String(b));
+        rec2.close();
+    }
+}
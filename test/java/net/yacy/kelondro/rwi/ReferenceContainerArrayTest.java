@@ -0,0 +1,114 @@
+package net.yacy.kelondro.rwi;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.kelondro.blob.HeapWriter;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceFactory;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import net.yacy.kelondro.index.BlockRowCodec;
+import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.index.RowSet;
+import net.yacy.kelondro.util.FileUtils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ReferenceContainerArrayTest {
+
+    private static final ReferenceFactory<WordReference> factory = new WordReferenceFactory();
+    private static final byte[] term = ASCII.getBytes("termtermterm");
+
+    private File testDir;
+
+    @Before
+    public void setUp() {
+        this.testDir = new File(System.getProperty("java.io.tmpdir"), "ReferenceContainerArrayTest");
+        FileUtils.deletedelete(this.testDir);
+        this.testDir.mkdirs();
+        ReferenceContainer.blockCompressed = true;
+        BlockRowCodec.blockSize = 2;
+    }
+
+    @After
+    public void tearDown() {
+        ReferenceContainer.blockCompressed = false;
+        BlockRowCodec.blockSize = 128;
+        FileUtils.deletedelete(this.testDir);
+    }
+
+    /**
+     * a reduction which makes a compressed container grow must not be dropped: the removed references are gone
+     */
+    @Test
+    public void testReduceGrowingContainer() throws Exception {
+        // pairs of rows share their feature values, so each block of two rows needs no bits for the features;
+        // removing the first row shifts the blocks and every block mixes small and large values
+        final Row rowdef = WordReferenceRow.urlEntryRow;
+        final RowSet rs = new RowSet(rowdef, 0);
+        for (int i = 0; i < 40; i++) {
+            final Row.Entry e = rowdef.newEntry();
+            e.setCol(0, key(i));
+            for (int col = 1; col < rowdef.columns(); col++) {
+                final byte[] cell = new byte[rowdef.column(col).cellwidth];
+                Arrays.fill(cell, (i / 2) % 2 == 0 ? (byte) 0 : (byte) 0x7f);
+                e.setCol(col, cell);
+            }
+            rs.addUnique(e);
+        }
+        final ReferenceContainer<WordReference> container = new ReferenceContainer<WordReference>(factory, term, rs);
+        final byte[] before = container.exportCollection();
+        assertTrue(BlockRowCodec.isEncoded(before));
+
+        final ReferenceContainerArray<WordReference> array = new ReferenceContainerArray<WordReference>(this.testDir, "test", factory, Word.commonHashOrder, Word.commonHashLength);
+        final File location = array.newContainerBLOBFile();
+        final HeapWriter writer = new HeapWriter(new File(location.getParentFile(), location.getName() + ".prt"), location, Word.commonHashLength, Word.commonHashOrder, 1024);
+        writer.add(term, before);
+        writer.close(true);
+        array.mountBLOBFile(location);
+
+        final ReferenceContainerArray.ContainerReducer<WordReference> reducer = new ReferenceContainerArray.ContainerReducer<WordReference>() {
+            @Override
+            public ReferenceContainer<WordReference> reduce(final ReferenceContainer<WordReference> c) {
+                c.sort();
+                c.remove(key(0));
+                return c;
+            }
+        };
+
+        // the test case: neither the compressed nor the plain export fits in place
+        final ReferenceContainer<WordReference> expected = reducer.reduce(new ReferenceContainer<WordReference>(factory, term, RowSet.importRowSet(before, rowdef)));
+        assertTrue(expected.exportCollection().length > before.length);
+        assertTrue(expected.exportPlainCollection().length > before.length - 4);
+
+        assertTrue(array.reduce(term, reducer) > 0);
+        ReferenceContainer<WordReference> c = array.get(term);
+        assertNotNull(c);
+        assertEquals(39, c.size());
+        assertFalse(c.has(key(0)));
+        assertTrue(c.has(key(1)));
+        array.close();
+
+        // the reduction is persistent
+        final ReferenceContainerArray<WordReference> reopened = new ReferenceContainerArray<WordReference>(this.testDir, "test", factory, Word.commonHashOrder, Word.commonHashLength);
+        c = reopened.get(term);
+        assertNotNull(c);
+        assertEquals(39, c.size());
+        assertFalse(c.has(key(0)));
+        reopened.close();
+    }
+
+    private static byte[] key(final int i) {
+        // ascending in the base64 order
+        return ASCII.getBytes("AAAAAAAAAA" + (char) ('A' + i / 26) + (char) ('A' + i % 26));
+    }
+}
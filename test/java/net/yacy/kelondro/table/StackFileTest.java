@@ -0,0 +1,125 @@
+package net.yacy.kelondro.table;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.order.NaturalOrder;
+import net.yacy.cora.util.SpaceExceededException;
+import net.yacy.kelondro.index.Index;
+import net.yacy.kelondro.index.Row;
+import net.yacy.kelondro.util.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class StackFileTest {
+
+    final String testDir = "test/DATA/INDEX/QUEUE";
+    final Row rowdef = new Row("byte[] key-12, String value-8", NaturalOrder.naturalOrder);
+
+    private Row.Entry row(final String key, final String value) {
+        return this.rowdef.newEntry(new byte[][]{ASCII.getBytes(key), ASCII.getBytes(value)});
+    }
+
+    private static String value(final Row.Entry entry) {
+        return ASCII.String(entry.getColBytes(1, false)).trim();
+    }
+
+    /**
+     * Test that buffered records are written to the file without a call of flush() or close().
+     */
+    @Test
+    public void testTimedFlush() throws IOException, SpaceExceededException, InterruptedException {
+        new File(this.testDir).mkdirs();
+        final File f = new File(this.testDir, "flush.stacks");
+        FileUtils.deletedelete(f);
+
+        final StackFile sf = new StackFile(f, this.rowdef);
+        sf.stack("a.com.80/0000.stack").put(row("aaaaaaaaaaa1", "a1"));
+        assertEquals(0, f.length());
+        for (int i = 0; i < 50 && f.length() == 0; i++) Thread.sleep(100);
+        assertTrue(f.length() > 0);
+        sf.close();
+        FileUtils.deletedelete(f);
+    }
+
+    /**
+     * Test that the stacks of a stack file are restored when the file is opened again.
+     */
+    @Test
+    public void testReopen() throws IOException, SpaceExceededException {
+        new File(this.testDir).mkdirs();
+        final File f = new File(this.testDir, "reopen.stacks");
+        FileUtils.deletedelete(f);
+
+        StackFile sf = new StackFile(f, this.rowdef);
+        Index a = sf.stack("a.com.80/0000.stack");
+        Index b = sf.stack("b.com.80/0001.stack");
+        assertTrue(a.put(row("aaaaaaaaaaa1", "a1")));
+        assertTrue(a.put(row("aaaaaaaaaaa2", "a2")));
+        assertTrue(a.put(row("aaaaaaaaaaa3", "a3")));
+        assertFalse(a.put(row("aaaaaaaaaaa2", "a2new")));
+        assertTrue(b.put(row("bbbbbbbbbbb1", "b1")));
+        assertEquals("a2new", value(a.get(ASCII.getBytes("aaaaaaaaaaa2"), false)));
+        assertEquals("a1", value(a.remove(ASCII.getBytes("aaaaaaaaaaa1"))));
+        assertNotNull(b.removeOne());
+        b.close(); // an empty stack is removed
+        assertEquals(1, sf.names("").size());
+        sf.close();
+
+        sf = new StackFile(f, this.rowdef);
+        assertEquals(1, sf.names("a.com.80/").size());
+        assertEquals(0, sf.names("b.com.80/").size());
+        a = sf.stack("a.com.80/0000.stack");
+        assertEquals(2, a.size());
+        assertFalse(a.has(ASCII.getBytes("aaaaaaaaaaa1")));
+        assertEquals("a2new", value(a.get(ASCII.getBytes("aaaaaaaaaaa2"), false)));
+        assertEquals("a3", value(a.get(ASCII.getBytes("aaaaaaaaaaa3"), false)));
+
+        // iterate and remove
+        Iterator<Row.Entry> i = a.iterator();
+        int c = 0;
+        while (i.hasNext()) {
+            i.next();
+            i.remove();
+            c++;
+        }
+        assertEquals(2, c);
+        assertTrue(a.isEmpty());
+        sf.close();
+        FileUtils.deletedelete(f);
+    }
+
+    /**
+     * Test that a cleared stack stays empty and an incomplete record at the end of the file is ignored.
+     */
+    @Test
+    public void testClearAndIncompleteRecord() throws IOException, SpaceExceededException {
+        new File(this.testDir).mkdirs();
+        final File f = new File(this.testDir, "clear.stacks");
+        FileUtils.deletedelete(f);
+
+        StackFile sf = new StackFile(f, this.rowdef);
+        Index a = sf.stack("a");
+        Index b = sf.stack("b");
+        for (int i = 0; i < 100; i++) a.put(row("aaaaaaaa" + (1000 + i), "a" + i));
+        b.put(row("bbbbbbbbbbb1", "b1"));
+        a.clear();
+        sf.close();
+        final long length = f.length();
+
+        // a crash while a record is written
+        java.io.RandomAccessFile raf = new java.io.RandomAccessFile(f, "rw");
+        raf.seek(length);
+        raf.write(new byte[]{'P', 0, 1, 'a', 1, 2, 3});
+        raf.close();
+
+        sf = new StackFile(f, this.rowdef);
+        assertTrue(f.length() < length); // the file is truncated and compacted
+        assertEquals(0, sf.stack("a").size());
+        assertEquals(1, sf.stack("b").size());
+        sf.close();
+        FileUtils.deletedelete(f);
+    }
+}
@@ -0,0 +1,80 @@
+package net.yacy.search.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.yacy.cora.document.id.DigestURL;
+import net.yacy.cora.storage.HandleSet;
+import net.yacy.kelondro.util.FileUtils;
+import net.yacy.search.query.QueryGoal;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SentenceStoreTest {
+
+    private File location;
+    private SentenceStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        this.location = new File(System.getProperty("java.io.tmpdir"), "SentenceStoreTest");
+        FileUtils.deletedelete(this.location);
+        this.store = new SentenceStore(this.location, "test", Long.MAX_VALUE);
+    }
+
+    @After
+    public void tearDown() {
+        this.store.close();
+        FileUtils.deletedelete(this.location);
+    }
+
+    /**
+     * Test of put and get method, of class SentenceStore.
+     */
+    @Test
+    public void testPutGet() throws IOException {
+        final byte[] urlhash = new DigestURL("http://localhost/page.html").hash();
+        final List<StringBuilder> sentences = new ArrayList<StringBuilder>();
+        sentences.add(new StringBuilder("The first sentence of the document."));
+        sentences.add(new StringBuilder("A line about cats and dogs."));
+        sentences.add(new StringBuilder("Another line about birds."));
+        sentences.add(new StringBuilder("Dogs are mentioned again here."));
+        this.store.put(urlhash, sentences);
+
+        HandleSet queryhashes = new QueryGoal("dogs").getIncludeHashes();
+        SentenceStore.Sentences result = this.store.get(urlhash, queryhashes);
+        assertNotNull(result);
+        assertTrue(result.complete);
+        // the first sentence is always returned
+        assertEquals(3, result.sentences.size());
+        assertEquals("The first sentence of the document.", result.sentences.get(0).toString());
+        assertEquals("A line about cats and dogs.", result.sentences.get(1).toString());
+        assertEquals("Dogs are mentioned again here.", result.sentences.get(2).toString());
+
+        queryhashes = new QueryGoal("fish").getIncludeHashes();
+        result = this.store.get(urlhash, queryhashes);
+        assertNotNull(result);
+        assertEquals(1, result.sentences.size());
+
+        assertNull(this.store.get(new DigestURL("http://localhost/other.html").hash(), queryhashes));
+    }
+
+    /**
+     * Test that documents with too many sentences are marked as incomplete.
+     */
+    @Test
+    public void testIncomplete() throws IOException {
+        final byte[] urlhash = new DigestURL("http://localhost/long.html").hash();
+        final List<StringBuilder> sentences = new ArrayList<StringBuilder>();
+        for (int i = 0; i <= SentenceStore.maxSentences; i++) sentences.add(new StringBuilder("sentence number " + i));
+        this.store.put(urlhash, sentences);
+        final SentenceStore.Sentences result = this.store.get(urlhash, new QueryGoal("number").getIncludeHashes());
+        assertNotNull(result);
+        assertFalse(result.complete);
+        assertEquals(SentenceStore.maxSentences, result.sentences.size());
+    }
+}
@@ -0,0 +1,80 @@
+package net.yacy.search.query;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * test the result waiting of ResultSignal as used by SearchEvent.oneResult
+ */
+public class ResultSignalTest {
+
+    /**
+     * a waiting thread returns promptly when a result is added from another thread
+     */
+    @Test
+    public void testDrainReturnsOnSignal() throws InterruptedException {
+        final ResultSignal signal = new ResultSignal();
+        final AtomicBoolean added = new AtomicBoolean(false);
+        final ResultSignal.Source source = new ResultSignal.Source() {
+            @Override
+            public boolean available() {
+                return added.get();
+            }
+            @Override
+            public boolean pending() {
+                return true;
+            }
+            @Override
+            public boolean drain() {
+                return false; // a feeder of another thread delivers the result
+            }
+        };
+        final Thread feeder = new Thread() {
+            @Override
+            public void run() {
+                try {Thread.sleep(50);} catch (final InterruptedException e) {}
+                added.set(true); // like SearchEvent.addResult
+                signal.signal();
+            }
+        };
+        final long start = System.currentTimeMillis();
+        feeder.start();
+        signal.drain(source, start + 10000);
+        final long time = System.currentTimeMillis() - start;
+        feeder.join();
+        assertTrue(added.get());
+        assertTrue("drain took " + time + " ms", time < 500);
+    }
+
+    /**
+     * there is no waiting as long as draining makes progress, e.g. by starting feeders
+     */
+    @Test
+    public void testDrainDoesNotWaitOnProgress() {
+        final ResultSignal signal = new ResultSignal();
+        final AtomicInteger drained = new AtomicInteger(0);
+        final ResultSignal.Source source = new ResultSignal.Source() {
+            @Override
+            public boolean available() {
+                return drained.get() >= 5;
+            }
+            @Override
+            public boolean pending() {
+                return true;
+            }
+            @Override
+            public boolean drain() {
+                drained.incrementAndGet(); // a feeder was started
+                return true;
+            }
+        };
+        final long start = System.currentTimeMillis();
+        signal.drain(source, start + 10000);
+        final long time = System.currentTimeMillis() - start;
+        assertTrue("drain took " + time + " ms", time < 500);
+    }
+}
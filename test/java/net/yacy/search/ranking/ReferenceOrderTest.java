@@ -0,0 +1,53 @@
+package net.yacy.search.ranking;
+
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+
+import net.yacy.cora.document.analysis.Classification.ContentDomain;
+import net.yacy.cora.document.encoding.ASCII;
+import net.yacy.cora.document.id.DigestURL;
+import net.yacy.kelondro.data.word.Word;
+import net.yacy.kelondro.data.word.WordReference;
+import net.yacy.kelondro.data.word.WordReferenceRow;
+import net.yacy.kelondro.data.word.WordReferenceVars;
+import net.yacy.kelondro.rwi.ReferenceContainer;
+import net.yacy.kelondro.util.Bitfield;
+import net.yacy.search.index.Segment;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+public class ReferenceOrderTest {
+
+    /**
+     * Test of normalizeAll and maxCardinal method, of class ReferenceOrder.
+     */
+    @Test
+    public void testMaxCardinal() throws Exception {
+        final Random r = new Random(0);
+        final ReferenceContainer<WordReference> container = new ReferenceContainer<WordReference>(Segment.wordReferenceFactory, Word.word2hash(new StringBuilder("test")));
+        for (int i = 0; i < 500; i++) {
+            final WordReferenceRow row = new WordReferenceRow(
+                    new DigestURL("http://host" + r.nextInt(20) + ".org/" + i + ".html").hash(),
+                    20 + r.nextInt(100), 1 + r.nextInt(5), r.nextInt(10), r.nextInt(1000), r.nextInt(100),
+                    System.currentTimeMillis() - r.nextInt(1000000000), System.currentTimeMillis(),
+                    ASCII.getBytes(r.nextBoolean() ? "en" : "de"), 'h', r.nextInt(50), r.nextInt(50));
+            final Word word = new Word(1 + r.nextInt(500), 1 + r.nextInt(20), 1 + r.nextInt(50));
+            word.flags = new Bitfield(4);
+            for (int j = 0; j < 32; j++) if (r.nextInt(4) == 0) word.flags.set(j, true);
+            word.count = 1 + r.nextInt(10);
+            row.setWord(word);
+            container.add(row);
+        }
+
+        final ReferenceOrder order = new ReferenceOrder(new RankingProfile(ContentDomain.TEXT), "en");
+        final BlockingQueue<WordReferenceVars> entries = order.normalizeAll(container, Long.MAX_VALUE, true);
+        assertEquals(container.size() + 1, entries.size()); // the queue is complete including the poison
+        WordReferenceVars entry;
+        int count = 0;
+        while ((entry = entries.take()) != WordReferenceVars.poison) {
+            assertTrue(order.cardinal(entry) <= order.maxCardinal(entry));
+            count++;
+        }
+        assertEquals(container.size(), count);
+    }
+}